@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import physics.*;
@@ -25,7 +26,7 @@ public class Absorber implements Gadget{
     //Abstraction Function
     //AF(name, pos, width, height, triggers, heldBalls, sides) =
     //      an Absorber with name name, centered at position pos, with width width and height height,
-    //      which is currently holding the balls in heldBalls, and when triggered, will activate the gadgets in triggers. 
+    //      which is currently holding the parked balls in heldBalls, and when triggered, will activate the gadgets in triggers. 
     //      In the simulation, it is made up of the 4 sides in sides
     
     //Rep invariant
@@ -76,30 +77,54 @@ public class Absorber implements Gadget{
     }
 
     @Override
-    public double timeToCollide(Ball ball, Double elapsedTime) {
-        double minTime = Physics.timeUntilWallCollision(sides.get(0), ball.getCircle(), ball.getVelocity());
-        for (LineSegment side: sides) {
-            double sideTime = Physics.timeUntilWallCollision(side, ball.getCircle(), ball.getVelocity());
+    public double timeToCollide(Ball ball, double elapsedTime, Contact contact) {
+        double x = ball.getX(), y = ball.getY(), radius = ball.getRadius();
+        double xVel = ball.getXVelocity(), yVel = ball.getYVelocity();
+        if (PhysicsKernel.outOfReach(pos.x(), pos.y(), pos.x() + width, pos.y() + height,
+                x, y, radius, xVel, yVel, elapsedTime)) {
+            contact.clear();
+            return Double.POSITIVE_INFINITY;
+        }
+        // the sides are the features
+        double minTime = PhysicsKernel.timeUntilWallCollision(sides.get(0), x, y, radius, xVel, yVel);
+        int feature = 0;
+        for (int i = 0; i < sides.size(); i++) {
+            double sideTime = PhysicsKernel.timeUntilWallCollision(sides.get(i), x, y, radius, xVel, yVel);
             if (sideTime < minTime) {
                 minTime = sideTime;
+                feature = i;
             }
         }
+        contact.set(minTime, feature);
         checkRep();
         return minTime;
     }
       
+    /**
+     * @return the line segments of the absorber, numbered as its features in a Contact
+     */
+    List<LineSegment> segments() {
+        return Collections.unmodifiableList(sides);
+    }
+    
+    @Override
+    public void advance(double time) {
+        // does not move
+    }
+    
     @Override
-    public String collide(Ball ball) {
+    public Outcome collide(Ball ball, Contact contact) {
         // hold the ball
-        ball.setPosition(new Vect(pos.x()+width-ball.getCircle().getRadius(), pos.y()+height-ball.getCircle().getRadius()));
-        ball.setVelocity(new Vect(0,0));
+        ball.setPosition(pos.x()+width-ball.getRadius(), pos.y()+height-ball.getRadius());
+        ball.setVelocity(0, 0);
+        ball.park();
         if (!heldBalls.contains(ball))  {
             heldBalls.add(ball);
         }
         for (Gadget trigger: triggers) {
             trigger.action();
         }
-        return "";
+        return Outcome.STAY;
     }
     
     @Override
@@ -121,18 +146,33 @@ public class Absorber implements Gadget{
         return sides.get(0).p1();
     }
     
+    @Override
+    public Rectangle2D bounds() {
+        return new Rectangle2D.Double(pos.x(), pos.y(), width, height);
+    }
+    
     @Override
     public void link(Gadget activator) {
         checkRep();
         triggers.add(activator);               
     }
     
+    @Override
+    public int triggerCount() {
+        return triggers.size();
+    }
+    
     @Override
     public void action() {
+        // balls that another ball knocked loose have already left
+        while (!heldBalls.isEmpty() && !heldBalls.get(0).isParked()) {
+            heldBalls.remove(0);
+        }
         if (!heldBalls.isEmpty()) {
             Ball otherBall = heldBalls.get(0);
-            otherBall.setPosition(new Vect(pos.x() + width - otherBall.getCircle().getRadius(), pos.y() - otherBall.getCircle().getRadius()));
-            otherBall.setVelocity(new Vect(0, -50.*Flingball.L));
+            otherBall.wake();
+            otherBall.setPosition(pos.x() + width - otherBall.getRadius(), pos.y() - otherBall.getRadius());
+            otherBall.setVelocity(0, -50.*Flingball.L);
             checkRep();
             heldBalls.remove(0);
         }
@@ -4,18 +4,17 @@ import java.awt.Graphics2D;
 import java.awt.geom.Ellipse2D;
 
 import physics.*;
-import physics.Physics.VectPair;
 
 /**
  * The mutable Flingball ball. 
+ * 
+ * A ball's state lives in a slot of a BallStore. A ball created on its own has a store
+ * of its own; once it is added to a board it reads and writes its slot of the board's store.
  */
 public class Ball {
     private final String name;
-    private double xPos; 
-    private double yPos;
-    private double xVel;
-    private double yVel;
-    private final double radius;
+    private BallStore store;
+    private int slot;
     
     /**
      * Creates new Flingball ball centered about (xPos, yPos) with
@@ -28,31 +27,90 @@ public class Ball {
      */
     public Ball (String name, double xPos, double yPos, double xVel, double yVel) {
         this.name = name;
-        this.xPos = xPos;
-        this.yPos = yPos;
-        this.xVel = xVel;
-        this.yVel = yVel;
-        this.radius = .25*(double)Flingball.L;
+        this.store = new BallStore(1);
+        this.slot = store.append(this, xPos, yPos, xVel, yVel, .25*(double)Flingball.L);
     }
     
     //Abstraction Function
-    // AF(name, xPos, yPos, xVel, yVel, radius) = ball with name name, at position (xPos, yPos), with velocity (xVel, yVel) and with radius radius
+    // AF(name, store, slot) = ball with name name, at position (store.x[slot], store.y[slot]), 
+    //      with velocity (store.xVel[slot], store.yVel[slot]) and with radius store.radius[slot]
     
     //Rep Invariant
-    // xPos >=0 
-    // ypox >= 0
-    // radius >= 0
+    // store.view(slot) == this
+    // store.x[slot] >=0 
+    // store.y[slot] >= 0
+    // store.radius[slot] >= 0
     
     //Rep Exposure argument
-    // all fields are private and immutable
-    // xPos, yPos, xVel and yVel are not final but are doubles so cannot have aliases
+    // all fields are private
+    // store is mutable and shared with the other balls of a board, which is required for the board
+    //      to update all of its balls at once, but it is never returned to the client
+    
+    //Thread Safety argument
+    // Not threadsafe: moveTo() and the store write store, slot and the store's arrays without synchronization,
+    //      so a reader on another thread could find slot out of step with store, or half of a move.
+    //      A ball on a board is confined to the thread that simulates the board, and other threads draw it
+    //      from a RenderState taken on that thread
     
     
     private void checkRep() {
-        assert xPos >= 0;
-        assert yPos >= 0;
-        assert radius >= 0;
+        assert store.view(slot) == this;
+        assert store.x[slot] >= 0;
+        assert store.y[slot] >= 0;
+        assert store.radius[slot] >= 0;
     }
+    
+    /**
+     * Moves this ball's state into the given store
+     * @param newStore the store that will hold this ball from now on
+     */
+    void moveTo(BallStore newStore) {
+        int newSlot = newStore.append(this, store.x[slot], store.y[slot], store.xVel[slot], store.yVel[slot], store.radius[slot]);
+        this.store = newStore;
+        this.slot = newSlot;
+    }
+    
+    /**
+     * @return the index of this ball in its store
+     */
+    int slot() {
+        return slot;
+    }
+    
+    /**
+     * Records that this ball moved to another index of its store
+     * @param newSlot the new index
+     */
+    void setSlot(int newSlot) {
+        this.slot = newSlot;
+    }
+    
+    /**
+     * Stops this ball and parks it, so the board no longer moves it or looks for its collisions
+     * until it is woken. Does nothing if the ball is already parked.
+     */
+    void park() {
+        if (!store.isParked(slot)) {
+            store.park(slot);
+        }
+    }
+    
+    /**
+     * Wakes this ball if it is parked, so the board moves it again
+     */
+    void wake() {
+        if (store.isParked(slot)) {
+            store.wake(slot);
+        }
+    }
+    
+    /**
+     * @return true iff this ball is parked
+     */
+    boolean isParked() {
+        return store.isParked(slot);
+    }
+    
     /**
      * @return the unique name for this ball
      */
@@ -60,25 +118,60 @@ public class Ball {
         return this.name;
     }
     
+    /**
+     * @return the x coordinate of the ball's center
+     */
+    public double getX() {
+        return store.x[slot];
+    }
+    
+    /**
+     * @return the y coordinate of the ball's center
+     */
+    public double getY() {
+        return store.y[slot];
+    }
+    
+    /**
+     * @return the x component of the ball's velocity
+     */
+    public double getXVelocity() {
+        return store.xVel[slot];
+    }
+    
+    /**
+     * @return the y component of the ball's velocity
+     */
+    public double getYVelocity() {
+        return store.yVel[slot];
+    }
+    
+    /**
+     * @return the radius of the ball
+     */
+    public double getRadius() {
+        return store.radius[slot];
+    }
+    
     /**
      * @return circle physics object associated with ball
      */
     public Circle getCircle() {
-        return new Circle(this.xPos, this.yPos, this.radius); 
+        return new Circle(store.x[slot], store.y[slot], store.radius[slot]); 
     }
     
     /**
      * @return the current position vector of the ball
      */
     public Vect getPosition() {
-        return new Vect(this.xPos, this.yPos);      
+        return new Vect(store.x[slot], store.y[slot]);      
     }
     
     /**
      * @return the current velocity vector of the ball
      */
     public Vect getVelocity() {
-        return new Vect(this.xVel, this.yVel);       
+        return new Vect(store.xVel[slot], store.yVel[slot]);       
     }
     
     /**
@@ -86,8 +179,8 @@ public class Ball {
      * @param position of the ball
      */
     public void setPosition(Vect position) {
-        this.xPos = position.x();
-        this.yPos = position.y();
+        store.x[slot] = position.x();
+        store.y[slot] = position.y();
     }
     
     /**
@@ -95,8 +188,28 @@ public class Ball {
      * @param velocity of the ball
      */
     public void setVelocity(Vect velocity) {
-        this.xVel = velocity.x();
-        this.yVel = velocity.y();
+        store.xVel[slot] = velocity.x();
+        store.yVel[slot] = velocity.y();
+    }
+    
+    /**
+     * Sets the position of the ball
+     * @param x the new x coordinate of the ball's center
+     * @param y the new y coordinate of the ball's center
+     */
+    public void setPosition(double x, double y) {
+        store.x[slot] = x;
+        store.y[slot] = y;
+    }
+    
+    /**
+     * Sets the velocity of the ball
+     * @param xVel the new x component of the velocity
+     * @param yVel the new y component of the velocity
+     */
+    public void setVelocity(double xVel, double yVel) {
+        store.xVel[slot] = xVel;
+        store.yVel[slot] = yVel;
     }
     
     /**
@@ -105,8 +218,7 @@ public class Ball {
      */
     public void updatePosition(double elapsedTime) {
         //new coordinate = current + velocity*time
-        this.xPos = Math.min(Math.max(xPos + xVel*elapsedTime, radius), 20*(double)Flingball.L-radius);
-        this.yPos = Math.min(Math.max(yPos + yVel*elapsedTime, radius), 20*(double)Flingball.L-radius);        
+        store.updatePosition(slot, elapsedTime);
     }
     
     /**
@@ -120,9 +232,7 @@ public class Ball {
      */
     public void applyMechanics(double gravity, double mu1, double mu2, double elapsedTime) { 
         //V_new = V_old × ( 1 - mu1 × delta_t - mu2 × |V_old| × delta_t) + gravity   
-        double magnitude = Math.sqrt(xVel*xVel + yVel*yVel) / Flingball.L;
-        this.xVel = xVel * (1 - mu1 * elapsedTime - mu2 * magnitude * elapsedTime);
-        this.yVel = yVel * (1 - mu1 * elapsedTime - mu2 * magnitude * elapsedTime) + gravity*elapsedTime;
+        store.applyMechanics(slot, gravity, mu1, mu2, elapsedTime);
     }
     
     /**
@@ -130,21 +240,47 @@ public class Ball {
      * @param graphic the drawing buffer to render on
      */
     public void render(Graphics2D graphic) {
+        render(graphic, store.x[slot], store.y[slot], store.radius[slot]);
+    }
+    
+    /**
+     * Renders a ball at the given position onto the given graphics object
+     * @param graphic the drawing buffer to render on
+     * @param x the x coordinate of the ball's center
+     * @param y the y coordinate of the ball's center
+     * @param radius the radius of the ball
+     */
+    static void render(Graphics2D graphic, double x, double y, double radius) {
         graphic.setColor(Color.blue);
-        graphic.fill(new Ellipse2D.Double(Math.max(xPos-radius, 0), 
-                Math.max(yPos-radius, 0), 
+        graphic.fill(new Ellipse2D.Double(Math.max(x-radius, 0), 
+                Math.max(y-radius, 0), 
                 2*radius,  
                 2*radius));
     }
     
+    /**
+     * @param ball another ball
+     * @return the time until this ball and the given one touch, or POSITIVE_INFINITY if they never do
+     */
     public double timeToCollide(Ball ball) {
-        return Physics.timeUntilBallBallCollision(this.getCircle(), this.getVelocity(), ball.getCircle(), ball.getVelocity());        
+        return PhysicsKernel.timeUntilBallBallCollision(
+                store.x[slot], store.y[slot], store.radius[slot], store.xVel[slot], store.yVel[slot],
+                ball.store.x[ball.slot], ball.store.y[ball.slot], ball.store.radius[ball.slot], 
+                ball.store.xVel[ball.slot], ball.store.yVel[ball.slot]);
     }
 
+    /**
+     * Bounces this ball and the given one off each other, as balls of equal mass
+     * @param ball another ball touching this one
+     */
     public void collide(Ball ball) {
-        VectPair reflectVels = Physics.reflectBalls(this.getCircle().getCenter(), 1., this.getVelocity(), ball.getCircle().getCenter(), 1., ball.getVelocity());
-        this.setVelocity(reflectVels.v1);
-        ball.setVelocity(reflectVels.v2);
+        PhysicsKernel.Vector reflected1 = store.reflected1;
+        PhysicsKernel.Vector reflected2 = store.reflected2;
+        PhysicsKernel.reflectBalls(store.x[slot], store.y[slot], 1., store.xVel[slot], store.yVel[slot],
+                ball.store.x[ball.slot], ball.store.y[ball.slot], 1., ball.store.xVel[ball.slot], ball.store.yVel[ball.slot],
+                reflected1, reflected2);
+        this.setVelocity(reflected1.x, reflected1.y);
+        ball.setVelocity(reflected2.x, reflected2.y);
     }   
 
     @Override public int hashCode() {
@@ -152,15 +288,15 @@ public class Ball {
         int result = 1;
         result = prime * result + ((name == null) ? 0 : name.hashCode());
         long temp;
-        temp = Double.doubleToLongBits(radius);
+        temp = Double.doubleToLongBits(store.radius[slot]);
         result = prime * result + (int) (temp ^ (temp >>> 32));
-        temp = Double.doubleToLongBits(xPos);
+        temp = Double.doubleToLongBits(store.x[slot]);
         result = prime * result + (int) (temp ^ (temp >>> 32));
-        temp = Double.doubleToLongBits(xVel);
+        temp = Double.doubleToLongBits(store.xVel[slot]);
         result = prime * result + (int) (temp ^ (temp >>> 32));
-        temp = Double.doubleToLongBits(yPos);
+        temp = Double.doubleToLongBits(store.y[slot]);
         result = prime * result + (int) (temp ^ (temp >>> 32));
-        temp = Double.doubleToLongBits(yVel);
+        temp = Double.doubleToLongBits(store.yVel[slot]);
         result = prime * result + (int) (temp ^ (temp >>> 32));
         return result;
     }
@@ -178,22 +314,22 @@ public class Ball {
                 return false;
         } else if (!name.equals(other.name))
             return false;
-        if (Double.doubleToLongBits(radius) != Double.doubleToLongBits(other.radius))
+        if (Double.doubleToLongBits(store.radius[slot]) != Double.doubleToLongBits(other.store.radius[other.slot]))
             return false;
-        if (Double.doubleToLongBits(xPos) != Double.doubleToLongBits(other.xPos))
+        if (Double.doubleToLongBits(store.x[slot]) != Double.doubleToLongBits(other.store.x[other.slot]))
             return false;
-        if (Double.doubleToLongBits(xVel) != Double.doubleToLongBits(other.xVel))
+        if (Double.doubleToLongBits(store.xVel[slot]) != Double.doubleToLongBits(other.store.xVel[other.slot]))
             return false;
-        if (Double.doubleToLongBits(yPos) != Double.doubleToLongBits(other.yPos))
+        if (Double.doubleToLongBits(store.y[slot]) != Double.doubleToLongBits(other.store.y[other.slot]))
             return false;
-        if (Double.doubleToLongBits(yVel) != Double.doubleToLongBits(other.yVel))
+        if (Double.doubleToLongBits(store.yVel[slot]) != Double.doubleToLongBits(other.store.yVel[other.slot]))
             return false;
         return true;
     }
 
     @Override public String toString() {
-        return "Ball [name=" + name + ", xPos=" + xPos + ", yPos=" + yPos + ", xVel=" + xVel + ", yVel=" + yVel
-                + ", radius=" + radius + "]";
+        return "Ball [name=" + name + ", xPos=" + store.x[slot] + ", yPos=" + store.y[slot] + ", xVel=" + store.xVel[slot] 
+                + ", yVel=" + store.yVel[slot] + ", radius=" + store.radius[slot] + "]";
     }
 
 }
@@ -0,0 +1,410 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mutable structure-of-arrays storage for the balls of a board.
+ *
+ * The state of ball i is kept at index i of parallel primitive arrays, so that moving
+ * every ball or applying gravity and friction is a tight loop over contiguous memory.
+ * Each stored ball also has a Ball view, which reads and writes its slot of the arrays,
+ * so that gadgets and other clients can keep working with Ball objects.
+ *
+ * A ball can be parked, e.g. while an absorber holds it. Parked balls are kept after the
+ * active ones, in slots activeCount() to size(), and do not move, so loops over the active
+ * balls never touch them.
+ *
+ * Each ball also has a clock, the time within the frame being simulated that its position is
+ * up to date with, so that an engine can move balls one at a time, each straight to its own
+ * next collision, and only bring them all to the same time when it has to. updatePositions()
+ * moves every ball at once and leaves the clocks alone, for engines that keep every ball at the
+ * same time.
+ */
+class BallStore {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    double[] x;
+    double[] y;
+    double[] xVel;
+    double[] yVel;
+    double[] radius;
+    double[] clock;
+    final PhysicsKernel.Vector reflected1;
+    final PhysicsKernel.Vector reflected2;
+    private Ball[] views;
+    private int count;
+    private int active;
+    private int structureVersion;
+    private double latestClock;
+
+    // Abstraction Function
+    // AF(x, y, xVel, yVel, radius, clock, views, count, active, structureVersion, latestClock) = the balls views[0..count),
+    //      where ball i is centered at (x[i], y[i]) at time clock[i] of the frame, moving with velocity (xVel[i], yVel[i])
+    //      and has radius radius[i]. latestClock is the latest time any ball has been moved up to in the frame.
+    //      The balls views[0..active) are active and the balls views[active..count) are parked.
+    //      structureVersion counts the number of times a ball was added, removed, parked or woken.
+    //      reflected1 and reflected2 are scratch space for the velocities of two balls bouncing off each other.
+
+    // Rep Invariant
+    // x, y, xVel, yVel, radius, clock and views all have the same length, which is >= count
+    // clock[i] <= latestClock for all 0 <= i < count, apart from the balls moved by updatePosition(slot, from, elapsedTime)
+    //      since the last call that moved every ball
+    // 0 <= active <= count
+    // views[i].slot() == i and views[i] is backed by this store for all 0 <= i < count
+
+    // Rep Exposure Argument
+    // the arrays are package-private so that the board's inner loops can read them directly; only
+    //      classes of the engine use them, and they never keep references across a call that adds or removes balls
+    // views holds aliases of the balls, which is required since each ball reads its state from this store
+    // reflected1 and reflected2 are only written and read within a single call to Ball.collide
+
+    // Thread Safety Argument
+    // Not threadsafe, confined to the thread that steps the board. The board queues balls coming
+    //      from other threads and adds them on that thread.
+
+    private void checkRep() {
+        assert count <= views.length;
+        assert 0 <= active && active <= count;
+        assert x.length == views.length && y.length == views.length;
+        assert xVel.length == views.length && yVel.length == views.length;
+        assert radius.length == views.length && clock.length == views.length;
+    }
+
+    /**
+     * Creates an empty store
+     */
+    public BallStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store with room for the given number of balls
+     * @param capacity the number of balls that fit before the arrays grow, > 0
+     */
+    public BallStore(int capacity) {
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.xVel = new double[capacity];
+        this.yVel = new double[capacity];
+        this.radius = new double[capacity];
+        this.clock = new double[capacity];
+        this.reflected1 = new PhysicsKernel.Vector();
+        this.reflected2 = new PhysicsKernel.Vector();
+        this.views = new Ball[capacity];
+        this.count = 0;
+        this.active = 0;
+        this.structureVersion = 0;
+        this.latestClock = 0;
+    }
+
+    /**
+     * @return the number of balls in the store
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the number of balls that are not parked, which are in slots 0 to activeCount()
+     */
+    public int activeCount() {
+        return active;
+    }
+
+    /**
+     * @return a number that changes every time a ball is added, removed, parked or woken,
+     *         which are the only changes that move balls to other slots
+     */
+    public int structureVersion() {
+        return structureVersion;
+    }
+
+    /**
+     * @param slot index of a ball, 0 <= slot < size()
+     * @return the view of the ball in that slot
+     */
+    public Ball view(int slot) {
+        return views[slot];
+    }
+
+    /**
+     * @return the views of all the balls, in slot order
+     */
+    public List<Ball> toList() {
+        return new ArrayList<>(Arrays.asList(views).subList(0, count));
+    }
+
+    /**
+     * @param slot index of a ball, 0 <= slot < size()
+     * @return true iff the ball in that slot is parked
+     */
+    public boolean isParked(int slot) {
+        return slot >= active;
+    }
+
+    /**
+     * Adds an active ball to the store, after the other active balls
+     * @return the slot of the new ball
+     */
+    int append(Ball view, double xPos, double yPos, double xVelocity, double yVelocity, double ballRadius) {
+        if (count == views.length) {
+            int capacity = 2*views.length;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            xVel = Arrays.copyOf(xVel, capacity);
+            yVel = Arrays.copyOf(yVel, capacity);
+            radius = Arrays.copyOf(radius, capacity);
+            clock = Arrays.copyOf(clock, capacity);
+            views = Arrays.copyOf(views, capacity);
+        }
+        x[count] = xPos;
+        y[count] = yPos;
+        xVel[count] = xVelocity;
+        yVel[count] = yVelocity;
+        radius[count] = ballRadius;
+        clock[count] = latestClock;
+        views[count] = view;
+        count++;
+        move(count - 1, active);
+        structureVersion++;
+        return active++;
+    }
+
+    /**
+     * Moves a ball into this store. Afterwards the ball reads and writes its state here.
+     * @param ball the ball to add, which must not already be in this store
+     */
+    public void add(Ball ball) {
+        ball.moveTo(this);
+        checkRep();
+    }
+
+    /**
+     * @param ball a ball
+     * @return true iff the ball is in this store
+     */
+    public boolean contains(Ball ball) {
+        int slot = ball.slot();
+        return slot < count && views[slot] == ball;
+    }
+
+    /**
+     * Removes a ball from this store, keeping the order of the remaining balls.
+     * The removed ball keeps its state in a store of its own, where it is active.
+     * @param ball the ball to remove
+     * @return true iff the ball was in this store
+     */
+    public boolean remove(Ball ball) {
+        if (!contains(ball)) {
+            return false;
+        }
+        int slot = ball.slot();
+        ball.moveTo(new BallStore(1));
+        int moved = count - slot - 1;
+        System.arraycopy(x, slot + 1, x, slot, moved);
+        System.arraycopy(y, slot + 1, y, slot, moved);
+        System.arraycopy(xVel, slot + 1, xVel, slot, moved);
+        System.arraycopy(yVel, slot + 1, yVel, slot, moved);
+        System.arraycopy(radius, slot + 1, radius, slot, moved);
+        System.arraycopy(clock, slot + 1, clock, slot, moved);
+        System.arraycopy(views, slot + 1, views, slot, moved);
+        count--;
+        views[count] = null;
+        if (slot < active) {
+            active--;
+        }
+        for (int i = slot; i < count; i++) {
+            views[i].setSlot(i);
+        }
+        structureVersion++;
+        checkRep();
+        return true;
+    }
+
+    /**
+     * Parks an active ball: stops it, and takes it out of the active balls until it is woken
+     * @param slot index of an active ball, 0 <= slot < activeCount()
+     */
+    public void park(int slot) {
+        assert slot < active;
+        xVel[slot] = 0;
+        yVel[slot] = 0;
+        move(slot, active - 1);
+        active--;
+        structureVersion++;
+        checkRep();
+    }
+
+    /**
+     * Wakes a parked ball, which becomes the last of the active balls. Its clock is set to the
+     * latest time any ball has been moved up to, which is when whatever woke it happened.
+     * @param slot index of a parked ball, activeCount() <= slot < size()
+     */
+    public void wake(int slot) {
+        assert slot >= active && slot < count;
+        clock[slot] = latestClock;
+        move(slot, active);
+        active++;
+        structureVersion++;
+        checkRep();
+    }
+
+    /**
+     * Moves the ball in slot from to slot to, shifting the balls in between by one slot
+     * towards from, so that the order of every other ball is kept
+     */
+    private void move(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        double movedX = x[from];
+        double movedY = y[from];
+        double movedXVel = xVel[from];
+        double movedYVel = yVel[from];
+        double movedRadius = radius[from];
+        double movedClock = clock[from];
+        Ball movedView = views[from];
+        int low = Math.min(from, to);
+        int high = Math.max(from, to);
+        int source = from < to ? from + 1 : to;
+        int target = from < to ? from : to + 1;
+        System.arraycopy(x, source, x, target, high - low);
+        System.arraycopy(y, source, y, target, high - low);
+        System.arraycopy(xVel, source, xVel, target, high - low);
+        System.arraycopy(yVel, source, yVel, target, high - low);
+        System.arraycopy(radius, source, radius, target, high - low);
+        System.arraycopy(clock, source, clock, target, high - low);
+        System.arraycopy(views, source, views, target, high - low);
+        x[to] = movedX;
+        y[to] = movedY;
+        xVel[to] = movedXVel;
+        yVel[to] = movedYVel;
+        radius[to] = movedRadius;
+        clock[to] = movedClock;
+        views[to] = movedView;
+        for (int i = low; i <= high; i++) {
+            views[i].setSlot(i);
+        }
+    }
+
+    /**
+     * Moves every active ball in a straight line for the given time, keeping the balls on the board
+     * @param elapsedTime the time to move the balls for
+     */
+    public void updatePositions(double elapsedTime) {
+        double size = 20*(double)Flingball.L;
+        for (int i = 0; i < active; i++) {
+            x[i] = Math.min(Math.max(x[i] + xVel[i]*elapsedTime, radius[i]), size-radius[i]);
+            y[i] = Math.min(Math.max(y[i] + yVel[i]*elapsedTime, radius[i]), size-radius[i]);
+        }
+    }
+
+    /**
+     * Moves one ball in a straight line for the given time, keeping it on the board
+     * @param slot index of the ball
+     * @param elapsedTime the time to move the ball for
+     */
+    public void updatePosition(int slot, double elapsedTime) {
+        double size = 20*(double)Flingball.L;
+        x[slot] = Math.min(Math.max(x[slot] + xVel[slot]*elapsedTime, radius[slot]), size-radius[slot]);
+        y[slot] = Math.min(Math.max(y[slot] + yVel[slot]*elapsedTime, radius[slot]), size-radius[slot]);
+    }
+
+    /**
+     * Moves every active ball in a straight line from the given time of the frame for the given time, keeping
+     * the balls on the board. A ball whose clock is already past the start was moved ahead of the others
+     * earlier, so it only moves for whatever is left of the time, if anything, and is not moved for the same
+     * time twice. Every clock is then at least the end of the move.
+     * @param from time within the frame that the balls not ahead of it are at
+     * @param elapsedTime the time to move the balls for, >= 0
+     */
+    public void updatePositions(double from, double elapsedTime) {
+        for (int i = 0; i < active; i++) {
+            updatePosition(i, from, elapsedTime);
+        }
+        latestClock = Math.max(latestClock, from + elapsedTime);
+    }
+
+    /**
+     * Moves one ball as updatePositions(from, elapsedTime) does, without touching any other ball, so that
+     * threads can move different balls at the same time. Its clock may then be past the latest clock until
+     * the next call to updatePositions(), advanceTo(), synchronize() or resetClocks().
+     * @param slot index of the ball
+     * @param from time within the frame that the ball is at, unless it is ahead of it
+     * @param elapsedTime the time to move the ball for, >= 0
+     */
+    public void updatePosition(int slot, double from, double elapsedTime) {
+        double until = from + elapsedTime;
+        double lead = clock[slot] - from;
+        if (lead <= 0) {
+            updatePosition(slot, elapsedTime);
+            clock[slot] = until;
+        } else if (clock[slot] < until) {
+            updatePosition(slot, until - clock[slot]);
+            clock[slot] = until;
+        }
+    }
+
+    /**
+     * Moves one ball in a straight line from its clock up to the given time, keeping it on the board
+     * @param slot index of the ball
+     * @param time time within the frame, >= the ball's clock
+     */
+    public void advanceTo(int slot, double time) {
+        updatePosition(slot, time - clock[slot]);
+        clock[slot] = time;
+        latestClock = Math.max(latestClock, time);
+    }
+
+    /**
+     * Moves every active ball in a straight line from its clock up to the given time,
+     * so that every ball, parked or not, is at that time
+     * @param time time within the frame, >= every ball's clock
+     */
+    public void synchronize(double time) {
+        for (int i = 0; i < active; i++) {
+            updatePosition(i, time - clock[i]);
+        }
+        Arrays.fill(clock, 0, count, time);
+        latestClock = time;
+    }
+
+    /**
+     * Starts the clock of every ball at 0, for a new frame
+     */
+    public void resetClocks() {
+        Arrays.fill(clock, 0, count, 0.);
+        latestClock = 0;
+    }
+
+    /**
+     * Applies friction and gravity to every active ball, as described in Ball.applyMechanics
+     * @param gravity the downward acceleration of gravity given in units of L/sec^2
+     * @param mu1 the first friction constant
+     * @param mu2 the second friction constant
+     * @param elapsedTime the amount of time to simulate
+     */
+    public void applyMechanics(double gravity, double mu1, double mu2, double elapsedTime) {
+        for (int i = 0; i < active; i++) {
+            applyMechanics(i, gravity, mu1, mu2, elapsedTime);
+        }
+    }
+
+    /**
+     * Applies friction and gravity to one ball, as described in Ball.applyMechanics
+     * @param slot index of the ball
+     * @param gravity the downward acceleration of gravity given in units of L/sec^2
+     * @param mu1 the first friction constant
+     * @param mu2 the second friction constant
+     * @param elapsedTime the amount of time to simulate
+     */
+    public void applyMechanics(int slot, double gravity, double mu1, double mu2, double elapsedTime) {
+        double magnitude = Math.sqrt(xVel[slot]*xVel[slot] + yVel[slot]*yVel[slot]) / Flingball.L;
+        double scale = 1 - mu1 * elapsedTime - mu2 * magnitude * elapsedTime;
+        xVel[slot] = xVel[slot] * scale;
+        yVel[slot] = yVel[slot] * scale + gravity*elapsedTime;
+    }
+}
@@ -4,13 +4,16 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 
 import physics.Vect;
 
@@ -24,8 +27,22 @@ import physics.Vect;
  * 
  */
 public class Board {
+
+    /**
+     * The ways a board can find the collisions in a frame
+     */
+    public enum Engine {
+        /** after each collision, search all balls and gadgets for the next one */
+        SURVEY,
+        /** keep a queue of predicted collisions, and only predict again for balls that changed */
+        EVENT_DRIVEN,
+        /** as EVENT_DRIVEN, but only move the balls in each collision, each ball keeping its own clock */
+        ASYNCHRONOUS
+    }
+
     private final List<Gadget> gadgets;
-    private final CopyOnWriteArrayList<Ball> balls;
+    private final BallStore balls;
+    private final Queue<Ball> incomingBalls;
     private final double gravity;
     private final double mu1;
     private final double mu2;
@@ -34,36 +51,108 @@ public class Board {
     private final Set<String> activeBoards;
     private final String boardName;
     private final Map<String, Vect> portalMap;
+    private final Gadget[] walls;
+    private final GadgetGrid gadgetGrid;
+    private final GadgetTables gadgetTables;
+    private final int[] gadgetCandidates;
+    private final Contact contact;
+    private final CollisionSet collisions;
+    private final int[] movingGadgets;
+    private final SweepAndPrune ballSweep;
+    private final CollisionScheduler scheduler;
+    private final ParallelSurvey parallelSurvey;
+    private final Islands islands;
+    private final SurveyStepper stepper;
+    private final boolean[] hazards;
+    private Engine engine;
+    private ForkJoinPool surveyPool;
+    private int parallelThreshold;
+    private boolean islandStepping;
+    private long islandFrames;
+    private long subSteps;
+    private long parallelSubSteps;
+    private long subStepsSaved;
+    private long narrowPhaseTests;
+    private final FrameMetrics metrics;
 
     private StateChangeListener listener;
 
     // Abstraction Function
     // AF(gadgets, balls, gravity, mu1, mu2, keyMapping, boardJoins, activeBoards, boardName, portalMap) = a board with a name, containing all its gadgets
-    //          in a list of gadgets, all its balls in a list of balls, with one gravity constant two friction constants. It also holds a mapping of keys 
+    //          in a list of gadgets, all its balls in a ball store plus the balls in incomingBalls that are waiting to be added, with one gravity constant two friction constants. It also holds a mapping of keys 
     //          to the name of the gadget it should invoke action in, and an array of name of boards that it might be joined with. It keeps track of all
-    //          activeBoards in a server run game of fling ball in a set. It holds a mapping of its portal name to its position.
+    //          activeBoards in a server run game of fling ball in a set. It holds a mapping of its portal name to its position,
+    //          and each portal leading to another portal on this board has been connected to that portal's position.
+    //          walls[d] is the wall along the side of the board in direction d, in the order of boardJoins.
+    //          gadgetGrid indexes gadgets by the board cells they cover, and gadgetCandidates is scratch space for its queries.
+    //          gadgetTables holds the geometry of the gadgets that do not move, which the narrow phase tests balls against.
+    //          contact is scratch space for the gadget being tested, and collisions holds the earliest collisions the
+    //          SURVEY engine has found so far in the current sub-step, along with those within its batch window after them.
+    //          movingGadgets holds the indices of the gadgets that move on their own, which are advanced once per sub-step.
+    //          stepper steps every ball of the board through the frames of the SURVEY engine.
+    //          ballSweep finds the pairs of balls that may collide with each other. Frames are simulated with the
+    //          given engine, where scheduler holds the predicted collisions for the EVENT_DRIVEN and ASYNCHRONOUS engines.
+    //          The SURVEY engine surveys with parallelSurvey on surveyPool in the sub-steps that start with at least
+    //          parallelThreshold active balls, or always on its own thread if surveyPool is null.
+    //          If islandStepping, the SURVEY engine first tries to split each frame's balls into islands that cannot touch
+    //          each other with islands, and steps each one on its own, on surveyPool under the same threshold; hazards[i]
+    //          is true iff gadget i can change the board beyond the ball that hits it. islandFrames is the number of frames
+    //          stepped island by island.
+    //          Balls parked in the ball store, such as those held by an absorber, are neither moved nor tested against
+    //          gadgets, and are only tested against active balls that may touch them and wake them up.
+    //          subSteps is the number of collision-free intervals the board has moved its balls through so far,
+    //          parallelSubSteps the number of them the SURVEY engine surveyed in parallel,
+    //          subStepsSaved the number of collisions the SURVEY engine has processed early in a batch instead of in
+    //          a sub-step of their own, and narrowPhaseTests the number of times the SURVEY engine has computed the time until a ball hits a gadget or
+    //          another ball. metrics describes the frames simulated so far.
 
     // Rep Invariant
     //  N/A
 
     // Rep Exposure argument
-    // All fields private and final
+    // All fields private, and all final apart from engine, surveyPool, parallelThreshold and islandStepping, which the
+    //      client reconfigures through setEngine(), setParallelSurvey() and setIslandStepping(), islandFrames, subSteps,
+    //      parallelSubSteps, subStepsSaved and narrowPhaseTests, which are counters, and listener, which attachListener() replaces.
+    //      None of them is a mutable object that the board owns, so reassigning them exposes nothing
     // boardName, gravity, mu1, mu2 are immutable
     // Gadgets and balls are mutable but are not returned to the client
     // Gadget and balls may contain aliases but we want to update based on changes in these arrays
     // keyMapping is mutable but only copies of it are returned
     // boardJoins and activeBoards are mutable but this is required and is done in a safe manner
     // portalMap is mutable, but a reference to it is never returned
+    // walls is mutable, but is internal to the class and never returned
+    // gadgetGrid, gadgetCandidates, contact, collisions, movingGadgets, ballSweep and scheduler are mutable, but are internal to the class and never returned
+    // gadgetTables is immutable and shared with scheduler and parallelSurvey
+    // parallelSurvey, islands, stepper and hazards are mutable, but are internal to the class and never returned
+    // surveyPool is an alias of the client's pool, which the board only submits tasks to
+    // engine is an immutable value, parallelThreshold, islandStepping, islandFrames, subSteps, parallelSubSteps, subStepsSaved and narrowPhaseTests are primitives
+    // metrics is returned to the client, but it can only be read from outside the package
     
     // Thread Safety Argument
     // Confinement:
-    //  - gadgets, keyMapping, portalMap are confined to a single thread and are safe from race conditions
+    //  - gadgets, keyMapping, portalMap, walls, gadgetGrid, gadgetCandidates, contact, collisions, movingGadgets, ballSweep, scheduler, parallelSurvey, islands, stepper, hazards,
+    //    engine, surveyPool, parallelThreshold, islandStepping, islandFrames, subSteps, parallelSubSteps, subStepsSaved, narrowPhaseTests are confined to a single thread and are safe from race conditions
+    //  - a parallel survey lends balls, gadgets, gadgetGrid and gadgetTables to the threads of surveyPool, which only read them,
+    //    apart from the scratch space of the gadgets that are not compiled, which they lock first; the simulation thread waits
+    //    for them to finish before it touches any of them again
+    //  - stepping islands in parallel also lends them metrics, and lets each thread move only the balls of its own islands,
+    //    locking a gadget or the ball store whenever it uses their shared scratch space, as described in Islands
     //  - no global variables have been used
     // Immutability:
     //  - boardName, gravity, mu1, mu2 are immutable
-    //  - all fields here have immutable references
+    //  - all fields here have immutable references, apart from engine, surveyPool, parallelThreshold, islandStepping
+    //    and the counters, which are only reassigned on the thread that steps the board, or before the board is handed to
+    //    that thread, e.g. by starting the thread or submitting the board to an executor, which makes them visible to it.
+    //    Since they are never changed while timeStep() runs, a frame is always simulated with one configuration throughout
     //  ThreadSafe Data Types:
-    //  - balls is using a thread safe data type
+    //  - incomingBalls is using a thread safe data type, so balls can be passed in from the network thread
+    //  - metrics is a thread safe data type, so it can be read from any thread while the board is running
+    //  - balls is confined to the simulation thread, which moves the incoming balls into it at the start of each time step.
+    //    render(Graphics2D) reads it directly, so it must be called on that thread too; its arrays and the balls' slots
+    //    are written without synchronization, and another thread could see a torn position or a slot past the end of an array
+    //  - renderState() is called on the simulation thread, and the RenderState it returns is immutable, so drawing
+    //    from one on the drawing thread reads neither balls nor the flippers' angles; that is the only way the board is
+    //    drawn from another thread
     //  Other:
     //  - boardJoins and activeBoards may be mutated by different threads. However, all actions are atomic so they dont permit
     //        race conditions. Additionally, none of these mutations threaten the internal rep of these data types.
@@ -86,11 +175,18 @@ public class Board {
     public Board(String boardName, List<Gadget> gadgetList, List<Ball> ballList, double gravity, 
             double mu1, double mu2, Map<String, String> keyMappings, Map<String, Vect> portalMap) {
         this.gadgets = new ArrayList<>(gadgetList);
-        gadgets.add(new Wall("0", 0, 0, 20*Flingball.L, 0)); //North
-        gadgets.add(new Wall("1", 20*Flingball.L, 0, 20*Flingball.L, 20*Flingball.L)); //East
-        gadgets.add(new Wall("2", 0, 20*Flingball.L, 20*Flingball.L, 20*Flingball.L)); //South
-        gadgets.add(new Wall("3", 0, 0, 0, 20*Flingball.L)); // West
-        this.balls = new CopyOnWriteArrayList<>(ballList);
+        this.walls = new Gadget[] {
+            new Wall("0", 0, 0, 20*Flingball.L, 0), //North
+            new Wall("1", 20*Flingball.L, 0, 20*Flingball.L, 20*Flingball.L), //East
+            new Wall("2", 0, 20*Flingball.L, 20*Flingball.L, 20*Flingball.L), //South
+            new Wall("3", 0, 0, 0, 20*Flingball.L) // West
+        };
+        gadgets.addAll(Arrays.asList(walls));
+        this.balls = new BallStore(Math.max(ballList.size(), 1));
+        for (Ball ball : ballList) {
+            balls.add(ball);
+        }
+        this.incomingBalls = new ConcurrentLinkedQueue<>();
         this.gravity = gravity;
         this.mu1 = mu1;
         this.mu2 = mu2;
@@ -99,6 +195,157 @@ public class Board {
         this.activeBoards = new HashSet<String>();
         this.boardName = boardName;
         this.portalMap = portalMap;
+        for (Gadget gadget : gadgets) {
+            if (gadget instanceof Portal && ((Portal) gadget).otherBoard().isEmpty()) {
+                Portal portal = (Portal) gadget;
+                portal.connect(portalMap.get(portal.otherPortal()));
+            }
+        }
+        this.gadgetGrid = new GadgetGrid(gadgets);
+        this.gadgetTables = new GadgetTables(gadgets);
+        this.gadgetCandidates = new int[gadgets.size()];
+        this.contact = new Contact();
+        this.collisions = new CollisionSet();
+        int movingCount = 0;
+        int[] moving = new int[gadgets.size()];
+        for (int i = 0; i < gadgets.size(); i++) {
+            if (gadgets.get(i) instanceof LeftFlipper || gadgets.get(i) instanceof RightFlipper) {
+                moving[movingCount++] = i;
+            }
+        }
+        this.movingGadgets = Arrays.copyOf(moving, movingCount);
+        this.ballSweep = new SweepAndPrune();
+        this.scheduler = new CollisionScheduler(gadgets, gadgetGrid, gadgetTables);
+        this.parallelSurvey = new ParallelSurvey(gadgets, gadgetGrid, gadgetTables);
+        this.engine = Engine.SURVEY;
+        this.surveyPool = null;
+        this.parallelThreshold = Integer.MAX_VALUE;
+        this.subSteps = 0;
+        this.parallelSubSteps = 0;
+        this.subStepsSaved = 0;
+        this.narrowPhaseTests = 0;
+        this.metrics = new FrameMetrics();
+        this.islands = new Islands(gadgets, gadgetGrid, gadgetTables, metrics);
+        this.hazards = new boolean[gadgets.size()];
+        this.islandStepping = false;
+        this.islandFrames = 0;
+        this.stepper = new SurveyStepper();
+    }
+    
+    /**
+     * Selects how the board finds collisions in the following frames
+     * @param engine the collision engine to use
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+    
+    /**
+     * @return the collision engine the board is using
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+    
+    /**
+     * Sets how close in time collisions must be for the SURVEY engine to process them together.
+     * Each sub-step then ends at the earliest collision, and also processes every later collision
+     * within the window that still happens once the collisions before it have been processed, so a
+     * ball sliding along a wall or resting on a gadget no longer needs a sub-step for every tiny bounce.
+     * The balls of a collision processed early are moved on to where they touch before they bounce,
+     * so they end the sub-step up to the window ahead of the others, and later sub-steps take that time
+     * back, so every ball still moves for exactly the frame. The EVENT_DRIVEN engine
+     * processes each collision on its own regardless.
+     *
+     * @param window length of the window in seconds, >= 0; 0, the default, only batches
+     *               collisions that happen at exactly the same time
+     * @throws IllegalArgumentException if window is negative or NaN
+     */
+    public void setBatchWindow(double window) {
+        collisions.setWindow(window);
+    }
+
+    /**
+     * @return how close in time collisions must be for the SURVEY engine to process them together
+     */
+    public double getBatchWindow() {
+        return collisions.window();
+    }
+
+    /**
+     * Lets the SURVEY engine spread the search for the next collision across the threads of a pool, in
+     * every sub-step that starts with at least threshold active balls. Each thread surveys a chunk of the
+     * balls on its own, and the earliest collisions of the chunks are then combined in order, so the board
+     * moves exactly as it would surveying on its own thread. Boards with fewer balls are surveyed on the
+     * board's own thread, where handing the work to other threads would cost more than it saves.
+     *
+     * @param pool the pool to survey on, or null to always survey on the board's own thread, the default
+     * @param threshold the fewest active balls to survey in parallel, >= 1
+     * @throws IllegalArgumentException if threshold < 1
+     */
+    public void setParallelSurvey(ForkJoinPool pool, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold must be >= 1: " + threshold);
+        }
+        this.surveyPool = pool;
+        this.parallelThreshold = threshold;
+    }
+
+    /**
+     * Lets the SURVEY engine split the balls of each frame into islands, groups of balls that cannot touch
+     * each other's group before the frame ends, and step each island through the frame on its own, with its
+     * own sub-steps. A collision then only ends a sub-step for the balls of its own island, and each sub-step
+     * only surveys those balls. The islands are stepped in parallel on the pool given to setParallelSurvey,
+     * under its threshold, and one after the other otherwise. A frame in which a ball could reach a parked ball,
+     * an absorber, a portal, a turning flipper, a wall joined to another board or a gadget that triggers others
+     * is stepped whole, since those can change the board beyond the ball that reaches them. Islands move
+     * their balls in different pieces than stepping the whole board would, which can round differently.
+     *
+     * @param enabled true to split frames into islands where possible, false to always step the whole board, the default
+     */
+    public void setIslandStepping(boolean enabled) {
+        this.islandStepping = enabled;
+    }
+
+    /**
+     * @return the number of frames since the board was created that the SURVEY engine stepped island by island
+     */
+    public long getIslandFrameCount() {
+        return islandFrames;
+    }
+
+    /**
+     * @return the number of sub-steps simulated since the board was created, where a sub-step
+     *         moves the balls up to the next collision or to the end of the frame; a frame stepped
+     *         island by island counts the sub-steps of the island that took the most
+     */
+    public long getSubStepCount() {
+        return subSteps;
+    }
+
+    /**
+     * @return the number of sub-steps since the board was created in which the SURVEY engine
+     *         searched for the next collision across the threads of its pool
+     */
+    public long getParallelSubStepCount() {
+        return parallelSubSteps;
+    }
+
+    /**
+     * @return the number of collisions the SURVEY engine has processed early, together with an earlier
+     *         collision within the batch window, since the board was created, each of which would
+     *         otherwise have needed a sub-step of its own
+     */
+    public long getSubStepsSavedCount() {
+        return subStepsSaved;
+    }
+
+    /**
+     * @return the metrics of the frames simulated since the board was created, which keep
+     *         being updated as the board simulates more frames and can be read from any thread
+     */
+    public FrameMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -111,113 +358,309 @@ public class Board {
      * @param frameTime length of a frame in milliseconds (1/framerate)
      */
     public void timeStep(final double frameTime) {
-        double elapsedTime = 0;
-        double timeDiff = frameTime;
-        while (elapsedTime < frameTime) {
-            Map<Gadget, Ball>  collidingGadgetsBalls = new HashMap<>();
-            Map<Ball, Ball> collidingBallsBalls = new HashMap<>();
-            double minimumCollisionTime = Double.POSITIVE_INFINITY;
-            // Survey ball -> gadget collisions
-            for (Ball ball : balls) {
-                for (Gadget gadget : gadgets) {
-                    double collisionTime = gadget.timeToCollide(ball, timeDiff);
-                    if (collisionTime < minimumCollisionTime) {
-                        minimumCollisionTime = collisionTime;
-                        collidingGadgetsBalls.clear();
-                        collidingGadgetsBalls.put(gadget, ball);
-                    }
-                    if (collisionTime == minimumCollisionTime) {
-                        collidingGadgetsBalls.put(gadget, ball);
-                    }
-                }
+        final long start = System.nanoTime();
+        final long firstSubStep = subSteps;
+        final long firstSaved = subStepsSaved;
+        final long firstTest = narrowPhaseTests + scheduler.narrowPhaseTests();
+        Ball incoming;
+        while ((incoming = incomingBalls.poll()) != null) {
+            balls.add(incoming);
+        }
+        if (engine != Engine.SURVEY) {
+            simulateEvents(frameTime);
+        } else {
+            simulateSurvey(frameTime);
+        }
+        balls.applyMechanics(gravity, mu1, mu2, frameTime);
+        metrics.recordFrame(System.nanoTime() - start, subSteps - firstSubStep, subStepsSaved - firstSaved,
+                narrowPhaseTests + scheduler.narrowPhaseTests() - firstTest);
+        checkRep();
+    }
+    
+    /**
+     * Moves the balls through one frame, searching all balls and gadgets
+     * for the next collision after each one is processed
+     * @param frameTime length of the frame
+     */
+    private void simulateSurvey(final double frameTime) {
+        balls.resetClocks();
+        if (islandStepping && simulateIslands(frameTime)) {
+            return;
+        }
+        stepper.step(balls, frameTime);
+        subSteps += stepper.subSteps();
+        subStepsSaved += stepper.subStepsSaved();
+        narrowPhaseTests += stepper.narrowPhaseTests();
+        if (stepper.capped()) {
+            metrics.recordCappedFrame();
+        }
+    }
+    
+    /**
+     * Moves the balls through one frame island by island, if they can be split into more than one island
+     * @param frameTime length of the frame
+     * @return true iff the balls were split into islands and moved, false if the frame must be stepped whole
+     */
+    private boolean simulateIslands(final double frameTime) {
+        for (int i = 0; i < gadgets.size(); i++) {
+            Gadget gadget = gadgets.get(i);
+            hazards[i] = gadget.triggerCount() > 0 || gadget instanceof Absorber || gadget instanceof Portal
+                    || (gadget instanceof Wall && !boardJoins[wallDirection(gadget)].isEmpty())
+                    || (gadget instanceof LeftFlipper && ((LeftFlipper) gadget).isTurning())
+                    || (gadget instanceof RightFlipper && ((RightFlipper) gadget).isTurning());
+        }
+        if (islands.partition(balls, frameTime, hazards) < 2) {
+            return false;
+        }
+        islands.step(balls.activeCount() >= parallelThreshold ? surveyPool : null, balls, frameTime, collisions.window());
+        // no ball can reach a turning flipper, so it turns through the whole frame at once
+        for (int index : movingGadgets) {
+            gadgets.get(index).advance(frameTime);
+        }
+        subSteps += islands.subSteps();
+        subStepsSaved += islands.subStepsSaved();
+        narrowPhaseTests += islands.narrowPhaseTests();
+        if (islands.capped()) {
+            metrics.recordCappedFrame();
+        }
+        islandFrames++;
+        return true;
+    }
+    
+    /**
+     * Offers every collision between an active ball and a gadget, or between two balls, that happens
+     * within the given time to collisions, searching on the board's own thread
+     * @param horizon time left in the frame
+     * @return the number of collision times computed
+     */
+    private long survey(final double horizon) {
+        long tests = 0;
+        // Survey ball -> gadget collisions, only against gadgets the ball can reach before the frame ends.
+        // Parked balls are skipped, they cannot move into a gadget
+        // Gadgets that do not move are tested against their compiled geometry, the others are asked directly
+        for (int b = 0; b < balls.activeCount(); b++) {
+            Ball ball = balls.view(b);
+            double x = balls.x[b], y = balls.y[b], radius = balls.radius[b];
+            double xVel = balls.xVel[b], yVel = balls.yVel[b];
+            int candidateCount = gadgetGrid.query(ball, horizon, gadgetCandidates);
+            tests += candidateCount;
+            for (int i = 0; i < candidateCount; i++) {
+                int index = gadgetCandidates[i];
+                double collisionTime = gadgetTables.isCompiled(index)
+                        ? gadgetTables.timeToCollide(index, x, y, radius, xVel, yVel, horizon, contact)
+                        : gadgets.get(index).timeToCollide(ball, horizon, contact);
+                collisions.offerGadget(collisionTime, index, b, contact);
             }
-            // Survey ball -> ball collisions
-            for (Ball ball : balls) {
-                for (Ball ball2 : balls) {
-                    double collisionTime = ball2.timeToCollide(ball);
-                    if (collisionTime < minimumCollisionTime) {
-                        minimumCollisionTime = collisionTime;
-                        collidingGadgetsBalls.clear();
-                        collidingBallsBalls.clear();
-                        collidingBallsBalls.put(ball, ball2);
-                    }
-                    if (collisionTime == minimumCollisionTime) {
-                        if (!collidingBallsBalls.containsKey(ball2)) {
-                            collidingBallsBalls.put(ball, ball2);
-                        }
-                    }
-                }
+        }
+        // Survey ball -> ball collisions, only between balls whose paths overlap before the frame ends,
+        // where at least one of them is active
+        int pairCount = ballSweep.findPairs(balls, horizon);
+        tests += pairCount;
+        for (int i = 0; i < pairCount; i++) {
+            Ball ball = ballSweep.first(i);
+            Ball ball2 = ballSweep.second(i);
+            collisions.offerPair(ball2.timeToCollide(ball), ball.slot(), ball2.slot());
+        }
+        return tests;
+    }
+    
+    /**
+     * Steps every ball of the board through a frame for the SURVEY engine, surveying in parallel on
+     * surveyPool in the sub-steps that start with at least parallelThreshold active balls
+     */
+    private class SurveyStepper extends SubStepper {
+
+        SurveyStepper() {
+            super(collisions);
+        }
+
+        @Override long survey(double horizon) {
+            // Boards with enough balls are surveyed in chunks across the threads of the pool,
+            // which finds the same collisions in the same order
+            if (surveyPool != null && balls.activeCount() >= parallelThreshold) {
+                int pairCount = ballSweep.findPairs(balls, horizon);
+                parallelSubSteps++;
+                return parallelSurvey.survey(surveyPool, balls, ballSweep, pairCount, horizon, collisions);
             }
-            // Check if collisions can be processed within this frame
-            double minTime = frameTime - elapsedTime;
-            boolean collision = false;
-            if (minimumCollisionTime < minTime) {
-                minTime = minimumCollisionTime;
-                collision = true;
+            return Board.this.survey(horizon);
+        }
+
+        @Override void move(double from, double time) {
+            balls.updatePositions(from, time);
+            for (int index : movingGadgets) {
+                gadgets.get(index).advance(time);
             }
-            for (Ball ball : balls) {
-                ball.updatePosition(minTime);                
+        }
+
+        @Override boolean isMoving(int gadget) {
+            Gadget moving = gadgets.get(gadget);
+            return (moving instanceof LeftFlipper && ((LeftFlipper) moving).isTurning())
+                    || (moving instanceof RightFlipper && ((RightFlipper) moving).isTurning());
+        }
+
+        @Override double timeToCollide(int gadget, Ball ball, double horizon, Contact ballContact) {
+            return gadgetTables.isCompiled(gadget)
+                    ? gadgetTables.timeToCollide(gadget, ball.getX(), ball.getY(), ball.getRadius(),
+                            ball.getXVelocity(), ball.getYVelocity(), horizon, ballContact)
+                    : gadgets.get(gadget).timeToCollide(ball, horizon, ballContact);
+        }
+
+        @Override void collide(int gadget, Ball ball, Contact ballContact) {
+            resolveGadgetCollision(gadgets.get(gadget), ball, ballContact);
+        }
+
+        @Override void collide(Ball ball, Ball otherBall) {
+            resolveBallCollision(ball, otherBall);
+        }
+    }
+
+    /**
+     * Moves the balls through one frame, processing collisions in the order
+     * the scheduler predicts them, asynchronously for the ASYNCHRONOUS engine
+     * @param frameTime length of the frame
+     */
+    private void simulateEvents(final double frameTime) {
+        scheduler.startFrame(balls, frameTime, engine == Engine.ASYNCHRONOUS);
+        subSteps++;
+        while (scheduler.advance(balls)) {
+            subSteps++;
+            Ball ball = scheduler.ball();
+            Gadget gadget = scheduler.gadget();
+            if (gadget != null) {
+                resolveGadgetCollision(gadget, ball, scheduler.contact());
+            } else {
+                resolveBallCollision(ball, scheduler.otherBall());
             }
-            // Process minimum time collisions and teleport if necessary
-            if (collision) {
-                if (!collidingGadgetsBalls.isEmpty()) {
-                    for (Map.Entry<Gadget, Ball> gb : collidingGadgetsBalls.entrySet()) {
-                        Ball ball = gb.getValue();
-                        Vect priorVelocity = ball.getVelocity();
-                        String teleport = gb.getKey().collide(gb.getValue());
-                        if (!teleport.isEmpty() && !activeBoards.isEmpty()) {
-                            String teleArray[] = teleport.split(" ", 2);
-                            if (teleArray.length == 2 && teleArray[0].isEmpty()) {
-                                ball.setPosition(portalMap.get(teleArray[1]));
-                            } else if (teleArray.length == 2 && activeBoards.contains(teleArray[0])) {
-                                this.broadcastEvent("portalBall" + " " + this.boardName + 
-                                        " " + teleArray[0]  + 
-                                        " " + teleArray[1] + 
-                                        " " + priorVelocity.x() + 
-                                        " " + priorVelocity.y());
-                                balls.remove(ball);
-                            } else if (teleArray.length == 1) {
-                                int dir = Integer.parseInt(teleArray[0]);
-                                if (!boardJoins[dir].isEmpty()) {
-                                    this.broadcastEvent("passBall" + " " + this.boardName + 
-                                            " " + boardJoins[dir]  + 
-                                            " " + ball.getPosition().x() + 
-                                            " " + ball.getPosition().y() + 
-                                            " " + priorVelocity.x() + 
-                                            " " + priorVelocity.y());
-                                    balls.remove(ball);
-                                }
-                            }
-                        }
-                    }
+            scheduler.collided();
+        }
+    }
+    
+    /**
+     * Bounces two balls off each other, waking either of them if it is parked
+     * @param ball a ball
+     * @param otherBall the ball it is touching
+     */
+    private void resolveBallCollision(Ball ball, Ball otherBall) {
+        ball.wake();
+        otherBall.wake();
+        ball.collide(otherBall);
+        metrics.recordBallCollision();
+    }
+
+    /**
+     * Bounces the ball off the gadget, and teleports the ball if the gadget
+     * is a portal or a wall joined to another board
+     * @param gadget the gadget being hit
+     * @param ball the ball hitting it
+     * @param ballContact where the ball hits the gadget
+     */
+    private void resolveGadgetCollision(Gadget gadget, Ball ball, Contact ballContact) {
+        double priorXVel = ball.getXVelocity();
+        double priorYVel = ball.getYVelocity();
+        Gadget.Outcome outcome = gadget.collide(ball, ballContact);
+        metrics.recordCollision(gadget);
+        if (outcome != Gadget.Outcome.STAY && !activeBoards.isEmpty()) {
+            if (outcome == Gadget.Outcome.PORTAL) {
+                Portal portal = (Portal) gadget;
+                if (portal.target() != null) {
+                    ball.setPosition(portal.target());
+                } else if (activeBoards.contains(portal.otherBoard())) {
+                    this.broadcastEvent("portalBall" + " " + this.boardName + 
+                            " " + portal.otherBoard()  + 
+                            " " + portal.otherPortal() + 
+                            " " + priorXVel + 
+                            " " + priorYVel);
+                    balls.remove(ball);
                 }
-                if (!collidingBallsBalls.isEmpty()) {
-                    for (Map.Entry<Ball,Ball> bb : collidingBallsBalls.entrySet()) {
-                        bb.getKey().collide(bb.getValue());                
-                    }
+            } else {
+                int dir = wallDirection(gadget);
+                if (!boardJoins[dir].isEmpty()) {
+                    this.broadcastEvent("passBall" + " " + this.boardName + 
+                            " " + boardJoins[dir]  + 
+                            " " + ball.getX() + 
+                            " " + ball.getY() + 
+                            " " + priorXVel + 
+                            " " + priorYVel);
+                    balls.remove(ball);
                 }
             }
-            elapsedTime += minTime;
-            timeDiff = minTime;
         }
-        for (Ball ball : balls) {           
-            ball.applyMechanics(gravity, mu1, mu2, frameTime);
+    }
+
+    /**
+     * @param wall one of the walls of the board
+     * @return the direction of the side of the board it runs along, as an index into boardJoins
+     */
+    private int wallDirection(Gadget wall) {
+        for (int dir = 0; dir < walls.length; dir++) {
+            if (walls[dir] == wall) {
+                return dir;
+            }
         }
-        checkRep();
+        throw new IllegalArgumentException(wall.name() + " is not a wall of this board");
     }
 
 
     /**
-     * Renders the board for the animator
+     * Renders the board as it is now. Must be called from the thread that simulates the board;
+     * other threads draw it from a RenderState with render(Graphics2D, RenderState, double) instead.
      * @param graphic the drawing buffer to render on
      */
     public void render(Graphics2D graphic) {
-        for (Ball ball: balls) {
-            ball.render(graphic);
+        int ballCount = balls.size();
+        for (int i = 0; i < ballCount; i++) {
+            Ball ball = balls.view(i);
+            if (ball != null) {
+                ball.render(graphic);
+            }
         }
         for (Gadget gadget : gadgets) {
             gadget.render(graphic);
         }
+        renderJoins(graphic);
+    }
+
+    /**
+     * Takes a picture of the balls and flippers at the end of the frame just simulated, to be drawn with
+     * render(Graphics2D, RenderState, double). Must be called from the thread that simulates the board.
+     * @param previous the picture taken at the end of the frame before, or null if there is none
+     * @param frameTime the length of a frame in seconds, > 0
+     * @param time the wall clock time the frame that just ended was due, as returned by System.nanoTime()
+     * @return the picture of the board between the previous frame and the one just simulated
+     */
+    RenderState renderState(RenderState previous, double frameTime, long time) {
+        return new RenderState(previous, balls, gadgets, frameTime, time);
+    }
+
+    /**
+     * Renders the board for the animator as it was at some point between two frames, moving balls and flippers
+     * along a straight line between where they were at the end of each frame
+     * @param graphic the drawing buffer to render on
+     * @param state picture of the balls and flippers of this board between two frames
+     * @param alpha how far from the earlier frame to the later one to draw them, between 0 and 1
+     */
+    void render(Graphics2D graphic, RenderState state, double alpha) {
+        for (int k = 0; k < state.ballCount(); k++) {
+            Ball.render(graphic, state.x(k, alpha), state.y(k, alpha), state.radius(k));
+        }
+        for (int i = 0; i < gadgets.size(); i++) {
+            Gadget gadget = gadgets.get(i);
+            if (gadget instanceof LeftFlipper) {
+                ((LeftFlipper) gadget).render(graphic, state.angle(i, alpha));
+            } else if (gadget instanceof RightFlipper) {
+                ((RightFlipper) gadget).render(graphic, state.angle(i, alpha));
+            } else {
+                gadget.render(graphic);
+            }
+        }
+        renderJoins(graphic);
+    }
+
+    /**
+     * Renders the names of the boards joined to this one along the walls they are joined through
+     * @param graphic the drawing buffer to render on
+     */
+    private void renderJoins(Graphics2D graphic) {
         graphic.setColor(Color.white);
         if (!boardJoins[0].isEmpty()) { //North
             AffineTransform at = AffineTransform.getQuadrantRotateInstance(0);
@@ -242,14 +685,75 @@ public class Board {
     }
 
     /**
-     * Adds a ball to the board, used during wall and portal teleportation 
+     * Adds a ball to the board, used during wall and portal teleportation.
+     * May be called from any thread; the ball joins the simulation at the next time step.
      * @param ball
      */
     public void addBall(Ball ball) {
-        balls.add(ball);
+        incomingBalls.add(ball);
         checkRep();
     }
 
+    /**
+     * Takes in a ball passed through the wall of another board joined to this one, as sent in a passBall message.
+     * The ball enters through the wall this board shares with fromBoard, keeping its position along that wall
+     * and its velocity. Does nothing if fromBoard is not joined to this board.
+     * May be called from any thread; the ball joins the simulation at the next time step.
+     * @param fromBoard name of the board the ball leaves
+     * @param x the x coordinate of the ball's center as it left fromBoard
+     * @param y the y coordinate of the ball's center as it left fromBoard
+     * @param xVel the x velocity of the ball
+     * @param yVel the y velocity of the ball
+     * @return true iff fromBoard is joined to this board, so the ball was added
+     */
+    public boolean receivePassedBall(String fromBoard, double x, double y, double xVel, double yVel) {
+        String[] joinedBoards = getBoardJoins();
+        int passWall = -1; // [N, E, S, W] -> [0, 1, 2, 3]
+        for (int i = 0; i < joinedBoards.length; i++) {
+            if (joinedBoards[i].equals(fromBoard)) {
+                passWall = i;
+            }
+        }
+        if (passWall == 0) { // coming from the north
+            addBall(new Ball("passBall", x, 0, xVel, yVel));
+        } else if (passWall == 1) { // coming from the east
+            addBall(new Ball("passBall", 20*Flingball.L, y, xVel, yVel));
+        } else if (passWall == 2) { // coming from the south
+            addBall(new Ball("passBall", x, 20*Flingball.L, xVel, yVel));
+        } else if (passWall == 3) { // coming from the west
+            addBall(new Ball("passBall", 0, y, xVel, yVel));
+        }
+        return passWall >= 0;
+    }
+
+    /**
+     * Takes in a ball sent through a portal on another board to one of this board's portals, as sent in a
+     * portalBall message. The ball comes out at the center of that portal with its velocity.
+     * Does nothing if this board has no such portal.
+     * May be called from any thread; the ball joins the simulation at the next time step.
+     * @param portalName name of the portal on this board that the ball comes out of
+     * @param xVel the x velocity of the ball
+     * @param yVel the y velocity of the ball
+     * @return true iff this board has a portal named portalName, so the ball was added
+     */
+    public boolean receivePortalBall(String portalName, double xVel, double yVel) {
+        Vect neededLoc = portalMap.get(portalName);
+        if (neededLoc == null) {
+            return false;
+        }
+        addBall(new Ball("portalBall", neededLoc.x(), neededLoc.y(), xVel, yVel));
+        return true;
+    }
+
+    /**
+     * @return the balls on the board, including those waiting to join at the next time step
+     */
+    private List<Ball> ballList() {
+        List<Ball> ballList = balls.toList();
+        ballList.addAll(incomingBalls);
+        return ballList;
+    }
+
     /**
      * Add an active board to our activeBoards list
      * @param bName name of board that has become active
@@ -389,8 +893,8 @@ public class Board {
     private boolean sameValue(Board that) {
         Set<Gadget> thisGadgets = new HashSet<>(gadgets);
         Set<Gadget> thatGadgets = new HashSet<>(that.gadgets);
-        Set<Ball> thisBall = new HashSet<>(balls);
-        Set<Ball> thatBall = new HashSet<>(that.balls);
+        Set<Ball> thisBall = new HashSet<>(ballList());
+        Set<Ball> thatBall = new HashSet<>(that.ballList());
         return thisGadgets.equals(thatGadgets) &&
                 thisBall.equals(thatBall) &&
                 this.mu1 == that.mu1 &&
@@ -402,12 +906,12 @@ public class Board {
      * @return Board [gadgets= gadgets, balls=balls, gravity=gravity, mu1=mu1, mu2=mu2]
      */
     @Override public String toString() {
-        return "Board [gadgets=" + gadgets + ", balls=" + balls + ", gravity=" + gravity + ", mu1=" + mu1 + ", mu2="
+        return "Board [gadgets=" + gadgets + ", balls=" + ballList() + ", gravity=" + gravity + ", mu1=" + mu1 + ", mu2="
                 + mu2 + "]";
     }
 
     @Override public int hashCode() {
-        return (int) (gadgets.hashCode() + balls.hashCode() + gravity + mu1 +mu2);
+        return (int) (gadgets.hashCode() + ballList().hashCode() + gravity + mu1 +mu2);
     }
 
 
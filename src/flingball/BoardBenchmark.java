@@ -0,0 +1,379 @@
+package flingball;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * Measures the throughput and allocation rate of Board.timeStep(1/60) on board files.
+ *
+ * Runs like a JMH benchmark with the GC profiler: every combination of board, extra ball count and
+ * engine runs in forked JVMs, each fork runs warmup iterations and then measured iterations of a fixed
+ * length, and each measured iteration reports frames per second, bytes allocated per frame and the
+ * garbage collections that happened. Extra balls are placed with a fixed seed away from every gadget
+ * and every other ball, so runs on the same machine can be compared against a baseline.
+ * A fork that does not finish in time, e.g. because the board gets stuck, is reported as timed out.
+ */
+public class BoardBenchmark {
+
+    private static final String USAGE = "usage: BoardBenchmark [--balls N,N,...] [--engines SURVEY,EVENT_DRIVEN,ASYNCHRONOUS]"
+            + " [--warmup N] [--iterations N] [--time MS] [--forks N] [--seed N] [--timeout S] [BOARD...]";
+    private static final double FRAME_TIME = 1./60;
+    private static final double BALL_RADIUS = 0.25 * Flingball.L;
+    private static final double MAX_BALL_SPEED = 20 * Flingball.L;
+    private static final int MAX_PLACEMENT_TRIES = 100000;
+    /** frames stepped between checks of the clock */
+    private static final int FRAMES_PER_CHECK = 16;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Immutable measurement of one iteration of a benchmark
+     */
+    static class Iteration {
+        final long frames;
+        final long nanos;
+        final long allocatedBytes;
+        final long gcCount;
+        final long gcMillis;
+
+        Iteration(long frames, long nanos, long allocatedBytes, long gcCount, long gcMillis) {
+            this.frames = frames;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        /** @return frames simulated per second */
+        double framesPerSecond() {
+            return frames / (nanos / 1e9);
+        }
+
+        /** @return bytes allocated per frame, like JMH's gc.alloc.rate.norm */
+        double bytesPerFrame() {
+            return (double) allocatedBytes / frames;
+        }
+
+        /** @return megabytes allocated per second, like JMH's gc.alloc.rate */
+        double megabytesPerSecond() {
+            return allocatedBytes / (nanos / 1e9) / (1024 * 1024);
+        }
+
+        @Override public String toString() {
+            return frames + " " + nanos + " " + allocatedBytes + " " + gcCount + " " + gcMillis;
+        }
+
+        static Iteration parse(String line) {
+            String[] fields = line.trim().split(" ");
+            return new Iteration(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                    Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+        }
+    }
+
+    private BoardBenchmark() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * Makes balls at random positions on a board where they touch no gadget and no other of the new balls,
+     * with random velocities.
+     *
+     * @param board the board the balls will be added to, which is not modified
+     * @param count number of balls to make
+     * @param seed seed for the positions and velocities, so the same seed gives the same balls
+     * @return the new balls
+     * @throws IllegalArgumentException if the board has no room for that many balls
+     */
+    static List<Ball> randomBalls(Board board, int count, long seed) {
+        Random random = new Random(seed);
+        double size = 20 * Flingball.L;
+        List<Gadget> gadgets = board.getGadgets();
+        List<Ball> balls = new ArrayList<>();
+        int tries = 0;
+        while (balls.size() < count) {
+            if (++tries > MAX_PLACEMENT_TRIES) {
+                throw new IllegalArgumentException("no room for " + count + " balls on " + board.getBoardName());
+            }
+            double x = BALL_RADIUS + random.nextDouble() * (size - 2*BALL_RADIUS);
+            double y = BALL_RADIUS + random.nextDouble() * (size - 2*BALL_RADIUS);
+            if (isFree(gadgets, balls, x, y)) {
+                double xVel = (2*random.nextDouble() - 1) * MAX_BALL_SPEED;
+                double yVel = (2*random.nextDouble() - 1) * MAX_BALL_SPEED;
+                balls.add(new Ball("benchmark" + balls.size(), x, y, xVel, yVel));
+            }
+        }
+        return balls;
+    }
+
+    private static boolean isFree(List<Gadget> gadgets, List<Ball> balls, double x, double y) {
+        // keep a ball's width of clearance so the ball does not start out touching anything
+        double clearance = 2*BALL_RADIUS;
+        for (Gadget gadget : gadgets) {
+            if (gadget.bounds().intersects(x - clearance, y - clearance, 2*clearance, 2*clearance)) {
+                return false;
+            }
+        }
+        for (Ball other : balls) {
+            double dx = other.getX() - x;
+            double dy = other.getY() - y;
+            if (dx*dx + dy*dy < 4*clearance*clearance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Steps a board for about the given amount of time and measures how it went
+     *
+     * @param board the board to step
+     * @param nanos wall clock time to step it for
+     * @return the measurement
+     */
+    static Iteration measure(Board board, long nanos) {
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long now = start;
+        long frames = 0;
+        while (now - start < nanos) {
+            for (int i = 0; i < FRAMES_PER_CHECK; i++) {
+                board.timeStep(FRAME_TIME);
+            }
+            frames += FRAMES_PER_CHECK;
+            now = System.nanoTime();
+        }
+        return new Iteration(frames, now - start, THREADS.getCurrentThreadAllocatedBytes() - allocated,
+                gcCount() - gcCount, gcMillis() - gcMillis);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Runs the benchmarks and prints a table of results.
+     *
+     * @param args [--balls N,N,...] [--engines SURVEY,EVENT_DRIVEN,ASYNCHRONOUS] [--warmup N] [--iterations N] [--time MS]
+     *   [--forks N] [--seed N] [--timeout S] [BOARD...]
+     *   where --balls lists the numbers of extra balls to add (default 0,10,100), --engines lists the engines
+     *   to compare (default both), --warmup and --iterations set the number of unmeasured and measured
+     *   iterations per fork (default 5 each), --time sets the length of an iteration (default 1000ms),
+     *   --forks sets the number of JVMs per benchmark (default 1), --seed places the extra balls (default 0),
+     *   --timeout gives up on a fork after that many seconds (default 120), and the boards default to every
+     *   .fb file in boards/
+     * @throws IOException if a board cannot be read
+     * @throws UnableToParseException if a board cannot be parsed
+     * @throws InterruptedException if interrupted while waiting for a fork
+     * @throws IllegalArgumentException if args is ill formed
+     */
+    public static void main(String[] args) throws IOException, UnableToParseException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length > 0 && args[0].equals("--fork")) {
+            runFork(args);
+            return;
+        }
+        List<Integer> ballCounts = Arrays.asList(0, 10, 100);
+        List<Board.Engine> engines = Arrays.asList(Board.Engine.values());
+        int warmup = 5;
+        int iterations = 5;
+        long time = 1000;
+        int forks = 1;
+        long seed = 0;
+        long timeout = 120;
+        List<String> boards = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--balls":
+                ballCounts = new ArrayList<>();
+                for (String count : argument(args, ++i).split(",")) {
+                    ballCounts.add(Integer.parseInt(count));
+                }
+                break;
+            case "--engines":
+                engines = new ArrayList<>();
+                for (String engine : argument(args, ++i).split(",")) {
+                    engines.add(Board.Engine.valueOf(engine));
+                }
+                break;
+            case "--warmup":
+                warmup = Integer.parseInt(argument(args, ++i));
+                break;
+            case "--iterations":
+                iterations = Integer.parseInt(argument(args, ++i));
+                break;
+            case "--time":
+                time = Long.parseLong(argument(args, ++i));
+                break;
+            case "--forks":
+                forks = Integer.parseInt(argument(args, ++i));
+                break;
+            case "--seed":
+                seed = Long.parseLong(argument(args, ++i));
+                break;
+            case "--timeout":
+                timeout = Long.parseLong(argument(args, ++i));
+                break;
+            default:
+                if (args[i].startsWith("--")) {
+                    throw new IllegalArgumentException(USAGE);
+                }
+                boards.add(args[i]);
+            }
+        }
+        if (warmup < 0 || iterations < 1 || time < 1 || forks < 1 || timeout < 1) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        if (boards.isEmpty()) {
+            File[] files = new File("boards").listFiles((dir, name) -> name.endsWith(".fb"));
+            if (files == null) {
+                throw new IllegalArgumentException("no boards/ directory, name the boards to run: " + USAGE);
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                boards.add(file.getPath());
+            }
+        }
+
+        System.out.println(String.format("%-28s %6s %-12s %12s %10s %12s %10s %6s %8s",
+                "Board", "Balls", "Engine", "frames/s", "+- sd", "B/frame", "MB/s", "gc", "gc ms"));
+        for (String board : boards) {
+            for (int balls : ballCounts) {
+                for (Board.Engine engine : engines) {
+                    List<Iteration> results = new ArrayList<>();
+                    String failure = null;
+                    for (int fork = 0; fork < forks && failure == null; fork++) {
+                        failure = fork(board, balls, engine, warmup, iterations, time, seed, timeout, results);
+                    }
+                    System.out.println(format(new File(board).getName(), balls, engine, results, failure));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one fork in a new JVM with the same class path and JVM options as this one
+     * @return null if it succeeded, otherwise why it failed
+     */
+    private static String fork(String board, int balls, Board.Engine engine, int warmup, int iterations, long time,
+            long seed, long timeout, List<Iteration> results) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BoardBenchmark.class.getName());
+        command.addAll(Arrays.asList("--fork", board, Integer.toString(balls), engine.name(),
+                Integer.toString(warmup), Integer.toString(iterations), Long.toString(time), Long.toString(seed)));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> lines = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            try (BufferedReader output = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    synchronized (lines) {
+                        lines.add(line);
+                    }
+                }
+            } catch (IOException e) {
+                // the fork died, which waitFor reports
+            }
+        });
+        reader.start();
+        if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+            reader.join();
+            return "timed out";
+        }
+        reader.join();
+        if (process.exitValue() != 0) {
+            return lines.isEmpty() ? "failed" : "failed: " + lines.get(lines.size() - 1);
+        }
+        for (String line : lines) {
+            if (line.startsWith("iteration ")) {
+                results.add(Iteration.parse(line.substring("iteration ".length())));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs the iterations of one fork, printing each measured one
+     */
+    private static void runFork(String[] args) throws IOException, UnableToParseException {
+        Board board = BoardParser.parse(new File(args[1]));
+        for (Ball ball : randomBalls(board, Integer.parseInt(args[2]), Long.parseLong(args[7]))) {
+            board.addBall(ball);
+        }
+        board.setEngine(Board.Engine.valueOf(args[3]));
+        int warmup = Integer.parseInt(args[4]);
+        int iterations = Integer.parseInt(args[5]);
+        long nanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(args[6]));
+        for (int i = 0; i < warmup; i++) {
+            measure(board, nanos);
+        }
+        for (int i = 0; i < iterations; i++) {
+            System.out.println("iteration " + measure(board, nanos));
+        }
+    }
+
+    private static String format(String board, int balls, Board.Engine engine, List<Iteration> results, String failure) {
+        String prefix = String.format("%-28s %6d %-12s ", board, balls, engine);
+        if (failure != null) {
+            return prefix + failure;
+        }
+        double mean = 0;
+        for (Iteration result : results) {
+            mean += result.framesPerSecond() / results.size();
+        }
+        double variance = 0;
+        for (Iteration result : results) {
+            variance += Math.pow(result.framesPerSecond() - mean, 2) / Math.max(1, results.size() - 1);
+        }
+        long frames = 0, nanos = 0, allocated = 0, gcCount = 0, gcMillis = 0;
+        for (Iteration result : results) {
+            frames += result.frames;
+            nanos += result.nanos;
+            allocated += result.allocatedBytes;
+            gcCount += result.gcCount;
+            gcMillis += result.gcMillis;
+        }
+        Iteration total = new Iteration(frames, nanos, allocated, gcCount, gcMillis);
+        return prefix + String.format("%12.1f %10.1f %12.1f %10.2f %6d %8d", mean, Math.sqrt(variance),
+                total.bytesPerFrame(), total.megabytesPerSecond(), gcCount, gcMillis);
+    }
+
+    private static String argument(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        return args[i];
+    }
+}
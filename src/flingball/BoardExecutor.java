@@ -0,0 +1,401 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many boards in one process and steps them all at a shared tick rate on a fixed-size
+ * work-stealing pool.
+ *
+ * Every hosted board knows the others as active boards, so balls pass between joined boards and
+ * through portals to each other as they would between clients of a FlingballServer. Those passBall
+ * and portalBall messages never leave the process when their destination is hosted here: each board's
+ * messages are held until every board has finished the tick, then handed to the destination board,
+ * in the order the boards were hosted, so the boards end each tick the same way whatever the number
+ * of threads. Messages for any other board, which must be remote, go to a listener, e.g. a connection
+ * to a FlingballServer.
+ */
+public class BoardExecutor {
+
+    private final ForkJoinPool pool;
+    private final double tickRate;
+    private final StateChangeListener remote;
+    private final Map<String, Host> hosts;
+    private final List<Host> running;
+    private final RecursiveAction root;
+    private final Histogram tickNanos;
+    private final AtomicLong ticks;
+    private final AtomicLong localMessages;
+    private final AtomicLong remoteMessages;
+    private ScheduledExecutorService clock;
+
+    // Abstraction Function
+    // AF(pool, tickRate, remote, hosts, running, root, tickNanos, ticks, localMessages, remoteMessages, clock) =
+    //      the boards of hosts, keyed by name in the order they were hosted, stepped together by 1/tickRate seconds
+    //      in each tick, each by a task of running on pool, which root runs together. ticks ticks have run so far,
+    //      taking the times in tickNanos from start to finish. localMessages passBall and portalBall messages
+    //      have gone from one hosted board to another, and remoteMessages messages have gone to remote instead.
+    //      clock runs ticks tickRate times per second, or is null if no one has started it
+
+    // Rep Invariant
+    // tickRate > 0
+    // running holds the values of hosts, in the same order
+    // each host is keyed by the name of its board
+
+    // Rep Exposure Argument
+    // pool is created here and never returned
+    // remote is an alias of the client's listener, which is required to send it messages
+    // hosts, running, root and clock are never returned, nor are the hosts in them
+    // each board is an alias of the client's board, which is required to step it
+    // tickNanos and each host's tickNanos are returned, but they can only be read from outside the package
+
+    // Thread Safety Argument
+    // host(), join*(), deliver(), tick() and start() are synchronized on this executor, so a tick
+    //      never overlaps a change to the boards it is stepping. ForkJoinPool.invoke() makes what tick() wrote
+    //      visible to the tasks, and what the tasks wrote visible to tick() once it returns
+    // while a tick runs, each task only steps its own board, and a board's listener only appends to that
+    //      board's outbox, which tick() only reads once every task has finished
+    // remote is only called from tick(), so from one thread at a time
+    // keyEvents of each host is a threadsafe queue, so key events can be queued from any thread
+    // tickNanos, each host's tickNanos and the counters are threadsafe, so they can be read from any thread
+
+    private void checkRep() {
+        assert tickRate > 0;
+        assert running.size() == hosts.size();
+        int k = 0;
+        for (Map.Entry<String, Host> entry : hosts.entrySet()) {
+            assert running.get(k++) == entry.getValue();
+            assert entry.getKey().equals(entry.getValue().board.getBoardName());
+        }
+    }
+
+    /**
+     * Creates an executor that hosts no boards yet
+     * @param threads the number of threads to step the boards on, > 0
+     * @param ticksPerSecond the number of ticks per second, both of simulated time and of wall clock time
+     *                       once started, > 0
+     * @param remote the listener that receives the messages of the hosted boards whose destination is not hosted here,
+     *               called from one thread at a time
+     * @throws IllegalArgumentException if threads or ticksPerSecond is not positive
+     */
+    public BoardExecutor(int threads, double ticksPerSecond, StateChangeListener remote) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        if (!(ticksPerSecond > 0)) {
+            throw new IllegalArgumentException("ticksPerSecond must be positive: " + ticksPerSecond);
+        }
+        this.pool = new ForkJoinPool(threads);
+        this.tickRate = ticksPerSecond;
+        this.remote = remote;
+        this.hosts = new LinkedHashMap<>();
+        this.running = new ArrayList<>();
+        this.root = new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override protected void compute() {
+                ForkJoinTask.invokeAll(running);
+            }
+        };
+        this.tickNanos = new Histogram();
+        this.ticks = new AtomicLong();
+        this.localMessages = new AtomicLong();
+        this.remoteMessages = new AtomicLong();
+        this.clock = null;
+        checkRep();
+    }
+
+    /**
+     * Adds a board to the boards stepped by this executor. The board and every board already hosted
+     * become active boards of each other, and the board's events are sent through this executor
+     * from now on, replacing any listener attached to it.
+     * @param board the board to host, whose name no hosted board has
+     * @throws IllegalArgumentException if a board with the same name is already hosted
+     */
+    public synchronized void host(Board board) {
+        String name = board.getBoardName();
+        if (hosts.containsKey(name)) {
+            throw new IllegalArgumentException("a board named " + name + " is already hosted");
+        }
+        Host host = new Host(board);
+        for (Host other : running) {
+            other.board.addActiveBoard(name);
+            board.addActiveBoard(other.board.getBoardName());
+        }
+        board.attachListener(host.outbox::add);
+        hosts.put(name, host);
+        running.add(host);
+        checkRep();
+    }
+
+    /**
+     * Joins two hosted boards side by side, so that balls pass through the east wall of left
+     * into right through its west wall, and back
+     * @param left name of the hosted board on the left
+     * @param right name of the hosted board on the right
+     * @throws IllegalArgumentException if either board is not hosted
+     */
+    public synchronized void joinHorizontally(String left, String right) {
+        Board leftBoard = hosted(left);
+        Board rightBoard = hosted(right);
+        leftBoard.concatBoard(right, "E");
+        rightBoard.concatBoard(left, "W");
+    }
+
+    /**
+     * Joins two hosted boards one above the other, so that balls pass through the south wall of top
+     * into bottom through its north wall, and back
+     * @param top name of the hosted board on top
+     * @param bottom name of the hosted board below it
+     * @throws IllegalArgumentException if either board is not hosted
+     */
+    public synchronized void joinVertically(String top, String bottom) {
+        Board topBoard = hosted(top);
+        Board bottomBoard = hosted(bottom);
+        topBoard.concatBoard(bottom, "S");
+        bottomBoard.concatBoard(top, "N");
+    }
+
+    /**
+     * @param name name of a board
+     * @return the hosted board with that name
+     * @throws IllegalArgumentException if no hosted board has that name
+     */
+    private Board hosted(String name) {
+        Host host = hosts.get(name);
+        if (host == null) {
+            throw new IllegalArgumentException("no board named " + name + " is hosted");
+        }
+        return host.board;
+    }
+
+    /**
+     * Queues a key press or release for a hosted board, which acts on it right before its next time step.
+     * May be called from any thread.
+     * @param boardName name of the hosted board
+     * @param keyEvent the key event, in the board file's "Press"/"Release" + key format
+     * @throws IllegalArgumentException if no hosted board has that name
+     */
+    public void keyEvent(String boardName, String keyEvent) {
+        Host host;
+        synchronized (this) {
+            host = hosts.get(boardName);
+        }
+        if (host == null) {
+            throw new IllegalArgumentException("no board named " + boardName + " is hosted");
+        }
+        host.keyEvents.add(keyEvent);
+    }
+
+    /**
+     * Hands a passBall or portalBall message, e.g. one received from a FlingballServer, to the hosted board it is for
+     * @param message a message in the wire format of Flingball
+     * @return true iff the message is a passBall or portalBall message for a hosted board
+     */
+    public synchronized boolean deliver(String message) {
+        String[] args = message.split("\\s+");
+        return isHandoff(args) && hosts.containsKey(args[2]) && handOff(hosts.get(args[2]).board, args);
+    }
+
+    /**
+     * @param args the words of a message
+     * @return true iff they make up a passBall or portalBall message
+     */
+    private static boolean isHandoff(String[] args) {
+        return (args[0].equals("passBall") && args.length == 7) || (args[0].equals("portalBall") && args.length == 6);
+    }
+
+    /**
+     * @param to the board a passBall or portalBall message is for
+     * @param args the words of the message
+     * @return true iff the board took in the ball
+     */
+    private static boolean handOff(Board to, String[] args) {
+        if (args[0].equals("passBall")) {
+            return to.receivePassedBall(args[1], Double.parseDouble(args[3]), Double.parseDouble(args[4]),
+                    Double.parseDouble(args[5]), Double.parseDouble(args[6]));
+        } else {
+            return to.receivePortalBall(args[3], Double.parseDouble(args[4]), Double.parseDouble(args[5]));
+        }
+    }
+
+    /**
+     * Steps every hosted board by 1/ticksPerSecond seconds, on the threads of this executor,
+     * then passes the balls that left a hosted board for another one to it, and sends every other
+     * message of the boards to the remote listener. Returns once all of that is done.
+     */
+    public synchronized void tick() {
+        long start = System.nanoTime();
+        if (!running.isEmpty()) {
+            root.reinitialize();
+            for (Host host : running) {
+                host.reinitialize();
+            }
+            pool.invoke(root);
+        }
+        for (Host host : running) {
+            for (String message : host.outbox) {
+                String[] args = message.split("\\s+");
+                if (isHandoff(args) && hosts.containsKey(args[2])) {
+                    handOff(hosts.get(args[2]).board, args);
+                    localMessages.incrementAndGet();
+                } else {
+                    remote.notifyStateChange(message);
+                    remoteMessages.incrementAndGet();
+                }
+            }
+            host.outbox.clear();
+        }
+        ticks.incrementAndGet();
+        tickNanos.record(System.nanoTime() - start);
+        checkRep();
+    }
+
+    /**
+     * Starts ticking ticksPerSecond times per second of wall clock time, on a thread of its own.
+     * A tick that runs late delays the ones after it rather than being skipped.
+     * @throws IllegalStateException if this executor has already been started
+     */
+    public synchronized void start() {
+        if (clock != null) {
+            throw new IllegalStateException("already started");
+        }
+        clock = Executors.newSingleThreadScheduledExecutor();
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / tickRate);
+        clock.scheduleAtFixedRate(this::tick, 0, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops ticking and releases the threads of this executor, after any tick in progress has finished.
+     * The executor cannot tick again afterwards.
+     */
+    public void shutdown() {
+        ScheduledExecutorService stopping;
+        synchronized (this) {
+            stopping = clock;
+        }
+        if (stopping != null) {
+            stopping.shutdown();
+            try {
+                stopping.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * @return the number of ticks run so far
+     */
+    public long ticks() {
+        return ticks.get();
+    }
+
+    /**
+     * @return the wall clock time, in nanoseconds, that each tick took to step every board and deliver their messages
+     */
+    public Histogram tickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * @param boardName name of a hosted board
+     * @return the wall clock time, in nanoseconds, that each tick took to step that board
+     * @throws IllegalArgumentException if no hosted board has that name
+     */
+    public synchronized Histogram tickNanos(String boardName) {
+        Host host = hosts.get(boardName);
+        if (host == null) {
+            throw new IllegalArgumentException("no board named " + boardName + " is hosted");
+        }
+        return host.tickNanos;
+    }
+
+    /**
+     * @return the number of passBall and portalBall messages passed from one hosted board to another
+     */
+    public long localMessages() {
+        return localMessages.get();
+    }
+
+    /**
+     * @return the number of messages sent to the remote listener
+     */
+    public long remoteMessages() {
+        return remoteMessages.get();
+    }
+
+    /**
+     * @return a multi-line report of the tick times of the executor and of each hosted board
+     */
+    public synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("ticks: ").append(ticks()).append('\n');
+        report.append("tick ms: ").append(tickNanos.summary(1e6)).append('\n');
+        for (Host host : running) {
+            report.append(host.board.getBoardName()).append(" ms: ").append(host.tickNanos.summary(1e6)).append('\n');
+        }
+        report.append("messages: local=").append(localMessages()).append(" remote=").append(remoteMessages()).append('\n');
+        return report.toString();
+    }
+
+    /**
+     * The task that steps one hosted board in each tick, with the board's queued key events and the messages
+     * it sent during the tick
+     */
+    private class Host extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final Queue<String> keyEvents = new ConcurrentLinkedQueue<>();
+        private final List<String> keyPresses = new ArrayList<>();
+        private final List<String> outbox = new ArrayList<>();
+        private final Histogram tickNanos = new Histogram();
+
+        // Abstraction Function
+        // AF(board, keyEvents, keyPresses, outbox, tickNanos) = the task that steps board, after acting on the key
+        //      events in keyEvents, and collects the messages board sends into outbox. Stepping board has taken
+        //      the times in tickNanos. keyPresses is scratch space for handing the key events to the board
+
+        // Rep Invariant
+        // keyPresses is empty between ticks
+
+        /**
+         * @param board the board to step
+         */
+        private Host(Board board) {
+            this.board = board;
+        }
+
+        @Override protected void compute() {
+            long start = System.nanoTime();
+            String keyEvent;
+            while ((keyEvent = keyEvents.poll()) != null) {
+                keyPresses.add(keyEvent);
+            }
+            if (!keyPresses.isEmpty()) {
+                board.callActionOnGadgets(keyPresses);
+                keyPresses.clear();
+            }
+            board.timeStep(1. / tickRate);
+            tickNanos.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override public synchronized String toString() {
+        return "BoardExecutor[boards=" + running.size() + ", threads=" + pool.getParallelism() + "]";
+    }
+}
@@ -0,0 +1,315 @@
+package flingball;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates random Flingball board files for scaling benchmarks.
+ *
+ * The output follows BoardGrammar.g, so it can be read by BoardParser, given to BoardBenchmark
+ * or HeadlessSimulator, or saved as a .fb file. Gadgets never overlap each other, and balls start
+ * in the middle of empty cells. The same arguments always give the same board.
+ */
+public class BoardGenerator {
+
+    private static final String USAGE =
+            "usage: BoardGenerator [--name NAME] [--seed N] [--squares N] [--circles N] [--triangles N]"
+            + " [--left-flippers N] [--right-flippers N] [--absorbers N] [--portals N] [--fires N] [--balls N]"
+            + " [--out FILE]\n  where N is a count, or a percentage such as 25% of the board's cells"
+            + " (of the gadgets for --fires)";
+
+    /** the board is SIZE x SIZE cells of L x L */
+    static final int SIZE = 20;
+
+    /** balls are given velocities in each direction between -MAX_BALL_SPEED and MAX_BALL_SPEED, in L per second */
+    static final double MAX_BALL_SPEED = 20;
+
+    /** the widest and tallest absorbers generated, in L */
+    private static final int MAX_ABSORBER_WIDTH = 6;
+    private static final int MAX_ABSORBER_HEIGHT = 2;
+
+    /** random positions tried for a gadget before searching the whole board for a free one */
+    private static final int ATTEMPTS = 64;
+
+    /**
+     * The kinds of gadget the generator can place, in the order they are placed.
+     */
+    public enum Kind {
+        SQUARE_BUMPER("squareBumper", "Square"),
+        CIRCLE_BUMPER("circleBumper", "Circle"),
+        TRIANGLE_BUMPER("triangleBumper", "Triangle"),
+        LEFT_FLIPPER("leftFlipper", "LeftFlipper"),
+        RIGHT_FLIPPER("rightFlipper", "RightFlipper"),
+        ABSORBER("absorber", "Absorber"),
+        PORTAL("portal", "Portal");
+
+        private final String keyword;
+        private final String prefix;
+
+        private Kind(String keyword, String prefix) {
+            this.keyword = keyword;
+            this.prefix = prefix;
+        }
+
+        /**
+         * @return the keyword that starts this kind's lines in a board file
+         */
+        public String keyword() {
+            return keyword;
+        }
+    }
+
+    private BoardGenerator() {
+        // not meant to be instantiated
+    }
+
+    /**
+     * Generates the text of a random board.
+     *
+     * Every gadget of a kind K is named with K's prefix and its index, e.g. Square0, and every ball
+     * Ball0, Ball1, and so on. Triangles and flippers get random orientations, absorbers random
+     * sizes up to 6L x 2L, and each portal leads to the next one on the same board, the last back
+     * to the first. Each fire link has a random gadget as its trigger, and a random flipper or
+     * absorber as its action, or any gadget if there are none.
+     *
+     * @param boardName name of the board, must match NAME in BoardGrammar.g
+     * @param gadgetCounts number of gadgets of each kind, each >= 0; missing kinds get none
+     * @param fireLinks number of fire links, >= 0, and 0 if there are no gadgets
+     * @param ballCount number of balls, >= 0
+     * @param seed seed for the random positions, orientations, sizes, links and velocities
+     * @return the board in the board file format
+     * @throws IllegalArgumentException if the gadgets, then the balls, do not fit on the board,
+     *                                  or a count is negative
+     */
+    public static String generate(String boardName, Map<Kind, Integer> gadgetCounts, int fireLinks, int ballCount,
+            long seed) {
+        Random random = new Random(seed);
+        boolean[][] occupied = new boolean[SIZE][SIZE];
+        StringBuilder text = new StringBuilder();
+        List<String> gadgets = new ArrayList<>();
+        List<String> actions = new ArrayList<>();
+        text.append("board name=").append(boardName).append('\n');
+
+        for (Kind kind : Kind.values()) {
+            int count = gadgetCounts.getOrDefault(kind, 0);
+            if (count < 0) {
+                throw new IllegalArgumentException("negative number of " + kind.keyword + "s");
+            }
+            for (int i = 0; i < count; i++) {
+                String name = kind.prefix + i;
+                int width = 1;
+                int height = 1;
+                if (kind == Kind.LEFT_FLIPPER || kind == Kind.RIGHT_FLIPPER) {
+                    width = 2;
+                    height = 2;
+                } else if (kind == Kind.ABSORBER) {
+                    width = 1 + random.nextInt(MAX_ABSORBER_WIDTH);
+                    height = 1 + random.nextInt(MAX_ABSORBER_HEIGHT);
+                }
+                int cell = place(occupied, width, height, random);
+                if (cell < 0) {
+                    throw new IllegalArgumentException("no room on the board for " + name);
+                }
+                text.append(kind.keyword).append(" name=").append(name)
+                    .append(" x=").append(cell % SIZE).append(" y=").append(cell / SIZE);
+                switch (kind) {
+                case TRIANGLE_BUMPER:
+                case LEFT_FLIPPER:
+                case RIGHT_FLIPPER:
+                    text.append(" orientation=").append(90 * random.nextInt(4));
+                    break;
+                case ABSORBER:
+                    text.append(" width=").append(width).append(" height=").append(height);
+                    break;
+                case PORTAL:
+                    text.append(" otherPortal=").append(kind.prefix).append((i + 1) % count);
+                    break;
+                default:
+                    break;
+                }
+                text.append('\n');
+                gadgets.add(name);
+                if (kind == Kind.LEFT_FLIPPER || kind == Kind.RIGHT_FLIPPER || kind == Kind.ABSORBER) {
+                    actions.add(name);
+                }
+            }
+        }
+
+        if (fireLinks < 0 || (fireLinks > 0 && gadgets.isEmpty())) {
+            throw new IllegalArgumentException("cannot make " + fireLinks + " fire links between "
+                    + gadgets.size() + " gadgets");
+        }
+        if (actions.isEmpty()) {
+            actions = gadgets;
+        }
+        for (int i = 0; i < fireLinks; i++) {
+            text.append("fire trigger=").append(gadgets.get(random.nextInt(gadgets.size())))
+                .append(" action=").append(actions.get(random.nextInt(actions.size()))).append('\n');
+        }
+
+        // balls go in the middle of distinct empty cells, chosen by a partial shuffle
+        List<Integer> free = new ArrayList<>();
+        for (int cell = 0; cell < SIZE*SIZE; cell++) {
+            if (!occupied[cell / SIZE][cell % SIZE]) {
+                free.add(cell);
+            }
+        }
+        if (ballCount < 0 || ballCount > free.size()) {
+            throw new IllegalArgumentException("no room on the board for " + ballCount + " balls");
+        }
+        for (int i = 0; i < ballCount; i++) {
+            Collections.swap(free, i, i + random.nextInt(free.size() - i));
+            int cell = free.get(i);
+            text.append(String.format(Locale.ROOT, "ball name=Ball%d x=%.1f y=%.1f xVelocity=%.3f yVelocity=%.3f\n",
+                    i, cell % SIZE + 0.5, cell / SIZE + 0.5,
+                    (2*random.nextDouble() - 1) * MAX_BALL_SPEED, (2*random.nextDouble() - 1) * MAX_BALL_SPEED));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Finds a free width x height area of the board, trying random positions first and then
+     * every position in order from a random one, and marks it occupied.
+     *
+     * @return the index y*SIZE + x of the area's top-left cell, or -1 if there is no free area
+     */
+    private static int place(boolean[][] occupied, int width, int height, Random random) {
+        int columns = SIZE - width + 1;
+        int positions = columns * (SIZE - height + 1);
+        int start = random.nextInt(positions);
+        for (int i = 0; i < ATTEMPTS + positions; i++) {
+            int position = i < ATTEMPTS ? random.nextInt(positions) : (start + i) % positions;
+            int x = position % columns;
+            int y = position / columns;
+            if (isFree(occupied, x, y, width, height)) {
+                for (int row = y; row < y + height; row++) {
+                    for (int column = x; column < x + width; column++) {
+                        occupied[row][column] = true;
+                    }
+                }
+                return y * SIZE + x;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isFree(boolean[][] occupied, int x, int y, int width, int height) {
+        for (int row = y; row < y + height; row++) {
+            for (int column = x; column < x + width; column++) {
+                if (occupied[row][column]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prints a random board, or writes it to a file.
+     *
+     * @param args [--name NAME] [--seed N] [--squares N] [--circles N] [--triangles N] [--left-flippers N]
+     *   [--right-flippers N] [--absorbers N] [--portals N] [--fires N] [--balls N] [--out FILE]
+     *   where each N other than the seed is a count, or a percentage such as 25% of the board's 400 cells
+     *   (of the gadgets for --fires). The name defaults to Generated and the seed and all counts to 0.
+     * @throws IOException if the output file cannot be written
+     * @throws IllegalArgumentException if args is ill formed or the board cannot be generated
+     */
+    public static void main(String[] args) throws IOException {
+        String boardName = "Generated";
+        long seed = 0;
+        Map<Kind, String> gadgetArgs = new EnumMap<>(Kind.class);
+        String fireArg = "0";
+        String ballArg = "0";
+        String out = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--name":
+                boardName = argument(args, ++i);
+                break;
+            case "--seed":
+                seed = Long.parseLong(argument(args, ++i));
+                break;
+            case "--squares":
+                gadgetArgs.put(Kind.SQUARE_BUMPER, argument(args, ++i));
+                break;
+            case "--circles":
+                gadgetArgs.put(Kind.CIRCLE_BUMPER, argument(args, ++i));
+                break;
+            case "--triangles":
+                gadgetArgs.put(Kind.TRIANGLE_BUMPER, argument(args, ++i));
+                break;
+            case "--left-flippers":
+                gadgetArgs.put(Kind.LEFT_FLIPPER, argument(args, ++i));
+                break;
+            case "--right-flippers":
+                gadgetArgs.put(Kind.RIGHT_FLIPPER, argument(args, ++i));
+                break;
+            case "--absorbers":
+                gadgetArgs.put(Kind.ABSORBER, argument(args, ++i));
+                break;
+            case "--portals":
+                gadgetArgs.put(Kind.PORTAL, argument(args, ++i));
+                break;
+            case "--fires":
+                fireArg = argument(args, ++i);
+                break;
+            case "--balls":
+                ballArg = argument(args, ++i);
+                break;
+            case "--out":
+                out = argument(args, ++i);
+                break;
+            default:
+                throw new IllegalArgumentException(USAGE);
+            }
+        }
+        if (!boardName.matches("[A-Za-z_][A-Za-z_0-9]*")) {
+            throw new IllegalArgumentException(USAGE);
+        }
+
+        Map<Kind, Integer> gadgetCounts = new EnumMap<>(Kind.class);
+        int gadgetTotal = 0;
+        for (Map.Entry<Kind, String> entry : gadgetArgs.entrySet()) {
+            int count = count(entry.getValue(), SIZE*SIZE);
+            gadgetCounts.put(entry.getKey(), count);
+            gadgetTotal += count;
+        }
+        String board = generate(boardName, gadgetCounts, count(fireArg, gadgetTotal), count(ballArg, SIZE*SIZE), seed);
+        if (out == null) {
+            System.out.print(board);
+        } else {
+            Files.write(new File(out).toPath(), board.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * @param value a count, or a percentage of whole ending in %
+     * @param whole the number a percentage is taken of
+     * @return the count, rounded to the nearest integer if a percentage
+     * @throws IllegalArgumentException if value is neither
+     */
+    static int count(String value, int whole) {
+        if (value.matches("[0-9]+")) {
+            return Integer.parseInt(value);
+        } else if (value.matches("[0-9]+(\\.[0-9]*)?%")) {
+            return (int) Math.round(Double.parseDouble(value.substring(0, value.length() - 1)) * whole / 100);
+        }
+        throw new IllegalArgumentException(USAGE);
+    }
+
+    private static String argument(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        return args[i];
+    }
+}
@@ -2,8 +2,10 @@ package flingball;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.geom.Ellipse2D;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import physics.*;
@@ -20,11 +22,13 @@ public class CircleBumper implements Gadget{
     private final Vect position;
     
     private final List<Gadget> triggers;
+    private final PhysicsKernel.Vector reflected = new PhysicsKernel.Vector();
     
     //Abstraction Function
     // AF(bumper, center, name, position, triggers) = a circle bumper centered at center with name name and activating gadgets in triggers when triggered.
     //      The ball appears at position position when this bumper is triggered
     //      In the simulation this bumper appears as the circle bumper
+    //      reflected is scratch space that collide() computes the bounced velocity in
     
     //Rep Invariant
     // center >=0
@@ -55,19 +59,42 @@ public class CircleBumper implements Gadget{
     }
 
     @Override
-    public double timeToCollide(Ball ball, Double elapsedTime) {
-        return Physics.timeUntilCircleCollision(bumper, ball.getCircle(), ball.getVelocity());        
+    public double timeToCollide(Ball ball, double elapsedTime, Contact contact) {
+        if (PhysicsKernel.outOfReach(center.x(), center.y(), bumper.getRadius(), ball.getX(), ball.getY(),
+                ball.getRadius(), ball.getXVelocity(), ball.getYVelocity(), elapsedTime)) {
+            contact.clear();
+            return Double.POSITIVE_INFINITY;
+        }
+        // the circle is the only feature
+        double time = PhysicsKernel.timeUntilCircleCollision(bumper, ball.getX(), ball.getY(), ball.getRadius(), 
+                ball.getXVelocity(), ball.getYVelocity());
+        contact.set(time, 0);
+        return time;
     }
       
+    /**
+     * @return the circles of the bumper, numbered as its features in a Contact after its segments
+     */
+    List<Circle> circles() {
+        return Collections.singletonList(bumper);
+    }
+    
+    @Override
+    public void advance(double time) {
+        // does not move
+    }
+    
     @Override
-    public String collide(Ball ball) {
+    public Outcome collide(Ball ball, Contact contact) {
         //reflect ball
-        ball.setVelocity(Physics.reflectCircle(this.center, ball.getCircle().getCenter(), ball.getVelocity())); 
+        PhysicsKernel.reflectCircle(center.x(), center.y(), ball.getX(), ball.getY(), 
+                ball.getXVelocity(), ball.getYVelocity(), reflected);
+        ball.setVelocity(reflected.x, reflected.y);
         //activate triggers
         for (Gadget trigger: triggers) {
             trigger.action();
         }
-        return "";
+        return Outcome.STAY;
     }
     
     @Override
@@ -89,12 +116,22 @@ public class CircleBumper implements Gadget{
         return position;
     }
     
+    @Override
+    public Rectangle2D bounds() {
+        return new Rectangle2D.Double(position.x(), position.y(), Flingball.L, Flingball.L);
+    }
+    
     @Override
     public void link(Gadget activator) {
         checkRep();
         triggers.add(activator);               
     }
     
+    @Override
+    public int triggerCount() {
+        return triggers.size();
+    }
+    
     @Override
     public void action() {
         //by the spec, nothing happens
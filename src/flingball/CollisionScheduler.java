@@ -0,0 +1,599 @@
+package flingball;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A mutable event queue of predicted collisions for the event-driven engine of a board.
+ *
+ * Instead of searching every pair for the next collision after each one is processed,
+ * the scheduler predicts each ball's upcoming collisions once and keeps them in a min-heap.
+ * Every ball carries a version number that is bumped whenever its motion changes, and each
+ * event remembers the versions it was predicted with, so events that no longer hold are
+ * discarded lazily when they reach the top of the heap. After a collision only the balls
+ * whose motion changed are predicted again.
+ *
+ * Flippers change shape as time passes, so their collisions cannot be predicted ahead of
+ * time. They are surveyed against every ball at each step instead, and are moved forward
+ * with Gadget.advance() exactly once per step, along with the balls.
+ *
+ * Parked balls are never predicted on their own. Only their collisions with active balls,
+ * which wake them up, are predicted.
+ *
+ * In asynchronous mode each ball keeps its own clock in the ball store, and a collision only
+ * moves the balls that take part in it, straight to the time it happens, instead of moving every
+ * ball on the board. The other balls' predictions still hold, since they are in absolute frame time,
+ * and a ball behind the others is extrapolated to the present when a prediction needs it. The balls
+ * are only brought to the same time at the end of the frame, when balls are added, removed, parked or
+ * woken, and, one by one, when a ball may be near a flipper.
+ */
+class CollisionScheduler {
+
+    /**
+     * A mutable min-heap of predicted collisions of a ball with a gadget or with another ball, ordered by time.
+     * The collisions are kept in parallel arrays that are reused from frame to frame, so that adding one does
+     * not allocate once the arrays have grown to fit the board. Collisions at the same time come out in the
+     * same order as they would from a PriorityQueue.
+     */
+    static class EventQueue {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private int size;
+        private double[] times;
+        private int[] balls;
+        private int[] ballVersions;
+        private int[] gadgets;
+        private int[] features;
+        private int[] others;
+        private int[] otherVersions;
+
+        // Abstraction Function
+        // AF(size, times, balls, ballVersions, gadgets, features, others, otherVersions) = the collisions k for 0 <= k < size,
+        //      in which ball balls[k], at version ballVersions[k], hits feature features[k] of gadget gadgets[k], or
+        //      ball others[k], at version otherVersions[k], at times[k]. The last entry of each array is scratch space
+        //      for the collision being moved through the heap
+
+        // Rep Invariant
+        // all the arrays have the same length, > size
+        // times[(k-1)/2] <= times[k] for 0 < k < size
+
+        // Rep Exposure Argument
+        // all fields are private, and the arrays are never returned
+
+        // Thread Safety Argument
+        // Not threadsafe, confined to the scheduler that owns it
+
+        EventQueue() {
+            this.size = 0;
+            this.times = new double[INITIAL_CAPACITY + 1];
+            this.balls = new int[INITIAL_CAPACITY + 1];
+            this.ballVersions = new int[INITIAL_CAPACITY + 1];
+            this.gadgets = new int[INITIAL_CAPACITY + 1];
+            this.features = new int[INITIAL_CAPACITY + 1];
+            this.others = new int[INITIAL_CAPACITY + 1];
+            this.otherVersions = new int[INITIAL_CAPACITY + 1];
+        }
+
+        private void checkRep() {
+            assert 0 <= size && size < times.length;
+            assert size < 2 || times[0] <= times[1];
+        }
+
+        /**
+         * Makes room for twice as many collisions, keeping the ones already in the heap
+         */
+        private void grow() {
+            int length = 2*times.length - 1;
+            times = Arrays.copyOf(times, length);
+            balls = Arrays.copyOf(balls, length);
+            ballVersions = Arrays.copyOf(ballVersions, length);
+            gadgets = Arrays.copyOf(gadgets, length);
+            features = Arrays.copyOf(features, length);
+            others = Arrays.copyOf(others, length);
+            otherVersions = Arrays.copyOf(otherVersions, length);
+        }
+
+        /**
+         * Adds a collision
+         * @param time when it happens
+         * @param ball the ball, whose motion is at version ballVersion
+         * @param gadget index of the gadget it hits, or -1 if it hits another ball
+         * @param feature the part of the gadget it hits
+         * @param other the ball it hits, whose motion is at version otherVersion, or -1 if it hits a gadget
+         */
+        void add(double time, int ball, int ballVersion, int gadget, int feature, int other, int otherVersion) {
+            if (size + 1 == times.length) {
+                grow();
+            }
+            int spare = times.length - 1;
+            times[spare] = time;
+            balls[spare] = ball;
+            ballVersions[spare] = ballVersion;
+            gadgets[spare] = gadget;
+            features[spare] = feature;
+            others[spare] = other;
+            otherVersions[spare] = otherVersion;
+            int k = size++;
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                if (Double.compare(time, times[parent]) >= 0) {
+                    break;
+                }
+                copy(parent, k);
+                k = parent;
+            }
+            copy(spare, k);
+            checkRep();
+        }
+
+        /**
+         * Removes the earliest collision, which must exist
+         */
+        void poll() {
+            int n = --size;
+            if (n == 0) {
+                return;
+            }
+            int spare = times.length - 1;
+            copy(n, spare);
+            double time = times[spare];
+            int half = n >>> 1;
+            int k = 0;
+            while (k < half) {
+                int child = 2*k + 1;
+                int right = child + 1;
+                if (right < n && Double.compare(times[child], times[right]) > 0) {
+                    child = right;
+                }
+                if (Double.compare(time, times[child]) <= 0) {
+                    break;
+                }
+                copy(child, k);
+                k = child;
+            }
+            copy(spare, k);
+            checkRep();
+        }
+
+        private void copy(int from, int to) {
+            times[to] = times[from];
+            balls[to] = balls[from];
+            ballVersions[to] = ballVersions[from];
+            gadgets[to] = gadgets[from];
+            features[to] = features[from];
+            others[to] = others[from];
+            otherVersions[to] = otherVersions[from];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /** @return the time of the earliest collision, which must exist */
+        double time() {
+            return times[0];
+        }
+
+        /** @return the ball of the earliest collision */
+        int ball() {
+            return balls[0];
+        }
+
+        /** @return the version of the ball of the earliest collision when it was predicted */
+        int ballVersion() {
+            return ballVersions[0];
+        }
+
+        /** @return the gadget of the earliest collision, or -1 */
+        int gadget() {
+            return gadgets[0];
+        }
+
+        /** @return the part of the gadget hit in the earliest collision */
+        int feature() {
+            return features[0];
+        }
+
+        /** @return the other ball of the earliest collision, or -1 */
+        int other() {
+            return others[0];
+        }
+
+        /** @return the version of the other ball of the earliest collision when it was predicted */
+        int otherVersion() {
+            return otherVersions[0];
+        }
+    }
+
+    private final List<Gadget> gadgets;
+    private final GadgetGrid grid;
+    private final GadgetTables tables;
+    private final int[] candidates;
+    private final boolean[] moving;
+    private final double[] movingMinX;
+    private final double[] movingMinY;
+    private final double[] movingMaxX;
+    private final double[] movingMaxY;
+    private final EventQueue events;
+    private final Contact found;
+    private final Contact collision;
+
+    private BallStore balls;
+    private int structureVersion;
+    private int[] versions;
+    private double[] lastX;
+    private double[] lastY;
+    private double[] lastXVel;
+    private double[] lastYVel;
+    private boolean asynchronous;
+    private double frameTime;
+    private double now;
+    private boolean hasCurrent;
+    private int currentBall;
+    private int currentGadget;
+    private int currentFeature;
+    private int currentOther;
+    private long narrowPhaseTests;
+
+    // Abstraction Function
+    // AF(gadgets, grid, tables, candidates, moving, movingMinX, movingMinY, movingMaxX, movingMaxY, events, balls,
+    //        structureVersion, versions, lastX, lastY, lastXVel, lastYVel, asynchronous, frameTime, now, hasCurrent,
+    //        currentBall, currentGadget, currentFeature, currentOther, found, collision) =
+    //      the collision schedule for the frame of length frameTime currently being simulated, at time now
+    //      since the frame started. Ball i of the frame is in slot i of balls as it was at structureVersion,
+    //      where it is active iff i < balls.activeCount(), and its motion has changed versions[i] times
+    //      and whose state when last checked was (lastX[i], lastY[i]) moving at (lastXVel[i], lastYVel[i]).
+    //      If asynchronous, ball i is at time balls.clock[i] <= now, and only the balls in the collision being processed
+    //      are checked; otherwise every ball is at now.
+    //      events holds the predicted collisions with gadgets that are not moving[] and between balls, some
+    //      of them stale, each remembering the feature of the gadget its ball hits. Gadgets that move, like flippers, are at
+    //      their positions at time now, and never leave the box [movingMinX[g], movingMaxX[g]] x [movingMinY[g], movingMaxY[g]]. If hasCurrent, ball currentBall is in the
+    //      collision being processed, hitting feature currentFeature of gadget currentGadget, or ball currentOther,
+    //      whichever is not -1, and collision says where it hits the gadget. found is scratch space for the gadget being tested. narrowPhaseTests is the
+    //      number of times the scheduler has computed the time until a ball hits a gadget or another ball.
+    //      Collisions with the gadgets compiled into tables are computed from their geometry there.
+
+    // Rep Invariant
+    // 0 <= now <= frameTime
+    // versions, lastX, lastY, lastXVel, lastYVel all have length balls.size()
+    // moving.length == gadgets.size() == grid.size()
+    // balls.clock[i] <= now for all balls i if asynchronous
+
+    // Rep Exposure Argument
+    // gadgets and balls are aliases of the board's, which is required to simulate them
+    // tables is shared with the board, but it is immutable
+    // every other field is private and never returned to the client
+
+    // Thread Safety Argument
+    // Not threadsafe, confined to the thread that steps the board
+
+    private void checkRep() {
+        assert 0 <= now;
+        assert balls.size() == versions.length;
+        assert moving.length == gadgets.size();
+    }
+
+    /**
+     * Creates a scheduler for the gadgets of a board
+     * @param gadgets the gadgets of the board, which must not change afterwards
+     * @param grid the spatial index built from gadgets
+     * @param tables the geometry compiled from gadgets
+     */
+    public CollisionScheduler(List<Gadget> gadgets, GadgetGrid grid, GadgetTables tables) {
+        this.gadgets = gadgets;
+        this.grid = grid;
+        this.tables = tables;
+        this.candidates = new int[gadgets.size()];
+        this.moving = new boolean[gadgets.size()];
+        this.movingMinX = new double[gadgets.size()];
+        this.movingMinY = new double[gadgets.size()];
+        this.movingMaxX = new double[gadgets.size()];
+        this.movingMaxY = new double[gadgets.size()];
+        for (int i = 0; i < gadgets.size(); i++) {
+            moving[i] = gadgets.get(i) instanceof LeftFlipper || gadgets.get(i) instanceof RightFlipper;
+            if (moving[i]) {
+                Rectangle2D bounds = gadgets.get(i).bounds();
+                movingMinX[i] = bounds.getMinX();
+                movingMinY[i] = bounds.getMinY();
+                movingMaxX[i] = bounds.getMaxX();
+                movingMaxY[i] = bounds.getMaxY();
+            }
+        }
+        this.events = new EventQueue();
+        this.found = new Contact();
+        this.collision = new Contact();
+        this.balls = new BallStore();
+        this.structureVersion = balls.structureVersion();
+        this.versions = new int[0];
+        this.lastX = new double[0];
+        this.lastY = new double[0];
+        this.lastXVel = new double[0];
+        this.lastYVel = new double[0];
+        this.asynchronous = false;
+        this.frameTime = 0;
+        this.now = 0;
+        this.hasCurrent = false;
+        this.narrowPhaseTests = 0;
+    }
+
+    /**
+     * Starts scheduling a new frame, predicting every collision of the given balls
+     * @param ballStore the balls on the board, all at the start of the frame
+     * @param frameTime length of the frame
+     * @param asynchronousFrame true to move each ball only when it collides, as described above,
+     *                          false to move every ball at every collision
+     */
+    public void startFrame(BallStore ballStore, double frameTime, boolean asynchronousFrame) {
+        this.asynchronous = asynchronousFrame;
+        this.frameTime = frameTime;
+        this.now = 0;
+        this.hasCurrent = false;
+        ballStore.resetClocks();
+        predictAll(ballStore);
+        checkRep();
+    }
+
+    /**
+     * Finds the next collision of the frame and moves every ball and moving gadget up to the
+     * time it happens, or to the end of the frame if there is none. In asynchronous mode only
+     * the balls in the collision are moved, until the end of the frame, when every ball is.
+     *
+     * @param ballStore the balls on the board; if balls were added or removed since the
+     *                  last call every collision is predicted again
+     * @return true iff a collision happens before the end of the frame, in which case it
+     *         can be read with ball(), gadget() and otherBall()
+     */
+    public boolean advance(BallStore ballStore) {
+        if (ballStore != balls || ballStore.structureVersion() != structureVersion) {
+            predictAll(ballStore);
+        }
+        while (!events.isEmpty() && isStale()) {
+            events.poll();
+        }
+        double until = surveyMoving(events.isEmpty() ? frameTime : events.time());
+        boolean collision = until < frameTime;
+        if (!collision && !events.isEmpty() && events.time() < frameTime) {
+            until = events.time();
+            currentBall = events.ball();
+            currentGadget = events.gadget();
+            currentFeature = events.feature();
+            currentOther = events.other();
+            events.poll();
+            collision = true;
+        } else if (!collision) {
+            until = frameTime;
+        }
+        if (!asynchronous) {
+            balls.updatePositions(until - now);
+        } else if (!collision) {
+            balls.synchronize(until);
+        } else {
+            balls.advanceTo(currentBall, until);
+            snapshot(currentBall);
+            if (currentOther >= 0) {
+                balls.advanceTo(currentOther, until);
+                snapshot(currentOther);
+            }
+        }
+        for (int index = 0; index < moving.length; index++) {
+            if (moving[index]) {
+                gadgets.get(index).advance(until - now);
+            }
+        }
+        now = until;
+        hasCurrent = collision;
+        if (!asynchronous) {
+            snapshot();
+        }
+        checkRep();
+        return hasCurrent;
+    }
+
+    /**
+     * @return the ball in the collision found by the last call to advance()
+     */
+    public Ball ball() {
+        return balls.view(currentBall);
+    }
+
+    /**
+     * @return the gadget in the collision found by the last call to advance(),
+     *         or null if it was between two balls
+     */
+    public Gadget gadget() {
+        return currentGadget < 0 ? null : gadgets.get(currentGadget);
+    }
+
+    /**
+     * @return where the ball hits the gadget in the collision found by the last call to advance(),
+     *         which happens now; only valid until the next call to advance()
+     */
+    public Contact contact() {
+        collision.set(0, currentFeature);
+        return collision;
+    }
+
+    /**
+     * @return the other ball in the collision found by the last call to advance(),
+     *         or null if it was with a gadget
+     */
+    public Ball otherBall() {
+        return currentOther < 0 ? null : balls.view(currentOther);
+    }
+
+    /**
+     * @return the number of times the scheduler has computed the time until a ball hits
+     *         a gadget or another ball since it was created
+     */
+    public long narrowPhaseTests() {
+        return narrowPhaseTests;
+    }
+
+    /**
+     * Predicts the collisions of every active ball whose position or velocity changed
+     * since the last call to advance(), which must have returned true. In asynchronous mode
+     * only the balls in the collision are checked, since no other ball can have changed.
+     * If balls were added, removed, parked or woken, every collision is predicted again
+     * by the next call to advance() instead.
+     */
+    public void collided() {
+        hasCurrent = false;
+        if (balls.structureVersion() != structureVersion) {
+            return;
+        }
+        if (asynchronous) {
+            predictIfChanged(currentBall);
+            if (currentOther >= 0) {
+                predictIfChanged(currentOther);
+            }
+        } else {
+            for (int i = 0; i < balls.activeCount(); i++) {
+                predictIfChanged(i);
+            }
+        }
+        checkRep();
+    }
+
+    /**
+     * Predicts the collisions of active ball i again if its position or velocity changed since it was last checked
+     */
+    private void predictIfChanged(int i) {
+        if (balls.x[i] != lastX[i] || balls.y[i] != lastY[i]
+                || balls.xVel[i] != lastXVel[i] || balls.yVel[i] != lastYVel[i]) {
+            versions[i]++;
+            predict(i, 0);
+        }
+    }
+
+    /**
+     * @return true iff the earliest predicted collision, which must exist, no longer holds
+     */
+    private boolean isStale() {
+        return events.ballVersion() != versions[events.ball()]
+                || (events.other() >= 0 && events.otherVersion() != versions[events.other()]);
+    }
+
+    /**
+     * Predicts every collision again, after bringing every ball to now in asynchronous mode
+     */
+    private void predictAll(BallStore ballStore) {
+        if (asynchronous) {
+            ballStore.synchronize(now);
+        }
+        balls = ballStore;
+        structureVersion = ballStore.structureVersion();
+        int count = ballStore.size();
+        if (versions.length != count) {
+            versions = new int[count];
+            lastX = new double[count];
+            lastY = new double[count];
+            lastXVel = new double[count];
+            lastYVel = new double[count];
+        }
+        events.clear();
+        for (int i = 0; i < ballStore.activeCount(); i++) {
+            predict(i, i + 1);
+        }
+    }
+
+    /**
+     * Pushes every collision of active ball i, which is at now, with a resting gadget, and with
+     * every ball from index firstOther on, that can happen before the end of the frame
+     */
+    private void predict(int i, int firstOther) {
+        Ball ball = balls.view(i);
+        double horizon = frameTime - now;
+        int count = grid.query(ball, horizon, candidates);
+        for (int k = 0; k < count; k++) {
+            int index = candidates[k];
+            if (moving[index]) {
+                continue;
+            }
+            double time = tables.isCompiled(index)
+                    ? tables.timeToCollide(index, balls.x[i], balls.y[i], balls.radius[i], balls.xVel[i], balls.yVel[i],
+                            horizon, found)
+                    : gadgets.get(index).timeToCollide(ball, horizon, found);
+            narrowPhaseTests++;
+            if (time < horizon) {
+                events.add(now + time, i, versions[i], index, found.feature(), -1, 0);
+            }
+        }
+        for (int j = firstOther; j < versions.length; j++) {
+            if (j == i) {
+                continue;
+            }
+            double time;
+            if (asynchronous) {
+                // ball j may be behind, so it is extrapolated to now
+                double lag = now - balls.clock[j];
+                time = PhysicsKernel.timeUntilBallBallCollision(
+                        balls.x[j] + balls.xVel[j]*lag, balls.y[j] + balls.yVel[j]*lag, balls.radius[j], balls.xVel[j], balls.yVel[j],
+                        balls.x[i], balls.y[i], balls.radius[i], balls.xVel[i], balls.yVel[i]);
+            } else {
+                time = balls.view(j).timeToCollide(ball);
+            }
+            narrowPhaseTests++;
+            if (time < horizon) {
+                events.add(now + time, Math.min(i, j), versions[Math.min(i, j)],
+                        -1, Contact.NONE, Math.max(i, j), versions[Math.max(i, j)]);
+            }
+        }
+    }
+
+    /**
+     * Finds the earliest collision of a ball with a flipper that happens before the given time.
+     * In asynchronous mode a ball is brought up to now first, unless it cannot reach the flipper's
+     * box before the end of the frame.
+     * @param before time of the next predicted collision, or the end of the frame
+     * @return the time of the earliest flipper collision before the given time and the end of the frame,
+     *         which becomes the current collision, or POSITIVE_INFINITY if there is none
+     */
+    private double surveyMoving(double before) {
+        double earliest = Double.POSITIVE_INFINITY;
+        for (int index = 0; index < moving.length; index++) {
+            if (!moving[index]) {
+                continue;
+            }
+            for (int i = 0; i < balls.activeCount(); i++) {
+                if (asynchronous) {
+                    double lag = now - balls.clock[i];
+                    if (PhysicsKernel.outOfReach(movingMinX[index], movingMinY[index], movingMaxX[index], movingMaxY[index],
+                            balls.x[i] + balls.xVel[i]*lag, balls.y[i] + balls.yVel[i]*lag, balls.radius[i],
+                            balls.xVel[i], balls.yVel[i], frameTime - now)) {
+                        continue;
+                    }
+                    balls.advanceTo(i, now);
+                }
+                narrowPhaseTests++;
+                double time = now + gadgets.get(index).timeToCollide(balls.view(i), frameTime - now, found);
+                if (time < before && time < frameTime) {
+                    before = time;
+                    earliest = time;
+                    currentBall = i;
+                    currentGadget = index;
+                    currentFeature = found.feature();
+                    currentOther = -1;
+                }
+            }
+        }
+        return earliest;
+    }
+
+    private void snapshot() {
+        for (int i = 0; i < balls.activeCount(); i++) {
+            snapshot(i);
+        }
+    }
+
+    private void snapshot(int i) {
+        lastX[i] = balls.x[i];
+        lastY[i] = balls.y[i];
+        lastXVel[i] = balls.xVel[i];
+        lastYVel[i] = balls.yVel[i];
+    }
+}
@@ -0,0 +1,372 @@
+package flingball;
+
+import java.util.Arrays;
+
+/**
+ * A mutable set of the collisions that happen first, among those a survey of the board has
+ * found so far: the earliest one, and every other one that happens within a window of time
+ * after it, so that the board can process them all in a single sub-step. With a window of 0
+ * the set holds exactly the collisions tied for earliest.
+ *
+ * Collisions are recorded by index: the gadget's index in the board's gadget list and the
+ * slots of the balls in the ball store, so building the set neither hashes nor allocates once
+ * its buffers have grown to fit the board. Processing a collision can move balls to other slots,
+ * so the board calls capture() to look up every ball in the set before it processes any of them.
+ * capture() also orders the gadget collisions and the ball collisions by time, each kind on its own,
+ * keeping those at the same time in the order they were offered, so that a client can merge the two
+ * into a single order of time and always process a batch in the same order.
+ */
+class CollisionSet {
+
+    private double window;
+    private double time;
+    private int gadgetCount;
+    private int[] gadgets;
+    private int[] gadgetBalls;
+    private Contact[] contacts;
+    private double[] gadgetTimes;
+    private int pairCount;
+    private int[] pairBalls;
+    private double[] pairTimes;
+    private Ball[] captured;
+    private int capturedCount;
+
+    // Abstraction Function
+    // AF(window, time, gadgetCount, gadgets, gadgetBalls, contacts, gadgetTimes, pairCount, pairBalls, pairTimes, captured,
+    //        capturedCount) =
+    //      the collisions happening from time to time + window, which are the ball in slot gadgetBalls[k] hitting gadget
+    //      number gadgets[k] at contacts[k] at gadgetTimes[k] for 0 <= k < gadgetCount, and the ball in slot pairBalls[2k]
+    //      hitting the ball in slot pairBalls[2k+1] at pairTimes[k] for 0 <= k < pairCount, in the order they were found,
+    //      or by time after capture(); or no collisions if time is POSITIVE_INFINITY.
+    //      captured[0..capturedCount) are the balls in those slots, gadget collisions first, as looked up by the last call to capture()
+
+    // Rep Invariant
+    // window >= 0
+    // gadgetCount == pairCount == 0 if time == POSITIVE_INFINITY
+    // gadgets, gadgetBalls, contacts and gadgetTimes have the same length, which is >= gadgetCount
+    // pairBalls.length >= 2*pairCount, pairTimes.length >= pairCount
+    // time <= gadgetTimes[k] <= time + window for 0 <= k < gadgetCount, and likewise for pairTimes[0..pairCount)
+    // captured.length >= capturedCount, and captured[capturedCount..] are null
+
+    // Rep Exposure Argument
+    // all fields are private; contacts and captured hold objects that are returned to the board,
+    // which only reads them until the set is next cleared
+
+    // Thread Safety Argument
+    // Not threadsafe, confined to the thread that steps the board, or to the worker thread
+    // surveying a chunk of the balls until the board joins it
+
+    private void checkRep() {
+        assert window >= 0;
+        assert time < Double.POSITIVE_INFINITY || (gadgetCount == 0 && pairCount == 0);
+        assert gadgets.length == gadgetBalls.length && gadgets.length == contacts.length && gadgets.length == gadgetTimes.length;
+        assert gadgetCount <= gadgets.length;
+        assert 2*pairCount <= pairBalls.length && pairCount <= pairTimes.length;
+        assert capturedCount <= captured.length;
+    }
+
+    /**
+     * Creates an empty set that only holds collisions tied for earliest
+     */
+    public CollisionSet() {
+        this.window = 0;
+        this.gadgets = new int[0];
+        this.gadgetBalls = new int[0];
+        this.contacts = new Contact[0];
+        this.gadgetTimes = new double[0];
+        this.pairBalls = new int[0];
+        this.pairTimes = new double[0];
+        this.captured = new Ball[0];
+        clear();
+    }
+
+    /**
+     * Sets how long after the earliest collision the other collisions in the set may happen,
+     * and empties the set
+     * @param batchWindow the length of the window, >= 0
+     * @throws IllegalArgumentException if batchWindow is negative or NaN
+     */
+    public void setWindow(double batchWindow) {
+        if (!(batchWindow >= 0)) {
+            throw new IllegalArgumentException("window must be >= 0: " + batchWindow);
+        }
+        this.window = batchWindow;
+        clear();
+    }
+
+    /**
+     * @return how long after the earliest collision the other collisions in the set may happen
+     */
+    public double window() {
+        return window;
+    }
+
+    /**
+     * Empties the set, ready for the next survey
+     */
+    public void clear() {
+        time = Double.POSITIVE_INFINITY;
+        gadgetCount = 0;
+        pairCount = 0;
+        Arrays.fill(captured, 0, capturedCount, null);
+        capturedCount = 0;
+        checkRep();
+    }
+
+    /**
+     * @return the time until the earliest collision in the set, or POSITIVE_INFINITY if it is empty
+     */
+    public double time() {
+        return time;
+    }
+
+    /**
+     * Offers a collision between a ball and a gadget. It joins the set if it happens within the window
+     * after the earliest collision in it, and is ignored otherwise; if it happens sooner than the earliest
+     * collision, the collisions no longer within the window after it leave the set.
+     * @param collisionTime time until the collision
+     * @param gadget index of the gadget on the board
+     * @param slot slot of the ball in the board's ball store
+     * @param contact where the ball hits the gadget, which is copied
+     */
+    public void offerGadget(double collisionTime, int gadget, int slot, Contact contact) {
+        if (!keep(collisionTime)) {
+            return;
+        }
+        if (gadgetCount == gadgets.length) {
+            int capacity = Math.max(4, 2*gadgets.length);
+            gadgets = Arrays.copyOf(gadgets, capacity);
+            gadgetBalls = Arrays.copyOf(gadgetBalls, capacity);
+            contacts = Arrays.copyOf(contacts, capacity);
+            gadgetTimes = Arrays.copyOf(gadgetTimes, capacity);
+            for (int k = gadgetCount; k < capacity; k++) {
+                contacts[k] = new Contact();
+            }
+        }
+        gadgets[gadgetCount] = gadget;
+        gadgetBalls[gadgetCount] = slot;
+        contacts[gadgetCount].copyFrom(contact);
+        gadgetTimes[gadgetCount] = collisionTime;
+        gadgetCount++;
+    }
+
+    /**
+     * Offers a collision between two balls, as offerGadget() above
+     * @param collisionTime time until the collision
+     * @param first slot of one ball in the board's ball store
+     * @param second slot of the other ball
+     */
+    public void offerPair(double collisionTime, int first, int second) {
+        if (!keep(collisionTime)) {
+            return;
+        }
+        if (2*pairCount == pairBalls.length) {
+            pairBalls = Arrays.copyOf(pairBalls, Math.max(4, 2*pairBalls.length));
+            pairTimes = Arrays.copyOf(pairTimes, pairBalls.length / 2);
+        }
+        pairBalls[2*pairCount] = first;
+        pairBalls[2*pairCount + 1] = second;
+        pairTimes[pairCount] = collisionTime;
+        pairCount++;
+    }
+
+    /**
+     * Offers every collision in another set, gadget collisions and ball collisions each in the order they
+     * are in that set. Surveying the balls in separate sets and offering those sets in turn to an empty
+     * set with the same window leaves it exactly as surveying every ball into it would have.
+     * @param that a set that has not been captured since it was last cleared
+     */
+    public void offerAll(CollisionSet that) {
+        for (int k = 0; k < that.gadgetCount; k++) {
+            offerGadget(that.gadgetTimes[k], that.gadgets[k], that.gadgetBalls[k], that.contacts[k]);
+        }
+        for (int k = 0; k < that.pairCount; k++) {
+            offerPair(that.pairTimes[k], that.pairBalls[2*k], that.pairBalls[2*k + 1]);
+        }
+    }
+
+    /**
+     * Drops the collisions no longer within the window if a collision at the given time happens
+     * sooner than the ones in the set, keeping the others in order
+     * @return true iff a collision at the given time belongs in the set
+     */
+    private boolean keep(double collisionTime) {
+        if (collisionTime < time) {
+            time = collisionTime;
+            double last = time + window;
+            int kept = 0;
+            for (int k = 0; k < gadgetCount; k++) {
+                if (gadgetTimes[k] <= last) {
+                    moveGadget(k, kept++);
+                }
+            }
+            gadgetCount = kept;
+            kept = 0;
+            for (int k = 0; k < pairCount; k++) {
+                if (pairTimes[k] <= last) {
+                    movePair(k, kept++);
+                }
+            }
+            pairCount = kept;
+        }
+        return collisionTime <= time + window && collisionTime < Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Moves gadget collision from to index to <= from, swapping the contacts so none is lost
+     */
+    private void moveGadget(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        gadgets[to] = gadgets[from];
+        gadgetBalls[to] = gadgetBalls[from];
+        gadgetTimes[to] = gadgetTimes[from];
+        Contact spare = contacts[to];
+        contacts[to] = contacts[from];
+        contacts[from] = spare;
+    }
+
+    /**
+     * Copies ball collision from over ball collision to
+     */
+    private void movePair(int from, int to) {
+        pairBalls[2*to] = pairBalls[2*from];
+        pairBalls[2*to + 1] = pairBalls[2*from + 1];
+        pairTimes[to] = pairTimes[from];
+    }
+
+    /**
+     * @return the number of collisions between a ball and a gadget in the set
+     */
+    public int gadgetCount() {
+        return gadgetCount;
+    }
+
+    /**
+     * @return the number of collisions between two balls in the set
+     */
+    public int pairCount() {
+        return pairCount;
+    }
+
+    /**
+     * Orders the gadget collisions by time and the ball collisions by time, keeping collisions of the same kind
+     * at the same time in the order they were offered,
+     * and looks up the balls of every collision in the set, so that they can be read with gadgetBall(),
+     * first() and second() even after processing some of the collisions has moved balls to other slots
+     * @param store the ball store the slots were offered from, unchanged since
+     */
+    public void capture(BallStore store) {
+        sortByTime();
+        int needed = gadgetCount + 2*pairCount;
+        if (captured.length < needed) {
+            captured = new Ball[Math.max(needed, 2*captured.length)];
+        }
+        Arrays.fill(captured, 0, capturedCount, null);
+        for (int k = 0; k < gadgetCount; k++) {
+            captured[k] = store.view(gadgetBalls[k]);
+        }
+        for (int k = 0; k < 2*pairCount; k++) {
+            captured[gadgetCount + k] = store.view(pairBalls[k]);
+        }
+        capturedCount = needed;
+        checkRep();
+    }
+
+    /**
+     * Sorts the gadget collisions and the ball collisions by time with a stable insertion sort,
+     * which does nothing when every collision is tied for earliest
+     */
+    private void sortByTime() {
+        for (int k = 1; k < gadgetCount; k++) {
+            int gadget = gadgets[k];
+            int slot = gadgetBalls[k];
+            double collisionTime = gadgetTimes[k];
+            Contact contact = contacts[k];
+            int j = k;
+            for (; j > 0 && gadgetTimes[j - 1] > collisionTime; j--) {
+                gadgets[j] = gadgets[j - 1];
+                gadgetBalls[j] = gadgetBalls[j - 1];
+                gadgetTimes[j] = gadgetTimes[j - 1];
+                contacts[j] = contacts[j - 1];
+            }
+            gadgets[j] = gadget;
+            gadgetBalls[j] = slot;
+            gadgetTimes[j] = collisionTime;
+            contacts[j] = contact;
+        }
+        for (int k = 1; k < pairCount; k++) {
+            int first = pairBalls[2*k];
+            int second = pairBalls[2*k + 1];
+            double collisionTime = pairTimes[k];
+            int j = k;
+            for (; j > 0 && pairTimes[j - 1] > collisionTime; j--) {
+                movePair(j - 1, j);
+            }
+            pairBalls[2*j] = first;
+            pairBalls[2*j + 1] = second;
+            pairTimes[j] = collisionTime;
+        }
+    }
+
+    /**
+     * @param k index of a collision between a ball and a gadget, 0 <= k < gadgetCount()
+     * @return the index on the board of the gadget
+     */
+    public int gadget(int k) {
+        return gadgets[k];
+    }
+
+    /**
+     * @param k index of a collision between a ball and a gadget, 0 <= k < gadgetCount()
+     * @return the time until the collision, from when the survey started
+     */
+    public double gadgetTime(int k) {
+        return gadgetTimes[k];
+    }
+
+    /**
+     * @param k index of a collision between a ball and a gadget, 0 <= k < gadgetCount()
+     * @return where the ball hits the gadget
+     */
+    public Contact contact(int k) {
+        return contacts[k];
+    }
+
+    /**
+     * @param k index of a collision between a ball and a gadget, 0 <= k < gadgetCount(), after capture()
+     * @return the ball
+     */
+    public Ball gadgetBall(int k) {
+        return captured[k];
+    }
+
+    /**
+     * @param k index of a collision between two balls, 0 <= k < pairCount()
+     * @return the time until the collision, from when the survey started
+     */
+    public double pairTime(int k) {
+        return pairTimes[k];
+    }
+
+    /**
+     * @param k index of a collision between two balls, 0 <= k < pairCount(), after capture()
+     * @return one of the balls
+     */
+    public Ball first(int k) {
+        return captured[gadgetCount + 2*k];
+    }
+
+    /**
+     * @param k index of a collision between two balls, 0 <= k < pairCount(), after capture()
+     * @return the other ball
+     */
+    public Ball second(int k) {
+        return captured[gadgetCount + 2*k + 1];
+    }
+
+    @Override public String toString() {
+        return "CollisionSet[time=" + time + ", window=" + window + ", gadgetCount=" + gadgetCount + ", pairCount=" + pairCount + "]";
+    }
+}
@@ -0,0 +1,92 @@
+package flingball;
+
+/**
+ * A mutable record of where a ball will first touch a gadget, and when.
+ *
+ * Gadget.timeToCollide fills one in while it searches the gadget's sides and corners,
+ * and the board hands it back to Gadget.collide, so the gadget can bounce the ball off
+ * the part it hit without searching again. The board keeps its contacts and reuses them,
+ * so finding and resolving a collision allocates nothing.
+ */
+public class Contact {
+
+    /** the feature of a contact that has not been found, or of a gadget that was out of reach */
+    public static final int NONE = -1;
+
+    private double time;
+    private int feature;
+
+    // Abstraction Function
+    // AF(time, feature) = a ball that will touch part number feature of a gadget in time seconds,
+    //      where each kind of gadget numbers its parts, e.g. its sides then its corners;
+    //      or no contact at all if feature is NONE
+
+    // Rep Invariant
+    // feature >= NONE
+    // time == POSITIVE_INFINITY if feature == NONE
+
+    // Rep Exposure Argument
+    // all fields are private primitives
+
+    // Thread Safety Argument
+    // Not threadsafe, confined to the thread that steps the board
+
+    private void checkRep() {
+        assert feature >= NONE;
+        assert feature != NONE || time == Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Creates a record of no contact
+     */
+    public Contact() {
+        clear();
+    }
+
+    /**
+     * @return the time until the ball touches the gadget, from when the contact was found,
+     *         or POSITIVE_INFINITY if there is no contact
+     */
+    public double time() {
+        return time;
+    }
+
+    /**
+     * @return the number of the part of the gadget the ball touches, or NONE if there is no contact
+     */
+    public int feature() {
+        return feature;
+    }
+
+    /**
+     * Records that the ball touches the given part of the gadget after the given time
+     * @param contactTime time until the ball touches it, >= 0, or POSITIVE_INFINITY to record no contact
+     * @param contactFeature the number of the part, >= 0
+     */
+    void set(double contactTime, int contactFeature) {
+        this.time = contactTime;
+        this.feature = contactTime == Double.POSITIVE_INFINITY ? NONE : contactFeature;
+        checkRep();
+    }
+
+    /**
+     * Records that there is no contact
+     */
+    void clear() {
+        this.time = Double.POSITIVE_INFINITY;
+        this.feature = NONE;
+    }
+
+    /**
+     * Makes this contact a copy of another
+     * @param that the contact to copy
+     */
+    void copyFrom(Contact that) {
+        this.time = that.time;
+        this.feature = that.feature;
+    }
+
+    @Override public String toString() {
+        return "Contact [time=" + time + ", feature=" + feature + "]";
+    }
+}
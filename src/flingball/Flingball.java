@@ -9,7 +9,6 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 
 import edu.mit.eecs.parserlib.UnableToParseException;
-import physics.Vect;
 
 /**
  * Main class that handles the command line interface
@@ -17,7 +16,10 @@ import physics.Vect;
  */
 public class Flingball {
     
-    public static final double fps = 60;
+    /** default number of physics frames simulated per second, fine enough for flippers to hit balls accurately */
+    public static final double PHYSICS_HZ = 120;
+    /** default number of times per second the board is drawn */
+    public static final double RENDER_HZ = 60;
     public static final int L = 20; 
     
     private static final String HOST = "[A-Za-z0-9.]*";
@@ -230,51 +232,15 @@ public class Flingball {
                                     else if (args[0].equals("passBall")) {
                                         // check if this board is the TO board
                                         if (board.getBoardName().equals(args[2])) {
-                                            String[] joinedBoards = board.getBoardJoins();
-                                            
-                                            // check if partnered wall is truly a current joined wall
-                                            if (joinedBoards[0].equals(args[1]) || joinedBoards[1].equals(args[1]) || joinedBoards[2].equals(args[1]) || joinedBoards[3].equals(args[1])) {
-                                                int passWall = 0; // [N, E, S, W] -> [0, 1, 2, 3]
-                                                for (int i=0; i < joinedBoards.length; i++) {
-                                                    if (joinedBoards[i].equals(args[1])) {
-                                                        passWall = i;
-                                                    }
-                                                }
-
-                                                   
-                                                if (passWall == 0) { // coming from the north
-                                                    Ball passBall = new Ball("passBall", Double.parseDouble(args[3]), 0, Double.parseDouble(args[5]), Double.parseDouble(args[6]));
-                                                    board.addBall(passBall);
-                                                } else if (passWall == 1) { // coming from the east
-                                                    Ball passBall = new Ball("passBall", 20*L, Double.parseDouble(args[4]), Double.parseDouble(args[5]), Double.parseDouble(args[6]));
-                                                    board.addBall(passBall);
-                                                } else if (passWall == 2) { // coming from the south
-                                                    Ball passBall = new Ball("passBall", Double.parseDouble(args[3]), 20*L, Double.parseDouble(args[5]), Double.parseDouble(args[6]));
-                                                    board.addBall(passBall);
-                                                } else if (passWall == 3) { // coming from the west
-                                                    Ball passBall = new Ball("passBall", 0, Double.parseDouble(args[4]), Double.parseDouble(args[5]), Double.parseDouble(args[6]));
-                                                    board.addBall(passBall);
-                                                }
-                                            }
-                                            
+                                            board.receivePassedBall(args[1], Double.parseDouble(args[3]), Double.parseDouble(args[4]),
+                                                    Double.parseDouble(args[5]), Double.parseDouble(args[6]));
                                         }
-                                            }
-                                            
-                                                                               
+                                    }
                                     // portalBall: portalball, From, To, portalName, xvel, yvel
                                     else if (args[0].equals("portalBall")) {
                                         // check if this board is the TO board
                                         if (board.getBoardName().equals(args[2])) {
-                                            
-                                            if (board.getPortalMap().containsKey(args[3])) {
-                                                Vect neededLoc = board.getPortalMap().get(args[3]);
-                                                double x_loc = neededLoc.x();
-                                                double y_loc = neededLoc.y();
-                                                
-                                                Ball portalBall = new Ball("portalBall", x_loc, y_loc,  Double.valueOf(args[4]), Double.valueOf(args[5]));
-                                                board.addBall(portalBall);
-                                            }
-                                            
+                                            board.receivePortalBall(args[3], Double.valueOf(args[4]), Double.valueOf(args[5]));
                                         }
                                     }
                                 }
@@ -293,7 +259,9 @@ public class Flingball {
                 }   
         } 
          
-        Simulator sim = new Simulator(board, fps);
+        double physicsHz = Double.parseDouble(System.getProperty(Simulator.PHYSICS_HZ_PROPERTY, String.valueOf(PHYSICS_HZ)));
+        double renderHz = Double.parseDouble(System.getProperty(Simulator.RENDER_HZ_PROPERTY, String.valueOf(RENDER_HZ)));
+        Simulator sim = new Simulator(board, physicsHz, renderHz, Simulator.DEFAULT_MAX_CATCH_UP);
         sim.run();
     }
         
@@ -0,0 +1,140 @@
+package flingball;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A mutable fixed-rate clock that tells a simulation loop how many fixed-length frames are due,
+ * so that simulated time keeps up with wall clock time however long each frame takes to simulate.
+ *
+ * Frame k is due period * (k + 1) nanoseconds after the clock starts, once the simulated time it
+ * ends at has passed on the wall clock. Deadlines are counted from the start rather than from the
+ * previous wake, so the time spent simulating and the lateness of each wake never add up to drift.
+ * When the loop wakes up after more than one deadline has passed, it catches up by simulating the
+ * frames it missed back to back, but never more than maxCatchUp of them in one wake; the oldest
+ * frames beyond that are dropped, so that a machine that cannot keep up falls behind by a bounded
+ * amount per wake instead of spending ever longer catching up.
+ */
+class FrameClock {
+
+    private final long period;
+    private final int maxCatchUp;
+    private long deadline;
+    private volatile long frames;
+    private volatile long lateFrames;
+    private volatile long droppedFrames;
+
+    // Abstraction Function
+    // AF(period, maxCatchUp, deadline, frames, lateFrames, droppedFrames) = a clock whose frames are period
+    //      nanoseconds long, the next of which is due at System.nanoTime() == deadline, that lets at most
+    //      maxCatchUp frames be simulated in one wake. frames frames have been handed out so far, lateFrames of
+    //      them a whole period or more after they were due, and droppedFrames frames have been skipped
+
+    // Rep Invariant
+    // period > 0, maxCatchUp > 0
+    // 0 <= lateFrames <= frames, 0 <= droppedFrames
+
+    // Rep Exposure Argument
+    // all fields are primitives
+
+    // Thread Safety Argument
+    // deadline is confined to the thread that runs the simulation loop, the only one that calls due() and await().
+    // frames, lateFrames and droppedFrames are volatile and only written by that thread, so they can be read
+    // from any thread, e.g. a shutdown hook, while the loop runs
+
+    private void checkRep() {
+        assert period > 0;
+        assert maxCatchUp > 0;
+        assert 0 <= lateFrames && lateFrames <= frames;
+        assert droppedFrames >= 0;
+    }
+
+    /**
+     * Creates a clock whose first frame is due one period after start
+     * @param period the length of a frame in nanoseconds, > 0
+     * @param maxCatchUp the largest number of frames to simulate in one wake, > 0
+     * @param start the time the clock starts at, as returned by System.nanoTime()
+     * @throws IllegalArgumentException if period or maxCatchUp is not positive
+     */
+    public FrameClock(long period, int maxCatchUp, long start) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        if (maxCatchUp <= 0) {
+            throw new IllegalArgumentException("maxCatchUp must be positive: " + maxCatchUp);
+        }
+        this.period = period;
+        this.maxCatchUp = maxCatchUp;
+        this.deadline = start + period;
+        checkRep();
+    }
+
+    /**
+     * Blocks the calling thread until the next frame is due, returning at once if it already is
+     */
+    public void await() {
+        long wait;
+        while ((wait = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * Hands out the frames that are due at the given time, which the caller must then simulate, and moves
+     * the next deadline past them. If more than maxCatchUp frames are due, the oldest are dropped instead.
+     * @param now the current time, as returned by System.nanoTime()
+     * @return the number of frames to simulate now, between 0 and maxCatchUp
+     */
+    public int due(long now) {
+        if (now - deadline < 0) {
+            return 0;
+        }
+        long passed = (now - deadline) / period + 1;
+        int run = (int) Math.min(passed, maxCatchUp);
+        deadline += passed * period;
+        frames += run;
+        lateFrames += run - 1;
+        droppedFrames += passed - run;
+        checkRep();
+        return run;
+    }
+
+    /**
+     * @return the time the next frame is due, as returned by System.nanoTime()
+     */
+    public long deadline() {
+        return deadline;
+    }
+
+    /**
+     * @return the number of frames handed out so far
+     */
+    public long frames() {
+        return frames;
+    }
+
+    /**
+     * @return the number of frames handed out a whole period or more after they were due
+     */
+    public long lateFrames() {
+        return lateFrames;
+    }
+
+    /**
+     * @return the number of frames skipped because more than maxCatchUp were due at once
+     */
+    public long droppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * @return a one-line report of the frames handed out, late and dropped
+     */
+    public String report() {
+        return "frames: " + frames() + " late=" + lateFrames() + " dropped=" + droppedFrames() + "\n";
+    }
+
+    @Override public String toString() {
+        return "FrameClock[period=" + period + "ns, frames=" + frames() + ", late=" + lateFrames()
+                + ", dropped=" + droppedFrames() + "]";
+    }
+}
@@ -0,0 +1,222 @@
+package flingball;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and histograms describing the frames a board has simulated: how long each
+ * Board.timeStep took, how many sub-steps and narrow-phase collision tests each frame needed,
+ * how many sub-steps batching near-simultaneous collisions saved, how many frames were stopped early
+ * for taking too many sub-steps,
+ * how many collisions each type of gadget took part in, and how many gadget actions the
+ * collisions triggered.
+ *
+ * The board records into its metrics without locking or allocating, and they can be read
+ * from any thread while the board is running, e.g. from a shutdown hook.
+ */
+public class FrameMetrics {
+
+    /**
+     * The kinds of thing a ball can collide with
+     */
+    public enum Collider {
+        SQUARE_BUMPER, CIRCLE_BUMPER, TRIANGLE_BUMPER, LEFT_FLIPPER, RIGHT_FLIPPER, ABSORBER, PORTAL, WALL, BALL;
+
+        /**
+         * @return the kind of the given gadget
+         */
+        static Collider of(Gadget gadget) {
+            if (gadget instanceof Wall) {
+                return WALL;
+            } else if (gadget instanceof SquareBumper) {
+                return SQUARE_BUMPER;
+            } else if (gadget instanceof CircleBumper) {
+                return CIRCLE_BUMPER;
+            } else if (gadget instanceof TriangleBumper) {
+                return TRIANGLE_BUMPER;
+            } else if (gadget instanceof LeftFlipper) {
+                return LEFT_FLIPPER;
+            } else if (gadget instanceof RightFlipper) {
+                return RIGHT_FLIPPER;
+            } else if (gadget instanceof Absorber) {
+                return ABSORBER;
+            } else if (gadget instanceof Portal) {
+                return PORTAL;
+            }
+            throw new IllegalArgumentException("unknown gadget " + gadget.name());
+        }
+    }
+
+    private static final Collider[] COLLIDERS = Collider.values();
+
+    private final Histogram frameNanos;
+    private final Histogram subSteps;
+    private final Histogram subStepsSaved;
+    private final Histogram narrowPhaseTests;
+    private final AtomicLongArray collisions;
+    private final AtomicLong triggerActions;
+    private final AtomicLong cappedFrames;
+
+    // Abstraction Function
+    // AF(frameNanos, subSteps, subStepsSaved, narrowPhaseTests, collisions, triggerActions, cappedFrames) = the metrics of the frames a board
+    //      has simulated, where frameNanos holds the wall clock time in nanoseconds of each call to timeStep,
+    //      subSteps the number of sub-steps each one took, subStepsSaved the number of collisions each one processed
+    //      early in a batch instead of in a sub-step of their own, and narrowPhaseTests the number of times each one
+    //      computed the time until a ball hit a gadget or another ball. Balls collided with colliders of kind c
+    //      collisions[c.ordinal()] times, and those collisions triggered triggerActions gadget actions.
+    //      cappedFrames of the frames were stopped early for taking too many sub-steps.
+
+    // Rep Invariant
+    // collisions.length() == number of Colliders
+    // frameNanos, subSteps, subStepsSaved and narrowPhaseTests have the same count, up to a recordFrame() in progress
+
+    // Rep Exposure Argument
+    // the histograms are returned to the client, but their only mutator, record(), is package-private,
+    // so clients outside the package can only read them
+    // collisions, triggerActions and cappedFrames are never returned
+
+    // Thread Safety Argument
+    // every field is final and is a threadsafe type that is only changed with atomic operations,
+    // so the metrics can be read from any thread while the board records them
+
+    private void checkRep() {
+        assert collisions.length() == COLLIDERS.length;
+    }
+
+    /**
+     * Creates metrics for a board that has not simulated any frames
+     */
+    public FrameMetrics() {
+        this.frameNanos = new Histogram();
+        this.subSteps = new Histogram();
+        this.subStepsSaved = new Histogram();
+        this.narrowPhaseTests = new Histogram();
+        this.collisions = new AtomicLongArray(COLLIDERS.length);
+        this.triggerActions = new AtomicLong();
+        this.cappedFrames = new AtomicLong();
+        checkRep();
+    }
+
+    /**
+     * Records a simulated frame
+     * @param nanos wall clock time taken by the frame, in nanoseconds
+     * @param frameSubSteps number of sub-steps the frame took
+     * @param frameSubStepsSaved number of collisions the frame processed early in a batch
+     * @param frameTests number of narrow-phase collision tests the frame made
+     */
+    void recordFrame(long nanos, long frameSubSteps, long frameSubStepsSaved, long frameTests) {
+        frameNanos.record(Math.max(nanos, 0));
+        subSteps.record(frameSubSteps);
+        subStepsSaved.record(frameSubStepsSaved);
+        narrowPhaseTests.record(frameTests);
+    }
+
+    /**
+     * Records a collision of a ball with a gadget, and the actions it triggered
+     * @param gadget the gadget that was hit
+     */
+    void recordCollision(Gadget gadget) {
+        collisions.incrementAndGet(Collider.of(gadget).ordinal());
+        int triggered = gadget.triggerCount();
+        if (triggered > 0) {
+            triggerActions.addAndGet(triggered);
+        }
+    }
+
+    /**
+     * Records a collision between two balls
+     */
+    void recordBallCollision() {
+        collisions.incrementAndGet(Collider.BALL.ordinal());
+    }
+
+    /**
+     * Records that a frame was stopped early for taking too many sub-steps, with the rest of its time dropped
+     */
+    void recordCappedFrame() {
+        cappedFrames.incrementAndGet();
+    }
+
+    /**
+     * @return the number of frames simulated
+     */
+    public long frames() {
+        return frameNanos.count();
+    }
+
+    /**
+     * @return the wall clock time of each frame, in nanoseconds
+     */
+    public Histogram frameNanos() {
+        return frameNanos;
+    }
+
+    /**
+     * @return the number of sub-steps in each frame
+     */
+    public Histogram subSteps() {
+        return subSteps;
+    }
+
+    /**
+     * @return the number of sub-steps each frame saved by processing collisions early, together
+     *         with an earlier collision within the board's batch window
+     */
+    public Histogram subStepsSaved() {
+        return subStepsSaved;
+    }
+
+    /**
+     * @return the number of narrow-phase collision tests in each frame, where a test computes
+     *         the time until a ball hits a gadget or another ball
+     */
+    public Histogram narrowPhaseTests() {
+        return narrowPhaseTests;
+    }
+
+    /**
+     * @param collider a kind of collider
+     * @return the number of collisions of a ball with a collider of that kind
+     */
+    public long collisions(Collider collider) {
+        return collisions.get(collider.ordinal());
+    }
+
+    /**
+     * @return the number of gadget actions triggered by collisions
+     */
+    public long triggerActions() {
+        return triggerActions.get();
+    }
+
+    /**
+     * @return the number of frames stopped early for taking too many sub-steps
+     */
+    public long cappedFrames() {
+        return cappedFrames.get();
+    }
+
+    /**
+     * @return a multi-line report of all the metrics
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("frames: ").append(frames()).append('\n');
+        report.append("timeStep ms: ").append(frameNanos.summary(1e6)).append('\n');
+        report.append("sub-steps/frame: ").append(subSteps.summary(1)).append('\n');
+        report.append("sub-steps saved/frame: ").append(subStepsSaved.summary(1)).append('\n');
+        report.append("narrow-phase tests/frame: ").append(narrowPhaseTests.summary(1)).append('\n');
+        report.append("collisions:");
+        for (Collider collider : COLLIDERS) {
+            report.append(' ').append(collider.name().toLowerCase()).append('=').append(collisions(collider));
+        }
+        report.append('\n');
+        report.append("trigger actions: ").append(triggerActions()).append('\n');
+        report.append("capped frames: ").append(cappedFrames()).append('\n');
+        return report.toString();
+    }
+
+    @Override public String toString() {
+        return "FrameMetrics[frames=" + frames() + ", triggerActions=" + triggerActions() + "]";
+    }
+}
@@ -1,10 +1,15 @@
 package flingball;
 import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
 
 import physics.*;
 
 /**
- * An immutable data type representing a gadget. 
+ * A mutable data type representing a gadget.
+ * A gadget changes as the board is simulated: advance() turns flippers, collide() bounces
+ * the ball off the gadget, changing its velocity, or parks it in an absorber, action()
+ * flips a flipper or shoots a parked ball out of an absorber, waking it, and link() adds
+ * a gadget to be triggered when a ball hits this one.
  * Every gadget has an (x,y) location, where x and y are integers in [0,19].
  * Every gadget has a width and height, also integers in [0,19]. 
  * Some gadgets have a fixed width and height (like bumpers), 
@@ -19,23 +24,76 @@ import physics.*;
  * Actions and triggers are mediated by the trigger handler.
  */
 public interface Gadget {   
+    
+    /**
+     * What becomes of a ball after it collides with a gadget
+     */
+    public enum Outcome {
+        /** the ball stays where it is on the board, bounced or held by the gadget */
+        STAY,
+        /** the ball bounced off a wall, or passes through it if the board is joined to another there */
+        WALL,
+        /** the ball fell into a portal, and leaves for the portal's target if it has one */
+        PORTAL
+    }
         
     /**
-     * Get time remaining till ball collides with the gadget
+     * Get time remaining till ball collides with the gadget, without changing the gadget.
+     * Collisions that cannot happen within elapsedTime may be reported as POSITIVE_INFINITY
+     * without being computed.
+     * 
+     * @param ball the time remaining is in reference to
+     * @param elapsedTime time left in the frame being simulated, >= 0
+     * @param contact set to the time and the part of the gadget the ball hits, or to no contact
+     *                if the result is POSITIVE_INFINITY
+     * @return time in ms till collision
+     */
+    public double timeToCollide(Ball ball, double elapsedTime, Contact contact);
+    
+    /**
+     * Get time remaining till ball collides with the gadget, as timeToCollide above,
+     * for callers that do not need to know which part of the gadget is hit
      * 
      * @param ball the time remaining is in reference to
-     * @param elapsedTime TODO
+     * @param elapsedTime time left in the frame being simulated, >= 0
      * @return time in ms till collision
      */
-    public double timeToCollide(Ball ball, Double elapsedTime);
+    public default double timeToCollide(Ball ball, double elapsedTime) {
+        return timeToCollide(ball, elapsedTime, new Contact());
+    }
+    
+    /**
+     * Moves the gadget forward in time, for gadgets such as flippers that move on their own.
+     * The board calls this once per sub-step, after moving the balls through it, so that
+     * timeToCollide() and collide() always see the gadget where it is at the current time.
+     * Gadgets that do not move do nothing.
+     * 
+     * @param time length of the sub-step, >= 0
+     */
+    public void advance(double time);
     
     /**
      * Perform trigger events and update ball appropriately
      * 
-     * @param ball that the gadget collides with
-     * @return TODO
+     * @param ball that the gadget collides with, touching it
+     * @param contact the contact found by the last call to timeToCollide for this ball,
+     *                which says which part of the gadget the ball bounces off
+     * @return what becomes of the ball
+     */
+    public Outcome collide(Ball ball, Contact contact);
+    
+    /**
+     * Perform trigger events and update ball appropriately, as collide above, finding
+     * the part of the gadget the ball is touching first
+     * 
+     * @param ball that the gadget collides with, touching it
+     * @return what becomes of the ball
      */
-    public String collide(Ball ball);
+    public default Outcome collide(Ball ball) {
+        Contact contact = new Contact();
+        timeToCollide(ball, Double.POSITIVE_INFINITY, contact);
+        return collide(ball, contact);
+    }
     
     /**
      * Renders the ball onto the given graphics object
@@ -55,6 +113,13 @@ public interface Gadget {
      * @return the coordinates of the top-left of the gadget on the board
      */
     public Vect position();
+    
+    /**
+     * Get the region of the board a Gadget can occupy
+     * @return the smallest rectangle containing every point of the gadget that a ball can touch,
+     *         including its corner circles and, for moving gadgets, its whole range of motion
+     */
+    public Rectangle2D bounds();
 
     
     /**
@@ -64,6 +129,11 @@ public interface Gadget {
      */
     public void link(Gadget activator);
     
+    /**
+     * @return the number of gadget actions that are triggered each time a ball collides with this gadget
+     */
+    public int triggerCount();
+    
     /**
      * Triggers this gadget's action, and trigger other gadgets linked to this trigger
      */
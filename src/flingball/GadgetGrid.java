@@ -0,0 +1,199 @@
+package flingball;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A mutable uniform-grid spatial index over the gadgets of a board.
+ *
+ * The board is split into the same 20 x 20 grid of L-sized cells that gadgets are
+ * placed on, and every cell remembers which gadgets overlap it. A ball then only needs
+ * to be tested against the gadgets in the cells its swept circle crosses, instead of
+ * against every gadget on the board.
+ *
+ * Gadgets are referred to by their index in the gadget list the grid was built from.
+ */
+class GadgetGrid {
+
+    private static final int CELLS = 20;
+
+    private final int[][] cells;
+    private final int[] alwaysTested;
+    private final Marks marks;
+
+    // Abstraction Function
+    // AF(cells, alwaysTested, marks) = a spatial index over a list of gadgets, where
+    //      cells[row*CELLS + col] holds the indices of the gadgets whose bounds overlap cell (col, row)
+    //      and alwaysTested holds the indices of the gadgets that are candidates for every ball.
+    //      marks is the scratch space for queries that are not given their own
+
+    // Rep Invariant
+    // cells.length == CELLS*CELLS
+    // every index in cells and alwaysTested is in [0, marks.visited.length)
+    // each cell is sorted in increasing order
+
+    // Rep Exposure Argument
+    // all fields are private and never returned to the client
+    // query only writes into the buffer and the marks given by the caller
+
+    // Thread Safety Argument
+    // cells and alwaysTested are never written after construction, so any number of threads can
+    // query the grid at once as long as each one passes its own Marks; the queries that use marks
+    // are confined to the thread that steps the board
+
+    private void checkRep() {
+        assert cells.length == CELLS*CELLS;
+        for (int index : alwaysTested) {
+            assert index >= 0 && index < marks.visited.length;
+        }
+    }
+
+    /**
+     * Scratch space for queries, which remembers the gadgets a query has already reported.
+     * A thread that queries the grid at the same time as others needs its own.
+     */
+    static class Marks {
+
+        private final int[] visited;
+        private int stamp;
+
+        // Abstraction Function
+        // AF(visited, stamp) = the gadgets already reported by the query in progress,
+        //      which are those gadgets i with visited[i] == stamp
+
+        // Rep Invariant
+        // visited[i] <= stamp for every i
+
+        // Rep Exposure Argument
+        // all fields are private and never returned
+
+        // Thread Safety Argument
+        // Not threadsafe, confined to the thread that queries with it
+
+        private Marks(int size) {
+            this.visited = new int[size];
+            this.stamp = 0;
+        }
+    }
+
+    /**
+     * Builds the grid for the given gadgets.
+     *
+     * The board walls span the whole edge of the board and flippers change their shape
+     * every time they are asked for a collision time, so both are tested for every ball
+     * instead of being put in cells.
+     *
+     * @param gadgets the gadgets of the board, whose positions in the list become their indices
+     */
+    public GadgetGrid(List<Gadget> gadgets) {
+        List<List<Integer>> cellLists = new ArrayList<>();
+        for (int i = 0; i < CELLS*CELLS; i++) {
+            cellLists.add(new ArrayList<>());
+        }
+        List<Integer> always = new ArrayList<>();
+        for (int i = 0; i < gadgets.size(); i++) {
+            Gadget gadget = gadgets.get(i);
+            if (gadget instanceof Wall || gadget instanceof LeftFlipper || gadget instanceof RightFlipper) {
+                always.add(i);
+                continue;
+            }
+            Rectangle2D bounds = gadget.bounds();
+            int minCol = cellOf(bounds.getMinX());
+            int maxCol = cellOf(bounds.getMaxX());
+            int minRow = cellOf(bounds.getMinY());
+            int maxRow = cellOf(bounds.getMaxY());
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    cellLists.get(row*CELLS + col).add(i);
+                }
+            }
+        }
+        this.cells = new int[CELLS*CELLS][];
+        for (int i = 0; i < CELLS*CELLS; i++) {
+            cells[i] = cellLists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.alwaysTested = always.stream().mapToInt(Integer::intValue).toArray();
+        this.marks = new Marks(gadgets.size());
+        checkRep();
+    }
+
+    /**
+     * @param coordinate a board coordinate
+     * @return the index of the row or column of cells that contains coordinate, clamped to the board
+     */
+    private static int cellOf(double coordinate) {
+        return Math.min(Math.max((int) Math.floor(coordinate / Flingball.L), 0), CELLS - 1);
+    }
+
+    /**
+     * @return the number of gadgets the grid was built from
+     */
+    public int size() {
+        return marks.visited.length;
+    }
+
+    /**
+     * @return new scratch space for querying this grid
+     */
+    public Marks newMarks() {
+        return new Marks(size());
+    }
+
+    /**
+     * Finds every gadget that the ball could touch while moving in a straight line
+     * with its current velocity for the given amount of time.
+     *
+     * @param ball the ball to find candidates for
+     * @param horizon the amount of time the ball will travel, >= 0
+     * @param candidates buffer that receives the gadget indices, of length at least size()
+     * @return the number of indices written to candidates; they are in increasing order
+     */
+    public int query(Ball ball, double horizon, int[] candidates) {
+        return query(ball, horizon, candidates, marks);
+    }
+
+    /**
+     * Finds every gadget that the ball could touch, as query() above, with the given scratch space,
+     * so that several threads can query the grid at once
+     *
+     * @param ball the ball to find candidates for
+     * @param horizon the amount of time the ball will travel, >= 0
+     * @param candidates buffer that receives the gadget indices, of length at least size()
+     * @param queryMarks scratch space from newMarks(), used by no other thread during the query
+     * @return the number of indices written to candidates; they are in increasing order
+     */
+    public int query(Ball ball, double horizon, int[] candidates, Marks queryMarks) {
+        int[] visited = queryMarks.visited;
+        double x = ball.getX();
+        double y = ball.getY();
+        double dx = ball.getXVelocity() * horizon;
+        double dy = ball.getYVelocity() * horizon;
+        double radius = ball.getRadius();
+        int minCol = cellOf(Math.min(x, x + dx) - radius);
+        int maxCol = cellOf(Math.max(x, x + dx) + radius);
+        int minRow = cellOf(Math.min(y, y + dy) - radius);
+        int maxRow = cellOf(Math.max(y, y + dy) + radius);
+
+        int stamp = ++queryMarks.stamp;
+        int count = 0;
+        for (int index : alwaysTested) {
+            visited[index] = stamp;
+            candidates[count++] = index;
+        }
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                for (int index : cells[row*CELLS + col]) {
+                    if (visited[index] != stamp) {
+                        visited[index] = stamp;
+                        candidates[count++] = index;
+                    }
+                }
+            }
+        }
+        // keep the board's gadget order so that ties are broken the same way as a full scan
+        Arrays.sort(candidates, 0, count);
+        return count;
+    }
+}
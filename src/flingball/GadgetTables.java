@@ -0,0 +1,394 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import physics.Circle;
+import physics.LineSegment;
+import physics.Vect;
+
+/**
+ * The geometry of the gadgets of a board that do not move, compiled into flat tables of
+ * line segments and circles.
+ *
+ * Bumpers, absorbers, portals and walls are all made of line segments and circles, so the
+ * time until a ball hits any of them can be found by the same two loops over primitive arrays,
+ * instead of by calling timeToCollide() through the Gadget interface on a different class of
+ * gadget every time, which HotSpot cannot inline. Each primitive remembers the number of the
+ * feature it is in its gadget's Contact numbering, so the gadget itself can resolve the contacts
+ * found here with collide().
+ *
+ * Bumpers placed edge to edge, like a row of square bumpers forming a wall, share geometry that a
+ * ball can never reach, so the tables coalesce it when they are built: an edge shared by two bumpers
+ * on opposite sides of it is dropped from both, a corner shared by several bumpers is kept only by the
+ * first of them, and a corner that no remaining edge ends at, which is buried inside the bumpers, is
+ * dropped. A ball hitting a shared corner then bounces off it once, and fires the triggers of the
+ * bumper that kept it.
+ *
+ * Gadgets that move, like flippers, and gadgets of unknown kinds are not compiled, and must
+ * still be asked for their collision times directly. Gadgets are referred to by their index in
+ * the gadget list the tables were built from.
+ */
+class GadgetTables {
+
+    private final boolean[] compiled;
+    private final double[] reachMinX;
+    private final double[] reachMinY;
+    private final double[] reachMaxX;
+    private final double[] reachMaxY;
+    private final double[] minimumTime;
+    private final int[] firstSegment;
+    private final int[] firstCircle;
+    private final double[] segmentX1;
+    private final double[] segmentY1;
+    private final double[] segmentX2;
+    private final double[] segmentY2;
+    private final int[] segmentFeature;
+    private final double[] circleX;
+    private final double[] circleY;
+    private final double[] circleRadius;
+    private final int[] circleFeature;
+
+    // Abstraction Function
+    // AF(compiled, reachMinX, reachMinY, reachMaxX, reachMaxY, minimumTime, firstSegment, firstCircle, segmentX1, segmentY1,
+    //        segmentX2, segmentY2, segmentFeature, circleX, circleY, circleRadius, circleFeature) =
+    //      the reachable geometry of a list of gadgets, where gadget g is compiled iff compiled[g], and is then made of the
+    //      segments s from (segmentX1[s], segmentY1[s]) to (segmentX2[s], segmentY2[s]) for firstSegment[g] <= s < firstSegment[g+1],
+    //      followed by the circles c centered at (circleX[c], circleY[c]) of radius circleRadius[c] for
+    //      firstCircle[g] <= c < firstCircle[g+1], all inside the box [reachMinX[g], reachMaxX[g]] x [reachMinY[g], reachMaxY[g]],
+    //      which are features segmentFeature[s] and circleFeature[c] of the gadget.
+    //      A ball never hits gadget g sooner than minimumTime[g] after it is tested.
+
+    // Rep Invariant
+    // firstSegment and firstCircle have length compiled.length + 1, start at 0 and never decrease
+    // firstSegment[compiled.length] == length of the segment arrays, firstCircle[compiled.length] == length of the circle arrays
+    // a gadget that is not compiled has no segments and no circles
+    // the features of each gadget are >= 0 and increase along its segments and then its circles
+
+    // Rep Exposure Argument
+    // all fields are private and never returned to the client
+
+    // Thread Safety Argument
+    // immutable after construction, so it can be shared by the board and its collision scheduler
+
+    private void checkRep() {
+        int gadgetCount = compiled.length;
+        assert firstSegment.length == gadgetCount + 1 && firstCircle.length == gadgetCount + 1;
+        assert firstSegment[gadgetCount] == segmentX1.length && firstCircle[gadgetCount] == circleX.length;
+        for (int g = 0; g < gadgetCount; g++) {
+            assert firstSegment[g] <= firstSegment[g + 1] && firstCircle[g] <= firstCircle[g + 1];
+            assert compiled[g] || (firstSegment[g] == firstSegment[g + 1] && firstCircle[g] == firstCircle[g + 1]);
+        }
+    }
+
+    /**
+     * Compiles the geometry of the given gadgets, coalescing the bumpers that touch
+     * @param gadgets the gadgets of the board, whose positions in the list become their indices
+     */
+    public GadgetTables(List<Gadget> gadgets) {
+        int gadgetCount = gadgets.size();
+        this.compiled = new boolean[gadgetCount];
+        this.reachMinX = new double[gadgetCount];
+        this.reachMinY = new double[gadgetCount];
+        this.reachMaxX = new double[gadgetCount];
+        this.reachMaxY = new double[gadgetCount];
+        this.minimumTime = new double[gadgetCount];
+        this.firstSegment = new int[gadgetCount + 1];
+        this.firstCircle = new int[gadgetCount + 1];
+
+        List<List<LineSegment>> segments = new ArrayList<>();
+        List<List<Circle>> circles = new ArrayList<>();
+        boolean[] bumper = new boolean[gadgetCount];
+        for (int g = 0; g < gadgetCount; g++) {
+            Gadget gadget = gadgets.get(g);
+            List<LineSegment> gadgetSegments = Collections.emptyList();
+            List<Circle> gadgetCircles = Collections.emptyList();
+            compiled[g] = true;
+            if (gadget instanceof SquareBumper) {
+                gadgetSegments = ((SquareBumper) gadget).segments();
+                gadgetCircles = ((SquareBumper) gadget).circles();
+                bumper[g] = true;
+            } else if (gadget instanceof TriangleBumper) {
+                gadgetSegments = ((TriangleBumper) gadget).segments();
+                gadgetCircles = ((TriangleBumper) gadget).circles();
+                bumper[g] = true;
+            } else if (gadget instanceof CircleBumper) {
+                gadgetCircles = ((CircleBumper) gadget).circles();
+            } else if (gadget instanceof Absorber) {
+                gadgetSegments = ((Absorber) gadget).segments();
+            } else if (gadget instanceof Portal) {
+                gadgetCircles = ((Portal) gadget).circles();
+                minimumTime[g] = Portal.MINIMUM_COLLISION_TIME;
+            } else if (gadget instanceof Wall) {
+                gadgetSegments = ((Wall) gadget).segments();
+                gadgetCircles = ((Wall) gadget).circles();
+            } else {
+                compiled[g] = false;
+            }
+            segments.add(gadgetSegments);
+            circles.add(gadgetCircles);
+        }
+        boolean[][] keepSegment = new boolean[gadgetCount][];
+        boolean[][] keepCircle = new boolean[gadgetCount][];
+        coalesce(segments, circles, bumper, keepSegment, keepCircle);
+
+        List<LineSegment> allSegments = new ArrayList<>();
+        List<Integer> allSegmentFeatures = new ArrayList<>();
+        List<Circle> allCircles = new ArrayList<>();
+        List<Integer> allCircleFeatures = new ArrayList<>();
+        for (int g = 0; g < gadgetCount; g++) {
+            firstSegment[g] = allSegments.size();
+            firstCircle[g] = allCircles.size();
+            reachMinX[g] = Double.POSITIVE_INFINITY;
+            reachMinY[g] = Double.POSITIVE_INFINITY;
+            reachMaxX[g] = Double.NEGATIVE_INFINITY;
+            reachMaxY[g] = Double.NEGATIVE_INFINITY;
+            List<LineSegment> gadgetSegments = segments.get(g);
+            for (int k = 0; k < gadgetSegments.size(); k++) {
+                if (keepSegment[g][k]) {
+                    LineSegment segment = gadgetSegments.get(k);
+                    allSegments.add(segment);
+                    allSegmentFeatures.add(k);
+                    reach(g, segment.p1().x(), segment.p1().y(), 0);
+                    reach(g, segment.p2().x(), segment.p2().y(), 0);
+                }
+            }
+            List<Circle> gadgetCircles = circles.get(g);
+            for (int k = 0; k < gadgetCircles.size(); k++) {
+                if (keepCircle[g][k]) {
+                    Circle circle = gadgetCircles.get(k);
+                    allCircles.add(circle);
+                    allCircleFeatures.add(gadgetSegments.size() + k);
+                    reach(g, circle.getCenter().x(), circle.getCenter().y(), circle.getRadius());
+                }
+            }
+        }
+        firstSegment[gadgetCount] = allSegments.size();
+        firstCircle[gadgetCount] = allCircles.size();
+
+        this.segmentX1 = new double[allSegments.size()];
+        this.segmentY1 = new double[allSegments.size()];
+        this.segmentX2 = new double[allSegments.size()];
+        this.segmentY2 = new double[allSegments.size()];
+        this.segmentFeature = new int[allSegments.size()];
+        for (int s = 0; s < allSegments.size(); s++) {
+            LineSegment segment = allSegments.get(s);
+            segmentX1[s] = segment.p1().x();
+            segmentY1[s] = segment.p1().y();
+            segmentX2[s] = segment.p2().x();
+            segmentY2[s] = segment.p2().y();
+            segmentFeature[s] = allSegmentFeatures.get(s);
+        }
+        this.circleX = new double[allCircles.size()];
+        this.circleY = new double[allCircles.size()];
+        this.circleRadius = new double[allCircles.size()];
+        this.circleFeature = new int[allCircles.size()];
+        for (int c = 0; c < allCircles.size(); c++) {
+            Circle circle = allCircles.get(c);
+            circleX[c] = circle.getCenter().x();
+            circleY[c] = circle.getCenter().y();
+            circleRadius[c] = circle.getRadius();
+            circleFeature[c] = allCircleFeatures.get(c);
+        }
+        checkRep();
+    }
+
+    /**
+     * Decides which segments and circles of the gadgets a ball can reach. Everything is kept but:
+     *  - an edge shared by two bumpers that lie on opposite sides of it, which is inside them both;
+     *  - a corner of a bumper at the same place as a corner of an earlier bumper;
+     *  - a corner of a bumper that no kept bumper edge ends at, which is inside the bumpers around it.
+     *
+     * @param segments segments.get(g) are the segments of gadget g
+     * @param circles circles.get(g) are the circles of gadget g
+     * @param bumper bumper[g] is true iff gadget g is a bumper, whose corners are where its edges meet
+     * @param keepSegment filled with keepSegment[g][k] true iff segment k of gadget g is kept
+     * @param keepCircle filled with keepCircle[g][k] true iff circle k of gadget g is kept
+     */
+    private static void coalesce(List<List<LineSegment>> segments, List<List<Circle>> circles, boolean[] bumper,
+            boolean[][] keepSegment, boolean[][] keepCircle) {
+        int gadgetCount = segments.size();
+        for (int g = 0; g < gadgetCount; g++) {
+            keepSegment[g] = new boolean[segments.get(g).size()];
+            Arrays.fill(keepSegment[g], true);
+            keepCircle[g] = new boolean[circles.get(g).size()];
+            Arrays.fill(keepCircle[g], true);
+        }
+        // bumpers are indexed by their corners, since bumpers that touch share corners
+        Map<Vect, List<Integer>> bumpersAt = new HashMap<>();
+        for (int g = 0; g < gadgetCount; g++) {
+            if (bumper[g]) {
+                for (Circle corner : circles.get(g)) {
+                    bumpersAt.computeIfAbsent(corner.getCenter(), center -> new ArrayList<>()).add(g);
+                }
+            }
+        }
+        for (int g = 0; g < gadgetCount; g++) {
+            if (!bumper[g]) {
+                continue;
+            }
+            List<LineSegment> gadgetSegments = segments.get(g);
+            for (int k = 0; k < gadgetSegments.size(); k++) {
+                LineSegment segment = gadgetSegments.get(k);
+                for (int other : bumpersAt.getOrDefault(segment.p1(), Collections.emptyList())) {
+                    if (other <= g) {
+                        continue;
+                    }
+                    List<LineSegment> otherSegments = segments.get(other);
+                    for (int m = 0; m < otherSegments.size(); m++) {
+                        if (sameSegment(segment, otherSegments.get(m))
+                                && side(segment, centroid(circles.get(g))) * side(segment, centroid(circles.get(other))) < 0) {
+                            keepSegment[g][k] = false;
+                            keepSegment[other][m] = false;
+                        }
+                    }
+                }
+            }
+        }
+        Set<Vect> edgeEnds = new HashSet<>();
+        for (int g = 0; g < gadgetCount; g++) {
+            if (bumper[g]) {
+                List<LineSegment> gadgetSegments = segments.get(g);
+                for (int k = 0; k < gadgetSegments.size(); k++) {
+                    if (keepSegment[g][k]) {
+                        edgeEnds.add(gadgetSegments.get(k).p1());
+                        edgeEnds.add(gadgetSegments.get(k).p2());
+                    }
+                }
+            }
+        }
+        Set<List<Double>> cornersKept = new HashSet<>();
+        for (int g = 0; g < gadgetCount; g++) {
+            if (bumper[g]) {
+                List<Circle> gadgetCircles = circles.get(g);
+                for (int k = 0; k < gadgetCircles.size(); k++) {
+                    Circle corner = gadgetCircles.get(k);
+                    keepCircle[g][k] = edgeEnds.contains(corner.getCenter())
+                            && cornersKept.add(Arrays.asList(corner.getCenter().x(), corner.getCenter().y(), corner.getRadius()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true iff the segments join the same two points, in either direction
+     */
+    private static boolean sameSegment(LineSegment a, LineSegment b) {
+        return (a.p1().equals(b.p1()) && a.p2().equals(b.p2())) || (a.p1().equals(b.p2()) && a.p2().equals(b.p1()));
+    }
+
+    /**
+     * @return the average of the centers of the given corners
+     */
+    private static Vect centroid(List<Circle> corners) {
+        Vect sum = Vect.ZERO;
+        for (Circle corner : corners) {
+            sum = sum.plus(corner.getCenter());
+        }
+        return sum.times(1. / corners.size());
+    }
+
+    /**
+     * @return a positive number if point is on the left of the line through segment, looking from its p1 to its p2,
+     *         a negative number if it is on the right, and 0 if it is on the line
+     */
+    private static double side(LineSegment segment, Vect point) {
+        Vect direction = segment.p2().minus(segment.p1());
+        Vect offset = point.minus(segment.p1());
+        return direction.x() * offset.y() - direction.y() * offset.x();
+    }
+
+    /**
+     * Grows the reach box of gadget g to cover the circle of the given radius around (x, y)
+     */
+    private void reach(int g, double x, double y, double radius) {
+        reachMinX[g] = Math.min(reachMinX[g], x - radius);
+        reachMinY[g] = Math.min(reachMinY[g], y - radius);
+        reachMaxX[g] = Math.max(reachMaxX[g], x + radius);
+        reachMaxY[g] = Math.max(reachMaxY[g], y + radius);
+    }
+
+    /**
+     * @param gadget index of a gadget
+     * @return true iff the gadget's geometry is in the tables, so timeToCollide() below can be used for it
+     */
+    public boolean isCompiled(int gadget) {
+        return compiled[gadget];
+    }
+
+    /**
+     * @return the number of segments in the tables, after coalescing
+     */
+    int segmentCount() {
+        return segmentX1.length;
+    }
+
+    /**
+     * @return the number of circles in the tables, after coalescing
+     */
+    int circleCount() {
+        return circleX.length;
+    }
+
+    /**
+     * Finds the time until a ball hits a compiled gadget, exactly as the gadget's own
+     * Gadget.timeToCollide() would, except that the geometry coalesced away is never hit
+     *
+     * @param gadget index of a compiled gadget
+     * @param x x coordinate of the ball's center
+     * @param y y coordinate of the ball's center
+     * @param radius radius of the ball
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param horizon time left in the frame being simulated, >= 0; collisions after it
+     *                may be reported as POSITIVE_INFINITY
+     * @param contact set to the time and the feature of the gadget the ball hits, or to no contact
+     *                if the result is POSITIVE_INFINITY
+     * @return time until the collision, or POSITIVE_INFINITY if there is none
+     */
+    public double timeToCollide(int gadget, double x, double y, double radius, double xVel, double yVel,
+            double horizon, Contact contact) {
+        assert compiled[gadget];
+        if (PhysicsKernel.outOfReach(reachMinX[gadget], reachMinY[gadget], reachMaxX[gadget], reachMaxY[gadget],
+                x, y, radius, xVel, yVel, horizon)) {
+            contact.clear();
+            return Double.POSITIVE_INFINITY;
+        }
+        double minTime = Double.POSITIVE_INFINITY;
+        int feature = Contact.NONE;
+        int segmentStart = firstSegment[gadget];
+        int segmentEnd = firstSegment[gadget + 1];
+        for (int s = segmentStart; s < segmentEnd; s++) {
+            double time = PhysicsKernel.timeUntilWallCollision(segmentX1[s], segmentY1[s], segmentX2[s], segmentY2[s],
+                    x, y, radius, xVel, yVel);
+            if (time < minTime) {
+                minTime = time;
+                feature = segmentFeature[s];
+            }
+        }
+        int circleStart = firstCircle[gadget];
+        int circleEnd = firstCircle[gadget + 1];
+        for (int c = circleStart; c < circleEnd; c++) {
+            double time = PhysicsKernel.timeUntilCircleCollision(circleX[c], circleY[c], circleRadius[c],
+                    x, y, radius, xVel, yVel);
+            if (time < minTime) {
+                minTime = time;
+                feature = circleFeature[c];
+            }
+        }
+        minTime = Math.max(minTime, minimumTime[gadget]);
+        contact.set(minTime, feature);
+        return minTime;
+    }
+
+    @Override public String toString() {
+        return "GadgetTables[gadgets=" + compiled.length + ", segments=" + segmentX1.length
+                + ", circles=" + circleX.length + ", compiled=" + Arrays.toString(compiled) + "]";
+    }
+}
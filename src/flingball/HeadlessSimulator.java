@@ -0,0 +1,341 @@
+package flingball;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * Simulates the physics of a Flingball board without a display.
+ *
+ * Unlike Simulator it creates no window, timer or key listener, so it runs on machines
+ * with no display. Key presses come from a script that names the tick at which each
+ * one happens instead of from the keyboard. Unless it runs at maximum speed, it keeps
+ * to the frame rate with a FrameClock as Simulator does, catching up on at most
+ * Simulator.DEFAULT_MAX_CATCH_UP frames at a time and dropping the rest.
+ */
+public class HeadlessSimulator implements Runnable {
+
+    private static final String USAGE =
+            "usage: HeadlessSimulator [--fps N] [--max-speed] [--ticks N] [--keys FILE] [--engine SURVEY|EVENT_DRIVEN|ASYNCHRONOUS] [--batch-window S] [--parallel N] [--islands] [--metrics] BOARD";
+
+    private final Board board;
+    private final double fps;
+    private final boolean maxSpeed;
+    private final long tickLimit;
+    private final Map<Long, List<String>> keyScript;
+    private final List<String> keyPresses;
+
+    private volatile long ticks;
+    private volatile long subSteps;
+    private volatile long startNanos;
+    private volatile long lastNanos;
+    private volatile FrameClock clock;
+
+    // Abstraction Function
+    // AF(board, fps, maxSpeed, tickLimit, keyScript, keyPresses, ticks, subSteps, startNanos, lastNanos, clock) =
+    //      a simulation of board with frames 1/fps seconds long, stepped fps times per second, or as fast as
+    //      possible if maxSpeed, that stops after tickLimit frames, or never if tickLimit is 0.
+    //      keyScript maps a tick to the key presses and releases, in the board file's "Press"/"Release" + key
+    //      format, that happen right before that tick is simulated. keyPresses is scratch space for handing them to the board.
+    //      ticks frames taking subSteps sub-steps in all have been simulated, in the wall clock time from startNanos to lastNanos.
+    //      clock hands out the frames to simulate at the frame rate and counts the late and dropped ones,
+    //      or is null if the simulation runs at maxSpeed or has not started.
+
+    // Rep Invariant
+    // fps > 0, tickLimit >= 0
+    // 0 <= ticks, and ticks <= tickLimit if tickLimit > 0
+    // startNanos <= lastNanos
+
+    // Rep Exposure Argument
+    // board is an alias of the client's board, which is required to simulate it
+    // keyScript is copied in the constructor, and it and keyPresses are never returned
+
+    // Thread Safety Argument
+    // board, keyScript and keyPresses are confined to the thread that calls run()
+    // ticks, subSteps, startNanos, lastNanos and clock are volatile and only written by that thread,
+    // so the counters can be read from any thread, e.g. a shutdown hook, while the simulation runs;
+    // FrameClock's counters are threadsafe to read in the same way
+
+    private void checkRep() {
+        assert fps > 0;
+        assert tickLimit >= 0;
+        assert tickLimit == 0 || ticks <= tickLimit;
+        assert startNanos <= lastNanos;
+    }
+
+    /**
+     * Creates a new headless simulator
+     *
+     * @param board the board to simulate
+     * @param framesPerSecond number of frames per second of simulated time, > 0
+     * @param maxSpeed if true, frames are simulated back to back as fast as possible,
+     *                 otherwise at framesPerSecond frames per second of wall clock time
+     * @param tickLimit the number of frames to simulate before run() returns, or 0 to run forever
+     * @param keyScript maps a tick number, counting from 0, to the key presses and releases that happen
+     *                  right before that tick is simulated, as returned by parseKeyScript
+     */
+    public HeadlessSimulator(Board board, double framesPerSecond, boolean maxSpeed, long tickLimit,
+            Map<Long, List<String>> keyScript) {
+        this.board = board;
+        this.fps = framesPerSecond;
+        this.maxSpeed = maxSpeed;
+        this.tickLimit = tickLimit;
+        this.keyScript = new TreeMap<>();
+        for (Map.Entry<Long, List<String>> entry : keyScript.entrySet()) {
+            this.keyScript.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        this.keyPresses = new ArrayList<>();
+        this.ticks = 0;
+        this.subSteps = 0;
+        this.startNanos = System.nanoTime();
+        this.lastNanos = startNanos;
+        this.clock = null;
+        checkRep();
+    }
+
+    /**
+     * Steps the board until tickLimit frames have been simulated, or forever if tickLimit is 0.
+     * Must be called at most once.
+     */
+    @Override
+    public void run() {
+        final double frameTime = 1./fps;
+        final long frameNanos = (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+        final long firstSubStep = board.getSubStepCount();
+        startNanos = System.nanoTime();
+        lastNanos = startNanos;
+        final FrameClock frameClock = maxSpeed ? null : new FrameClock(frameNanos, Simulator.DEFAULT_MAX_CATCH_UP, startNanos);
+        clock = frameClock;
+        while (tickLimit == 0 || ticks < tickLimit) {
+            int dueFrames = 1;
+            if (frameClock != null) {
+                frameClock.await();
+                dueFrames = frameClock.due(System.nanoTime());
+            }
+            for (int frame = 0; frame < dueFrames && (tickLimit == 0 || ticks < tickLimit); frame++) {
+                List<String> scripted = keyScript.get(ticks);
+                if (scripted != null) {
+                    keyPresses.addAll(scripted);
+                    board.callActionOnGadgets(keyPresses);
+                }
+                board.timeStep(frameTime);
+                ticks = ticks + 1;
+                subSteps = board.getSubStepCount() - firstSubStep;
+            }
+            lastNanos = System.nanoTime();
+        }
+        checkRep();
+    }
+
+    /**
+     * @return the number of frames simulated so far
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the number of sub-steps the board took in the frames simulated so far
+     */
+    public long getSubSteps() {
+        return subSteps;
+    }
+
+    /**
+     * @return the number of frames simulated so far a whole frame or more after they were due,
+     *         as FrameClock.lateFrames(); always 0 at maximum speed
+     */
+    public long getLateFrames() {
+        FrameClock frameClock = clock;
+        return frameClock == null ? 0 : frameClock.lateFrames();
+    }
+
+    /**
+     * @return the number of frames skipped so far because the simulation fell too far behind the
+     *         frame rate, as FrameClock.droppedFrames(); always 0 at maximum speed
+     */
+    public long getDroppedFrames() {
+        FrameClock frameClock = clock;
+        return frameClock == null ? 0 : frameClock.droppedFrames();
+    }
+
+    /**
+     * @return the number of frames simulated per second of wall clock time so far,
+     *         or 0 if none have been simulated
+     */
+    public double ticksPerSecond() {
+        long elapsed = lastNanos - startNanos;
+        return elapsed == 0 ? 0 : ticks / (elapsed / 1e9);
+    }
+
+    /**
+     * @return the average number of sub-steps per frame so far, or 0 if no frames have been simulated
+     */
+    public double subStepsPerTick() {
+        long frames = ticks;
+        return frames == 0 ? 0 : (double) subSteps / frames;
+    }
+
+    /**
+     * @return a one line summary of the throughput of the simulation so far, and of the frames that
+     *         were simulated late or dropped to keep up with the frame rate
+     */
+    public String summary() {
+        return String.format("%s: %d ticks in %.3f s, %.1f ticks/sec, %.2f sub-steps/tick, %d late, %d dropped",
+                board.getBoardName(), ticks, (lastNanos - startNanos) / 1e9, ticksPerSecond(), subStepsPerTick(),
+                getLateFrames(), getDroppedFrames());
+    }
+
+    /**
+     * Parses a key script. Each line has the form
+     *     tick keydown|keyup key
+     * where tick is the number of the frame, counting from 0, before which the key is pressed or released,
+     * and key is a key name from the board file format. Blank lines and text after # are ignored.
+     *
+     * @param lines the lines of the script
+     * @return a map from each tick to its key presses and releases in the board file's
+     *         "Press"/"Release" + key format, in the order they appear in the script
+     * @throws IllegalArgumentException if a line is not of the form above
+     */
+    public static Map<Long, List<String>> parseKeyScript(List<String> lines) {
+        Map<Long, List<String>> script = new TreeMap<>();
+        for (String line : lines) {
+            int comment = line.indexOf('#');
+            String content = (comment < 0 ? line : line.substring(0, comment)).trim();
+            if (content.isEmpty()) {
+                continue;
+            }
+            String[] fields = content.split("\\s+");
+            if (fields.length != 3 || !fields[0].matches("[0-9]+")) {
+                throw new IllegalArgumentException("bad key script line: " + line);
+            }
+            final String action;
+            if (fields[1].equals("keydown")) {
+                action = "Press" + fields[2];
+            } else if (fields[1].equals("keyup")) {
+                action = "Release" + fields[2];
+            } else {
+                throw new IllegalArgumentException("bad key script line: " + line);
+            }
+            script.computeIfAbsent(Long.parseLong(fields[0]), tick -> new ArrayList<>()).add(action);
+        }
+        return script;
+    }
+
+    /**
+     * Runs a board without a display and prints its throughput when the run ends,
+     * including when the process is interrupted.
+     *
+     * @param args [--fps N] [--max-speed] [--ticks N] [--keys FILE] [--engine SURVEY|EVENT_DRIVEN|ASYNCHRONOUS] [--batch-window S]
+     *   [--parallel N] [--islands] [--metrics] BOARD
+     *   where --fps sets the frame rate (default Flingball.PHYSICS_HZ), --max-speed steps frames back to back instead of
+     *   at the frame rate, --ticks stops after that many frames (default 0, run until interrupted), --keys reads a
+     *   key script as described by parseKeyScript, --engine selects the board's collision engine, --batch-window
+     *   sets the board's batch window in seconds as Board.setBatchWindow, --parallel surveys on the common pool
+     *   whenever at least N balls are active as Board.setParallelSurvey, --islands steps groups of balls that
+     *   cannot touch each other on their own as Board.setIslandStepping, and --metrics also prints the board's
+     *   frame metrics
+     * @throws IOException if the board or key script cannot be read
+     * @throws UnableToParseException if the board cannot be parsed
+     * @throws IllegalArgumentException if args is ill formed
+     */
+    public static void main(String[] args) throws IOException, UnableToParseException {
+        System.setProperty("java.awt.headless", "true");
+        double framesPerSecond = Flingball.PHYSICS_HZ;
+        boolean maxSpeed = false;
+        long tickLimit = 0;
+        Map<Long, List<String>> keyScript = Collections.emptyMap();
+        Board.Engine engine = null;
+        double batchWindow = 0;
+        int parallelThreshold = 0;
+        boolean islands = false;
+        boolean metrics = false;
+        String filename = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--fps":
+                framesPerSecond = Double.parseDouble(argument(args, ++i));
+                break;
+            case "--max-speed":
+                maxSpeed = true;
+                break;
+            case "--ticks":
+                tickLimit = Long.parseLong(argument(args, ++i));
+                break;
+            case "--keys":
+                keyScript = parseKeyScript(Files.readAllLines(new File(argument(args, ++i)).toPath(), StandardCharsets.UTF_8));
+                break;
+            case "--engine":
+                engine = Board.Engine.valueOf(argument(args, ++i));
+                break;
+            case "--batch-window":
+                batchWindow = Double.parseDouble(argument(args, ++i));
+                break;
+            case "--parallel":
+                parallelThreshold = Integer.parseInt(argument(args, ++i));
+                if (parallelThreshold < 1) {
+                    throw new IllegalArgumentException(USAGE);
+                }
+                break;
+            case "--islands":
+                islands = true;
+                break;
+            case "--metrics":
+                metrics = true;
+                break;
+            default:
+                if (args[i].startsWith("--") || filename != null) {
+                    throw new IllegalArgumentException(USAGE);
+                }
+                filename = args[i];
+            }
+        }
+        if (filename == null || !(framesPerSecond > 0) || tickLimit < 0 || !(batchWindow >= 0)) {
+            throw new IllegalArgumentException(USAGE);
+        }
+
+        Board board = BoardParser.parse(new File(filename));
+        if (engine != null) {
+            board.setEngine(engine);
+        }
+        board.setBatchWindow(batchWindow);
+        if (parallelThreshold > 0) {
+            board.setParallelSurvey(ForkJoinPool.commonPool(), parallelThreshold);
+        }
+        board.setIslandStepping(islands);
+        HeadlessSimulator simulator = new HeadlessSimulator(board, framesPerSecond, maxSpeed, tickLimit, keyScript);
+        final boolean printMetrics = metrics;
+        // printed once, by whichever comes first: the run ending or the process being interrupted
+        final AtomicBoolean reported = new AtomicBoolean(false);
+        Runnable report = () -> {
+            if (!reported.compareAndSet(false, true)) {
+                return;
+            }
+            System.out.println(simulator.summary());
+            if (printMetrics) {
+                System.out.print(board.getMetrics().report());
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(new Thread(report));
+        simulator.run();
+        report.run();
+    }
+
+    private static String argument(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        return args[i];
+    }
+}
@@ -0,0 +1,160 @@
+package flingball;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values, such as frame times in nanoseconds, that covers
+ * the whole range of long with a bounded relative error.
+ *
+ * Like HdrHistogram, values below 256 are counted exactly and larger values fall into buckets
+ * whose width doubles with every power of two, with 128 buckets per power of two, so a value
+ * is reported with a relative error below 1%. Recording is lock-free and allocates nothing,
+ * and the histogram can be read from any thread while it is being recorded into.
+ */
+public class Histogram {
+
+    /** values below EXACT are counted exactly, then each power of two is split into EXACT/2 buckets */
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int EXACT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = EXACT / 2;
+    private static final int BUCKETS = EXACT + (Long.SIZE - 1 - SUB_BUCKET_BITS) * HALF;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong total;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    // Abstraction Function
+    // AF(counts, total, sum, max) = a multiset of total values adding up to sum, the largest of which is max,
+    //      where counts[bucket(v)] of them fall in the bucket of value v, for bucket() as defined by index()
+
+    // Rep Invariant
+    // counts.length() == BUCKETS
+    // total == sum of counts, max is in the highest non-empty bucket, or 0 if total is 0
+    // (both can lag a concurrent record() that is still in progress)
+
+    // Rep Exposure Argument
+    // all fields are private and final, and none are returned
+
+    // Thread Safety Argument
+    // every field is an atomic, and each is only changed with atomic operations,
+    // so concurrent record() calls are never lost. Readers see each record() as it lands,
+    // so a reading that overlaps a record() may include some of its fields but not others
+
+    private void checkRep() {
+        assert counts.length() == BUCKETS;
+        assert total.get() >= 0;
+        assert max.get() >= 0;
+    }
+
+    /**
+     * Creates an empty histogram
+     */
+    public Histogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.total = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+        checkRep();
+    }
+
+    /**
+     * Adds a value to the histogram, without allocating
+     * @param value the value to add, >= 0
+     */
+    void record(long value) {
+        assert value >= 0;
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long largest;
+        while (value > (largest = max.get()) && !max.compareAndSet(largest, value)) {
+            // another thread raised the maximum, so compare against the new one
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long count() {
+        return total.get();
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if there are none
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if there are none
+     */
+    public double mean() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * @param percentile the percentage of values that are to be at most the result, in [0, 100]
+     * @return the smallest value, up to the histogram's precision, that is greater than or equal to
+     *         the given percentage of the values recorded, or 0 if there are none
+     */
+    public long valueAtPercentile(double percentile) {
+        assert percentile >= 0 && percentile <= 100;
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return the p50, p99, p99.9 and maximum values followed by the count and mean, scaled down by
+     *         unitScale, e.g. 1e6 to print nanoseconds as milliseconds
+     */
+    public String summary(double unitScale) {
+        return String.format("p50=%.3f p99=%.3f p999=%.3f max=%.3f (n=%d, mean=%.3f)",
+                valueAtPercentile(50) / unitScale, valueAtPercentile(99) / unitScale,
+                valueAtPercentile(99.9) / unitScale, max() / unitScale, count(), mean() / unitScale);
+    }
+
+    @Override public String toString() {
+        return "Histogram[" + summary(1) + "]";
+    }
+
+    /**
+     * @return the bucket counting value
+     */
+    static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return EXACT + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * @return the largest value counted in the given bucket
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int shift = (index - EXACT) / HALF + 1;
+        long lowest = (long) ((index - EXACT) % HALF + HALF) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
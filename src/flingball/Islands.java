@@ -0,0 +1,582 @@
+package flingball;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A mutable partition of the balls of a board into islands that cannot touch each other during a frame,
+ * which are then stepped through the frame independently, each with its own sub-steps, and in parallel
+ * if a pool is given.
+ *
+ * Bouncing off a bumper, a wall or a resting flipper never speeds a ball up, and two balls of equal mass
+ * bouncing off each other keep the sum of their squared speeds, so no ball of a group can move faster
+ * during the frame than the square root of the sum of the squared speeds of the group, as long as no ball
+ * from outside the group touches one of them. Each ball is given the box it cannot leave within the frame
+ * at the speed of its island, and islands whose boxes overlap are merged, until the boxes of different
+ * islands no longer overlap. Balls of different islands then cannot touch during the frame.
+ *
+ * Gadgets that do more than bounce a ball, such as absorbers, portals, gadgets that trigger others and
+ * turning flippers, can change the board beyond the island that hits them, and so can waking a parked ball.
+ * The board marks those gadgets as hazards, and a frame in which a ball could reach one, or a parked ball,
+ * is not split into islands at all.
+ */
+class Islands {
+
+    /** relative margin added to each reach, so that rounding cannot take a ball out of its box */
+    private static final double REACH_MARGIN = 1e-6;
+    /** tasks per thread of the pool, so that a thread that finishes early can steal another task */
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final List<Gadget> gadgets;
+    private final GadgetGrid grid;
+    private final GadgetTables tables;
+    private final FrameMetrics metrics;
+    private final double[] gadgetMinX;
+    private final double[] gadgetMinY;
+    private final double[] gadgetMaxX;
+    private final double[] gadgetMaxY;
+    private final int[] hazardIndices;
+    private int ballCount;
+    private int[] parent;
+    private double[] energy;
+    private int[] order;
+    private double[] minX;
+    private double[] maxX;
+    private double[] minY;
+    private double[] maxY;
+    private int[] islandOf;
+    private int[] members;
+    private int[] islandStart;
+    private int[] islandFill;
+    private int islandCount;
+    private final List<Step> steps;
+    private final List<Step> running;
+    private final RecursiveAction root;
+    private BallStore balls;
+    private double frameTime;
+
+    // Abstraction Function
+    // AF(gadgets, grid, tables, metrics, gadgetMinX, gadgetMinY, gadgetMaxX, gadgetMaxY, hazardIndices, ballCount, parent, energy, order,
+    //        minX, maxX, minY, maxY, islandOf, members, islandStart, islandFill, islandCount, steps, running, root, balls, frameTime) =
+    //      the first ballCount balls of the store balls, split into islandCount islands for a frame frameTime long, where island k
+    //      holds the balls in slots members[islandStart[k]..islandStart[k+1]). Gadget i of gadgets, found through grid and tables,
+    //      stays within [gadgetMinX[i], gadgetMaxX[i]] x [gadgetMinY[i], gadgetMaxY[i]], and every collision is recorded in metrics.
+    //      While the islands are being built, parent is the union-find forest over the balls, energy[r] the sum of the squared
+    //      speeds of the balls in the tree rooted at r, [minX[i], maxX[i]] x [minY[i], maxY[i]] the reach box of ball i,
+    //      order the balls by increasing minX, islandOf[r] the island of root r, and islandFill[k] how far island k of
+    //      members has been filled. While the islands are being stepped, minX, maxX, minY and maxY hold the boxes the balls
+    //      sweep through in the current sub-step of their island.
+    //      hazardIndices is scratch space for the gadgets marked as hazards, and running the tasks of steps that step
+    //      the islands, which root runs together
+
+    // Rep Invariant
+    // gadgetMinX, gadgetMinY, gadgetMaxX, gadgetMaxY and hazardIndices have length gadgets.size()
+    // parent, energy, order, minX, maxX, minY, maxY, islandOf and members have the same length, >= ballCount
+    // order[0..ballCount) is a permutation of 0..ballCount-1
+    // islandStart[0] == 0, islandStart is increasing up to islandStart[islandCount], islandFill.length == islandStart.length
+    // running is a prefix of steps
+
+    // Rep Exposure Argument
+    // gadgets, grid, tables and metrics are aliases of the board's; gadgets are only written to through collide(),
+    //      and only while locked, and the others are only read, apart from metrics, which is threadsafe
+    // balls is an alias of the board's ball store, which is only used while the board waits for a step to finish
+    // all other fields are private and never returned
+
+    // Thread Safety Argument
+    // partition() and step() are only called from the thread that steps the board, which waits for every task to finish.
+    // ForkJoinPool.invoke() makes the fields written before it visible to the tasks, and what they wrote visible to the
+    // board thread once it returns. While they run, each task only writes to its own fields and those of its stepper, to the slots of the balls in its
+    // islands and to members[] within its islands, and locks a gadget before it computes a collision time with the gadget's
+    // own code or bounces a ball off it, and the ball store before it bounces two balls off each other, since those use
+    // scratch space shared with other tasks
+
+    private void checkRep() {
+        assert gadgetMinX.length == gadgets.size() && hazardIndices.length == gadgets.size();
+        assert ballCount <= parent.length && members.length == parent.length;
+        assert islandStart[0] == 0 && islandFill.length == islandStart.length;
+        for (int k = 0; k < islandCount; k++) {
+            assert islandStart[k] < islandStart[k + 1];
+        }
+        assert running.size() <= steps.size();
+    }
+
+    /**
+     * Creates an empty partition for the balls of a board
+     * @param gadgets the gadgets of the board
+     * @param grid spatial index over gadgets
+     * @param tables the compiled geometry of gadgets
+     * @param metrics the board's metrics, which receive the collisions of the islands
+     */
+    public Islands(List<Gadget> gadgets, GadgetGrid grid, GadgetTables tables, FrameMetrics metrics) {
+        this.gadgets = gadgets;
+        this.grid = grid;
+        this.tables = tables;
+        this.metrics = metrics;
+        int gadgetCount = gadgets.size();
+        this.gadgetMinX = new double[gadgetCount];
+        this.gadgetMinY = new double[gadgetCount];
+        this.gadgetMaxX = new double[gadgetCount];
+        this.gadgetMaxY = new double[gadgetCount];
+        for (int i = 0; i < gadgetCount; i++) {
+            Gadget gadget = gadgets.get(i);
+            Rectangle2D bounds = gadget.bounds();
+            gadgetMinX[i] = bounds.getMinX();
+            gadgetMinY[i] = bounds.getMinY();
+            gadgetMaxX[i] = bounds.getMaxX();
+            gadgetMaxY[i] = bounds.getMaxY();
+        }
+        this.hazardIndices = new int[gadgetCount];
+        this.ballCount = 0;
+        resize(0);
+        this.islandStart = new int[1];
+        this.islandFill = new int[1];
+        this.islandCount = 0;
+        this.steps = new ArrayList<>();
+        this.running = new ArrayList<>();
+        this.root = new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override protected void compute() {
+                ForkJoinTask.invokeAll(running);
+            }
+        };
+        checkRep();
+    }
+
+    /**
+     * Makes the per-ball arrays hold the given number of balls
+     */
+    private void resize(int capacity) {
+        parent = new int[capacity];
+        energy = new double[capacity];
+        order = new int[capacity];
+        minX = new double[capacity];
+        maxX = new double[capacity];
+        minY = new double[capacity];
+        maxY = new double[capacity];
+        islandOf = new int[capacity];
+        members = new int[capacity];
+    }
+
+    /**
+     * Splits the active balls of a store into islands for the next frame
+     * @param store the balls of the board
+     * @param frameLength length of the frame
+     * @param hazards hazards[i] is true iff gadget i can change the board beyond the ball that hits it
+     * @return the number of islands, or 0 if the frame cannot be split, since a ball could reach a hazard or
+     *         a parked ball within it
+     */
+    public int partition(BallStore store, double frameLength, boolean[] hazards) {
+        int count = store.size();
+        int active = store.activeCount();
+        if (parent.length < count) {
+            resize(Math.max(count, 2*parent.length));
+        }
+        if (count != ballCount) {
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            ballCount = count;
+        }
+        islandCount = 0;
+        int components = active;
+        for (int i = 0; i < count; i++) {
+            parent[i] = i;
+            energy[i] = i < active ? store.xVel[i]*store.xVel[i] + store.yVel[i]*store.yVel[i] : 0;
+        }
+        // Merge the islands whose boxes overlap until none do, growing the boxes of merged islands
+        boolean merged = true;
+        while (merged && components > 1) {
+            merged = false;
+            for (int i = 0; i < count; i++) {
+                double reach = i < active ? Math.sqrt(energy[find(i)]) * frameLength * (1 + REACH_MARGIN) : 0;
+                reach += store.radius[i];
+                minX[i] = store.x[i] - reach;
+                maxX[i] = store.x[i] + reach;
+                minY[i] = store.y[i] - reach;
+                maxY[i] = store.y[i] + reach;
+            }
+            sortByMinX(count);
+            for (int a = 0; a < count && components > 1; a++) {
+                int i = order[a];
+                for (int c = a + 1; c < count && minX[order[c]] <= maxX[i]; c++) {
+                    int j = order[c];
+                    if (minY[j] > maxY[i] || maxY[j] < minY[i] || (i >= active && j >= active)) {
+                        continue;
+                    }
+                    if (i >= active || j >= active) {
+                        return 0;
+                    }
+                    if (union(i, j)) {
+                        merged = true;
+                        components--;
+                    }
+                }
+            }
+        }
+        if (components <= 1) {
+            return components;
+        }
+        // Give up on the frame if any ball could reach a hazard
+        int hazardCount = 0;
+        for (int g = 0; g < hazards.length; g++) {
+            if (hazards[g]) {
+                hazardIndices[hazardCount++] = g;
+            }
+        }
+        for (int i = 0; i < active; i++) {
+            for (int h = 0; h < hazardCount; h++) {
+                int g = hazardIndices[h];
+                if (minX[i] <= gadgetMaxX[g] && maxX[i] >= gadgetMinX[g] && minY[i] <= gadgetMaxY[g] && maxY[i] >= gadgetMinY[g]) {
+                    return 0;
+                }
+            }
+        }
+        // Number the islands, and list their balls island by island, each in slot order
+        if (islandStart.length < components + 1) {
+            islandStart = new int[Math.max(components + 1, 2*islandStart.length)];
+            islandFill = new int[islandStart.length];
+        }
+        islandStart[0] = 0;
+        for (int i = 0; i < active; i++) {
+            if (parent[i] == i) {
+                islandOf[i] = islandCount;
+                islandStart[++islandCount] = 0;
+            }
+        }
+        for (int i = 0; i < active; i++) {
+            islandStart[islandOf[find(i)] + 1]++;
+        }
+        for (int k = 0; k < islandCount; k++) {
+            islandStart[k + 1] += islandStart[k];
+            islandFill[k] = islandStart[k];
+        }
+        for (int i = 0; i < active; i++) {
+            members[islandFill[islandOf[find(i)]]++] = i;
+        }
+        checkRep();
+        return islandCount;
+    }
+
+    /**
+     * @return the root of the tree of ball i in the union-find forest, halving the path to it
+     */
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Merges the islands of balls i and j
+     * @return true iff they were in different islands
+     */
+    private boolean union(int i, int j) {
+        int rootI = find(i);
+        int rootJ = find(j);
+        if (rootI == rootJ) {
+            return false;
+        }
+        // keep the lower slot as the root, so islands are numbered the same way whatever order they merge in
+        int low = Math.min(rootI, rootJ);
+        int high = Math.max(rootI, rootJ);
+        parent[high] = low;
+        energy[low] += energy[high];
+        return true;
+    }
+
+    /**
+     * Sorts order[0..count) by increasing minX with an insertion sort, which is quick on the order
+     * left by the previous frame
+     */
+    private void sortByMinX(int count) {
+        for (int k = 1; k < count; k++) {
+            int ball = order[k];
+            double key = minX[ball];
+            int j = k;
+            for (; j > 0 && minX[order[j - 1]] > key; j--) {
+                order[j] = order[j - 1];
+            }
+            order[j] = ball;
+        }
+    }
+
+    /**
+     * @return the number of islands found by the last call to partition()
+     */
+    public int islandCount() {
+        return islandCount;
+    }
+
+    /**
+     * Steps every island through the frame, each on its own. The board must not be changed
+     * between the call to partition() that found the islands and this call.
+     * @param pool the pool to step the islands on, or null to step them one after the other on this thread
+     * @param store the ball store partition() was called with
+     * @param frameLength the length of the frame partition() was called with
+     * @param batchWindow how close in time collisions must be to be processed together, as CollisionSet.setWindow
+     */
+    public void step(ForkJoinPool pool, BallStore store, double frameLength, double batchWindow) {
+        int taskCount = pool == null ? 1 : Math.max(1, Math.min(islandCount, pool.getParallelism() * TASKS_PER_THREAD));
+        while (steps.size() < taskCount) {
+            steps.add(new Step());
+        }
+        this.balls = store;
+        this.frameTime = frameLength;
+        running.clear();
+        // give each task the islands that start within its share of the balls
+        int ballTotal = islandStart[islandCount];
+        int island = 0;
+        for (int t = 0; t < taskCount; t++) {
+            Step step = steps.get(t);
+            step.reinitialize();
+            step.stepper.set.setWindow(batchWindow);
+            step.firstIsland = island;
+            long end = (long) ballTotal * (t + 1) / taskCount;
+            while (island < islandCount && islandStart[island] < end) {
+                island++;
+            }
+            step.endIsland = island;
+            running.add(step);
+        }
+        if (pool == null) {
+            running.get(0).stepIslands();
+        } else {
+            root.reinitialize();
+            pool.invoke(root);
+        }
+        this.balls = null;
+        checkRep();
+    }
+
+    /**
+     * @return the largest number of sub-steps any island took in the last call to step()
+     */
+    public long subSteps() {
+        long most = 0;
+        for (Step step : running) {
+            most = Math.max(most, step.subSteps);
+        }
+        return most;
+    }
+
+    /**
+     * @return the number of collisions processed early within the batch window in the last call to step()
+     */
+    public long subStepsSaved() {
+        long total = 0;
+        for (Step step : running) {
+            total += step.subStepsSaved;
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of collision times computed in the last call to step()
+     */
+    public long narrowPhaseTests() {
+        long total = 0;
+        for (Step step : running) {
+            total += step.tests;
+        }
+        return total;
+    }
+
+    /**
+     * @return true iff the last call to step() stopped an island early for taking too many sub-steps,
+     *         as SubStepper does
+     */
+    public boolean capped() {
+        for (Step step : running) {
+            if (step.capped) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Steps a run of consecutive islands through the frame, with scratch space of its own
+     */
+    private class Step extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IslandStepper stepper = new IslandStepper();
+        private int firstIsland;
+        private int endIsland;
+        private long subSteps;
+        private long subStepsSaved;
+        private long tests;
+        private boolean capped;
+
+        // Abstraction Function
+        // AF(stepper, firstIsland, endIsland, subSteps, subStepsSaved, tests, capped) =
+        //      the stepping of islands [firstIsland, endIsland) with stepper, where the island with the most sub-steps took
+        //      subSteps of them, and the islands together processed subStepsSaved collisions early and computed tests
+        //      collision times. capped is true iff one of them was stopped early for taking too many sub-steps
+
+        // Rep Invariant
+        // firstIsland <= endIsland
+
+        @Override protected void compute() {
+            stepIslands();
+        }
+
+        /**
+         * Steps each island of this task through the frame
+         */
+        private void stepIslands() {
+            subSteps = 0;
+            subStepsSaved = 0;
+            tests = 0;
+            capped = false;
+            for (int island = firstIsland; island < endIsland; island++) {
+                stepper.first = islandStart[island];
+                stepper.end = islandStart[island + 1];
+                stepper.step(balls, frameTime);
+                subSteps = Math.max(subSteps, stepper.subSteps());
+                subStepsSaved += stepper.subStepsSaved();
+                tests += stepper.narrowPhaseTests();
+                capped |= stepper.capped();
+            }
+        }
+    }
+
+    /**
+     * Steps the balls in slots members[first..end) through the frame, as Board's SURVEY engine
+     * steps every ball of the board
+     */
+    private class IslandStepper extends SubStepper {
+
+        private final CollisionSet set;
+        private final GadgetGrid.Marks marks = grid.newMarks();
+        private final int[] candidates = new int[grid.size()];
+        private final Contact contact = new Contact();
+        private int first;
+        private int end;
+
+        // Abstraction Function
+        // AF(set, marks, candidates, contact, first, end) = the stepper of the island whose balls are in slots
+        //      members[first..end), which gathers its collisions in set. marks, candidates and contact are scratch space
+
+        // Rep Invariant
+        // first <= end
+
+        IslandStepper() {
+            this(new CollisionSet());
+        }
+
+        private IslandStepper(CollisionSet set) {
+            super(set);
+            this.set = set;
+        }
+
+        @Override long survey(double horizon) {
+            long tests = 0;
+            for (int k = first; k < end; k++) {
+                int b = members[k];
+                Ball ball = balls.view(b);
+                int candidateCount = grid.query(ball, horizon, candidates, marks);
+                tests += candidateCount;
+                for (int i = 0; i < candidateCount; i++) {
+                    int index = candidates[i];
+                    set.offerGadget(timeToCollide(index, ball, horizon, contact), index, b, contact);
+                }
+            }
+            return tests + surveyPairs(horizon);
+        }
+
+        /**
+         * Offers every collision between two balls of the island within the horizon, sweeping
+         * the boxes their circles cross along the x axis
+         * @return the number of collision times computed
+         */
+        private long surveyPairs(double horizon) {
+            long tests = 0;
+            for (int k = first; k < end; k++) {
+                int b = members[k];
+                double x = balls.x[b], y = balls.y[b], radius = balls.radius[b];
+                double endX = x + balls.xVel[b]*horizon, endY = y + balls.yVel[b]*horizon;
+                minX[b] = Math.min(x, endX) - radius;
+                maxX[b] = Math.max(x, endX) + radius;
+                minY[b] = Math.min(y, endY) - radius;
+                maxY[b] = Math.max(y, endY) + radius;
+            }
+            for (int k = first + 1; k < end; k++) {
+                int ball = members[k];
+                double key = minX[ball];
+                int j = k;
+                for (; j > first && minX[members[j - 1]] > key; j--) {
+                    members[j] = members[j - 1];
+                }
+                members[j] = ball;
+            }
+            for (int a = first; a < end; a++) {
+                int i = members[a];
+                for (int c = a + 1; c < end && minX[members[c]] <= maxX[i]; c++) {
+                    int j = members[c];
+                    if (minY[j] > maxY[i] || maxY[j] < minY[i]) {
+                        continue;
+                    }
+                    tests++;
+                    int low = Math.min(i, j);
+                    int high = Math.max(i, j);
+                    set.offerPair(balls.view(high).timeToCollide(balls.view(low)), low, high);
+                }
+            }
+            return tests;
+        }
+
+        @Override void move(double from, double time) {
+            for (int k = first; k < end; k++) {
+                balls.updatePosition(members[k], from, time);
+            }
+        }
+
+        @Override boolean isMoving(int gadget) {
+            // turning flippers are hazards, which no island can reach
+            return false;
+        }
+
+        /**
+         * @return the time until a ball hits a gadget, from the gadget's compiled geometry if it has any,
+         *         or from the gadget itself while holding its lock
+         */
+        @Override double timeToCollide(int index, Ball ball, double horizon, Contact ballContact) {
+            if (tables.isCompiled(index)) {
+                return tables.timeToCollide(index, ball.getX(), ball.getY(), ball.getRadius(),
+                        ball.getXVelocity(), ball.getYVelocity(), horizon, ballContact);
+            }
+            Gadget gadget = gadgets.get(index);
+            synchronized (gadget) {
+                return gadget.timeToCollide(ball, horizon, ballContact);
+            }
+        }
+
+        @Override void collide(int index, Ball ball, Contact ballContact) {
+            Gadget gadget = gadgets.get(index);
+            synchronized (gadget) {
+                gadget.collide(ball, ballContact);
+            }
+            metrics.recordCollision(gadget);
+        }
+
+        @Override void collide(Ball ball, Ball otherBall) {
+            synchronized (balls) {
+                ball.collide(otherBall);
+            }
+            metrics.recordBallCollision();
+        }
+    }
+
+    @Override public String toString() {
+        return "Islands[islandCount=" + islandCount + "]";
+    }
+}
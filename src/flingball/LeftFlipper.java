@@ -3,12 +3,12 @@ package flingball;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 
-import physics.Angle;
 import physics.LineSegment;
-import physics.Physics;
 import physics.Vect;
 
 /**
@@ -17,24 +17,40 @@ import physics.Vect;
  */
 public class LeftFlipper implements Gadget {
     
+    /** how fast the flipper turns, in radians per second */
+    private static final double ANGULAR_SPEED = 6*Math.PI;
+    
     private final Orientation orientation;
     private final String name;
     private final List<Gadget> triggers;
-    private LineSegment flipper;
-    private Angle curAngle;
+    private final Vect pivot;
+    private final double restX;
+    private final double restY;
+    private final PhysicsKernel.Vector reflected = new PhysicsKernel.Vector();
+    private final PhysicsKernel.RotatingWall rotating = new PhysicsKernel.RotatingWall();
+    private double angle;
+    private double tailX;
+    private double tailY;
     private SWEEP state;
     
     //Abstraction Function
-    // AF(name, orientation, flipper, curAngle, state, triggers) = a left flipper with name name, 
-    // orientation orientation (0/90/180/270), and a line segment representing the flipper. 
-    // In simulation state is held by curAngle and is rotated until terminal 0/90 degree states are reached, 
-    // activates the gadgets in triggers. 
+    // AF(name, orientation, pivot, restX, restY, angle, tailX, tailY, state, triggers) = a left flipper with name name, 
+    // orientation orientation (0/90/180/270), and a line segment representing the flipper from pivot to (tailX, tailY). 
+    // At rest the tail is at pivot + (restX, restY), and the flipper has turned counter-clockwise on the screen by angle radians from there.
+    // In simulation state is held by angle and is rotated until terminal 0/90 degree states are reached, 
+    // activates the gadgets in triggers. The flipper never leaves bounds() as it turns.
+    // reflected is scratch space that collide() computes the bounced velocity in,
+    // and rotating is scratch space for finding collisions while the flipper moves.
     
     //Rep Invariant
     // Angle is between zero and ninety degrees
+    // (tailX, tailY) is pivot + (restX, restY) turned counter-clockwise on the screen by angle
+    // angle is 0 when state is BDONE, and 90 degrees when state is FDONE
    
     private void checkRep() {
-        assert curAngle.compareTo(Angle.ZERO) >= 0 && curAngle.compareTo(Angle.DEG_90) <= 0;
+        assert angle >= 0 && angle <= Math.PI/2;
+        assert state != SWEEP.BDONE || angle == 0;
+        assert state != SWEEP.FDONE || angle == Math.PI/2;
     }
     
     /**
@@ -75,9 +91,12 @@ public class LeftFlipper implements Gadget {
             pivot = new Vect(0, 0);
             tail = new Vect(0, 0);
         }
-        flipper = new LineSegment(pivot, tail);
-        curAngle = new Angle(0.);
-        state = SWEEP.BDONE;
+        this.pivot = pivot;
+        this.restX = tail.x() - pivot.x();
+        this.restY = tail.y() - pivot.y();
+        this.state = SWEEP.BDONE;
+        turnTo(0);
+        checkRep();
     }
     
     public enum Orientation {
@@ -93,64 +112,162 @@ public class LeftFlipper implements Gadget {
     }
 
     @Override
-    public double timeToCollide(Ball ball, Double elapsedTime) {
-        Angle diff;
+    public double timeToCollide(Ball ball, double elapsedTime, Contact contact) {
+        double time = sweepTime(ball, elapsedTime);
+        // the whole flipper is one feature, since collide() reflects off it as it is at the time of the collision
+        contact.set(time, 0);
+        return time;
+    }
+    
+    /**
+     * @return the time until the ball hits the flipper as it turns, or POSITIVE_INFINITY if it
+     *         is out of reach within elapsedTime or never hits it
+     */
+    private double sweepTime(Ball ball, double elapsedTime) {
+        double x = ball.getX(), y = ball.getY(), radius = ball.getRadius();
+        double xVel = ball.getXVelocity(), yVel = ball.getYVelocity();
+        // wherever it turns, the flipper stays within its length of the pivot
+        if (PhysicsKernel.outOfReach(pivot.x(), pivot.y(), 2*Flingball.L, x, y, radius, xVel, yVel, elapsedTime)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (state == SWEEP.FDONE || state == SWEEP.BDONE) {
+            return PhysicsKernel.timeUntilWallCollision(pivot.x(), pivot.y(), tailX, tailY, x, y, radius, xVel, yVel);
+        }
+        double time = PhysicsKernel.timeUntilRotatingWallCollision(pivot.x(), pivot.y(), tailX, tailY,
+                pivot.x(), pivot.y(), angularVelocity(), x, y, radius, xVel, yVel, rotating);
+        // the flipper stops at the end of its sweep and stays there
+        double stop = (state == SWEEP.FORWARD ? Math.PI/2 - angle : angle) / ANGULAR_SPEED;
+        if (time <= stop) {
+            return time;
+        }
+        double endX, endY;
+        if (state == SWEEP.FORWARD) {
+            endX = pivot.x() + restY;
+            endY = pivot.y() - restX;
+        } else {
+            endX = pivot.x() + restX;
+            endY = pivot.y() + restY;
+        }
+        return stop + PhysicsKernel.timeUntilWallCollision(pivot.x(), pivot.y(), endX, endY,
+                x + xVel*stop, y + yVel*stop, radius, xVel, yVel);
+    }
+    
+    @Override
+    public void advance(double time) {
         switch(state) {
-        case FDONE:
-        case BDONE:
-            break;
         case FORWARD:
-            diff = new Angle(6*Math.PI*elapsedTime);
-            if (curAngle.plus(diff).compareTo(Angle.DEG_90) >= 0) {
-                diff = Angle.DEG_90.minus(curAngle);
+            if (angle + ANGULAR_SPEED*time >= Math.PI/2) {
                 state = SWEEP.FDONE;
-                curAngle = Angle.DEG_90;
+                turnTo(Math.PI/2);
             } else {
-                curAngle = curAngle.plus(diff);
+                turnTo(angle + ANGULAR_SPEED*time);
             }
-            flipper = Physics.rotateAround(flipper, flipper.p1(), Angle.ZERO.minus(diff));
             break;
         case BACK:
-            diff = new Angle(6*Math.PI*elapsedTime);
-            if (diff.compareTo(curAngle) >= 0) {
-                diff = curAngle;
+            if (ANGULAR_SPEED*time >= angle) {
                 state = SWEEP.BDONE;
-                curAngle = Angle.ZERO;
+                turnTo(0);
             } else {
-                curAngle = curAngle.minus(diff);
+                turnTo(angle - ANGULAR_SPEED*time);
             }
-            flipper = Physics.rotateAround(flipper, flipper.p1(), diff);
+            break;
+        default:
             break;
         }
         checkRep();
-        if (state == SWEEP.FDONE || state == SWEEP.BDONE) {
-            return Physics.timeUntilWallCollision(flipper, ball.getCircle(), ball.getVelocity());
+    }
+    
+    /**
+     * Turns the flipper counter-clockwise on the screen from rest to the given angle, computing its sine and cosine once
+     * @param newAngle angle in [0, pi/2]
+     */
+    private void turnTo(double newAngle) {
+        angle = newAngle;
+        double cos, sin;
+        if (newAngle == 0) {
+            cos = 1;
+            sin = 0;
+        } else if (newAngle == Math.PI/2) {
+            cos = 0;
+            sin = 1;
+        } else {
+            cos = Math.cos(newAngle);
+            sin = Math.sin(newAngle);
         }
-        else {
-            return Physics.timeUntilRotatingWallCollision(flipper, flipper.p1(), 6*Math.PI, ball.getCircle(), ball.getVelocity());
+        tailX = pivot.x() + restX*cos + restY*sin;
+        tailY = pivot.y() - restX*sin + restY*cos;
+    }
+    
+    /**
+     * @return the angle in radians, in [0, pi/2], that the flipper has turned counter-clockwise on the screen from rest
+     */
+    double angle() {
+        return angle;
+    }
+    
+    /**
+     * @return true iff the flipper is turning, rather than resting at either end of its sweep
+     */
+    boolean isTurning() {
+        return state == SWEEP.FORWARD || state == SWEEP.BACK;
+    }
+    
+    /**
+     * @return the flipper's angular velocity in radians per second, positive when it turns
+     *         clockwise on the screen, as PhysicsKernel expects
+     */
+    private double angularVelocity() {
+        switch(state) {
+        case FORWARD:
+            return -ANGULAR_SPEED;
+        case BACK:
+            return ANGULAR_SPEED;
+        default:
+            return 0;
         }
     }
       
     @Override
-    public String collide(Ball ball) {
-        if (state == SWEEP.FDONE || state == SWEEP.BDONE) {
-            ball.setVelocity(Physics.reflectWall(flipper, ball.getVelocity(), 0.95));
-        }
-        else {
-            ball.setVelocity(Physics.reflectRotatingWall(flipper, flipper.p1(), 6*Math.PI, ball.getCircle(), ball.getVelocity(), 0.95));
-        }
+    public Outcome collide(Ball ball, Contact contact) {
+        PhysicsKernel.reflectRotatingWall(pivot.x(), pivot.y(), tailX, tailY, pivot.x(), pivot.y(), angularVelocity(),
+                ball.getX(), ball.getY(), ball.getXVelocity(), ball.getYVelocity(), 0.95, reflected);
+        ball.setVelocity(reflected.x, reflected.y);
         for (Gadget trigger: triggers) {
             trigger.action();
         }
         checkRep();
-        return "";
+        return Outcome.STAY;
     }
     
     @Override
     public void render(Graphics2D graphic) {
+        render(graphic, pivot.x(), pivot.y(), tailX, tailY);
+    }
+    
+    /**
+     * Renders the flipper turned counter-clockwise on the screen from rest by the given angle,
+     * whatever angle it is at now
+     * @param graphic the drawing buffer to render on
+     * @param atAngle angle in [0, pi/2]
+     */
+    void render(Graphics2D graphic, double atAngle) {
+        double renderTailX = pivot.x() + restX*Math.cos(atAngle) + restY*Math.sin(atAngle);
+        double renderTailY = pivot.y() - restX*Math.sin(atAngle) + restY*Math.cos(atAngle);
+        render(graphic, pivot.x(), pivot.y(), renderTailX, renderTailY);
+    }
+    
+    /**
+     * Renders a flipper from its pivot to its tail
+     * @param graphic the drawing buffer to render on
+     * @param pivotX the x coordinate of the pivot
+     * @param pivotY the y coordinate of the pivot
+     * @param tailX the x coordinate of the tail
+     * @param tailY the y coordinate of the tail
+     */
+    private static void render(Graphics2D graphic, double pivotX, double pivotY, double tailX, double tailY) {
         graphic.setColor(Color.orange);
         graphic.setStroke(new BasicStroke((float) (.25*Flingball.L), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        graphic.draw(flipper.toLine2D()); 
+        graphic.draw(new Line2D.Double(pivotX, pivotY, tailX, tailY));
     }
     
     @Override
@@ -160,7 +277,20 @@ public class LeftFlipper implements Gadget {
     
     @Override
     public Vect position() {
-        return flipper.p1();
+        return pivot;
+    }
+    
+    @Override
+    public Rectangle2D bounds() {
+        // the flipper sweeps a quarter turn counter-clockwise about its pivot, from its rest position along one axis
+        // to the end of its sweep along the other, so the pivot and the two ends of the tail bound it
+        double endX = pivot.x() + restY;
+        double endY = pivot.y() - restX;
+        double minX = Math.min(pivot.x(), Math.min(pivot.x() + restX, endX));
+        double minY = Math.min(pivot.y(), Math.min(pivot.y() + restY, endY));
+        double maxX = Math.max(pivot.x(), Math.max(pivot.x() + restX, endX));
+        double maxY = Math.max(pivot.y(), Math.max(pivot.y() + restY, endY));
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
     }
     
     @Override
@@ -169,6 +299,11 @@ public class LeftFlipper implements Gadget {
         checkRep();
     }
     
+    @Override
+    public int triggerCount() {
+        return triggers.size();
+    }
+    
     @Override
     public void action() {
         switch(state) {
@@ -187,14 +322,16 @@ public class LeftFlipper implements Gadget {
      * @return LeftFlipper [orientation=orientation, name=name, flipper=flipper]
      */
     @Override public String toString() {
-        return "LeftFlipper [orientation=" + orientation + ", name=" + name + ", flipper=" + flipper + "]";
+        return "LeftFlipper [orientation=" + orientation + ", name=" + name + ", flipper="
+                + new LineSegment(pivot, new Vect(tailX, tailY)) + "]";
     }
 
     @Override public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((curAngle == null) ? 0 : curAngle.hashCode());
-        result = prime * result + ((flipper == null) ? 0 : flipper.hashCode());
+        result = prime * result + Double.hashCode(angle);
+        result = prime * result + Double.hashCode(tailX);
+        result = prime * result + Double.hashCode(tailY);
         result = prime * result + ((name == null) ? 0 : name.hashCode());
         result = prime * result + ((orientation == null) ? 0 : orientation.hashCode());
         result = prime * result + ((state == null) ? 0 : state.hashCode());
@@ -210,15 +347,13 @@ public class LeftFlipper implements Gadget {
         if (getClass() != obj.getClass())
             return false;
         LeftFlipper other = (LeftFlipper) obj;
-        if (curAngle == null) {
-            if (other.curAngle != null)
-                return false;
-        } else if (!curAngle.equals(other.curAngle))
+        if (Double.doubleToLongBits(angle) != Double.doubleToLongBits(other.angle))
             return false;
-        if (flipper == null) {
-            if (other.flipper != null)
-                return false;
-        } else if (!flipper.equals(other.flipper))
+        if (Double.doubleToLongBits(tailX) != Double.doubleToLongBits(other.tailX))
+            return false;
+        if (Double.doubleToLongBits(tailY) != Double.doubleToLongBits(other.tailY))
+            return false;
+        if (!pivot.equals(other.pivot))
             return false;
         if (name == null) {
             if (other.name != null)
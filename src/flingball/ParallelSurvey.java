@@ -0,0 +1,197 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A mutable survey of the next collisions on a board that spreads the work across the
+ * threads of a ForkJoinPool, for boards with enough balls to keep them all busy.
+ *
+ * The active balls, and the candidate pairs of balls the sweep has found, are split into
+ * contiguous chunks. Each chunk is surveyed by a task of its own into a CollisionSet of its own,
+ * with its own grid marks, candidate buffer and contact, so the tasks share nothing they write.
+ * The board's set is then offered the chunks' sets in chunk order, which leaves it exactly as
+ * surveying the balls one after the other would have, however many threads the pool has.
+ *
+ * Gadgets that are not compiled into the tables, such as flippers, keep scratch space of their
+ * own while they compute a collision time, so each one is locked while a ball is tested against it.
+ */
+class ParallelSurvey {
+
+    /** the fewest balls worth giving a chunk of their own */
+    private static final int MIN_CHUNK_BALLS = 16;
+    /** chunks per thread of the pool, so that a thread that finishes early can steal another chunk */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final List<Gadget> gadgets;
+    private final GadgetGrid grid;
+    private final GadgetTables tables;
+    private final List<Chunk> chunks;
+    private final List<Chunk> running;
+    private final RecursiveAction root;
+    private BallStore balls;
+    private SweepAndPrune sweep;
+    private double horizon;
+
+    // Abstraction Function
+    // AF(gadgets, grid, tables, chunks, running, root, balls, sweep, horizon) = a survey of the collisions
+    //      that happen within horizon between the active balls of balls and the gadgets, found through grid
+    //      and tables, and between the pairs of balls found by sweep, split into the tasks running, which
+    //      root runs together. chunks holds every task created so far, to be reused by later surveys
+
+    // Rep Invariant
+    // running is a prefix of chunks
+    // the ball ranges of running, and their pair ranges, are contiguous and in increasing order
+
+    // Rep Exposure Argument
+    // gadgets, grid and tables are aliases of the board's, which are only read here, apart from
+    //      the scratch space of uncompiled gadgets, which is only used while they are locked
+    // balls and sweep are aliases of the board's, which are only read while a survey is running
+    // chunks, running and root are never returned
+
+    // Thread Safety Argument
+    // survey() is only called from the thread that steps the board, which waits for every chunk to finish.
+    // ForkJoinPool.invoke() makes the fields written before it visible to the tasks, and what the tasks
+    // wrote visible to the board thread once it returns. While it runs, each chunk only writes to its own
+    // fields, reads balls, sweep, grid and tables, which nothing writes to, and locks an uncompiled gadget
+    // before it uses the gadget's scratch space
+
+    private void checkRep() {
+        assert running.size() <= chunks.size();
+        for (int k = 0; k < running.size(); k++) {
+            assert running.get(k) == chunks.get(k);
+        }
+    }
+
+    /**
+     * Creates a survey of the given gadgets
+     * @param gadgets the gadgets of the board
+     * @param grid spatial index over gadgets
+     * @param tables the compiled geometry of gadgets
+     */
+    public ParallelSurvey(List<Gadget> gadgets, GadgetGrid grid, GadgetTables tables) {
+        this.gadgets = gadgets;
+        this.grid = grid;
+        this.tables = tables;
+        this.chunks = new ArrayList<>();
+        this.running = new ArrayList<>();
+        this.root = new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override protected void compute() {
+                ForkJoinTask.invokeAll(running);
+            }
+        };
+        checkRep();
+    }
+
+    /**
+     * Finds the collisions among the active balls of a store, splitting the work across the threads of a pool
+     * @param pool the pool to run the survey on
+     * @param store the balls of the board
+     * @param ballSweep broadphase whose last call to findPairs() was on store, as it is now
+     * @param pairCount the number of pairs that call found
+     * @param surveyHorizon time left in the frame
+     * @param collisions empty set that receives every collision found, as the board's sequential survey would offer them
+     * @return the number of collision times computed, one for every candidate gadget of every ball and every pair
+     */
+    public long survey(ForkJoinPool pool, BallStore store, SweepAndPrune ballSweep, int pairCount, double surveyHorizon,
+            CollisionSet collisions) {
+        int ballCount = store.activeCount();
+        int chunkCount = Math.max(1, Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, ballCount / MIN_CHUNK_BALLS));
+        while (chunks.size() < chunkCount) {
+            chunks.add(new Chunk());
+        }
+        this.balls = store;
+        this.sweep = ballSweep;
+        this.horizon = surveyHorizon;
+        running.clear();
+        for (int k = 0; k < chunkCount; k++) {
+            Chunk chunk = chunks.get(k);
+            chunk.reinitialize();
+            chunk.set.setWindow(collisions.window());
+            chunk.firstBall = (int) ((long) ballCount * k / chunkCount);
+            chunk.endBall = (int) ((long) ballCount * (k + 1) / chunkCount);
+            chunk.firstPair = (int) ((long) pairCount * k / chunkCount);
+            chunk.endPair = (int) ((long) pairCount * (k + 1) / chunkCount);
+            running.add(chunk);
+        }
+        root.reinitialize();
+        pool.invoke(root);
+        long tests = 0;
+        for (Chunk chunk : running) {
+            collisions.offerAll(chunk.set);
+            tests += chunk.tests;
+        }
+        this.balls = null;
+        this.sweep = null;
+        checkRep();
+        return tests;
+    }
+
+    /**
+     * The survey of a contiguous range of the active balls and of the candidate pairs,
+     * with scratch space of its own
+     */
+    private class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CollisionSet set = new CollisionSet();
+        private final GadgetGrid.Marks marks = grid.newMarks();
+        private final int[] candidates = new int[grid.size()];
+        private final Contact contact = new Contact();
+        private int firstBall;
+        private int endBall;
+        private int firstPair;
+        private int endPair;
+        private long tests;
+
+        // Abstraction Function
+        // AF(set, marks, candidates, contact, firstBall, endBall, firstPair, endPair, tests) = the survey of the
+        //      balls in slots [firstBall, endBall) against the gadgets and of the pairs [firstPair, endPair) found by
+        //      the sweep, whose collisions are in set, which took tests collision times to find.
+        //      marks, candidates and contact are scratch space
+
+        // Rep Invariant
+        // firstBall <= endBall, firstPair <= endPair
+
+        @Override protected void compute() {
+            set.clear();
+            tests = 0;
+            for (int b = firstBall; b < endBall; b++) {
+                Ball ball = balls.view(b);
+                double x = balls.x[b], y = balls.y[b], radius = balls.radius[b];
+                double xVel = balls.xVel[b], yVel = balls.yVel[b];
+                int candidateCount = grid.query(ball, horizon, candidates, marks);
+                tests += candidateCount;
+                for (int i = 0; i < candidateCount; i++) {
+                    int index = candidates[i];
+                    double collisionTime;
+                    if (tables.isCompiled(index)) {
+                        collisionTime = tables.timeToCollide(index, x, y, radius, xVel, yVel, horizon, contact);
+                    } else {
+                        Gadget gadget = gadgets.get(index);
+                        synchronized (gadget) {
+                            collisionTime = gadget.timeToCollide(ball, horizon, contact);
+                        }
+                    }
+                    set.offerGadget(collisionTime, index, b, contact);
+                }
+            }
+            tests += endPair - firstPair;
+            for (int k = firstPair; k < endPair; k++) {
+                Ball ball = sweep.first(k);
+                Ball ball2 = sweep.second(k);
+                set.offerPair(ball2.timeToCollide(ball), ball.slot(), ball2.slot());
+            }
+        }
+    }
+
+    @Override public String toString() {
+        return "ParallelSurvey[chunks=" + chunks.size() + "]";
+    }
+}
@@ -0,0 +1,1195 @@
+package flingball;
+
+import java.util.Arrays;
+
+import physics.Circle;
+import physics.LineSegment;
+
+/**
+ * Collision math for the simulation on primitive doubles.
+ *
+ * The methods compute the same quantities as the matching methods of physics.Physics,
+ * step for step, but take positions, velocities and radii as doubles and write vector
+ * results into a Vector given by the caller, so asking for a collision time or a
+ * reflected velocity never allocates.
+ */
+final class PhysicsKernel {
+
+    /**
+     * A mutable 2D vector that receives the result of a kernel method.
+     */
+    static final class Vector {
+        double x;
+        double y;
+    }
+
+    /**
+     * Mutable scratch space for the collision of a ball with a line segment rotating around
+     * a fixed point. It holds the geometry of the query in progress and the distance function
+     * last evaluated, so that searching for the collision time never allocates.
+     */
+    static final class RotatingWall {
+        private double centerX;
+        private double centerY;
+        private double omega;
+        private double radius1;
+        private double radius2;
+        private double phi1;
+        private double phi2;
+        private double ballX;
+        private double ballY;
+        private double ballRadius;
+        private double xVel;
+        private double yVel;
+        /** squared distance from the ball's center to the segment minus the squared radius of the ball */
+        private double f;
+        /** derivative of f with respect to time */
+        private double fPrime;
+        /** times at which a moving point crosses a circle, set by circleCrossings() */
+        private double crossing1;
+        private double crossing2;
+        /** the times to search for a collision */
+        private final Intervals intervals = new Intervals();
+        /** second set of times, for when the ball passes through the middle of the swept circle */
+        private final Intervals otherIntervals = new Intervals();
+    }
+
+    /**
+     * Mutable set of disjoint closed intervals of time, as physics.jar's IntervalList,
+     * kept in arrays that only grow so that searching allocates nothing.
+     */
+    private static final class Intervals {
+        private double[] starts = new double[8];
+        private double[] ends = new double[8];
+        private int count;
+
+        // Abstraction Function
+        // AF(starts, ends, count) = the union of [starts[i], ends[i]] for 0 <= i < count
+
+        // Rep Invariant
+        // starts[i] <= ends[i] for 0 <= i < count
+        // after canonicalize(), starts[0..count) is increasing and no two intervals overlap
+
+        private void set(double start, double end) {
+            count = 0;
+            append(start, end);
+        }
+
+        private void clear() {
+            count = 0;
+        }
+
+        private void copyFrom(Intervals that) {
+            count = 0;
+            for (int i = 0; i < that.count; i++) {
+                append(that.starts[i], that.ends[i]);
+            }
+        }
+
+        private void append(double start, double end) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, 2*count);
+                ends = Arrays.copyOf(ends, 2*count);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        private static boolean overlaps(double start1, double end1, double start2, double end2) {
+            return start1 <= start2 ? !(start2 > end1) : !(start1 > end2);
+        }
+
+        /** sorts by start, keeping ties in order, and merges overlapping intervals */
+        private void canonicalize() {
+            for (int i = 1; i < count; i++) {
+                double start = starts[i];
+                double end = ends[i];
+                int j = i - 1;
+                while (j >= 0 && starts[j] > start) {
+                    starts[j + 1] = starts[j];
+                    ends[j + 1] = ends[j];
+                    j--;
+                }
+                starts[j + 1] = start;
+                ends[j + 1] = end;
+            }
+            int merged = 0;
+            for (int i = 1; i < count; i++) {
+                if (overlaps(starts[merged], ends[merged], starts[i], ends[i])) {
+                    ends[merged] = Math.max(ends[merged], ends[i]);
+                } else {
+                    merged++;
+                    starts[merged] = starts[i];
+                    ends[merged] = ends[i];
+                }
+            }
+            count = Math.min(count, merged + 1);
+        }
+
+        /** removes the times in [start, end], which must not be empty */
+        private void remove(double start, double end) {
+            int original = count;
+            int kept = 0;
+            for (int i = 0; i < original; i++) {
+                double currentStart = starts[i];
+                double currentEnd = ends[i];
+                if (!overlaps(currentStart, currentEnd, start, end)) {
+                    starts[kept] = currentStart;
+                    ends[kept] = currentEnd;
+                    kept++;
+                } else if (start > currentStart) {
+                    starts[kept] = currentStart;
+                    ends[kept] = start;
+                    kept++;
+                    if (end < currentEnd) {
+                        // the second piece goes after every original interval until they are compacted
+                        append(end, currentEnd);
+                    }
+                } else if (end < currentEnd) {
+                    starts[kept] = end;
+                    ends[kept] = currentEnd;
+                    kept++;
+                }
+            }
+            for (int i = original; i < count; i++) {
+                starts[kept] = starts[i];
+                ends[kept] = ends[i];
+                kept++;
+            }
+            count = kept;
+            canonicalize();
+        }
+
+        /** keeps only the times in [start, end] */
+        private void restrictTo(double start, double end) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (overlaps(starts[i], ends[i], start, end)) {
+                    starts[kept] = Math.max(starts[i], start);
+                    ends[kept] = Math.min(ends[i], end);
+                    kept++;
+                }
+            }
+            count = kept;
+        }
+
+        /** shortens every interval that is longer than length to its first length of time */
+        private void restrictLength(double length) {
+            for (int i = 0; i < count; i++) {
+                if (!Double.isInfinite(starts[i])
+                        && (Double.isInfinite(ends[i]) || ends[i] - starts[i] > length)) {
+                    ends[i] = starts[i] + length;
+                }
+            }
+        }
+
+        private void addAll(Intervals that) {
+            for (int i = 0; i < that.count; i++) {
+                append(that.starts[i], that.ends[i]);
+            }
+            canonicalize();
+        }
+    }
+
+    /** number of steps each search interval is split into when looking for a rotating collision */
+    private static final int SEARCH_SLICES = 15;
+    /** maximum number of Newton iterations when refining a rotating collision time */
+    private static final int MAX_NEWTON_STEPS = 30;
+    /** Newton's method stops once successive times are closer than this */
+    private static final double NEWTON_EPSILON = 0.000000001;
+    /** added to a ball's reach, so that rounding in the collision solvers never touches a pruned gadget */
+    private static final double REACH_SLACK = 0.000001;
+
+    private PhysicsKernel() {
+        throw new AssertionError("not instantiable");
+    }
+
+    /**
+     * @return the smaller solution of a*t^2 + b*t + c = 0, or NaN if there is none,
+     *         as physics.Physics.minQuadraticSolution
+     */
+    static double minQuadraticSolution(double a, double b, double c) {
+        if (a == 0.0) {
+            if (b == 0.0) {
+                return Double.NaN;
+            }
+            return -c/b;
+        }
+        double discriminant = (b * b) - (4.0 * a * c);
+        if (discriminant < 0.0) {
+            return Double.NaN;
+        }
+        double sqrt = Math.sqrt(discriminant);
+        double twoA = 2.0 * a;
+        if (a > 0) {
+            return (-b - sqrt)/twoA;
+        }
+        return (-b + sqrt)/twoA;
+    }
+
+    /**
+     * Time until a ball hits a line segment with no thickness, as physics.Physics.timeUntilWallCollision
+     *
+     * @param x1 x coordinate of the first end of the segment
+     * @param y1 y coordinate of the first end of the segment
+     * @param x2 x coordinate of the second end of the segment
+     * @param y2 y coordinate of the second end of the segment
+     * @param a x coordinate of the ball's center
+     * @param b y coordinate of the ball's center
+     * @param radius radius of the ball
+     * @param va x velocity of the ball
+     * @param vb y velocity of the ball
+     * @return the time until the collision, or POSITIVE_INFINITY if there is none
+     */
+    static double timeUntilWallCollision(double x1, double y1, double x2, double y2,
+            double a, double b, double radius, double va, double vb) {
+        double width = x2 - x1;
+        double height = y2 - y1;
+        double f = (va * height) - (vb * width);
+        double g = (a * height) - (b * width) + ((x2 * y1) - (x1 * y2));
+        double h = (width * width) + (height * height);
+        double collisionTime = minQuadraticSolution(f * f, 2.0 * f * g, (g * g) - (radius * radius * h));
+        if (Double.isNaN(collisionTime)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        // the point of the segment closest to the ball's center at the collision
+        double cX = a + (collisionTime * va);
+        double cY = b + (collisionTime * vb);
+        double minS = ((width * (cX - x1)) + (height * (cY - y1))) / ((width * width) + (height * height));
+        if (!((0.0 <= minS) && (minS < 1.0))) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (collisionTime > 0) {
+            return collisionTime;
+        }
+        // the ball overlaps the segment, so it only collides if it is moving toward it
+        double impactX = x1 + minS * width;
+        double impactY = y1 + minS * height;
+        if (va * (a - impactX) + vb * (b - impactY) >= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return 0;
+    }
+
+    /**
+     * Time until a ball hits a line segment, as timeUntilWallCollision above
+     * @param line the segment
+     * @param x x coordinate of the ball's center
+     * @param y y coordinate of the ball's center
+     * @param radius radius of the ball
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @return the time until the collision, or POSITIVE_INFINITY if there is none
+     */
+    static double timeUntilWallCollision(LineSegment line, double x, double y, double radius, double xVel, double yVel) {
+        return timeUntilWallCollision(line.p1().x(), line.p1().y(), line.p2().x(), line.p2().y(),
+                x, y, radius, xVel, yVel);
+    }
+
+    /**
+     * Time until a ball hits a fixed circle, as physics.Physics.timeUntilCircleCollision
+     *
+     * @param cx x coordinate of the circle's center
+     * @param cy y coordinate of the circle's center
+     * @param circleRadius radius of the circle
+     * @param a x coordinate of the ball's center
+     * @param b y coordinate of the ball's center
+     * @param radius radius of the ball
+     * @param va x velocity of the ball
+     * @param vb y velocity of the ball
+     * @return the time until the collision, or POSITIVE_INFINITY if there is none
+     */
+    static double timeUntilCircleCollision(double cx, double cy, double circleRadius,
+            double a, double b, double radius, double va, double vb) {
+        double distance = circleRadius + radius;
+        double width = a - cx;
+        double height = b - cy;
+        double ans = minQuadraticSolution((va * va) + (vb * vb),
+                2.0 * ((va * width) + (vb * height)),
+                (width * width) + (height * height) - (distance * distance));
+        if (Double.isNaN(ans)) {
+            return Double.POSITIVE_INFINITY;
+        } else if (ans <= 0) {
+            // the ball overlaps the circle, so it only collides if it is moving toward it
+            if ((a - cx) * va + (b - cy) * vb >= 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return 0;
+        }
+        return ans;
+    }
+
+    /**
+     * Time until a ball hits a fixed circle, as timeUntilCircleCollision above
+     * @param circle the circle
+     * @param x x coordinate of the ball's center
+     * @param y y coordinate of the ball's center
+     * @param radius radius of the ball
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @return the time until the collision, or POSITIVE_INFINITY if there is none
+     */
+    static double timeUntilCircleCollision(Circle circle, double x, double y, double radius, double xVel, double yVel) {
+        return timeUntilCircleCollision(circle.getCenter().x(), circle.getCenter().y(), circle.getRadius(),
+                x, y, radius, xVel, yVel);
+    }
+
+    /**
+     * Tests whether a ball moving in a straight line stays clear of a box for the given time.
+     * A gadget inside the box cannot collide with the ball in that time, so its collision time
+     * does not need to be computed.
+     *
+     * @param minX left edge of the box
+     * @param minY top edge of the box
+     * @param maxX right edge of the box
+     * @param maxY bottom edge of the box
+     * @param x x coordinate of the ball's center
+     * @param y y coordinate of the ball's center
+     * @param radius radius of the ball
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param horizon the time the ball travels for, >= 0
+     * @return true if the ball cannot touch the box within horizon; false if it may
+     */
+    static boolean outOfReach(double minX, double minY, double maxX, double maxY,
+            double x, double y, double radius, double xVel, double yVel, double horizon) {
+        double endX = x + xVel * horizon;
+        double endY = y + yVel * horizon;
+        double reach = radius + REACH_SLACK;
+        // written so that a NaN from an infinite horizon counts as reachable
+        return Math.min(x, endX) - reach > maxX || Math.max(x, endX) + reach < minX
+                || Math.min(y, endY) - reach > maxY || Math.max(y, endY) + reach < minY;
+    }
+
+    /**
+     * Tests whether a ball moving in a straight line stays clear of a circle for the given time,
+     * as outOfReach above for a gadget inside the circle
+     *
+     * @param cx x coordinate of the circle's center
+     * @param cy y coordinate of the circle's center
+     * @param circleRadius radius of the circle
+     * @param x x coordinate of the ball's center
+     * @param y y coordinate of the ball's center
+     * @param radius radius of the ball
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param horizon the time the ball travels for, >= 0
+     * @return true if the ball cannot touch the circle within horizon; false if it may
+     */
+    static boolean outOfReach(double cx, double cy, double circleRadius,
+            double x, double y, double radius, double xVel, double yVel, double horizon) {
+        double reach = circleRadius + radius + Math.sqrt(xVel * xVel + yVel * yVel) * horizon + REACH_SLACK;
+        double width = x - cx;
+        double height = y - cy;
+        return width * width + height * height > reach * reach;
+    }
+
+    /**
+     * Time until two moving balls touch, as physics.Physics.timeUntilBallBallCollision
+     *
+     * @return the time until the collision, or POSITIVE_INFINITY if there is none
+     */
+    static double timeUntilBallBallCollision(double x1, double y1, double radius1, double xVel1, double yVel1,
+            double x2, double y2, double radius2, double xVel2, double yVel2) {
+        double sizes = radius1 + radius2;
+        double initPosXDelta = x1 - x2;
+        double initPosYDelta = y1 - y2;
+        double velXDelta = xVel1 - xVel2;
+        double velYDelta = yVel1 - yVel2;
+        double sizes2 = sizes * sizes;
+        double initPosXDelta2 = initPosXDelta * initPosXDelta;
+        double initPosYDelta2 = initPosYDelta * initPosYDelta;
+        double initGap2 = initPosXDelta2 + initPosYDelta2 - sizes2;
+        if (initGap2 <= 0.0) {
+            // the balls overlap, so they only collide if they are moving toward each other
+            if (velXDelta * initPosXDelta + velYDelta * initPosYDelta < 0.0) {
+                return 0.0;
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+        double t = minQuadraticSolution(velXDelta * velXDelta + velYDelta * velYDelta,
+                2 * initPosXDelta * velXDelta + 2 * initPosYDelta * velYDelta,
+                initPosXDelta2 + initPosYDelta2 - sizes2);
+        if (t > 0) {
+            return t;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Time until a ball hits a line segment rotating around a fixed point at a constant angular
+     * velocity, as physics.Physics.timeUntilRotatingWallCollision.
+     *
+     * Like physics.jar, the search only considers the times the ball can be within reach of the
+     * segment, at most two revolutions of it, and refines candidate times with Newton's method,
+     * so the ball hitting the segment's ends is not detected.
+     *
+     * @param line the segment at time 0
+     * @param centerX x coordinate of the center of rotation
+     * @param centerY y coordinate of the center of rotation
+     * @param angularVelocity the angular velocity of the segment in radians per second, counterclockwise
+     *                        in board coordinates when positive
+     * @param x x coordinate of the ball's center
+     * @param y y coordinate of the ball's center
+     * @param radius radius of the ball
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param scratch scratch space for the search
+     * @return the time until the collision, or POSITIVE_INFINITY if there is none
+     */
+    static double timeUntilRotatingWallCollision(LineSegment line, double centerX, double centerY, double angularVelocity,
+            double x, double y, double radius, double xVel, double yVel, RotatingWall scratch) {
+        return timeUntilRotatingWallCollision(line.p1().x(), line.p1().y(), line.p2().x(), line.p2().y(),
+                centerX, centerY, angularVelocity, x, y, radius, xVel, yVel, scratch);
+    }
+
+    /**
+     * Time until a ball hits a rotating line segment, as timeUntilRotatingWallCollision above
+     * @param x1 x coordinate of one end of the segment at time 0
+     * @param y1 y coordinate of that end
+     * @param x2 x coordinate of the other end of the segment at time 0
+     * @param y2 y coordinate of that end
+     * @param centerX x coordinate of the center of rotation
+     * @param centerY y coordinate of the center of rotation
+     * @param angularVelocity the angular velocity of the segment in radians per second
+     * @param x x coordinate of the ball's center
+     * @param y y coordinate of the ball's center
+     * @param radius radius of the ball
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param scratch scratch space for the search
+     * @return the time until the collision, or POSITIVE_INFINITY if there is none
+     */
+    static double timeUntilRotatingWallCollision(double x1, double y1, double x2, double y2,
+            double centerX, double centerY, double angularVelocity,
+            double x, double y, double radius, double xVel, double yVel, RotatingWall scratch) {
+        if (angularVelocity == 0.0) {
+            return timeUntilWallCollision(x1, y1, x2, y2, x, y, radius, xVel, yVel);
+        }
+        scratch.centerX = centerX;
+        scratch.centerY = centerY;
+        scratch.omega = angularVelocity;
+        scratch.radius1 = Math.sqrt((centerX-x1)*(centerX-x1) + (centerY-y1)*(centerY-y1));
+        scratch.radius2 = Math.sqrt((centerX-x2)*(centerX-x2) + (centerY-y2)*(centerY-y2));
+        scratch.phi1 = Math.atan2(y1 - centerY, x1 - centerX);
+        scratch.phi2 = Math.atan2(y2 - centerY, x2 - centerX);
+        scratch.ballX = x;
+        scratch.ballY = y;
+        scratch.ballRadius = radius;
+        scratch.xVel = xVel;
+        scratch.yVel = yVel;
+
+        // a ball already overlapping the segment collides iff it is moving toward it
+        evaluateRotatingWall(scratch, 0);
+        if (scratch.f <= 0) {
+            return scratch.fPrime >= 0 ? Double.POSITIVE_INFINITY : 0;
+        }
+
+        // the segment sweeps out a ring around the center of rotation
+        double outerRadius = Math.max(scratch.radius1, scratch.radius2);
+        double innerRadius = Math.min(scratch.radius1, scratch.radius2);
+        double width = x2 - x1;
+        double height = y2 - y1;
+        double fraction = ((width * (centerX - x1)) + (height * (centerY - y1))) / ((height * height) + (width * width));
+        if (!(fraction < 0 || fraction > 1)) {
+            double closestX = (x1 + fraction * width) - centerX;
+            double closestY = (y1 + fraction * height) - centerY;
+            innerRadius = Math.sqrt((closestX * closestX) + (closestY * closestY));
+        }
+
+        scratch.intervals.set(0, Double.POSITIVE_INFINITY);
+        restrictSearchInterval(scratch, innerRadius, outerRadius);
+        Intervals intervals = scratch.intervals;
+        for (int i = 0; i < intervals.count; i++) {
+            double start = intervals.starts[i];
+            double end = intervals.ends[i];
+            if (start < 0) {
+                if (end < 0) {
+                    continue;
+                }
+                start = 0;
+            }
+            if (end < start) {
+                continue;
+            }
+            double root = findRoot(scratch, start, end, (end - start) / SEARCH_SLICES);
+            if (root >= 0) {
+                // only a collision if the ball is moving into the segment at that time
+                evaluateRotatingWall(scratch, root);
+                return scratch.fPrime < 0 ? root : Double.POSITIVE_INFINITY;
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Reflects a velocity off a line segment rotating around a fixed point, as
+     * physics.Physics.reflectRotatingWall. The ball must be touching the segment.
+     *
+     * @param line the segment at the time of the collision
+     * @param centerX x coordinate of the center of rotation
+     * @param centerY y coordinate of the center of rotation
+     * @param angularVelocity the angular velocity of the segment in radians per second
+     * @param x x coordinate of the ball's center
+     * @param y y coordinate of the ball's center
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param reflectionCoeff the coefficient of reflection
+     * @param reflected receives the velocity after the collision
+     */
+    static void reflectRotatingWall(LineSegment line, double centerX, double centerY, double angularVelocity,
+            double x, double y, double xVel, double yVel, double reflectionCoeff, Vector reflected) {
+        reflectRotatingWall(line.p1().x(), line.p1().y(), line.p2().x(), line.p2().y(), centerX, centerY,
+                angularVelocity, x, y, xVel, yVel, reflectionCoeff, reflected);
+    }
+
+    /**
+     * Reflects a velocity off a rotating line segment, as reflectRotatingWall above
+     * @param lineX1 x coordinate of one end of the segment at the time of the collision
+     * @param lineY1 y coordinate of that end
+     * @param lineX2 x coordinate of the other end of the segment at the time of the collision
+     * @param lineY2 y coordinate of that end
+     * @param centerX x coordinate of the center of rotation
+     * @param centerY y coordinate of the center of rotation
+     * @param angularVelocity the angular velocity of the segment in radians per second
+     * @param x x coordinate of the ball's center
+     * @param y y coordinate of the ball's center
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param reflectionCoeff the coefficient of reflection
+     * @param reflected receives the velocity after the collision
+     */
+    static void reflectRotatingWall(double lineX1, double lineY1, double lineX2, double lineY2,
+            double centerX, double centerY, double angularVelocity,
+            double x, double y, double xVel, double yVel, double reflectionCoeff, Vector reflected) {
+        if (angularVelocity == 0.0) {
+            reflectWall(lineX1, lineY1, lineX2, lineY2, xVel, yVel, reflectionCoeff, reflected);
+            return;
+        }
+        // move the center of rotation to the origin
+        double x1 = lineX1 - centerX, y1 = lineY1 - centerY;
+        double x2 = lineX2 - centerX, y2 = lineY2 - centerY;
+        double a = x - centerX, b = y - centerY;
+        // the point of the segment the ball touches
+        double height = y2 - y1;
+        double width = x2 - x1;
+        double fraction = ((width * (a - x1)) + (height * (b - y1))) / ((height * height) + (width * width));
+        if (fraction < 0 || fraction > 1) {
+            reflected.x = xVel;
+            reflected.y = yVel;
+            return;
+        }
+        double touchX = (x1 + fraction * width) * angularVelocity;
+        double touchY = (y1 + fraction * height) * angularVelocity;
+        // velocity of that point, perpendicular to the arm from the center of rotation
+        double wallXVel = 0.0;
+        double wallYVel = 0.0;
+        double r = Math.sqrt((touchX * touchX) + (touchY * touchY));
+        if (r != 0.0) {
+            double cos = touchX / r;
+            double sin = touchY / r;
+            double turnedCos = (cos * 0.0) - (sin * 1.0);
+            double turnedSin = (sin * 0.0) + (cos * 1.0);
+            double turned = Math.sqrt((turnedCos * turnedCos) + (turnedSin * turnedSin));
+            wallXVel = r * (turnedCos / turned);
+            wallYVel = r * (turnedSin / turned);
+        }
+        // reflect in the frame of reference of the moving wall, then move back
+        double relativeXVel = xVel - wallXVel;
+        double relativeYVel = yVel - wallYVel;
+        double length = Math.sqrt((relativeXVel * relativeXVel) + (relativeYVel * relativeYVel));
+        if (length == 0.0) {
+            reflected.x = relativeXVel;
+            reflected.y = relativeYVel;
+        } else {
+            r = Math.sqrt((width * width) + (height * height));
+            reflectAngle(width / r, height / r, relativeXVel, relativeYVel, length, reflected);
+        }
+        applyReflectionCoeff(relativeXVel, relativeYVel, reflectionCoeff, reflected);
+        reflected.x = wallXVel + reflected.x;
+        reflected.y = wallYVel + reflected.y;
+    }
+
+    /**
+     * Reflects a velocity off a line segment, as physics.Physics.reflectWall
+     *
+     * @param line the segment, which must have nonzero length
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param reflected receives the velocity after the collision
+     */
+    static void reflectWall(LineSegment line, double xVel, double yVel, Vector reflected) {
+        reflectWall(line.p1().x(), line.p1().y(), line.p2().x(), line.p2().y(), xVel, yVel, reflected);
+    }
+
+    /**
+     * Reflects a velocity off a line segment, as reflectWall above
+     * @param x1 x coordinate of one end of the segment
+     * @param y1 y coordinate of that end
+     * @param x2 x coordinate of the other end, which must differ from the first
+     * @param y2 y coordinate of the other end
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param reflected receives the velocity after the collision
+     */
+    static void reflectWall(double x1, double y1, double x2, double y2, double xVel, double yVel, Vector reflected) {
+        double length = Math.sqrt((xVel * xVel) + (yVel * yVel));
+        if (length == 0.0) {
+            reflected.x = xVel;
+            reflected.y = yVel;
+            return;
+        }
+        double width = x2 - x1;
+        double height = y2 - y1;
+        double r = Math.sqrt((width * width) + (height * height));
+        // outgoing angle is twice the angle of the wall minus the incoming angle
+        reflectAngle(width / r, height / r, xVel, yVel, length, reflected);
+    }
+
+    /**
+     * Reflects a velocity off a line segment and applies a coefficient of reflection,
+     * as physics.Physics.reflectWall
+     *
+     * @param line the segment, which must have nonzero length
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param reflectionCoeff the coefficient of reflection
+     * @param reflected receives the velocity after the collision
+     */
+    static void reflectWall(LineSegment line, double xVel, double yVel, double reflectionCoeff, Vector reflected) {
+        reflectWall(line, xVel, yVel, reflected);
+        applyReflectionCoeff(xVel, yVel, reflectionCoeff, reflected);
+    }
+
+    /**
+     * Reflects a velocity off a line segment and applies a coefficient of reflection, as reflectWall above
+     * @param x1 x coordinate of one end of the segment
+     * @param y1 y coordinate of that end
+     * @param x2 x coordinate of the other end, which must differ from the first
+     * @param y2 y coordinate of the other end
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param reflectionCoeff the coefficient of reflection
+     * @param reflected receives the velocity after the collision
+     */
+    static void reflectWall(double x1, double y1, double x2, double y2, double xVel, double yVel,
+            double reflectionCoeff, Vector reflected) {
+        reflectWall(x1, y1, x2, y2, xVel, yVel, reflected);
+        applyReflectionCoeff(xVel, yVel, reflectionCoeff, reflected);
+    }
+
+    /**
+     * Reflects a velocity off a fixed circle, as physics.Physics.reflectCircle
+     *
+     * @param cx x coordinate of the circle's center
+     * @param cy y coordinate of the circle's center
+     * @param x x coordinate of the ball's center at the collision
+     * @param y y coordinate of the ball's center at the collision
+     * @param xVel x velocity of the ball
+     * @param yVel y velocity of the ball
+     * @param reflected receives the velocity after the collision
+     */
+    static void reflectCircle(double cx, double cy, double x, double y, double xVel, double yVel, Vector reflected) {
+        double length = Math.sqrt((xVel * xVel) + (yVel * yVel));
+        if (length == 0.0) {
+            reflected.x = xVel;
+            reflected.y = yVel;
+            return;
+        }
+        double incidenceX = cx - x;
+        double incidenceY = cy - y;
+        double r = Math.sqrt((incidenceX * incidenceX) + (incidenceY * incidenceY));
+        double cos = 1.0;
+        double sin = 0.0;
+        if (r != 0.0) {
+            cos = incidenceX / r;
+            sin = incidenceY / r;
+        }
+        // it is as if the ball hits a wall perpendicular to the direction of incidence
+        double wallCos = (cos * 0.0) - (sin * 1.0);
+        double wallSin = (sin * 0.0) + (cos * 1.0);
+        r = Math.sqrt((wallCos * wallCos) + (wallSin * wallSin));
+        reflectAngle(wallCos / r, wallSin / r, xVel, yVel, length, reflected);
+    }
+
+    /**
+     * Reflects the velocities of two colliding balls, as physics.Physics.reflectBalls
+     *
+     * @param reflected1 receives the velocity of the first ball after the collision
+     * @param reflected2 receives the velocity of the second ball after the collision
+     */
+    static void reflectBalls(double x1, double y1, double mass1, double xVel1, double yVel1,
+            double x2, double y2, double mass2, double xVel2, double yVel2,
+            Vector reflected1, Vector reflected2) {
+        double m = mass1/mass2;
+        // unit vector from the second center to the first
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        double r = Math.sqrt((dx * dx) + (dy * dy));
+        double tx = 1.0;
+        double ty = 0.0;
+        if (r != 0.0) {
+            tx = dx / r;
+            ty = dy / r;
+        }
+        double gamma = (-2 * (xVel1*tx*mass1 + yVel1*ty*mass1 - xVel2*tx*m*mass2 - yVel2*ty*m*mass2)) /
+                (tx*tx*mass1 + ty*ty*mass1 + m*m*tx*tx*mass2 + m*m*ty*ty*mass2);
+        reflected1.x = xVel1 + tx * gamma;
+        reflected1.y = yVel1 + ty * gamma;
+        reflected2.x = xVel2 + -tx * (gamma*m);
+        reflected2.y = yVel2 + -ty * (gamma*m);
+    }
+
+    /**
+     * Evaluates the distance function of a rotating wall query, as physics.jar's RotatingWallDistance,
+     * setting scratch.f and scratch.fPrime to NaN when the point of the segment's line closest to the
+     * ball is not on the segment.
+     */
+    private static void evaluateRotatingWall(RotatingWall scratch, double t) {
+        double omega = scratch.omega;
+        double p1Cos = scratch.radius1 * Math.cos(omega * t + scratch.phi1);
+        double p1Sin = scratch.radius1 * Math.sin(omega * t + scratch.phi1);
+        double p2Cos = scratch.radius2 * Math.cos(omega * t + scratch.phi2);
+        double p2Sin = scratch.radius2 * Math.sin(omega * t + scratch.phi2);
+        double x1 = p1Cos + scratch.centerX;
+        double y1 = p1Sin + scratch.centerY;
+        double x2 = p2Cos + scratch.centerX;
+        double y2 = p2Sin + scratch.centerY;
+        double ballX = scratch.xVel * t + scratch.ballX;
+        double ballY = scratch.yVel * t + scratch.ballY;
+
+        // the point of the segment closest to the ball's center
+        double height = y2 - y1;
+        double width = x2 - x1;
+        double lengthSquared = width * width + height * height;
+        double fraction = ((width * (ballX - x1)) + (height * (ballY - y1))) / lengthSquared;
+        if (!((0.0 <= fraction) && (fraction <= 1.0))) {
+            scratch.f = Double.NaN;
+            scratch.fPrime = Double.NaN;
+            return;
+        }
+        double closestX = x1 + fraction * width;
+        double closestY = y1 + fraction * height;
+        scratch.f = (closestX - ballX) * (closestX - ballX) + (closestY - ballY) * (closestY - ballY)
+                - scratch.ballRadius * scratch.ballRadius;
+
+        // derivatives with respect to t of every quantity above
+        double x1Prime = -omega * p1Sin;
+        double y1Prime = omega * p1Cos;
+        double x2Prime = -omega * p2Sin;
+        double y2Prime = omega * p2Cos;
+        double heightPrime = y2Prime - y1Prime;
+        double widthPrime = x2Prime - x1Prime;
+        double lengthSquaredPrime = 2 * width * widthPrime + 2 * height * heightPrime;
+        double fractionPrime =
+                ((lengthSquared * ((widthPrime * (ballX - x1) + width * (scratch.xVel - x1Prime))
+                        + (heightPrime * (ballY - y1) + height * (scratch.yVel - y1Prime))))
+                - (lengthSquaredPrime * ((width * (ballX - x1)) + (height * (ballY - y1)))))
+                / (lengthSquared * lengthSquared);
+        double closestXPrime = x1Prime + fraction * widthPrime + fractionPrime * width;
+        double closestYPrime = y1Prime + fraction * heightPrime + fractionPrime * height;
+        scratch.fPrime = 2 * (closestX - ballX) * (closestXPrime - scratch.xVel)
+                + 2 * (closestY - ballY) * (closestYPrime - scratch.yVel);
+    }
+
+    /**
+     * Steps through [start, end] looking for a change of sign of the distance function or its
+     * derivative, and refines the first one found with Newton's method, as physics.jar's Newton.findRoot
+     * @return the first root found, or NaN if there is none
+     */
+    private static double findRoot(RotatingWall scratch, double start, double end, double step) {
+        // NaN so that there is no sign change at the first step
+        double oldF = Double.NaN;
+        double oldFPrime = Double.NaN;
+        for (double t = start; t < end + step; t += step) {
+            evaluateRotatingWall(scratch, t);
+            double f = scratch.f;
+            double fPrime = scratch.fPrime;
+            if (Double.isNaN(f) || Double.isNaN(fPrime)) {
+                oldF = f;
+                oldFPrime = fPrime;
+                continue;
+            }
+            if (f * oldF <= 0 || fPrime * oldFPrime <= 0) {
+                double root = newton(scratch, oldFPrime <= 0 ? t - step : t);
+                if (t - step <= root && root <= t) {
+                    return root;
+                }
+            }
+            oldF = f;
+            oldFPrime = fPrime;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @return the root of the distance function Newton's method converges to from the given time,
+     *         or NaN if it does not converge to a root
+     */
+    private static double newton(RotatingWall scratch, double initialT) {
+        double t = initialT;
+        for (int count = 0; count < MAX_NEWTON_STEPS; count++) {
+            evaluateRotatingWall(scratch, t);
+            if (Double.isNaN(scratch.f) || Double.isNaN(scratch.fPrime)) {
+                return Double.NaN;
+            }
+            double next = t - scratch.f / scratch.fPrime;
+            if (Math.abs(next - t) < NEWTON_EPSILON) {
+                // close enough to call a hit, as opposed to a local minimum
+                return Math.abs(scratch.f) < 1000*NEWTON_EPSILON ? next : Double.NaN;
+            }
+            t = next;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Restricts scratch.intervals to the times when the ball could touch the ring the segment sweeps
+     * out, and to the times when the ball's path and the segment can be at the same angle around the
+     * center of rotation, as physics.jar's PhysicsImpl.restrictSearchInterval. The twelve cases are
+     * the ones of that method. Where physics.jar would reject its own intermediate angles, the
+     * restriction that needs them is skipped, which only leaves more time to search.
+     */
+    private static void restrictSearchInterval(RotatingWall scratch, double innerRadius, double outerRadius) {
+        Intervals intervals = scratch.intervals;
+        double omega = scratch.omega;
+        double centerX = scratch.centerX;
+        double centerY = scratch.centerY;
+        double x = scratch.ballX;
+        double y = scratch.ballY;
+        double radius = scratch.ballRadius;
+        double xVel = scratch.xVel;
+        double yVel = scratch.yVel;
+        double speed = Math.sqrt((xVel * xVel) + (yVel * yVel));
+
+        if (speed == 0) {
+            double dx = x - centerX;
+            double dy = y - centerY;
+            if (Math.sqrt((dx * dx) + (dy * dy)) - radius < outerRadius) {
+                intervals.restrictLength(2*Math.PI/Math.abs(omega));
+            } else {
+                intervals.clear();
+            }
+            return;
+        }
+
+        // the times during which the ball is inside the outer circle
+        circleCrossings(scratch, centerX, centerY, outerRadius + radius, x, y, xVel, yVel);
+        if (!areFinite(scratch.crossing1, scratch.crossing2)) {
+            // this also covers CASE 4, where the ball misses
+            intervals.clear();
+            return;
+        }
+        intervals.restrictTo(scratch.crossing1, scratch.crossing2);
+        if (intervals.count == 0) {
+            return;
+        }
+        // and outside the hole in the middle of the ring
+        if (innerRadius - radius > 0) {
+            circleCrossings(scratch, centerX, centerY, innerRadius - radius, x, y, xVel, yVel);
+            if (areFinite(scratch.crossing1, scratch.crossing2)) {
+                intervals.remove(scratch.crossing1, scratch.crossing2);
+            }
+        }
+        if (intervals.count > 0 && intervals.starts[0] < 0) {
+            intervals.remove(intervals.starts[0], 0.0);
+        }
+        intervals.restrictLength(2*2*Math.PI/Math.abs(omega));
+        if (intervals.count == 0) {
+            return;
+        }
+
+        // the rails are the two lines the sides of the ball travel along; the normal
+        // to the velocity points from the ball away from the center of rotation
+        double r = Math.sqrt((xVel * xVel) + (yVel * yVel));
+        double cos = xVel / r;
+        double sin = yVel / r;
+        double normalCos = (cos * 0.0) - (sin * 1.0);
+        double normalSin = (sin * 0.0) + (cos * 1.0);
+        r = Math.sqrt((normalCos * normalCos) + (normalSin * normalSin));
+        normalCos = normalCos / r;
+        normalSin = normalSin / r;
+        if ((speed * normalCos) * (x - centerX) + (speed * normalSin) * (y - centerY) < 0) {
+            double flippedCos = (normalCos * -1.0) - (normalSin * 0.0);
+            double flippedSin = (normalSin * -1.0) + (normalCos * 0.0);
+            r = Math.sqrt((flippedCos * flippedCos) + (flippedSin * flippedSin));
+            normalCos = flippedCos / r;
+            normalSin = flippedSin / r;
+        }
+        double farX = x + radius * normalCos;
+        double farY = y + radius * normalSin;
+        double nearX = x - radius * normalCos;
+        double nearY = y - radius * normalSin;
+
+        // when each rail crosses the edges of the ring
+        circleCrossings(scratch, centerX, centerY, outerRadius, farX, farY, xVel, yVel);
+        boolean farOuterFinite = areFinite(scratch.crossing1, scratch.crossing2);
+        circleCrossings(scratch, centerX, centerY, outerRadius, nearX, nearY, xVel, yVel);
+        boolean nearOuterFinite = areFinite(scratch.crossing1, scratch.crossing2);
+        double nearOuterAngle1 = angleAround(centerX, centerY, nearX + xVel * scratch.crossing1, nearY + yVel * scratch.crossing1);
+        double nearOuterAngle2 = angleAround(centerX, centerY, nearX + xVel * scratch.crossing2, nearY + yVel * scratch.crossing2);
+        circleCrossings(scratch, centerX, centerY, innerRadius, farX, farY, xVel, yVel);
+        boolean farInnerFinite = areFinite(scratch.crossing1, scratch.crossing2);
+        double farInnerAngle1 = angleAround(centerX, centerY, farX + xVel * scratch.crossing1, farY + yVel * scratch.crossing1);
+        double farInnerAngle2 = angleAround(centerX, centerY, farX + xVel * scratch.crossing2, farY + yVel * scratch.crossing2);
+        circleCrossings(scratch, centerX, centerY, innerRadius, nearX, nearY, xVel, yVel);
+        boolean nearInnerFinite = areFinite(scratch.crossing1, scratch.crossing2);
+        double nearInnerAngle1 = angleAround(centerX, centerY, nearX + xVel * scratch.crossing1, nearY + yVel * scratch.crossing1);
+        double nearInnerAngle2 = angleAround(centerX, centerY, nearX + xVel * scratch.crossing2, nearY + yVel * scratch.crossing2);
+
+        // whether the center of rotation is outside the band between the rails
+        double boundsDot = dotWithPerpendicular(farX, farY, xVel, yVel, centerX, centerY, nearX, nearY);
+
+        // the segment sweeps the arc from phi to phi + width
+        double phi = (scratch.phi1 < scratch.phi2) ? scratch.phi1 : scratch.phi2;
+        if (phi < 0) {
+            phi += 2*Math.PI;
+        }
+        double width = Math.abs(scratch.phi1 - scratch.phi2);
+
+        if (!farInnerFinite) {
+            if (!farOuterFinite && !nearOuterFinite) {
+                // CASE 3: the ball is wider than the ring, so a hit is imminent
+                intervals.restrictLength(2*Math.PI/Math.abs(omega));
+            } else if (boundsDot > 0) {
+                // CASE 1, 2, 7 or 9
+                restrictIntervalByAngle(intervals, nearOuterAngle1, nearOuterAngle2, omega, phi, width, false);
+            } else if (nearOuterFinite) {
+                // CASE 5 or 6
+                intervals.restrictLength(2*Math.PI/Math.abs(omega));
+            } else {
+                // CASE 8 or 10
+                restrictIntervalByAngle(intervals, nearInnerAngle1, nearInnerAngle2, omega, phi, width, true);
+            }
+        } else if (farOuterFinite && nearInnerFinite && nearOuterFinite) {
+            // both rails cross the hole in the middle of the ring
+            Intervals otherIntervals = scratch.otherIntervals;
+            otherIntervals.copyFrom(intervals);
+            if (boundsDot > 0) {
+                // CASE 11
+                restrictIntervalByAngle(intervals, nearOuterAngle1, farInnerAngle1, omega, phi, width, false);
+                restrictIntervalByAngle(otherIntervals, farInnerAngle2, nearOuterAngle2, omega, phi, width, false);
+            } else {
+                // CASE 12
+                restrictIntervalByAngle(intervals, nearInnerAngle1, farInnerAngle1, omega, phi, width, false);
+                restrictIntervalByAngle(intervals, farInnerAngle2, nearInnerAngle2, omega, phi, width, false);
+            }
+            intervals.addAll(otherIntervals);
+        }
+    }
+
+    /**
+     * Restricts intervals to the times when the arc from alpha to beta, taking the part of the circle
+     * that is bigger or smaller than half of it as bigSlice says, overlaps the arc from phi to
+     * phi + width rotating at omega, as physics.jar's PhysicsImpl.restrictIntervalByAngle
+     */
+    private static void restrictIntervalByAngle(Intervals intervals, double alpha, double beta,
+            double omega, double phi, double width, boolean bigSlice) {
+        if (alpha < 0) {
+            alpha += 2*Math.PI;
+        }
+        if (beta < 0) {
+            beta += 2*Math.PI;
+        }
+        double d = beta - alpha;
+        if (d < 0) {
+            d += 2*Math.PI;
+        }
+        if ((d < Math.PI && bigSlice) || (d > Math.PI && !bigSlice)) {
+            double t = alpha;
+            alpha = beta;
+            beta = t;
+        }
+        restrictIntervalByAngle(intervals, alpha, beta, omega, phi, width);
+    }
+
+    /**
+     * Restricts intervals to the times when the arc counterclockwise from alpha to beta overlaps the
+     * arc from phi to phi + width rotating at omega, considering the first two revolutions only,
+     * as physics.jar's PhysicsImpl.restrictIntervalByAngle. Leaves intervals unchanged if an angle
+     * is out of range.
+     */
+    private static void restrictIntervalByAngle(Intervals intervals, double alpha, double beta,
+            double omega, double phi, double width) {
+        if (phi < 0) {
+            phi += 2*Math.PI;
+        }
+        if (alpha < 0) {
+            alpha += 2*Math.PI;
+        }
+        if (beta < 0) {
+            beta += 2*Math.PI;
+        }
+        if (!(0 <= alpha && alpha <= 2*Math.PI) || !(0 <= beta && beta <= 2*Math.PI)
+                || !(0 <= phi && phi <= 2*Math.PI) || !(0 <= width && width <= 2*Math.PI)) {
+            return;
+        }
+
+        if (omega < 0) {
+            // mirror everything so that the arc rotates counterclockwise
+            omega = -omega;
+            alpha = -alpha;
+            beta = -beta;
+            phi = phi + width;
+            if (phi > 2*Math.PI) {
+                phi -= 2*Math.PI;
+            }
+            phi = -phi;
+            if (alpha < 0) {
+                alpha += 2*Math.PI;
+            }
+            if (beta < 0) {
+                beta += 2*Math.PI;
+            }
+            if (phi < 0) {
+                phi += 2*Math.PI;
+            }
+            double t = alpha;
+            alpha = beta;
+            beta = t;
+        }
+
+        // measure the angles from the start of the rotating arc
+        alpha -= phi;
+        beta -= phi;
+        if (alpha < 0) {
+            alpha += 2*Math.PI;
+        }
+        if (beta < 0) {
+            beta += 2*Math.PI;
+        }
+
+        double t = Double.NaN;
+        double nextT = 0;
+        boolean validRegion = (alpha > beta || alpha < width);
+        double twiceAround = 2 * (2*Math.PI) / omega;
+        // when alpha == beta + width, t stops moving once it reaches beta / omega
+        while ((nextT < twiceAround) && (t != nextT)) {
+            t = nextT;
+            if (validRegion) {
+                double angleToBeta = beta - t*omega;
+                while (angleToBeta < 0) {
+                    angleToBeta += 2*Math.PI;
+                }
+                nextT = t + angleToBeta / omega;
+                validRegion = false;
+            } else {
+                double angleToAlpha = alpha - t*omega - width;
+                while (angleToAlpha < 0) {
+                    angleToAlpha += 2*Math.PI;
+                }
+                nextT = t + angleToAlpha / omega;
+                intervals.remove(t, nextT);
+                validRegion = true;
+            }
+        }
+        t = nextT;
+        if (!validRegion && t < twiceAround) {
+            intervals.remove(t, twiceAround);
+        }
+    }
+
+    /**
+     * Sets scratch.crossing1 and scratch.crossing2 to the times a point moving in a straight line
+     * crosses a circle, earliest first, or both to POSITIVE_INFINITY if it never does, as
+     * physics.Physics.timeUntilCircleCollision for a point
+     */
+    private static void circleCrossings(RotatingWall scratch, double centerX, double centerY, double radius,
+            double x, double y, double xVel, double yVel) {
+        double dx = x - centerX;
+        double dy = y - centerY;
+        double a = xVel * xVel + yVel * yVel;
+        double b = 2 * (dx * xVel + dy * yVel);
+        double c = dx * dx + dy * dy - radius * radius;
+        if (a == 0.0) {
+            double crossing = (b == 0.0) ? Double.POSITIVE_INFINITY : -c/b;
+            scratch.crossing1 = crossing;
+            scratch.crossing2 = crossing;
+            return;
+        }
+        double discriminant = (b * b) - (4.0 * a * c);
+        if (discriminant < 0.0) {
+            scratch.crossing1 = Double.POSITIVE_INFINITY;
+            scratch.crossing2 = Double.POSITIVE_INFINITY;
+            return;
+        }
+        double sqrt = Math.sqrt(discriminant);
+        double twoA = 2.0 * a;
+        double lesser = (-b - sqrt)/twoA;
+        double greater = (-b + sqrt)/twoA;
+        scratch.crossing1 = (a > 0) ? lesser : greater;
+        scratch.crossing2 = (a > 0) ? greater : lesser;
+        if (Double.isNaN(scratch.crossing1)) {
+            scratch.crossing1 = Double.POSITIVE_INFINITY;
+            scratch.crossing2 = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private static boolean areFinite(double d1, double d2) {
+        return !Double.isInfinite(d1) && !Double.isInfinite(d2) && !Double.isNaN(d1) && !Double.isNaN(d2);
+    }
+
+    /**
+     * @return the angle in radians, in [-pi, pi], of (x, y) seen from (centerX, centerY),
+     *         as physics.Vect.angle().radians(); 0 if the points are the same
+     */
+    private static double angleAround(double centerX, double centerY, double x, double y) {
+        double dx = x - centerX;
+        double dy = y - centerY;
+        double r = Math.sqrt((dx * dx) + (dy * dy));
+        if (r == 0.0) {
+            return 0.0;
+        }
+        return Math.atan2(dy / r, dx / r);
+    }
+
+    /**
+     * @return the dot product of the points closest to (centerX, centerY) on the lines through
+     *         (farX, farY) and through (nearX, nearY) in the direction (xVel, yVel), as
+     *         physics.jar compares them
+     */
+    private static double dotWithPerpendicular(double farX, double farY, double xVel, double yVel,
+            double centerX, double centerY, double nearX, double nearY) {
+        double farWidth = (farX + xVel) - farX;
+        double farHeight = (farY + yVel) - farY;
+        double farFraction = ((farWidth * (centerX - farX)) + (farHeight * (centerY - farY)))
+                / ((farHeight * farHeight) + (farWidth * farWidth));
+        double nearWidth = (nearX + xVel) - nearX;
+        double nearHeight = (nearY + yVel) - nearY;
+        double nearFraction = ((nearWidth * (centerX - nearX)) + (nearHeight * (centerY - nearY)))
+                / ((nearHeight * nearHeight) + (nearWidth * nearWidth));
+        return (farX + farFraction * farWidth) * (nearX + nearFraction * nearWidth)
+                + (farY + farFraction * farHeight) * (nearY + nearFraction * nearHeight);
+    }
+
+    /**
+     * Writes length * (cos phi, sin phi), where phi is twice the angle (wallCos, wallSin)
+     * minus the angle of the velocity, normalizing after every step the way physics.Angle does
+     */
+    private static void reflectAngle(double wallCos, double wallSin, double xVel, double yVel, double length,
+            Vector reflected) {
+        double velCos = xVel / length;
+        double velSin = yVel / length;
+        double cos = (wallCos * wallCos) - (wallSin * wallSin);
+        double sin = (wallSin * wallCos) + (wallCos * wallSin);
+        double r = Math.sqrt((cos * cos) + (sin * sin));
+        cos = cos / r;
+        sin = sin / r;
+        double phiCos = (cos * velCos) + (sin * velSin);
+        double phiSin = (sin * velCos) - (cos * velSin);
+        r = Math.sqrt((phiCos * phiCos) + (phiSin * phiSin));
+        reflected.x = length * (phiCos / r);
+        reflected.y = length * (phiSin / r);
+    }
+
+    /**
+     * Moves a reflected velocity toward the incident velocity according to a coefficient
+     * of reflection, as physics.Physics.applyReflectionCoeff
+     */
+    private static void applyReflectionCoeff(double xVel, double yVel, double reflectionCoeff, Vector reflected) {
+        double scale = 0.5 + 0.5 * reflectionCoeff;
+        reflected.x = xVel + (reflected.x - xVel) * scale;
+        reflected.y = yVel + (reflected.y - yVel) * scale;
+    }
+}
@@ -2,8 +2,10 @@ package flingball;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.geom.Ellipse2D;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import physics.*;
@@ -15,21 +17,26 @@ import physics.*;
  */
 public class Portal implements Gadget{
     
+    /** the soonest a ball can fall into a portal after it is tested */
+    static final double MINIMUM_COLLISION_TIME = .005;
+    
     private final Circle portal;
     private final Vect center;
     private final String name;
     private final Vect position;
     private final String otherBoard;
     private final String otherPortal;
+    private Vect target;
     
     private final List<Gadget> triggers;
     
     //Abstraction Function
-    // AF(portal, center, name, position, triggers, otherBoard, otherPortal) = 
+    // AF(portal, center, name, position, triggers, otherBoard, otherPortal, target) = 
     //      a portal centered at center with name name and activating gadgets in triggers when triggered.
     //      The ball appears at position position when this bumper is triggered.
     //      In the simulation this bumper appears as a portal.
-    //      Collisions return destination board otherBoard and destination portal otherPortal
+    //      Balls that fall in go to portal otherPortal on board otherBoard, or on this board if otherBoard is "",
+    //      where target is the position of otherPortal once the board has found it on this board, and null otherwise
     
     // Rep Invariant
     // center >=0
@@ -62,17 +69,68 @@ public class Portal implements Gadget{
     }
 
     @Override
-    public double timeToCollide(Ball ball, Double elapsedTime) {
-        return Math.max(Physics.timeUntilCircleCollision(portal, ball.getCircle(), ball.getVelocity()), .005);        
+    public double timeToCollide(Ball ball, double elapsedTime, Contact contact) {
+        if (PhysicsKernel.outOfReach(center.x(), center.y(), portal.getRadius(), ball.getX(), ball.getY(),
+                ball.getRadius(), ball.getXVelocity(), ball.getYVelocity(), elapsedTime)) {
+            contact.clear();
+            return Double.POSITIVE_INFINITY;
+        }
+        // the circle is the only feature
+        double time = Math.max(PhysicsKernel.timeUntilCircleCollision(portal, ball.getX(), ball.getY(), ball.getRadius(), 
+                ball.getXVelocity(), ball.getYVelocity()), MINIMUM_COLLISION_TIME);
+        contact.set(time, 0);
+        return time;
     }
       
+    /**
+     * @return the circles of the portal, numbered as its features in a Contact after its segments
+     */
+    List<Circle> circles() {
+        return Collections.singletonList(portal);
+    }
+    
+    @Override
+    public void advance(double time) {
+        // does not move
+    }
+    
     @Override
-    public String collide(Ball ball) {
+    public Outcome collide(Ball ball, Contact contact) {
         //activate triggers
         for (Gadget trigger: triggers) {
             trigger.action();
         }
-        return otherBoard + " " + otherPortal;
+        return Outcome.PORTAL;
+    }
+    
+    /**
+     * Records where otherPortal is, once the board holding this portal has found it
+     * @param otherPosition position of otherPortal on this board
+     */
+    void connect(Vect otherPosition) {
+        this.target = otherPosition;
+    }
+    
+    /**
+     * @return the position on this board of the portal balls are sent to,
+     *         or null if it is on another board or does not exist
+     */
+    Vect target() {
+        return target;
+    }
+    
+    /**
+     * @return the name of the board holding the portal balls are sent to, or "" for this board
+     */
+    String otherBoard() {
+        return otherBoard;
+    }
+    
+    /**
+     * @return the name of the portal balls are sent to
+     */
+    String otherPortal() {
+        return otherPortal;
     }
     
     @Override
@@ -94,12 +152,22 @@ public class Portal implements Gadget{
         return position;
     }
     
+    @Override
+    public Rectangle2D bounds() {
+        return new Rectangle2D.Double(position.x(), position.y(), Flingball.L, Flingball.L);
+    }
+    
     @Override
     public void link(Gadget activator) {
         checkRep();
         triggers.add(activator);               
     }
     
+    @Override
+    public int triggerCount() {
+        return triggers.size();
+    }
+    
     @Override
     public void action() {
         //by the spec, nothing happens
@@ -0,0 +1,173 @@
+package flingball;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable picture of the balls and flippers of a board between two consecutive physics frames,
+ * from which the board can be drawn at any moment in between, so that it can be drawn more often than it is
+ * simulated, or less often, and still move smoothly.
+ *
+ * A state holds where each ball and flipper was at the end of the previous frame and where it is at the
+ * end of the latest one. It is taken on the simulation thread and then only read, so it can be drawn from
+ * any thread while the board goes on to simulate later frames. Following the fixed-timestep scheme of
+ * Simulator, it is drawn one frame behind the simulation: it shows the previous frame's positions at the
+ * moment the latest frame was due, and slides to the latest positions by the time the next frame is due.
+ *
+ * A ball that appeared during the latest frame, or moved further than its speed allows, e.g. through a
+ * portal or onto another board and back, is drawn where it is at the end of the latest frame throughout.
+ */
+class RenderState {
+
+    private final Map<Ball, Integer> slots;
+    private final double[] fromX;
+    private final double[] fromY;
+    private final double[] toX;
+    private final double[] toY;
+    private final double[] radius;
+    private final double[] speed;
+    private final double[] fromAngle;
+    private final double[] toAngle;
+    private final long time;
+    private final long period;
+
+    // Abstraction Function
+    // AF(slots, fromX, fromY, toX, toY, radius, speed, fromAngle, toAngle, time, period) = the balls and flippers of a board
+    //      between two frames period nanoseconds apart, the later of which was due at System.nanoTime() == time.
+    //      Ball k, whose view maps to k in slots, moved from (fromX[k], fromY[k]) to (toX[k], toY[k]) and has the
+    //      given radius and speed at the end. Gadget i turned from fromAngle[i] to toAngle[i] if it is a flipper,
+    //      and both are NaN otherwise
+
+    // Rep Invariant
+    // fromX, fromY, toX, toY, radius, speed have the same length, the number of entries of slots,
+    //      whose values are 0 to that length - 1
+    // fromAngle and toAngle have the same length
+    // period > 0
+
+    // Rep Exposure Argument
+    // all fields are private and final, and none of the arrays or the map are returned.
+    // The balls in slots are aliases of the board's views, which are only used as keys
+
+    // Thread Safety Argument
+    // this type is immutable once its constructor returns, and the constructor is only called on the
+    // simulation thread. Clients publish a state to other threads through a volatile field or another
+    // safe publication, after which it is only read
+
+    private void checkRep() {
+        assert fromX.length == slots.size();
+        assert fromY.length == fromX.length && toX.length == fromX.length && toY.length == fromX.length;
+        assert radius.length == fromX.length && speed.length == fromX.length;
+        assert fromAngle.length == toAngle.length;
+        assert period > 0;
+    }
+
+    /**
+     * Takes a picture of the balls and flippers as they are now, at the end of a frame.
+     * Must be called from the thread that simulates the board.
+     * @param previous the picture taken at the end of the frame before, or null if there is none,
+     *                 in which case the balls and flippers are drawn still
+     * @param balls the balls of the board
+     * @param gadgets the gadgets of the board
+     * @param frameTime the length of a frame in seconds, > 0
+     * @param time the wall clock time the frame that just ended was due, as returned by System.nanoTime()
+     */
+    RenderState(RenderState previous, BallStore balls, List<Gadget> gadgets, double frameTime, long time) {
+        int count = balls.size();
+        this.slots = new IdentityHashMap<>(count);
+        this.fromX = new double[count];
+        this.fromY = new double[count];
+        this.toX = new double[count];
+        this.toY = new double[count];
+        this.radius = new double[count];
+        this.speed = new double[count];
+        for (int k = 0; k < count; k++) {
+            slots.put(balls.view(k), k);
+            toX[k] = balls.x[k];
+            toY[k] = balls.y[k];
+            radius[k] = balls.radius[k];
+            speed[k] = Math.hypot(balls.xVel[k], balls.yVel[k]);
+            Integer before = previous == null ? null : previous.slots.get(balls.view(k));
+            if (before != null
+                    && Math.hypot(toX[k] - previous.toX[before], toY[k] - previous.toY[before])
+                        <= (previous.speed[before] + speed[k]) * frameTime) {
+                fromX[k] = previous.toX[before];
+                fromY[k] = previous.toY[before];
+            } else {
+                fromX[k] = toX[k];
+                fromY[k] = toY[k];
+            }
+        }
+        this.fromAngle = new double[gadgets.size()];
+        this.toAngle = new double[gadgets.size()];
+        for (int i = 0; i < gadgets.size(); i++) {
+            Gadget gadget = gadgets.get(i);
+            if (gadget instanceof LeftFlipper) {
+                toAngle[i] = ((LeftFlipper) gadget).angle();
+            } else if (gadget instanceof RightFlipper) {
+                toAngle[i] = ((RightFlipper) gadget).angle();
+            } else {
+                toAngle[i] = Double.NaN;
+            }
+            fromAngle[i] = previous == null || i >= previous.toAngle.length ? toAngle[i] : previous.toAngle[i];
+        }
+        this.time = time;
+        this.period = Math.max(1, Math.round(frameTime * 1e9));
+        checkRep();
+    }
+
+    /**
+     * @param now the current time, as returned by System.nanoTime()
+     * @return how far to draw the balls and flippers from where they were at the end of the previous frame
+     *         to where they are at the end of the latest one at that time, between 0 and 1
+     */
+    public double alpha(long now) {
+        return Math.min(1, Math.max(0, (double) (now - time) / period));
+    }
+
+    /**
+     * @return the number of balls in the picture
+     */
+    public int ballCount() {
+        return fromX.length;
+    }
+
+    /**
+     * @param k index of a ball, 0 <= k < ballCount()
+     * @param alpha how far between the frames to draw it, between 0 and 1
+     * @return the x coordinate of ball k's center at that point
+     */
+    public double x(int k, double alpha) {
+        return fromX[k] + alpha * (toX[k] - fromX[k]);
+    }
+
+    /**
+     * @param k index of a ball, 0 <= k < ballCount()
+     * @param alpha how far between the frames to draw it, between 0 and 1
+     * @return the y coordinate of ball k's center at that point
+     */
+    public double y(int k, double alpha) {
+        return fromY[k] + alpha * (toY[k] - fromY[k]);
+    }
+
+    /**
+     * @param k index of a ball, 0 <= k < ballCount()
+     * @return the radius of ball k
+     */
+    public double radius(int k) {
+        return radius[k];
+    }
+
+    /**
+     * @param gadget index of a gadget of the board
+     * @param alpha how far between the frames to draw it, between 0 and 1
+     * @return the angle a flipper has turned from rest at that point, or NaN if the gadget is not a flipper
+     */
+    public double angle(int gadget, double alpha) {
+        return fromAngle[gadget] + alpha * (toAngle[gadget] - fromAngle[gadget]);
+    }
+
+    @Override public String toString() {
+        return "RenderState[balls=" + ballCount() + ", time=" + time + ", period=" + period + "ns]";
+    }
+}
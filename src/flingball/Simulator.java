@@ -4,7 +4,6 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.event.ActionEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
@@ -14,10 +13,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
-import javax.swing.Timer;
 
 /**
  * Class that simulates the physics of the Flingball board
@@ -26,9 +25,21 @@ public class Simulator implements Runnable {
     
     private static final int GAMEBOARD_SIZE = 20;
     private static final int DRAWING_AREA_SIZE_IN_PIXELS = GAMEBOARD_SIZE * Flingball.L;
+
+    /** system property that, when "true", makes the simulator print the board's metrics when the program exits */
+    public static final String METRICS_PROPERTY = "flingball.metrics";
+    /** system property that sets the number of physics frames simulated per second, overriding Flingball.PHYSICS_HZ */
+    public static final String PHYSICS_HZ_PROPERTY = "flingball.physicsHz";
+    /** system property that sets the number of times per second the board is drawn, overriding Flingball.RENDER_HZ */
+    public static final String RENDER_HZ_PROPERTY = "flingball.renderHz";
+    /** the default largest number of frames simulated back to back to catch up after the simulation falls behind */
+    public static final int DEFAULT_MAX_CATCH_UP = 5;
     
     private Board board;
-    private double fps;
+    private double physicsHz;
+    private double renderHz;
+    private int maxCatchUp;
+    private volatile RenderState renderState;
 
     /**
      * Creates a new Simulator
@@ -37,16 +48,54 @@ public class Simulator implements Runnable {
      * @param framesPerSecond the frame rate to display at
      */    
     public Simulator(Board board, double framesPerSecond) {
+        this(board, framesPerSecond, framesPerSecond, DEFAULT_MAX_CATCH_UP);
+    }
+    
+    /**
+     * Creates a new Simulator
+     * 
+     * @param board the board to display
+     * @param framesPerSecond the frame rate to display at
+     * @param maxCatchUp the largest number of frames to simulate back to back when the simulation has fallen
+     *                   behind the wall clock, > 0; frames beyond that are dropped
+     */
+    public Simulator(Board board, double framesPerSecond, int maxCatchUp) {
+        this(board, framesPerSecond, framesPerSecond, maxCatchUp);
+    }
+    
+    /**
+     * Creates a new Simulator that simulates and draws the board at rates of their own
+     * 
+     * @param board the board to display
+     * @param physicsHz the number of physics frames to simulate per second, > 0
+     * @param renderHz the number of times per second to draw the board, > 0
+     * @param maxCatchUp the largest number of frames to simulate back to back when the simulation has fallen
+     *                   behind the wall clock, > 0; frames beyond that are dropped
+     */
+    public Simulator(Board board, double physicsHz, double renderHz, int maxCatchUp) {
         this.board = board;
-        this.fps = framesPerSecond;        
+        this.physicsHz = physicsHz;
+        this.renderHz = renderHz;
+        this.maxCatchUp = maxCatchUp;
+        this.renderState = null;
     }
     
     /**
-     * Runs the board's physics and animates at a rate of framesPerSecond
+     * Runs the board's physics at a rate of physicsHz and animates at a rate of renderHz
      * Creates a key listener that will trigger the gadget's action it is linked to when triggered
      * if such a gadget exists on the board.
+     * Frames are simulated at fixed deadlines measured from the start, so the simulated time keeps up with
+     * the wall clock however long each frame takes; after falling behind, up to maxCatchUp frames are
+     * simulated back to back, and any more are dropped.
+     * The board is drawn on deadlines of its own, from a picture of the last two frames taken after each batch
+     * of frames: balls and flippers are drawn between their positions in those frames according to the time,
+     * one frame behind the simulation, so they move smoothly whatever the two rates are.
+     * If the system property METRICS_PROPERTY is "true", the board's metrics, and the number of late and
+     * dropped physics frames and drawings, are printed to standard error when the program exits.
      */
     public void run() {   
+        // the drawing thread only ever draws from a picture taken on this thread, never from the board itself
+        renderState = board.renderState(null, 1./physicsHz, System.nanoTime());
         final JFrame window = new JFrame("Flingball");
         window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         
@@ -98,12 +147,32 @@ public class Simulator implements Runnable {
         listener = new MagicKeyListener(listener);
         window.addKeyListener(listener);
         
-
-        new Timer(1000/(int)fps, (ActionEvent e) -> {
-            drawingArea.repaint();
-        }).start();
+        // start the clocks once the window is up, so that opening it does not count as falling behind
+        final double frameTime = 1./physicsHz;
+        final long frameNanos = (long) (TimeUnit.SECONDS.toNanos(1) / physicsHz);
+        final long start = System.nanoTime();
+        final FrameClock clock = new FrameClock(frameNanos, maxCatchUp, start);
+        final FrameClock renderClock = new FrameClock((long) (TimeUnit.SECONDS.toNanos(1) / renderHz), 1, start);
+        if (Boolean.getBoolean(METRICS_PROPERTY)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(board.getMetrics().report() 
+                    + "physics " + clock.report() + "render " + renderClock.report())));
+        }
         
+        Thread renderer = new Thread(() -> {
+            while (true) {
+                renderClock.await();
+                renderClock.due(System.nanoTime());
+                drawingArea.repaint();
+            }
+        }, "Flingball renderer");
+        renderer.setDaemon(true);
+        renderer.start();
+        
+        RenderState latest = renderState;
         while (true) {
+            clock.await();
+            int dueFrames = clock.due(System.nanoTime());
+            
             allPressesForBoard = new ArrayList<String>();
             
             // Getting all registered key presses till now
@@ -121,13 +190,15 @@ public class Simulator implements Runnable {
             
             // Now pass this list into the board to a method that calls action of all gadgets
             board.callActionOnGadgets(allPressesForBoard);
-            board.timeStep(1./fps);
-            
-            try {
-                Thread.sleep((long) (1000./fps));
-            } catch (InterruptedException e1) {
-                e1.printStackTrace();
+            for (int frame = 0; frame < dueFrames; frame++) {
+                if (frame > 0 && frame == dueFrames - 1) {
+                    // catching up, so draw from the frame before the last one rather than from the last batch
+                    latest = board.renderState(null, frameTime, clock.deadline() - 2*frameNanos);
+                }
+                board.timeStep(frameTime);
             }
+            latest = board.renderState(latest, frameTime, clock.deadline() - frameNanos);
+            renderState = latest;
         }
     }
     
@@ -139,8 +210,9 @@ public class Simulator implements Runnable {
         Graphics2D g2 = (Graphics2D) g;
         g2.setColor(Color.black);
         g2.fill(new Rectangle2D.Double(0, 0, DRAWING_AREA_SIZE_IN_PIXELS, DRAWING_AREA_SIZE_IN_PIXELS));
-        // Render the board, each gadget renders onto the canvas
-        board.render(g2);      
+        // Render the board, each gadget renders onto the canvas, between the last two frames
+        RenderState state = renderState;
+        board.render(g2, state, state.alpha(System.nanoTime()));
     }
 
 
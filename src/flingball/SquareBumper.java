@@ -5,6 +5,7 @@ import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import physics.*;
@@ -24,11 +25,13 @@ public class SquareBumper implements Gadget{
     private List<Gadget> triggers;
     private List<LineSegment> sides;
     private List<Circle> corners;
+    private final PhysicsKernel.Vector reflected = new PhysicsKernel.Vector();
     
     //Abstraction Function
     // AF(side1, side2, side3, side4, name, triggers) = a square bumper with name name that is represented in simulation by the line segments
     //   side1, side2, side3, side4, which are the top, right, bottom, left sides of the square. When this bumper is triggered, the gadgets in 
     //   triggers are activated. 
+    //   reflected is scratch space that collide() computes the bounced velocity in
     
     //Rep Invariant
     // for side1, side2, side3, and side4, p1 and p2 >= 0
@@ -87,46 +90,76 @@ public class SquareBumper implements Gadget{
     }
 
     @Override
-    public double timeToCollide(Ball ball, Double elapsedTime) {
+    public double timeToCollide(Ball ball, double elapsedTime, Contact contact) {
+        // skip the sides and corners when the ball cannot reach the bounds in time
+        Vect corner = side1.p1();
+        double cornerRadius = corners.get(0).getRadius();
+        if (PhysicsKernel.outOfReach(corner.x() - cornerRadius, corner.y() - cornerRadius,
+                corner.x() + Flingball.L + cornerRadius, corner.y() + Flingball.L + cornerRadius,
+                ball.getX(), ball.getY(), ball.getRadius(), ball.getXVelocity(), ball.getYVelocity(), elapsedTime)) {
+            contact.clear();
+            return Double.POSITIVE_INFINITY;
+        }
+        // the sides are features 0 to sides.size()-1, followed by the corners
+        int feature = Contact.NONE;
         //returns min time that the ball collides with either of the four walls
         double minTime = Double.POSITIVE_INFINITY;
-        for (LineSegment side: sides) {
-            double sideTime = Physics.timeUntilWallCollision(side, ball.getCircle(), ball.getVelocity());
+        double x = ball.getX(), y = ball.getY(), radius = ball.getRadius();
+        double xVel = ball.getXVelocity(), yVel = ball.getYVelocity();
+        for (int i = 0; i < sides.size(); i++) {
+            double sideTime = PhysicsKernel.timeUntilWallCollision(sides.get(i), x, y, radius, xVel, yVel);
             if (sideTime < minTime) {
                 minTime = sideTime;
+                feature = i;
             }
         }
-        for (Circle corner: corners) {
-            double cornerTime = Physics.timeUntilCircleCollision(corner, ball.getCircle(), ball.getVelocity());
+        for (int i = 0; i < corners.size(); i++) {
+            double cornerTime = PhysicsKernel.timeUntilCircleCollision(corners.get(i), x, y, radius, xVel, yVel);
             if (cornerTime < minTime) {
                 minTime = cornerTime;
+                feature = sides.size() + i;
             }
         }
+        contact.set(minTime, feature);
         return minTime;
     }
       
+    /**
+     * @return the line segments of the bumper, numbered as its features in a Contact
+     */
+    List<LineSegment> segments() {
+        return Collections.unmodifiableList(sides);
+    }
+    
+    /**
+     * @return the circles of the bumper, numbered as its features in a Contact after its segments
+     */
+    List<Circle> circles() {
+        return Collections.unmodifiableList(corners);
+    }
+    
     @Override
-    public String collide(Ball ball) {
-        double timeToCollide = timeToCollide(ball, 0.);
-        for (LineSegment side: sides) {
-            double sideTime = Physics.timeUntilWallCollision(side, ball.getCircle(), ball.getVelocity());
-            if (sideTime == timeToCollide) {
-                ball.setVelocity(Physics.reflectWall(side, ball.getVelocity()));
-                break;
-            }
-        }
-        for (Circle corner: corners) {
-            double cornerTime = Physics.timeUntilCircleCollision(corner, ball.getCircle(), ball.getVelocity());
-            if (cornerTime == timeToCollide) {
-                ball.setVelocity(Physics.reflectCircle(corner.getCenter(), ball.getCircle().getCenter(), ball.getVelocity()));
-                break;
-            }
+    public void advance(double time) {
+        // does not move
+    }
+    
+    @Override
+    public Outcome collide(Ball ball, Contact contact) {
+        int feature = contact.feature();
+        if (feature != Contact.NONE && feature < sides.size()) {
+            PhysicsKernel.reflectWall(sides.get(feature), ball.getXVelocity(), ball.getYVelocity(), reflected);
+            ball.setVelocity(reflected.x, reflected.y);
+        } else if (feature != Contact.NONE) {
+            Circle corner = corners.get(feature - sides.size());
+            PhysicsKernel.reflectCircle(corner.getCenter().x(), corner.getCenter().y(), ball.getX(), ball.getY(), 
+                    ball.getXVelocity(), ball.getYVelocity(), reflected);
+            ball.setVelocity(reflected.x, reflected.y);
         }
         
         for (Gadget trigger: triggers) {
             trigger.action();
         }
-        return "";
+        return Outcome.STAY;
     }
       
     @Override
@@ -153,12 +186,25 @@ public class SquareBumper implements Gadget{
         return this.side1.p1();
     }
     
+    @Override
+    public Rectangle2D bounds() {
+        // the corner circles stick out past the sides
+        double cornerRadius = corners.get(0).getRadius();
+        return new Rectangle2D.Double(side1.p1().x() - cornerRadius, side1.p1().y() - cornerRadius, 
+                Flingball.L + 2*cornerRadius, Flingball.L + 2*cornerRadius);
+    }
+    
     @Override
     public void link(Gadget activator) {
         checkRep();
         triggers.add(activator);               
     }
     
+    @Override
+    public int triggerCount() {
+        return triggers.size();
+    }
+    
     @Override
     public void action() {
         //by the spec, nothing should happen here
@@ -0,0 +1,279 @@
+package flingball;
+
+/**
+ * A mutable stepper that moves a group of balls through a frame for the SURVEY engine, one sub-step at a time:
+ * each sub-step surveys the group for its earliest collisions, moves the balls up to the earliest one and
+ * processes it, together with the later ones within the batch window of the collision set.
+ *
+ * The collisions of a sub-step are processed in order of time, merging the collisions with gadgets and those
+ * between balls, and a collision with a gadget goes before a collision between balls at the same time; collisions
+ * of the same kind at the same time keep the order they were offered in. A later collision in the batch may no
+ * longer happen once the ones before it are processed, so it is tested again first, and its balls are moved
+ * on to where they touch the gadget or each other before they bounce, never bouncing apart. Those balls then end
+ * the sub-step up to the window ahead of the others, which their clocks in the ball store record, and the next
+ * sub-steps move them only for the time they are not already ahead by, so that no ball moves for longer than
+ * the frame. Collisions that would take a ball past the end of the frame are left to the next sub-step, and so
+ * are collisions with gadgets that are moving, since the gadget would not be where the ball touches it.
+ *
+ * A frame stops early, with the rest of its time dropped, after MAX_SUB_STEPS sub-steps, or after
+ * MAX_STALLED_SUB_STEPS sub-steps in a row that do not move the balls forward in time, so that balls that keep
+ * colliding cannot hold up the board forever. The balls then stay where they are for the rest of the frame
+ * rather than pass through each other or the gadgets.
+ *
+ * Subclasses say which balls and gadgets make up the group: they survey it, move it, and compute and process
+ * its collisions.
+ */
+abstract class SubStepper {
+
+    /** the most sub-steps a frame can take */
+    static final int MAX_SUB_STEPS = 10_000;
+    /** the most sub-steps in a row a frame can take without moving the balls forward in time */
+    static final int MAX_STALLED_SUB_STEPS = 64;
+
+    private final CollisionSet collisions;
+    private final Contact retest;
+    private long subSteps;
+    private long subStepsSaved;
+    private long narrowPhaseTests;
+    private boolean capped;
+    private BallStore balls;
+
+    // Abstraction Function
+    // AF(collisions, retest, subSteps, subStepsSaved, narrowPhaseTests, capped, balls) = a stepper of a group of balls,
+    //      which gathers the earliest collisions of each sub-step in collisions. While step() runs, balls is the store
+    //      holding the group, and it is null otherwise. The last call to step() took
+    //      subSteps sub-steps, processed subStepsSaved collisions early in a batch, computed narrowPhaseTests collision
+    //      times, and stopped the frame early iff capped. retest is scratch space
+
+    // Rep Invariant
+    // 0 <= subSteps <= MAX_SUB_STEPS, subStepsSaved >= 0, narrowPhaseTests >= 0
+
+    // Rep Exposure Argument
+    // balls and collisions are aliases of the client's, which does not touch them while step() runs
+    // all other fields are private and never returned
+
+    // Thread Safety Argument
+    // Not threadsafe, confined to the thread that calls step(); the subclass locks whatever it shares with other threads
+
+    private void checkRep() {
+        assert 0 <= subSteps && subSteps <= MAX_SUB_STEPS;
+        assert subStepsSaved >= 0 && narrowPhaseTests >= 0;
+    }
+
+    /**
+     * Creates a stepper for a group of balls
+     * @param collisions the set to gather the collisions of each sub-step in, whose window is the batch window
+     */
+    SubStepper(CollisionSet collisions) {
+        this.collisions = collisions;
+        this.retest = new Contact();
+    }
+
+    /**
+     * Moves the group through a frame, sub-step by sub-step, stopping early if it takes too many
+     * @param store the store holding the balls of the group, whose clocks are all at the start of the frame
+     * @param frameTime length of the frame, >= 0
+     */
+    final void step(BallStore store, double frameTime) {
+        this.balls = store;
+        subSteps = 0;
+        subStepsSaved = 0;
+        narrowPhaseTests = 0;
+        capped = false;
+        int stalled = 0;
+        double elapsedTime = 0;
+        while (elapsedTime < frameTime) {
+            if (subSteps == MAX_SUB_STEPS || stalled == MAX_STALLED_SUB_STEPS) {
+                capped = true;
+                break;
+            }
+            collisions.clear();
+            double horizon = frameTime - elapsedTime;
+            narrowPhaseTests += survey(horizon);
+            // Check if collisions can be processed within this frame
+            double minTime = horizon;
+            boolean collision = false;
+            if (collisions.time() < minTime) {
+                minTime = collisions.time();
+                collision = true;
+            }
+            move(elapsedTime, minTime);
+            if (collision) {
+                resolve(minTime, elapsedTime + minTime, frameTime);
+            }
+            stalled = elapsedTime + minTime > elapsedTime ? 0 : stalled + 1;
+            elapsedTime += minTime;
+            subSteps++;
+        }
+        this.balls = null;
+        checkRep();
+    }
+
+    /**
+     * Processes the collisions in the set in order of time, with the balls looked up first since processing
+     * can move them to other slots
+     * @param minTime the time of the earliest collision from the start of the sub-step
+     * @param now the time within the frame of the earliest collision, which every ball has been moved up to
+     * @param frameTime length of the frame
+     */
+    private void resolve(double minTime, double now, double frameTime) {
+        collisions.capture(balls);
+        double window = Math.min(collisions.window(), frameTime - now);
+        int g = 0;
+        int p = 0;
+        while (g < collisions.gadgetCount() || p < collisions.pairCount()) {
+            if (p == collisions.pairCount()
+                    || (g < collisions.gadgetCount() && collisions.gadgetTime(g) <= collisions.pairTime(p))) {
+                resolveGadget(g++, minTime, now, window);
+            } else {
+                resolvePair(p++, minTime, now, window);
+            }
+        }
+    }
+
+    /**
+     * Processes collision k of the set between a ball and a gadget, if it still happens within the window after now
+     */
+    private void resolveGadget(int k, double minTime, double now, double window) {
+        Ball ball = collisions.gadgetBall(k);
+        int gadget = collisions.gadget(k);
+        if (!balls.contains(ball)) {
+            return;
+        }
+        if (collisions.gadgetTime(k) <= minTime) {
+            collide(gadget, ball, collisions.contact(k));
+            return;
+        }
+        narrowPhaseTests++;
+        double clock = balls.clock[ball.slot()];
+        double limit = now + window - clock;
+        double time;
+        if (isMoving(gadget) || limit < 0 || (time = timeToCollide(gadget, ball, limit, retest)) > limit) {
+            return;
+        }
+        balls.updatePosition(ball.slot(), clock, time);
+        collide(gadget, ball, retest);
+        subStepsSaved++;
+    }
+
+    /**
+     * Processes collision k of the set between two balls, if it still happens within the window after now,
+     * after moving the ball that is behind the other up to the same time
+     */
+    private void resolvePair(int k, double minTime, double now, double window) {
+        Ball ball = collisions.first(k);
+        Ball ball2 = collisions.second(k);
+        if (!balls.contains(ball) || !balls.contains(ball2)) {
+            return;
+        }
+        if (collisions.pairTime(k) <= minTime) {
+            collide(ball, ball2);
+            return;
+        }
+        double clock = Math.max(balls.clock[ball.slot()], balls.clock[ball2.slot()]);
+        double limit = now + window - clock;
+        if (limit < 0) {
+            return;
+        }
+        catchUp(ball.slot(), clock);
+        catchUp(ball2.slot(), clock);
+        narrowPhaseTests++;
+        double time = ball2.timeToCollide(ball);
+        if (time > limit) {
+            return;
+        }
+        balls.updatePosition(ball.slot(), clock, time);
+        balls.updatePosition(ball2.slot(), clock, time);
+        collide(ball, ball2);
+        subStepsSaved++;
+    }
+
+    /**
+     * Moves the ball in the given slot up to the given time, if its clock is behind it
+     */
+    private void catchUp(int slot, double time) {
+        double clock = balls.clock[slot];
+        if (clock < time) {
+            balls.updatePosition(slot, clock, time - clock);
+        }
+    }
+
+    /**
+     * @return the number of sub-steps the last call to step() took
+     */
+    final long subSteps() {
+        return subSteps;
+    }
+
+    /**
+     * @return the number of collisions the last call to step() processed early, together with an earlier
+     *         collision within the batch window
+     */
+    final long subStepsSaved() {
+        return subStepsSaved;
+    }
+
+    /**
+     * @return the number of times the last call to step() computed the time until a ball hits a gadget or another ball
+     */
+    final long narrowPhaseTests() {
+        return narrowPhaseTests;
+    }
+
+    /**
+     * @return true iff the last call to step() stopped the frame early, having taken too many sub-steps
+     */
+    final boolean capped() {
+        return capped;
+    }
+
+    /**
+     * Offers every collision of the group within the given time to the collision set, which is empty
+     * @param horizon time left in the frame
+     * @return the number of collision times computed
+     */
+    abstract long survey(double horizon);
+
+    /**
+     * Moves the balls of the group in a straight line for the given time, as BallStore.updatePositions(from, time),
+     * so that the balls ahead of the others only move for the time left, and the gadgets that move on their own
+     * @param from time within the frame that the sub-step starts at
+     * @param time length of the sub-step, >= 0
+     */
+    abstract void move(double from, double time);
+
+    /**
+     * @param gadget index of a gadget on the board
+     * @return true iff the gadget is moving, so that a ball would not find it where it was predicted to touch it
+     */
+    abstract boolean isMoving(int gadget);
+
+    /**
+     * Finds the time until a ball hits a gadget, as Gadget.timeToCollide
+     * @param gadget index of the gadget on the board
+     * @param ball a ball of the group
+     * @param horizon how far ahead to look
+     * @param contact set to where the ball hits the gadget
+     * @return the time until the collision, or POSITIVE_INFINITY if there is none
+     */
+    abstract double timeToCollide(int gadget, Ball ball, double horizon, Contact contact);
+
+    /**
+     * Bounces a ball off a gadget it is touching
+     * @param gadget index of the gadget on the board
+     * @param ball a ball of the group
+     * @param contact where the ball touches the gadget
+     */
+    abstract void collide(int gadget, Ball ball, Contact contact);
+
+    /**
+     * Bounces two balls of the group that are touching off each other
+     * @param ball a ball
+     * @param otherBall the ball it is touching
+     */
+    abstract void collide(Ball ball, Ball otherBall);
+
+    @Override public String toString() {
+        return "SubStepper[window=" + collisions.window() + ", subSteps=" + subSteps + "]";
+    }
+}
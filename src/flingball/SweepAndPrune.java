@@ -0,0 +1,220 @@
+package flingball;
+
+import java.util.Arrays;
+
+/**
+ * A mutable sort-and-sweep broadphase for ball to ball collisions.
+ *
+ * Each ball is enclosed in the box its circle sweeps through while moving with its
+ * current velocity for the rest of the frame. The boxes are kept sorted along the x axis,
+ * so only balls whose boxes overlap on both axes are reported as candidate pairs.
+ * The sort order is kept between calls, so while the balls on the board stay the same
+ * each call only has to repair a nearly sorted order.
+ *
+ * Parked balls do not move, so they are sorted once each time the balls on the board change,
+ * and each active ball only looks up the parked balls its box reaches. Two parked balls are
+ * never reported as a pair.
+ */
+class SweepAndPrune {
+
+    private BallStore balls;
+    private int structureVersion;
+    private int ballCount;
+    private int activeCount;
+    private int[] order;
+    private int[] parkedOrder;
+    private double parkedWidth;
+    private double[] minX;
+    private double[] maxX;
+    private double[] minY;
+    private double[] maxY;
+    private long[] pairs;
+    private int pairCount;
+
+    // Abstraction Function
+    // AF(balls, structureVersion, ballCount, activeCount, order, parkedOrder, parkedWidth, minX, maxX, minY, maxY,
+    //        pairs, pairCount) = a broadphase over the first ballCount balls of the store balls as it was at
+    //      structureVersion, the first activeCount of which are active, where ball i
+    //      sweeps through the box [minX[i], maxX[i]] x [minY[i], maxY[i]],
+    //      order[0..activeCount) lists the active balls by increasing minX, parkedOrder[0..ballCount-activeCount)
+    //      lists the parked balls by increasing minX, the widest of whose boxes is parkedWidth wide, and pairs[0..pairCount) are the
+    //      candidate pairs found by the last call to findPairs, each encoded as (i << 32) | j with i < j
+
+    // Rep Invariant
+    // order[0..activeCount) is a permutation of 0..activeCount-1
+    // parkedOrder[0..ballCount-activeCount) is a permutation of activeCount..ballCount-1
+    // all arrays are at least ballCount long
+    // pairs[0..pairCount) is strictly increasing
+
+    // Rep Exposure Argument
+    // all fields are private and never returned to the client
+    // balls is an alias of the board's ball store, but it is only read here
+
+    // Thread Safety Argument
+    // Not threadsafe, confined to the thread that steps the board
+
+    private void checkRep() {
+        assert activeCount <= ballCount && ballCount <= order.length;
+        for (int k = 1; k < pairCount; k++) {
+            assert pairs[k-1] < pairs[k];
+        }
+    }
+
+    /**
+     * Creates an empty broadphase
+     */
+    public SweepAndPrune() {
+        this.balls = null;
+        this.structureVersion = 0;
+        this.ballCount = 0;
+        this.activeCount = 0;
+        this.order = new int[0];
+        this.parkedOrder = new int[0];
+        this.parkedWidth = 0;
+        this.minX = new double[0];
+        this.maxX = new double[0];
+        this.minY = new double[0];
+        this.maxY = new double[0];
+        this.pairs = new long[0];
+        this.pairCount = 0;
+    }
+
+    /**
+     * Finds every pair of balls that could touch while moving in straight lines
+     * with their current velocities for the given amount of time.
+     * Each pair is reported once, ordered by the balls' slots in the store. Parked balls
+     * are only paired with active balls.
+     *
+     * @param store the balls on the board
+     * @param horizon the amount of time the balls will travel, >= 0
+     * @return the number of candidate pairs, which can then be read with first() and second()
+     */
+    public int findPairs(BallStore store, double horizon) {
+        updateBalls(store);
+        for (int i = 0; i < activeCount; i++) {
+            double x = store.x[i];
+            double y = store.y[i];
+            double dx = store.xVel[i] * horizon;
+            double dy = store.yVel[i] * horizon;
+            double radius = store.radius[i];
+            minX[i] = Math.min(x, x + dx) - radius;
+            maxX[i] = Math.max(x, x + dx) + radius;
+            minY[i] = Math.min(y, y + dy) - radius;
+            maxY[i] = Math.max(y, y + dy) + radius;
+        }
+        // insertion sort, which is linear when the order from the last call is still nearly right
+        for (int k = 1; k < activeCount; k++) {
+            int index = order[k];
+            int m = k - 1;
+            while (m >= 0 && minX[order[m]] > minX[index]) {
+                order[m + 1] = order[m];
+                m--;
+            }
+            order[m + 1] = index;
+        }
+        pairCount = 0;
+        int parkedCount = ballCount - activeCount;
+        for (int k = 0; k < activeCount; k++) {
+            int i = order[k];
+            for (int m = k + 1; m < activeCount && minX[order[m]] <= maxX[i]; m++) {
+                int j = order[m];
+                if (minY[j] <= maxY[i] && minY[i] <= maxY[j]) {
+                    addPair(Math.min(i, j), Math.max(i, j));
+                }
+            }
+            // active slots come before parked ones, so i is always first
+            for (int m = firstParked(minX[i] - parkedWidth); m < parkedCount && minX[parkedOrder[m]] <= maxX[i]; m++) {
+                int j = parkedOrder[m];
+                if (minX[i] <= maxX[j] && minY[j] <= maxY[i] && minY[i] <= maxY[j]) {
+                    addPair(i, j);
+                }
+            }
+        }
+        // report the pairs in the same order as a scan over all pairs would find them
+        Arrays.sort(pairs, 0, pairCount);
+        checkRep();
+        return pairCount;
+    }
+
+    /**
+     * @param k index of a pair found by the last call to findPairs, 0 <= k < that call's result
+     * @return the ball of the pair that comes first in the ball store
+     */
+    public Ball first(int k) {
+        return balls.view((int) (pairs[k] >>> 32));
+    }
+
+    /**
+     * @param k index of a pair found by the last call to findPairs, 0 <= k < that call's result
+     * @return the ball of the pair that comes second in the ball store
+     */
+    public Ball second(int k) {
+        return balls.view((int) pairs[k]);
+    }
+
+    /**
+     * @return the index in parkedOrder of the first parked ball whose box starts at or after x
+     */
+    private int firstParked(double x) {
+        int low = 0;
+        int high = ballCount - activeCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (minX[parkedOrder[middle]] < x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Keeps the previous sort order unless balls were added, removed, parked or woken since the
+     * last call, in which case the active balls start over in slot order and the parked balls,
+     * which do not move, are sorted once.
+     */
+    private void updateBalls(BallStore store) {
+        if (store == balls && store.structureVersion() == structureVersion) {
+            return;
+        }
+        balls = store;
+        structureVersion = store.structureVersion();
+        ballCount = store.size();
+        activeCount = store.activeCount();
+        if (order.length < ballCount) {
+            int capacity = Math.max(ballCount, 2*order.length);
+            order = new int[capacity];
+            parkedOrder = new int[capacity];
+            minX = new double[capacity];
+            maxX = new double[capacity];
+            minY = new double[capacity];
+            maxY = new double[capacity];
+        }
+        for (int i = 0; i < activeCount; i++) {
+            order[i] = i;
+        }
+        parkedWidth = 0;
+        for (int i = activeCount; i < ballCount; i++) {
+            double radius = store.radius[i];
+            minX[i] = store.x[i] - radius;
+            maxX[i] = store.x[i] + radius;
+            minY[i] = store.y[i] - radius;
+            maxY[i] = store.y[i] + radius;
+            parkedWidth = Math.max(parkedWidth, 2*radius);
+            int m = i - activeCount - 1;
+            while (m >= 0 && minX[parkedOrder[m]] > minX[i]) {
+                parkedOrder[m + 1] = parkedOrder[m];
+                m--;
+            }
+            parkedOrder[m + 1] = i;
+        }
+    }
+
+    private void addPair(int i, int j) {
+        if (pairCount == pairs.length) {
+            pairs = Arrays.copyOf(pairs, Math.max(16, 2*pairs.length));
+        }
+        pairs[pairCount++] = ((long) i << 32) | j;
+    }
+}
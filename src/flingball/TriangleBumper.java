@@ -2,9 +2,11 @@ package flingball;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.Polygon;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import physics.*;
@@ -24,11 +26,13 @@ public class TriangleBumper implements Gadget{
     private final List<Gadget> triggers;
     private final List<LineSegment> sides;
     private final List<Circle> corners;
+    private final PhysicsKernel.Vector reflected = new PhysicsKernel.Vector();
     
     //Abstraction Function
     // AF(name, orientation, topLeft, triangle, triggers, sides) = a triangle bumper with name name, orientation orientation (0/90/180/270)
     //      and topLeft corner at position topLeft. In simulation it is made up of the line segments in sides and is shown by the polygon triangle and when triggered, activates 
     //      the gadgets in triggers. 
+    //      reflected is scratch space that collide() computes the bounced velocity in
     
     //Rep Invariant
     // topLeft >= 0
@@ -103,45 +107,75 @@ public class TriangleBumper implements Gadget{
     }
 
     @Override
-    public double timeToCollide(Ball ball, Double elapsedTime) {
+    public double timeToCollide(Ball ball, double elapsedTime, Contact contact) {
+        // skip the sides and corners when the ball cannot reach the bounds in time
+        Vect corner = topLeft;
+        double cornerRadius = corners.get(0).getRadius();
+        if (PhysicsKernel.outOfReach(corner.x() - cornerRadius, corner.y() - cornerRadius,
+                corner.x() + Flingball.L + cornerRadius, corner.y() + Flingball.L + cornerRadius,
+                ball.getX(), ball.getY(), ball.getRadius(), ball.getXVelocity(), ball.getYVelocity(), elapsedTime)) {
+            contact.clear();
+            return Double.POSITIVE_INFINITY;
+        }
+        // the sides are features 0 to sides.size()-1, followed by the corners
+        int feature = Contact.NONE;
         double minTime = Double.POSITIVE_INFINITY;
-        for (LineSegment side: sides) {
-            double sideTime = Physics.timeUntilWallCollision(side, ball.getCircle(), ball.getVelocity());
-            if (sideTime < minTime){
+        double x = ball.getX(), y = ball.getY(), radius = ball.getRadius();
+        double xVel = ball.getXVelocity(), yVel = ball.getYVelocity();
+        for (int i = 0; i < sides.size(); i++) {
+            double sideTime = PhysicsKernel.timeUntilWallCollision(sides.get(i), x, y, radius, xVel, yVel);
+            if (sideTime < minTime) {
                 minTime = sideTime;
+                feature = i;
             }
         }
-        for (Circle corner: corners) {
-            double cornerTime = Physics.timeUntilCircleCollision(corner, ball.getCircle(), ball.getVelocity());
-            if (cornerTime < minTime){
+        for (int i = 0; i < corners.size(); i++) {
+            double cornerTime = PhysicsKernel.timeUntilCircleCollision(corners.get(i), x, y, radius, xVel, yVel);
+            if (cornerTime < minTime) {
                 minTime = cornerTime;
+                feature = sides.size() + i;
             }
         }
+        contact.set(minTime, feature);
         return minTime;
     }
       
+    /**
+     * @return the line segments of the bumper, numbered as its features in a Contact
+     */
+    List<LineSegment> segments() {
+        return Collections.unmodifiableList(sides);
+    }
+    
+    /**
+     * @return the circles of the bumper, numbered as its features in a Contact after its segments
+     */
+    List<Circle> circles() {
+        return Collections.unmodifiableList(corners);
+    }
+    
     @Override
-    public String collide(Ball ball) {
-        double timeToCollide = timeToCollide(ball, 0.);
-        for (LineSegment side: sides) {
-            double sideTime = Physics.timeUntilWallCollision(side, ball.getCircle(), ball.getVelocity());
-            if (sideTime == timeToCollide) {
-                ball.setVelocity(Physics.reflectWall(side, ball.getVelocity()));
-                break;
-            }
-        }
-        for (Circle corner: corners) {
-            double cornerTime = Physics.timeUntilCircleCollision(corner, ball.getCircle(), ball.getVelocity());
-            if (cornerTime == timeToCollide) {
-                ball.setVelocity(Physics.reflectCircle(corner.getCenter(), ball.getCircle().getCenter(), ball.getVelocity()));
-                break;
-            }
+    public void advance(double time) {
+        // does not move
+    }
+    
+    @Override
+    public Outcome collide(Ball ball, Contact contact) {
+        int feature = contact.feature();
+        if (feature != Contact.NONE && feature < sides.size()) {
+            PhysicsKernel.reflectWall(sides.get(feature), ball.getXVelocity(), ball.getYVelocity(), reflected);
+            ball.setVelocity(reflected.x, reflected.y);
+        } else if (feature != Contact.NONE) {
+            Circle corner = corners.get(feature - sides.size());
+            PhysicsKernel.reflectCircle(corner.getCenter().x(), corner.getCenter().y(), ball.getX(), ball.getY(), 
+                    ball.getXVelocity(), ball.getYVelocity(), reflected);
+            ball.setVelocity(reflected.x, reflected.y);
         }
         
         for (Gadget trigger: triggers) {
             trigger.action();
         }
-        return "";
+        return Outcome.STAY;
     }
     
     @Override
@@ -160,12 +194,25 @@ public class TriangleBumper implements Gadget{
         return topLeft;
     }
     
+    @Override
+    public Rectangle2D bounds() {
+        // the corner circles stick out past the sides
+        double cornerRadius = corners.get(0).getRadius();
+        return new Rectangle2D.Double(topLeft.x() - cornerRadius, topLeft.y() - cornerRadius, 
+                Flingball.L + 2*cornerRadius, Flingball.L + 2*cornerRadius);
+    }
+    
     @Override
     public void link(Gadget activator) {
         checkRep();
         triggers.add(activator);               
     }
     
+    @Override
+    public int triggerCount() {
+        return triggers.size();
+    }
+    
     @Override
     public void action() {
         //by spec, nothing should happen
@@ -2,7 +2,10 @@ package flingball;
 
 
 import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import physics.*;
@@ -10,6 +13,11 @@ import physics.*;
 //An implementation of gadget representing a wall
 public class Wall implements Gadget{
     
+    /** the parts of a wall a ball can hit, as numbered in a Contact */
+    private static final int WALL = 0;
+    private static final int START_CORNER = 1;
+    private static final int END_CORNER = 2;
+    
     private final String name;
     private final LineSegment wall;
     private final Circle startCorner;
@@ -18,10 +26,12 @@ public class Wall implements Gadget{
     private final Vect endPos;
     
     private final List<Gadget> triggers;
+    private final PhysicsKernel.Vector reflected = new PhysicsKernel.Vector();
     
     //Abstraction Function
     // AF(name, wall, startCorner, endCorner, startPos, endPos) = a wall with name name, represented in simulation by the line segment wall 
     //     starting at startCorner at position startPos and ending at endCorner at position endPos
+    //     reflected is scratch space that collide() computes the bounced velocity in
     
     //Rep Invariant
     // startPos >= 0
@@ -63,27 +73,71 @@ public class Wall implements Gadget{
     }
 
     @Override
-    public double timeToCollide(Ball ball, Double elapsedTime) {
-        //returns the min time that the ball collides with either of the corners or the wall
-        return Math.min(
-                Math.min(Physics.timeUntilWallCollision(wall, ball.getCircle(), ball.getVelocity()),
-                        Physics.timeUntilCircleCollision(startCorner, ball.getCircle(), ball.getVelocity())),
-                Physics.timeUntilCircleCollision(endCorner, ball.getCircle(), ball.getVelocity()));
+    public double timeToCollide(Ball ball, double elapsedTime, Contact contact) {
+        if (PhysicsKernel.outOfReach(Math.min(startPos.x(), endPos.x()), Math.min(startPos.y(), endPos.y()),
+                Math.max(startPos.x(), endPos.x()), Math.max(startPos.y(), endPos.y()),
+                ball.getX(), ball.getY(), ball.getRadius(), ball.getXVelocity(), ball.getYVelocity(), elapsedTime)) {
+            contact.clear();
+            return Double.POSITIVE_INFINITY;
+        }
+        //returns the min time that the ball collides with either of the corners or the wall,
+        //which are features WALL, START_CORNER and END_CORNER
+        double x = ball.getX(), y = ball.getY(), radius = ball.getRadius();
+        double xVel = ball.getXVelocity(), yVel = ball.getYVelocity();
+        double minTime = PhysicsKernel.timeUntilWallCollision(wall, x, y, radius, xVel, yVel);
+        int feature = WALL;
+        double startTime = PhysicsKernel.timeUntilCircleCollision(startCorner, x, y, radius, xVel, yVel);
+        if (startTime < minTime) {
+            minTime = startTime;
+            feature = START_CORNER;
+        }
+        double endTime = PhysicsKernel.timeUntilCircleCollision(endCorner, x, y, radius, xVel, yVel);
+        if (endTime < minTime) {
+            minTime = endTime;
+            feature = END_CORNER;
+        }
+        contact.set(minTime, feature);
+        return minTime;
     }
       
+    /**
+     * @return the line segments of the wall, numbered as its features in a Contact
+     */
+    List<LineSegment> segments() {
+        return Collections.singletonList(wall);
+    }
+    
+    /**
+     * @return the circles of the wall, numbered as its features in a Contact after its segments
+     */
+    List<Circle> circles() {
+        return Arrays.asList(startCorner, endCorner);
+    }
+    
     @Override
-    public String collide(Ball ball) {
-        double timeToCollide = timeToCollide(ball, 0.);
-        Vect newVelocity;
-        if (timeToCollide == Physics.timeUntilWallCollision(wall, ball.getCircle(), ball.getVelocity())){
-            newVelocity = Physics.reflectWall(wall, ball.getVelocity());  
-        } else if (timeToCollide == Physics.timeUntilCircleCollision(startCorner, ball.getCircle(), ball.getVelocity())) {
-            newVelocity = Physics.reflectCircle(startCorner.getCenter(), ball.getCircle().getCenter(), ball.getVelocity());
-        } else {
-            newVelocity = Physics.reflectCircle(endCorner.getCenter(), ball.getCircle().getCenter(), ball.getVelocity());
+    public void advance(double time) {
+        // does not move
+    }
+    
+    @Override
+    public Outcome collide(Ball ball, Contact contact) {
+        double x = ball.getX(), y = ball.getY();
+        double xVel = ball.getXVelocity(), yVel = ball.getYVelocity();
+        switch (contact.feature()) {
+        case WALL:
+            PhysicsKernel.reflectWall(wall, xVel, yVel, reflected);  
+            break;
+        case START_CORNER:
+            PhysicsKernel.reflectCircle(startPos.x(), startPos.y(), x, y, xVel, yVel, reflected);
+            break;
+        case END_CORNER:
+            PhysicsKernel.reflectCircle(endPos.x(), endPos.y(), x, y, xVel, yVel, reflected);
+            break;
+        default:
+            return Outcome.WALL;
         }
-        ball.setVelocity(newVelocity);
-        return name;
+        ball.setVelocity(reflected.x, reflected.y);
+        return Outcome.WALL;
     }
     
     @Override
@@ -100,12 +154,24 @@ public class Wall implements Gadget{
     public Vect position() {
         return new Vect(startPos.x() - endPos.x(), startPos.y() - endPos.y());
     }
+    
+    @Override
+    public Rectangle2D bounds() {
+        return new Rectangle2D.Double(Math.min(startPos.x(), endPos.x()), Math.min(startPos.y(), endPos.y()), 
+                Math.abs(endPos.x() - startPos.x()), Math.abs(endPos.y() - startPos.y()));
+    }
 
     @Override
     public void link(Gadget activator) {
         checkRep();
         this.triggers.add(activator);         
     }
+    
+    @Override
+    public int triggerCount() {
+        // walls do not trigger other gadgets when hit
+        return 0;
+    }
 
     @Override
     public void action() {
@@ -0,0 +1,207 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import physics.Vect;
+
+public class BallStoreTest {
+    /**
+     * Testing strategy
+     *  - add()
+     *      . store empty, store full so its arrays grow
+     *      . ball keeps its state after being added
+     *  - remove(), contains()
+     *      . first, middle, last ball; ball not in the store
+     *      . removed ball keeps its state and can still be used
+     *  - updatePositions(), applyMechanics()
+     *      . every ball is updated the same way as Ball would update it alone
+     *      . parked balls are left alone
+     *  - park(), wake()
+     *      . first, middle, last active ball; ball added or removed while another is parked
+     *  - advanceTo(), synchronize(), resetClocks(), updatePositions(from, time), updatePosition(slot, from, time)
+     *      . balls at different times, clocks kept when balls move to other slots
+     *      . balls ahead of the start by less than the time, by more
+     *      . ball woken at the latest time, parked ball synchronized
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // add more balls than the initial capacity
+    public void testAddGrows() {
+        BallStore store = new BallStore(1);
+        Ball a = new Ball("a", 10, 20, 1, 2);
+        Ball b = new Ball("b", 30, 40, 3, 4);
+        Ball c = new Ball("c", 50, 60, 5, 6);
+        store.add(a);
+        store.add(b);
+        store.add(c);
+        assertEquals(3, store.size());
+        assertEquals(Arrays.asList(a, b, c), store.toList());
+        assertEquals(new Vect(30, 40), b.getPosition());
+        assertEquals(new Vect(5, 6), c.getVelocity());
+    }
+
+    @Test
+    // remove the middle ball, then a ball that is not stored
+    public void testRemove() {
+        BallStore store = new BallStore();
+        Ball a = new Ball("a", 10, 20, 1, 2);
+        Ball b = new Ball("b", 30, 40, 3, 4);
+        Ball c = new Ball("c", 50, 60, 5, 6);
+        store.add(a);
+        store.add(b);
+        store.add(c);
+        int version = store.structureVersion();
+        assertTrue(store.contains(b));
+        assertTrue(store.remove(b));
+        assertFalse(store.contains(b));
+        assertTrue(store.contains(c));
+        assertFalse(store.remove(b));
+        assertTrue(version != store.structureVersion());
+        assertEquals(Arrays.asList(a, c), store.toList());
+        assertEquals(new Vect(50, 60), c.getPosition());
+        b.setVelocity(new Vect(7, 8));
+        assertEquals(new Vect(30, 40), b.getPosition());
+        assertEquals(new Vect(7, 8), b.getVelocity());
+        assertEquals(new Vect(5, 6), c.getVelocity());
+    }
+
+    @Test
+    // moving and slowing all balls at once matches moving each ball alone
+    public void testUpdateAll() {
+        BallStore store = new BallStore();
+        Ball a = new Ball("a", 100, 120, 10, 20);
+        Ball b = new Ball("b", 300, 40, -30, 40);
+        Ball aloneA = new Ball("a", 100, 120, 10, 20);
+        Ball aloneB = new Ball("b", 300, 40, -30, 40);
+        store.add(a);
+        store.add(b);
+        store.updatePositions(0.5);
+        store.applyMechanics(25, 0.025, 0.025, 0.5);
+        aloneA.updatePosition(0.5);
+        aloneA.applyMechanics(25, 0.025, 0.025, 0.5);
+        aloneB.updatePosition(0.5);
+        aloneB.applyMechanics(25, 0.025, 0.025, 0.5);
+        assertEquals(aloneA, a);
+        assertEquals(aloneB, b);
+    }
+
+    @Test
+    // park the first and middle balls, add a ball, then wake one again
+    public void testParkAndWake() {
+        BallStore store = new BallStore(1);
+        Ball a = new Ball("a", 10, 20, 1, 2);
+        Ball b = new Ball("b", 30, 40, 3, 4);
+        Ball c = new Ball("c", 50, 60, 5, 6);
+        store.add(a);
+        store.add(b);
+        store.add(c);
+        int version = store.structureVersion();
+        a.park();
+        assertTrue(version != store.structureVersion());
+        b.park();
+        b.park();
+        assertEquals(1, store.activeCount());
+        assertEquals(Arrays.asList(c, b, a), store.toList());
+        assertTrue(a.isParked() && b.isParked() && !c.isParked());
+        assertEquals(new Vect(0, 0), a.getVelocity());
+        assertEquals(new Vect(30, 40), b.getPosition());
+        Ball d = new Ball("d", 70, 80, 7, 8);
+        store.add(d);
+        assertEquals(Arrays.asList(c, d, b, a), store.toList());
+        assertEquals(2, store.activeCount());
+        a.wake();
+        assertEquals(Arrays.asList(c, d, a, b), store.toList());
+        assertEquals(3, store.activeCount());
+        assertFalse(a.isParked());
+        assertTrue(store.remove(b));
+        assertTrue(store.remove(c));
+        assertEquals(Arrays.asList(d, a), store.toList());
+        assertEquals(2, store.activeCount());
+        assertFalse(b.isParked());
+    }
+
+    @Test
+    // a parked ball neither moves nor falls
+    public void testUpdateSkipsParked() {
+        BallStore store = new BallStore();
+        Ball a = new Ball("a", 100, 120, 10, 20);
+        Ball b = new Ball("b", 300, 40, -30, 40);
+        store.add(a);
+        store.add(b);
+        b.park();
+        store.updatePositions(0.5);
+        store.applyMechanics(25, 0.025, 0.025, 0.5);
+        assertEquals(new Vect(105, 130), a.getPosition());
+        assertEquals(new Vect(300, 40), b.getPosition());
+        assertEquals(new Vect(0, 0), b.getVelocity());
+    }
+
+    @Test
+    // balls moved one at a time each keep their own clock, until they are synchronized
+    public void testClocks() {
+        BallStore store = new BallStore();
+        Ball a = new Ball("a", 100, 120, 10, 20);
+        Ball b = new Ball("b", 300, 40, -30, 40);
+        Ball c = new Ball("c", 200, 200, 10, 0);
+        store.add(a);
+        store.add(b);
+        store.add(c);
+        store.advanceTo(a.slot(), 0.5);
+        store.advanceTo(a.slot(), 1);
+        store.advanceTo(b.slot(), 0.5);
+        assertEquals(new Vect(110, 140), a.getPosition());
+        assertEquals(new Vect(285, 60), b.getPosition());
+        assertEquals(new Vect(200, 200), c.getPosition());
+        b.park();
+        assertEquals(0.5, store.clock[b.slot()], 0);
+        assertEquals(1, store.clock[a.slot()], 0);
+        a.park();
+        b.wake();
+        assertEquals(1, store.clock[b.slot()], 0);
+        b.setVelocity(new Vect(0, -20));
+        store.synchronize(2);
+        assertEquals(new Vect(110, 140), a.getPosition());
+        assertEquals(new Vect(285, 40), b.getPosition());
+        assertEquals(new Vect(220, 200), c.getPosition());
+        for (int slot = 0; slot < store.size(); slot++) {
+            assertEquals(2, store.clock[slot], 0);
+        }
+        store.resetClocks();
+        store.advanceTo(c.slot(), 1);
+        assertEquals(new Vect(230, 200), c.getPosition());
+    }
+
+    @Test
+    // balls moved ahead of the others only move for the time left when they all move together
+    public void testClocksAhead() {
+        BallStore store = new BallStore();
+        Ball a = new Ball("a", 100, 100, 10, 0);
+        Ball b = new Ball("b", 200, 100, 10, 0);
+        Ball c = new Ball("c", 300, 100, 10, 0);
+        store.add(a);
+        store.add(b);
+        store.add(c);
+        store.updatePositions(0, 1);
+        store.updatePosition(b.slot(), 1, 0.5);
+        store.updatePosition(c.slot(), 1, 2);
+        assertEquals(1.5, store.clock[b.slot()], 0);
+        store.updatePositions(1, 1);
+        assertEquals(new Vect(120, 100), a.getPosition());
+        assertEquals(new Vect(220, 100), b.getPosition());
+        assertEquals(new Vect(330, 100), c.getPosition());
+        assertEquals(2, store.clock[a.slot()], 0);
+        assertEquals(2, store.clock[b.slot()], 0);
+        assertEquals(3, store.clock[c.slot()], 0);
+    }
+}
@@ -0,0 +1,78 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class BoardBenchmarkTest {
+    /**
+     * Testing strategy
+     *  - randomBalls()
+     *      . count = 0, count > 0
+     *      . same seed gives the same balls, different seeds give different balls
+     *      . new balls touch no gadget and no other new ball
+     *  - measure()
+     *      . board with balls
+     */
+
+    private static final String BOARD =
+            "board name=Bench gravity=25.0\n"
+            + "squareBumper name=Square x=5 y=5\n"
+            + "circleBumper name=Circle x=10 y=10\n"
+            + "absorber name=Abs x=0 y=18 width=20 height=2\n";
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // no balls, then balls from the same seed twice and from another seed
+    public void testRandomBallsSeed() throws UnableToParseException {
+        Board board = BoardParser.parse(BOARD);
+        assertTrue(BoardBenchmark.randomBalls(board, 0, 1).isEmpty());
+        List<Ball> first = BoardBenchmark.randomBalls(board, 50, 1);
+        assertEquals(50, first.size());
+        assertEquals(first, BoardBenchmark.randomBalls(board, 50, 1));
+        assertFalse(first.equals(BoardBenchmark.randomBalls(board, 50, 2)));
+    }
+
+    @Test
+    // every new ball is clear of the gadgets and of the other new balls
+    public void testRandomBallsClear() throws UnableToParseException {
+        Board board = BoardParser.parse(BOARD);
+        List<Ball> balls = BoardBenchmark.randomBalls(board, 50, 3);
+        for (Ball ball : balls) {
+            double radius = ball.getRadius();
+            for (Gadget gadget : board.getGadgets()) {
+                assertFalse(gadget.bounds().intersects(ball.getX() - radius, ball.getY() - radius, 2*radius, 2*radius));
+            }
+            for (Ball other : balls) {
+                if (other != ball) {
+                    assertTrue(Math.hypot(other.getX() - ball.getX(), other.getY() - ball.getY()) > 2*radius);
+                }
+            }
+        }
+    }
+
+    @Test
+    // stepping a board with balls for a short time
+    public void testMeasure() throws UnableToParseException {
+        Board board = BoardParser.parse(BOARD);
+        for (Ball ball : BoardBenchmark.randomBalls(board, 5, 4)) {
+            board.addBall(ball);
+        }
+        BoardBenchmark.Iteration iteration = BoardBenchmark.measure(board, 10_000_000L);
+        assertTrue(iteration.frames > 0);
+        assertTrue(iteration.nanos >= 10_000_000L);
+        assertTrue(iteration.framesPerSecond() > 0);
+        assertTrue(iteration.bytesPerFrame() >= 0);
+        assertTrue(board.getSubStepCount() >= iteration.frames);
+    }
+}
@@ -0,0 +1,200 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import physics.Vect;
+
+public class BoardExecutorTest {
+    /**
+     * Testing strategy
+     *  - BoardExecutor()
+     *      . threads = 0, 1, > 1; ticksPerSecond = 0, > 0
+     *  - host()
+     *      . boards = 0, 1, > 1; board with the name of a hosted board
+     *  - tick()
+     *      . every hosted board stepped by the tick length, with 1 and > 1 threads
+     *      . ball passed through a joined wall, sent through a portal, to a hosted board and to a remote one
+     *      . queued key events
+     *  - deliver()
+     *      . passBall and portalBall for a hosted board, for a board not hosted, another kind of message
+     *  - start(), shutdown()
+     *      . ticks run at the tick rate until shut down
+     *  - tickNanos(), ticks(), localMessages(), remoteMessages(), report()
+     *      . no ticks, ticks
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // no threads
+    public void testNoThreads() {
+        new BoardExecutor(0, 60, message -> {});
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // no ticks per second
+    public void testNoTickRate() {
+        new BoardExecutor(1, 0, message -> {});
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // two boards with the same name
+    public void testHostSameName() {
+        BoardExecutor executor = new BoardExecutor(1, 60, message -> {});
+        try {
+            executor.host(makeBoard("A", new Ball("a", 100, 100, 0, 0)));
+            executor.host(makeBoard("A", new Ball("b", 100, 100, 0, 0)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    // no boards, then several boards stepped by one tick each, on one thread and on several
+    public void testTick() {
+        for (int threads : new int[] { 1, 4 }) {
+            BoardExecutor executor = new BoardExecutor(threads, 10, message -> {});
+            executor.tick();
+            assertEquals(1, executor.ticks());
+            List<Ball> balls = new ArrayList<Ball>();
+            for (int i = 0; i < 5; i++) {
+                Ball ball = new Ball("ball" + i, 100, 100 + 40*i, 100 + 10*i, 0);
+                balls.add(ball);
+                executor.host(makeBoard("B" + i, ball));
+            }
+            executor.tick();
+            executor.tick();
+            executor.shutdown();
+            for (int i = 0; i < 5; i++) {
+                assertEquals(100 + 2*(10 + i), balls.get(i).getPosition().x(), 1e-9);
+                assertEquals(2, executor.tickNanos("B" + i).count());
+            }
+            assertEquals(3, executor.ticks());
+            assertEquals(3, executor.tickNanos().count());
+            assertEquals(0, executor.localMessages());
+            assertEquals(0, executor.remoteMessages());
+            assertTrue(executor.report().contains("B4 ms: "));
+        }
+    }
+
+    @Test
+    // a ball passes through the wall between two hosted boards joined side by side without touching the remote listener
+    public void testTickPassBall() {
+        List<String> remote = new ArrayList<String>();
+        BoardExecutor executor = new BoardExecutor(2, 2, remote::add);
+        Board left = makeBoard("Left", new Ball("ball", 370, 100, 100, 0));
+        Board right = makeBoard("Right");
+        executor.host(left);
+        executor.host(right);
+        executor.joinHorizontally("Left", "Right");
+        executor.tick();
+        executor.shutdown();
+        assertEquals(1, executor.localMessages());
+        assertEquals(0, executor.remoteMessages());
+        assertEquals(Arrays.asList(), remote);
+        assertFalse("ball should have left Left", left.toString().contains("name=ball"));
+        assertTrue("ball should have entered Right", right.toString().contains("name=passBall, xPos=0.0, yPos=100.0, xVel=100.0"));
+    }
+
+    @Test
+    // a ball sent through a portal to a hosted board comes out of the portal there,
+    // and one joined to a board that is not hosted goes to the remote listener
+    public void testTickPortalAndRemote() {
+        List<String> remote = new ArrayList<String>();
+        BoardExecutor executor = new BoardExecutor(2, 2, remote::add);
+        List<Gadget> gadgets = new ArrayList<Gadget>(Arrays.asList(new Portal("Door", 100, 100, "There", "Exit")));
+        Board here = new Board("Here", gadgets, Arrays.<Ball>asList(new Ball("ball", 60, 110, 100, 0), new Ball("away", 200, 20, 0, -100)),
+                0, 0, 0, new HashMap<String, String>(), portalMap(gadgets));
+        List<Gadget> exits = new ArrayList<Gadget>(Arrays.asList(new Portal("Exit", 300, 300, "", "Nowhere")));
+        Board there = new Board("There", exits, new ArrayList<Ball>(), 0, 0, 0, new HashMap<String, String>(), portalMap(exits));
+        executor.host(here);
+        executor.host(there);
+        here.addActiveBoard("Remote");
+        here.concatBoard("Remote", "N");
+        executor.tick();
+        executor.shutdown();
+        assertEquals(1, executor.localMessages());
+        assertEquals(1, executor.remoteMessages());
+        assertEquals(Arrays.asList("passBall Here Remote 200.0 5.0 0.0 -100.0"), remote);
+        assertTrue("ball should come out of Exit", there.toString().contains("name=portalBall, xPos=300.0, yPos=300.0, xVel=100.0"));
+    }
+
+    @Test
+    // messages from the network are handed to the hosted board they are for, and others are refused
+    public void testDeliver() {
+        BoardExecutor executor = new BoardExecutor(1, 60, message -> {});
+        List<Gadget> exits = new ArrayList<Gadget>(Arrays.asList(new Portal("Exit", 300, 300, "", "Nowhere")));
+        Board board = new Board("Here", exits, new ArrayList<Ball>(), 0, 0, 0, new HashMap<String, String>(), portalMap(exits));
+        executor.host(board);
+        board.addActiveBoard("Remote");
+        board.concatBoard("Remote", "S");
+        assertTrue(executor.deliver("passBall Remote Here 150.0 5.0 0.0 -100.0"));
+        assertTrue(executor.deliver("portalBall Remote Here Exit 0.0 50.0"));
+        assertFalse(executor.deliver("portalBall Remote Here Missing 0.0 50.0"));
+        assertFalse(executor.deliver("passBall Remote Elsewhere 150.0 5.0 0.0 -100.0"));
+        assertFalse(executor.deliver("joined Remote"));
+        executor.shutdown();
+        assertTrue(board.toString().contains("name=passBall, xPos=150.0, yPos=400.0"));
+        assertTrue(board.toString().contains("name=portalBall, xPos=300.0, yPos=300.0"));
+    }
+
+    @Test
+    // key events queued for a board act on it right before its next step
+    public void testKeyEvent() {
+        BoardExecutor executor = new BoardExecutor(1, 10, message -> {});
+        LeftFlipper flipper = new LeftFlipper("flipper", 200, 200, LeftFlipper.Orientation.DEG_0);
+        LeftFlipper expected = new LeftFlipper("flipper", 200, 200, LeftFlipper.Orientation.DEG_0);
+        Map<String, String> keys = new HashMap<String, String>();
+        keys.put("Pressspace", "flipper");
+        executor.host(new Board("A", Arrays.<Gadget>asList(flipper), new ArrayList<Ball>(), 0, 0, 0, keys, new HashMap<String, Vect>()));
+        executor.keyEvent("A", "Pressspace");
+        executor.tick();
+        executor.shutdown();
+        expected.action();
+        expected.advance(0.1);
+        assertEquals(expected, flipper);
+    }
+
+    @Test
+    // started, the executor ticks on its own until it is shut down
+    public void testStart() throws InterruptedException {
+        BoardExecutor executor = new BoardExecutor(1, 200, message -> {});
+        executor.host(makeBoard("A", new Ball("a", 100, 100, 10, 0)));
+        executor.start();
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (executor.ticks() < 5 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        executor.shutdown();
+        long ticks = executor.ticks();
+        assertTrue("expected at least 5 ticks, got " + ticks, ticks >= 5);
+        Thread.sleep(50);
+        assertEquals(ticks, executor.ticks());
+    }
+
+    private static Board makeBoard(String name, Ball... balls) {
+        return new Board(name, new ArrayList<Gadget>(), Arrays.asList(balls), 0, 0, 0, new HashMap<String, String>(),
+                new HashMap<String, Vect>());
+    }
+
+    private static Map<String, Vect> portalMap(List<Gadget> portals) {
+        Map<String, Vect> portalMap = new HashMap<String, Vect>();
+        for (Gadget gadget : portals) {
+            portalMap.put(gadget.name(), gadget.position());
+        }
+        return portalMap;
+    }
+}
@@ -0,0 +1,149 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class BoardGeneratorTest {
+    /**
+     * Testing strategy
+     *  - generate()
+     *      . no gadgets, every kind of gadget
+     *      . no fire links, fire links
+     *      . no balls, balls
+     *      . board nearly full, gadgets that do not fit, balls that do not fit
+     *      . same seed, different seeds
+     *  - count()
+     *      . count, percentage, malformed
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // empty board
+    public void testGenerateEmpty() throws UnableToParseException {
+        String text = BoardGenerator.generate("Empty", Collections.emptyMap(), 0, 0, 1);
+        assertEquals("board name=Empty\n", text);
+        Board board = BoardParser.parse(text);
+        assertEquals("Empty", board.getBoardName());
+        assertEquals(4, board.getGadgets().size()); // just the walls
+    }
+
+    @Test
+    // every kind of gadget, fire links and balls, parsed back
+    public void testGenerateParses() throws UnableToParseException {
+        Map<BoardGenerator.Kind, Integer> counts = new EnumMap<>(BoardGenerator.Kind.class);
+        for (BoardGenerator.Kind kind : BoardGenerator.Kind.values()) {
+            counts.put(kind, 3);
+        }
+        String text = BoardGenerator.generate("Big", counts, 10, 20, 2);
+        Board board = BoardParser.parse(text);
+        List<Gadget> gadgets = board.getGadgets();
+        assertEquals(4 + 3*BoardGenerator.Kind.values().length, gadgets.size());
+        assertEquals(3, count(gadgets, SquareBumper.class));
+        assertEquals(3, count(gadgets, CircleBumper.class));
+        assertEquals(3, count(gadgets, TriangleBumper.class));
+        assertEquals(3, count(gadgets, LeftFlipper.class));
+        assertEquals(3, count(gadgets, RightFlipper.class));
+        assertEquals(3, count(gadgets, Absorber.class));
+        assertEquals(3, count(gadgets, Portal.class));
+        assertEquals(3, board.getPortalMap().size());
+        assertEquals(10, lines(text, "fire "));
+        assertEquals(20, lines(text, "ball "));
+        // gadgets stay on the board and apart
+        boolean[][] occupied = new boolean[20][20];
+        for (String line : text.split("\n")) {
+            String[] fields = line.split("[ =]");
+            if (fields[0].equals("board") || fields[0].equals("fire") || fields[0].equals("ball")) {
+                continue;
+            }
+            int x = Integer.parseInt(fields[4]);
+            int y = Integer.parseInt(fields[6]);
+            int width = fields[0].endsWith("Flipper") ? 2 : fields[0].equals("absorber") ? Integer.parseInt(fields[8]) : 1;
+            int height = fields[0].endsWith("Flipper") ? 2 : fields[0].equals("absorber") ? Integer.parseInt(fields[10]) : 1;
+            for (int row = y; row < y + height; row++) {
+                for (int column = x; column < x + width; column++) {
+                    assertFalse(line + " overlaps another gadget", occupied[row][column]);
+                    occupied[row][column] = true;
+                }
+            }
+        }
+    }
+
+    @Test
+    // same seed gives the same board, a different seed a different one
+    public void testGenerateSeed() {
+        Map<BoardGenerator.Kind, Integer> counts = new EnumMap<>(BoardGenerator.Kind.class);
+        counts.put(BoardGenerator.Kind.SQUARE_BUMPER, 50);
+        counts.put(BoardGenerator.Kind.ABSORBER, 5);
+        String text = BoardGenerator.generate("Seeded", counts, 5, 50, 3);
+        assertEquals(text, BoardGenerator.generate("Seeded", counts, 5, 50, 3));
+        assertFalse(text.equals(BoardGenerator.generate("Seeded", counts, 5, 50, 4)));
+    }
+
+    @Test
+    // every cell filled by a square bumper or a ball
+    public void testGenerateFull() throws UnableToParseException {
+        Map<BoardGenerator.Kind, Integer> counts = Collections.singletonMap(BoardGenerator.Kind.SQUARE_BUMPER, 300);
+        String text = BoardGenerator.generate("Full", counts, 0, 100, 5);
+        assertEquals(304, BoardParser.parse(text).getGadgets().size());
+        assertEquals(100, lines(text, "ball "));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // more gadgets than cells
+    public void testGenerateTooManyGadgets() {
+        BoardGenerator.generate("Over", Collections.singletonMap(BoardGenerator.Kind.CIRCLE_BUMPER, 401), 0, 0, 6);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // more balls than empty cells
+    public void testGenerateTooManyBalls() {
+        BoardGenerator.generate("Over", Collections.singletonMap(BoardGenerator.Kind.CIRCLE_BUMPER, 390), 0, 11, 7);
+    }
+
+    @Test
+    // plain count, percentage of the board's cells
+    public void testCount() {
+        assertEquals(12, BoardGenerator.count("12", 400));
+        assertEquals(100, BoardGenerator.count("25%", 400));
+        assertEquals(2, BoardGenerator.count("12.5%", 16));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // neither a count nor a percentage
+    public void testCountMalformed() {
+        BoardGenerator.count("-3", 400);
+    }
+
+    private static int count(List<Gadget> gadgets, Class<?> type) {
+        int count = 0;
+        for (Gadget gadget : gadgets) {
+            if (type.isInstance(gadget)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int lines(String text, String prefix) {
+        int count = 0;
+        for (String line : text.split("\n")) {
+            if (line.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -1,11 +1,16 @@
 package flingball;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
@@ -27,7 +32,29 @@ public class BoardTest {
      *  - toString()
      *      . no further partitions
      *  - timeStep()
-     *      . no further partitions
+     *      . engine = SURVEY, EVENT_DRIVEN, ASYNCHRONOUS
+     *      . steady state without collisions, with balls colliding with walls, bumpers and each other,
+     *        allocates no memory, with each engine
+     *      . flipper turning with no balls, with many balls, with each engine
+     *      . balls held by an absorber are parked until it fires them, with each engine
+     *      . parked ball woken by another ball, with each engine
+     *      . ball through a portal to this board, to a missing portal, to another active board
+     *      . ball hitting a wall joined to another board, not joined
+     *      . batch window 0, > 0: nearly simultaneous collisions in one sub-step, later collision that
+     *        an earlier one in the batch prevents, crowded board within the cap on sub-steps, whole and in islands
+     *      . parallel survey: below, at and above the ball threshold, with batch window 0 and > 0,
+     *        against flippers as they turn
+     *  - setBatchWindow()
+     *      . 0, > 0, negative
+     *      . island stepping: groups of balls apart, stepped one after the other and in parallel;
+     *        ball that could reach a hazard
+     *  - setParallelSurvey()
+     *      . no pool, pool; threshold 1, > 1, 0
+     *  - setIslandStepping()
+     *      . true, false
+     *  - getMetrics()
+     *      . no frames, frames with collisions against walls, bumpers and balls
+     *      . collisions with a gadget that triggers another
      * 
      */
     
@@ -79,6 +106,601 @@ public class BoardTest {
         
     }
     
+    @Test
+    // time step, event driven engine gives the same result as the survey
+    public void testTimeStepEventDriven() {
+        Board survey = makeBouncingBoard();
+        Board events = makeBouncingBoard();
+        events.setEngine(Board.Engine.EVENT_DRIVEN);
+        assertEquals(Board.Engine.EVENT_DRIVEN, events.getEngine());
+        for (int i = 0; i < 120; i++) {
+            survey.timeStep(1./60);
+            events.timeStep(1./60);
+        }
+        assertEquals(survey, events);
+    }
+    
+    @Test
+    // time step, balls flying between gadgets allocate nothing once the board is warmed up
+    public void testTimeStepAllocatesNothing() {
+        for (Board.Engine engine : Board.Engine.values()) {
+            List<Ball> ballList = new ArrayList<Ball>();
+            ballList.add(new Ball("ball1", 60, 40, 20, 0));
+            ballList.add(new Ball("ball2", 270, 230, 0, -20));
+            List<Gadget> gadgetList = new ArrayList<Gadget>();
+            gadgetList.add(new SquareBumper("square", 100, 60));
+            gadgetList.add(new CircleBumper("circle", 40, 100));
+            gadgetList.add(new TriangleBumper("triangle", 240, 180, Orientation.DEG_90));
+            gadgetList.add(new Absorber("absorber", 0, 360, 400, 20));
+            Board board = new Board("A", gadgetList, ballList, 0, 0, 0, new HashMap<String, String>(), new HashMap<String, Vect>());
+            board.setEngine(engine);
+            // the compiler may allocate a few bytes once while it optimizes the code, so look for a round
+            // without any allocation, which there could not be if something were allocated on every call
+            long allocated = Long.MAX_VALUE;
+            for (int round = 0; round < 20; round++) {
+                long before = allocatedBytes();
+                for (int i = 0; i < 12; i++) {
+                    board.timeStep(1./60);
+                }
+                allocated = Math.min(allocated, allocatedBytes() - before);
+            }
+            assertEquals(engine + " bytes allocated", 0, allocated);
+            assertEquals(140, ballList.get(0).getPosition().x(), 1e-9);
+            assertEquals(150, ballList.get(1).getPosition().y(), 1e-9);
+        }
+    }
+    
+    @Test
+    // time step, balls falling and bouncing off walls, bumpers and each other allocate nothing once the board is warmed up
+    public void testTimeStepCollidingAllocatesNothing() {
+        for (Board.Engine engine : Board.Engine.values()) {
+            List<Ball> ballList = new ArrayList<Ball>();
+            ballList.add(new Ball("ball1", 50, 200, 150, 0));
+            ballList.add(new Ball("ball2", 350, 200, -150, 0));
+            ballList.add(new Ball("ball3", 250, 40, 0, 0));
+            ballList.add(new Ball("ball4", 120, 60, 40, 0));
+            List<Gadget> gadgetList = new ArrayList<Gadget>();
+            gadgetList.add(new SquareBumper("square", 240, 340));
+            gadgetList.add(new CircleBumper("circle", 120, 340));
+            gadgetList.add(new TriangleBumper("triangle", 300, 300, Orientation.DEG_90));
+            Board board = new Board("A", gadgetList, ballList, 25*Flingball.L, 0, 0, new HashMap<String, String>(),
+                    new HashMap<String, Vect>());
+            board.setEngine(engine);
+            for (int i = 0; i < 600; i++) {
+                board.timeStep(1./60);
+            }
+            FrameMetrics metrics = board.getMetrics();
+            Map<FrameMetrics.Collider, Long> warm = new HashMap<>();
+            for (FrameMetrics.Collider collider : FrameMetrics.Collider.values()) {
+                warm.put(collider, metrics.collisions(collider));
+            }
+            // as above, look for a round without any allocation
+            long allocated = Long.MAX_VALUE;
+            for (int round = 0; round < 20; round++) {
+                long before = allocatedBytes();
+                for (int i = 0; i < 60; i++) {
+                    board.timeStep(1./60);
+                }
+                allocated = Math.min(allocated, allocatedBytes() - before);
+            }
+            assertEquals(engine + " bytes allocated", 0, allocated);
+            for (FrameMetrics.Collider collider : new FrameMetrics.Collider[] { FrameMetrics.Collider.WALL,
+                    FrameMetrics.Collider.BALL, FrameMetrics.Collider.SQUARE_BUMPER }) {
+                assertTrue(engine + " " + collider + " collisions while measured",
+                        metrics.collisions(collider) > warm.get(collider));
+            }
+        }
+    }
+    
+    @Test
+    // time step, portals send balls to a portal on this board or another active board, and let
+    // them pass over if the portal they lead to does not exist
+    public void testTimeStepPortals() {
+        List<Ball> ballList = new ArrayList<Ball>();
+        Ball local = new Ball("local", 60, 110, 100, 0);
+        Ball missing = new Ball("missing", 60, 310, 100, 0);
+        Ball remote = new Ball("remote", 260, 310, 100, 0);
+        ballList.add(local);
+        ballList.add(missing);
+        ballList.add(remote);
+        List<Gadget> gadgetList = new ArrayList<Gadget>();
+        gadgetList.add(new Portal("Alpha", 100, 100, "", "Beta"));
+        gadgetList.add(new Portal("Beta", 300, 100, "", "Nowhere"));
+        gadgetList.add(new Portal("Gamma", 100, 300, "", "Nowhere"));
+        gadgetList.add(new Portal("Delta", 300, 300, "Mercury", "Gamma"));
+        Map<String, Vect> portalMap = new HashMap<String, Vect>();
+        for (Gadget gadget : gadgetList) {
+            portalMap.put(gadget.name(), gadget.position());
+        }
+        Board board = new Board("A", gadgetList, ballList, 0, 0, 0, new HashMap<String, String>(), portalMap);
+        List<String> messages = new ArrayList<String>();
+        board.attachListener(messages::add);
+        board.addActiveBoard("Mercury");
+        board.timeStep(0.5);
+        assertTrue("ball should come out of Beta", local.getPosition().x() > 300);
+        assertEquals(100, local.getPosition().y(), 1e-9);
+        assertEquals(new Vect(100, 0), local.getVelocity());
+        assertEquals(110, missing.getPosition().x(), 1e-6);
+        assertEquals(310, missing.getPosition().y(), 1e-9);
+        assertEquals(Arrays.asList("portalBall A Mercury Gamma 100.0 0.0"), messages);
+        Vect left = remote.getPosition();
+        board.timeStep(0.5);
+        assertEquals("ball sent to Mercury should have left the board", left, remote.getPosition());
+    }
+    
+    @Test
+    // time step, a ball hitting a wall joined to another board passes to it, and bounces off the others
+    public void testTimeStepWalls() {
+        List<Ball> ballList = new ArrayList<Ball>();
+        Ball north = new Ball("north", 100, 20, 0, -100);
+        Ball west = new Ball("west", 20, 100, -100, 0);
+        ballList.add(north);
+        ballList.add(west);
+        Board board = new Board("A", new ArrayList<Gadget>(), ballList, 0, 0, 0, new HashMap<String, String>(),
+                new HashMap<String, Vect>());
+        List<String> messages = new ArrayList<String>();
+        board.attachListener(messages::add);
+        board.addActiveBoard("B");
+        board.concatBoard("B", "N");
+        board.timeStep(0.5);
+        assertEquals(Arrays.asList("passBall A B 100.0 5.0 0.0 -100.0"), messages);
+        assertEquals(new Vect(100, 0), west.getVelocity());
+        Vect left = north.getPosition();
+        board.timeStep(0.5);
+        assertEquals("ball passed to B should have left the board", left, north.getPosition());
+    }
     
+    @Test
+    // time step, a flipper turns by the frame time once per frame, however many balls there are
+    public void testTimeStepFlipperIndependentOfBalls() {
+        LeftFlipper expected = new LeftFlipper("flipper", 200, 200, LeftFlipper.Orientation.DEG_0);
+        expected.action();
+        for (int frame = 0; frame < 3; frame++) {
+            expected.advance(1./60);
+        }
+        for (Board.Engine engine : Board.Engine.values()) {
+            for (int ballCount : new int[] { 0, 1, 8 }) {
+                List<Ball> ballList = new ArrayList<Ball>();
+                for (int i = 0; i < ballCount; i++) {
+                    // resting next to the flipper, but out of its reach
+                    ballList.add(new Ball("ball" + i, 260 + 12*i, 210, 0, 0));
+                }
+                LeftFlipper flipper = new LeftFlipper("flipper", 200, 200, LeftFlipper.Orientation.DEG_0);
+                List<Gadget> gadgetList = new ArrayList<Gadget>();
+                gadgetList.add(flipper);
+                Board board = new Board("A", gadgetList, ballList, 0, 0, 0, new HashMap<String, String>(), new HashMap<String, Vect>());
+                board.setEngine(engine);
+                flipper.action();
+                for (int frame = 0; frame < 3; frame++) {
+                    board.timeStep(1./60);
+                }
+                assertEquals(engine + " with " + ballCount + " balls", expected, flipper);
+            }
+        }
+    }
     
+    @Test
+    // time step, balls held by an absorber stay put, are not tested and do not collide, until fired
+    public void testTimeStepParksHeldBalls() {
+        for (Board.Engine engine : Board.Engine.values()) {
+            List<Ball> ballList = new ArrayList<Ball>();
+            for (int i = 0; i < 3; i++) {
+                ballList.add(new Ball("ball" + i, 100 + 100*i, 300, 0, 200));
+            }
+            Absorber absorber = new Absorber("absorber", 0, 360, 400, 40);
+            List<Gadget> gadgetList = new ArrayList<Gadget>();
+            gadgetList.add(absorber);
+            Board board = new Board("A", gadgetList, ballList, 25*Flingball.L, 0.025, 0.025, new HashMap<String, String>(), new HashMap<String, Vect>());
+            board.setEngine(engine);
+            for (int i = 0; i < 60; i++) {
+                board.timeStep(1./60);
+            }
+            FrameMetrics metrics = board.getMetrics();
+            assertEquals(engine.name(), 3, absorber.getHeldBalls().size());
+            assertEquals(3, metrics.collisions(FrameMetrics.Collider.ABSORBER));
+            assertEquals(0, metrics.collisions(FrameMetrics.Collider.BALL));
+            // most frames come after every ball is held, and test nothing
+            assertEquals(0, metrics.narrowPhaseTests().valueAtPercentile(50));
+            for (Ball ball : ballList) {
+                assertTrue(ball.isParked());
+                assertEquals(new Vect(395, 395), ball.getPosition());
+                assertEquals(Vect.ZERO, ball.getVelocity());
+            }
+            Ball fired = absorber.getHeldBalls().get(0);
+            Ball held = absorber.getHeldBalls().get(1);
+            absorber.action();
+            board.timeStep(1./60);
+            assertEquals(2, absorber.getHeldBalls().size());
+            assertFalse(fired.isParked());
+            assertTrue(fired.getY() < 360);
+            assertEquals(new Vect(395, 395), held.getPosition());
+            assertEquals(0, metrics.collisions(FrameMetrics.Collider.BALL));
+        }
+    }
+    
+    @Test
+    // time step, a ball hitting a parked ball wakes it up
+    public void testTimeStepWakesTouchedBall() {
+        for (Board.Engine engine : Board.Engine.values()) {
+            List<Ball> ballList = new ArrayList<Ball>();
+            Ball moving = new Ball("moving", 100, 200, 200, 0);
+            Ball parked = new Ball("parked", 200, 200, 0, 0);
+            ballList.add(moving);
+            ballList.add(parked);
+            Board board = new Board("A", new ArrayList<Gadget>(), ballList, 0, 0, 0, new HashMap<String, String>(), new HashMap<String, Vect>());
+            board.setEngine(engine);
+            parked.park();
+            for (int i = 0; i < 30; i++) {
+                board.timeStep(1./60);
+            }
+            assertFalse(engine.name(), parked.isParked());
+            assertEquals(1, board.getMetrics().collisions(FrameMetrics.Collider.BALL));
+            assertEquals(Vect.ZERO, moving.getVelocity());
+            assertTrue(parked.getX() > 200);
+        }
+    }
+    
+    @Test
+    // metrics, both engines count the same frames, sub-steps and collisions
+    public void testMetrics() {
+        Board survey = makeBouncingBoard();
+        Board events = makeBouncingBoard();
+        events.setEngine(Board.Engine.EVENT_DRIVEN);
+        assertEquals(0, survey.getMetrics().frames());
+        for (int i = 0; i < 120; i++) {
+            survey.timeStep(1./60);
+            events.timeStep(1./60);
+        }
+        for (Board board : new Board[] { survey, events }) {
+            FrameMetrics metrics = board.getMetrics();
+            assertEquals(120, metrics.frames());
+            assertEquals(120, metrics.subSteps().count());
+            assertEquals(board.getSubStepCount(), metrics.subSteps().mean() * 120, 1e-9);
+            assertTrue(metrics.subSteps().max() > 1);
+            assertTrue(metrics.narrowPhaseTests().valueAtPercentile(50) > 0);
+            assertTrue(metrics.frameNanos().max() > 0);
+            assertTrue(metrics.collisions(FrameMetrics.Collider.WALL) > 0);
+            assertEquals(0, metrics.triggerActions());
+            assertTrue(metrics.report().startsWith("frames: 120\n"));
+        }
+        for (FrameMetrics.Collider collider : FrameMetrics.Collider.values()) {
+            assertEquals(collider.name(), survey.getMetrics().collisions(collider), events.getMetrics().collisions(collider));
+        }
+    }
+    
+    @Test
+    // metrics, a ball hitting a bumper that triggers an absorber
+    public void testMetricsTriggerActions() {
+        List<Ball> ballList = new ArrayList<Ball>();
+        ballList.add(new Ball("ball", 60, 110, 200, 0));
+        List<Gadget> gadgetList = new ArrayList<Gadget>();
+        Gadget square = new SquareBumper("square", 100, 100);
+        square.link(new Absorber("absorber", 0, 360, 400, 20));
+        gadgetList.add(square);
+        Board board = new Board("A", gadgetList, ballList, 0, 0, 0, new HashMap<String, String>(), new HashMap<String, Vect>());
+        for (int i = 0; i < 30; i++) {
+            board.timeStep(1./60);
+        }
+        assertEquals(1, board.getMetrics().collisions(FrameMetrics.Collider.SQUARE_BUMPER));
+        assertEquals(1, board.getMetrics().triggerActions());
+    }
+    
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    /**
+     * @return the number of bytes the current thread has allocated so far
+     */
+    private static long allocatedBytes() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+    
+    @Test
+    // time step, asynchronous engine gives the same result as the event driven one, and leaves every ball at the end of the frame
+    public void testTimeStepAsynchronous() {
+        List<Ball> eventBalls = new ArrayList<Ball>();
+        List<Ball> asynchronousBalls = new ArrayList<Ball>();
+        Board events = makeBouncingBoard(eventBalls);
+        Board asynchronous = makeBouncingBoard(asynchronousBalls);
+        events.setEngine(Board.Engine.EVENT_DRIVEN);
+        asynchronous.setEngine(Board.Engine.ASYNCHRONOUS);
+        assertEquals(Board.Engine.ASYNCHRONOUS, asynchronous.getEngine());
+        for (int i = 0; i < 120; i++) {
+            events.timeStep(1./60);
+            asynchronous.timeStep(1./60);
+        }
+        // each ball is moved in pieces instead of all at once, which can round differently
+        for (int i = 0; i < eventBalls.size(); i++) {
+            assertEquals(eventBalls.get(i).getX(), asynchronousBalls.get(i).getX(), 1e-9);
+            assertEquals(eventBalls.get(i).getY(), asynchronousBalls.get(i).getY(), 1e-9);
+            assertEquals(eventBalls.get(i).getXVelocity(), asynchronousBalls.get(i).getXVelocity(), 1e-9);
+            assertEquals(eventBalls.get(i).getYVelocity(), asynchronousBalls.get(i).getYVelocity(), 1e-9);
+        }
+        assertEquals(events.getSubStepCount(), asynchronous.getSubStepCount());
+        for (FrameMetrics.Collider collider : FrameMetrics.Collider.values()) {
+            assertEquals(collider.name(), events.getMetrics().collisions(collider), asynchronous.getMetrics().collisions(collider));
+        }
+    }
+
+    @Test
+    // batch window, two balls hitting a wall a moment apart take one sub-step instead of two
+    public void testBatchWindow() {
+        for (double window : new double[] { 0, .001 }) {
+            List<Ball> ballList = new ArrayList<Ball>();
+            Ball first = new Ball("first", 12, 100, -600, 0);
+            Ball second = new Ball("second", 12.06, 200, -600, 0);
+            ballList.add(first);
+            ballList.add(second);
+            Board board = new Board("A", new ArrayList<Gadget>(), ballList, 0, 0, 0,
+                    new HashMap<String, String>(), new HashMap<String, Vect>());
+            board.setBatchWindow(window);
+            assertEquals(window, board.getBatchWindow(), 0);
+            board.timeStep(1./60);
+            assertEquals(window == 0 ? 3 : 2, board.getSubStepCount());
+            assertEquals(window == 0 ? 0 : 1, board.getSubStepsSavedCount());
+            assertEquals(board.getSubStepsSavedCount(), board.getMetrics().subStepsSaved().max());
+            assertEquals(2, board.getMetrics().collisions(FrameMetrics.Collider.WALL));
+            assertEquals(600, first.getXVelocity(), 1e-9);
+            assertEquals(600, second.getXVelocity(), 1e-9);
+            // batched, the second ball is moved on to the wall before it bounces, and the time it is moved
+            // ahead is taken back later in the frame, so it ends where it would unbatched
+            assertEquals(first.getX() - .06, second.getX(), 1e-9);
+        }
+    }
+
+    @Test
+    // batch window, a ball bouncing off a bumper no longer hits the bumper just behind it
+    public void testBatchWindowPrevented() {
+        List<Ball> ballList = new ArrayList<Ball>();
+        Ball ball = new Ball("ball", 90, 50, 600, 0);
+        ballList.add(ball);
+        List<Gadget> gadgetList = new ArrayList<Gadget>();
+        gadgetList.add(new SquareBumper("front", 100, 40));
+        gadgetList.add(new SquareBumper("behind", 100.06, 40));
+        Board board = new Board("A", gadgetList, ballList, 0, 0, 0,
+                new HashMap<String, String>(), new HashMap<String, Vect>());
+        board.setBatchWindow(.001);
+        board.timeStep(1./60);
+        assertEquals(-600, ball.getXVelocity(), 1e-9);
+        assertEquals(1, board.getMetrics().collisions(FrameMetrics.Collider.SQUARE_BUMPER));
+        assertEquals(0, board.getSubStepsSavedCount());
+    }
+
+    @Test
+    // batch window, a crowded board keeps every frame within the cap on sub-steps, and its balls apart,
+    // stepped whole and island by island
+    public void testBatchWindowCrowded() {
+        for (int run = 0; run < 4; run++) {
+            double window = run % 2 == 0 ? .001 : .005;
+            List<Ball> ballList = new ArrayList<Ball>();
+            Board board = makeCrowdedBoard(ballList);
+            for (int row = 0; row < 3; row++) {
+                for (int col = 0; col < 36; col++) {
+                    Ball ball = new Ball("packed" + row + "_" + col, 6 + 10.5*col, 369 + 10.5*row, 300 - 20*col, 50*row - 400);
+                    ballList.add(ball);
+                    board.addBall(ball);
+                }
+            }
+            board.setBatchWindow(window);
+            board.setIslandStepping(run >= 2);
+            for (int i = 0; i < 240; i++) {
+                board.timeStep(1./120);
+            }
+            FrameMetrics metrics = board.getMetrics();
+            assertEquals(240, metrics.frames());
+            assertTrue(metrics.subSteps().max() <= SubStepper.MAX_SUB_STEPS);
+            assertEquals(0, metrics.cappedFrames());
+            for (int i = 0; i < ballList.size(); i++) {
+                for (int j = i + 1; j < ballList.size(); j++) {
+                    Ball ball = ballList.get(i);
+                    Ball other = ballList.get(j);
+                    double distance = Math.hypot(ball.getX() - other.getX(), ball.getY() - other.getY());
+                    assertTrue(ball + " inside " + other, distance > ball.getRadius() + other.getRadius() - 1);
+                }
+            }
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // batch window, negative
+    public void testBatchWindowNegative() {
+        makeBouncingBoard().setBatchWindow(-.001);
+    }
+
+    @Test
+    // parallel survey, a crowded board with turning flippers moves exactly as it does surveyed on one thread
+    public void testParallelSurvey() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (double window : new double[] { 0, .001 }) {
+                List<Ball> sequentialBalls = new ArrayList<Ball>();
+                List<Ball> parallelBalls = new ArrayList<Ball>();
+                Board sequential = makeCrowdedBoard(sequentialBalls);
+                Board parallel = makeCrowdedBoard(parallelBalls);
+                sequential.setBatchWindow(window);
+                parallel.setBatchWindow(window);
+                parallel.setParallelSurvey(pool, 50);
+                for (int i = 0; i < 60; i++) {
+                    sequential.timeStep(1./60);
+                    parallel.timeStep(1./60);
+                }
+                for (int i = 0; i < sequentialBalls.size(); i++) {
+                    assertEquals(sequentialBalls.get(i).getX(), parallelBalls.get(i).getX(), 0);
+                    assertEquals(sequentialBalls.get(i).getY(), parallelBalls.get(i).getY(), 0);
+                    assertEquals(sequentialBalls.get(i).getXVelocity(), parallelBalls.get(i).getXVelocity(), 0);
+                    assertEquals(sequentialBalls.get(i).getYVelocity(), parallelBalls.get(i).getYVelocity(), 0);
+                }
+                assertEquals(sequential.getSubStepCount(), parallel.getSubStepCount());
+                assertEquals(sequential.getSubStepsSavedCount(), parallel.getSubStepsSavedCount());
+                assertEquals(sequential.getMetrics().narrowPhaseTests().max(), parallel.getMetrics().narrowPhaseTests().max());
+                assertEquals(0, sequential.getParallelSubStepCount());
+                assertEquals(parallel.getSubStepCount(), parallel.getParallelSubStepCount());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    // parallel survey, boards with fewer balls than the threshold are surveyed on the board's thread
+    public void testParallelSurveyThreshold() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Ball> ballList = new ArrayList<Ball>();
+            Board board = makeCrowdedBoard(ballList);
+            board.setParallelSurvey(pool, ballList.size() + 1);
+            board.timeStep(1./60);
+            assertTrue(board.getSubStepCount() > 0);
+            assertEquals(0, board.getParallelSubStepCount());
+            board.setParallelSurvey(pool, ballList.size());
+            board.timeStep(1./60);
+            assertTrue(board.getParallelSubStepCount() > 0);
+            board.setParallelSurvey(null, 1);
+            long parallelSubSteps = board.getParallelSubStepCount();
+            board.timeStep(1./60);
+            assertEquals(parallelSubSteps, board.getParallelSubStepCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // parallel survey, threshold 0
+    public void testParallelSurveyThresholdZero() {
+        makeBouncingBoard().setParallelSurvey(ForkJoinPool.commonPool(), 0);
+    }
+
+    @Test
+    // island stepping, four groups of balls in the corners of the board move as they do with the whole board stepped at once
+    public void testIslandStepping() {
+        List<Ball> wholeBalls = new ArrayList<Ball>();
+        List<Ball> islandBalls = new ArrayList<Ball>();
+        Board whole = makeGroupsBoard(wholeBalls);
+        Board islands = makeGroupsBoard(islandBalls);
+        islands.setIslandStepping(true);
+        for (int i = 0; i < 90; i++) {
+            whole.timeStep(1./60);
+            islands.timeStep(1./60);
+        }
+        // the islands move their balls in different pieces than the whole board, which can round differently
+        for (int i = 0; i < wholeBalls.size(); i++) {
+            assertEquals(wholeBalls.get(i).getX(), islandBalls.get(i).getX(), 1e-9);
+            assertEquals(wholeBalls.get(i).getY(), islandBalls.get(i).getY(), 1e-9);
+            assertEquals(wholeBalls.get(i).getXVelocity(), islandBalls.get(i).getXVelocity(), 1e-9);
+            assertEquals(wholeBalls.get(i).getYVelocity(), islandBalls.get(i).getYVelocity(), 1e-9);
+        }
+        assertEquals(0, whole.getIslandFrameCount());
+        assertEquals(90, islands.getIslandFrameCount());
+        assertTrue(islands.getSubStepCount() < whole.getSubStepCount());
+        assertTrue(islands.getMetrics().narrowPhaseTests().mean() < whole.getMetrics().narrowPhaseTests().mean());
+        for (FrameMetrics.Collider collider : FrameMetrics.Collider.values()) {
+            assertEquals(collider.name(), whole.getMetrics().collisions(collider), islands.getMetrics().collisions(collider));
+        }
+    }
+
+    @Test
+    // island stepping, islands stepped in parallel move exactly as they do one after the other
+    public void testIslandSteppingParallel() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            List<Ball> sequentialBalls = new ArrayList<Ball>();
+            List<Ball> parallelBalls = new ArrayList<Ball>();
+            Board sequential = makeGroupsBoard(sequentialBalls);
+            Board parallel = makeGroupsBoard(parallelBalls);
+            sequential.setIslandStepping(true);
+            parallel.setIslandStepping(true);
+            parallel.setParallelSurvey(pool, 1);
+            for (int i = 0; i < 90; i++) {
+                sequential.timeStep(1./60);
+                parallel.timeStep(1./60);
+            }
+            for (int i = 0; i < sequentialBalls.size(); i++) {
+                assertEquals(sequentialBalls.get(i).getX(), parallelBalls.get(i).getX(), 0);
+                assertEquals(sequentialBalls.get(i).getY(), parallelBalls.get(i).getY(), 0);
+                assertEquals(sequentialBalls.get(i).getXVelocity(), parallelBalls.get(i).getXVelocity(), 0);
+                assertEquals(sequentialBalls.get(i).getYVelocity(), parallelBalls.get(i).getYVelocity(), 0);
+            }
+            assertEquals(sequential.getSubStepCount(), parallel.getSubStepCount());
+            assertEquals(90, parallel.getIslandFrameCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    // island stepping, a frame in which a ball could fall into an absorber is stepped whole
+    public void testIslandSteppingHazard() {
+        List<Board> boards = new ArrayList<Board>();
+        for (boolean enabled : new boolean[] { false, true }) {
+            List<Ball> ballList = new ArrayList<Ball>();
+            ballList.add(new Ball("falling", 100, 345, 0, 900));
+            ballList.add(new Ball("away", 300, 100, 100, 0));
+            List<Gadget> gadgetList = new ArrayList<Gadget>();
+            gadgetList.add(new Absorber("absorber", 0, 360, 400, 40));
+            Board board = new Board("A", gadgetList, ballList, 0, 0, 0, new HashMap<String, String>(), new HashMap<String, Vect>());
+            board.setIslandStepping(enabled);
+            board.timeStep(1./60);
+            assertEquals(0, board.getIslandFrameCount());
+            boards.add(board);
+        }
+        assertEquals(boards.get(0), boards.get(1));
+    }
+
+    private static Board makeBouncingBoard() {
+        return makeBouncingBoard(new ArrayList<Ball>());
+    }
+
+    private static Board makeBouncingBoard(List<Ball> ballList) {
+        ballList.add(new Ball("ball1", 50, 50, 300, 120));
+        ballList.add(new Ball("ball2", 300, 80, -200, 250));
+        ballList.add(new Ball("ball3", 200, 300, 10, -400));
+        List<Gadget> gadgetList = new ArrayList<Gadget>();
+        gadgetList.add(new SquareBumper("square", 100, 100));
+        gadgetList.add(new CircleBumper("circle", 240, 200));
+        gadgetList.add(new TriangleBumper("triangle", 60, 260, Orientation.DEG_90));
+        return new Board("A", gadgetList, ballList, 25*Flingball.L, 0.025, 0.025, new HashMap<String, String>(), new HashMap<String, Vect>());
+    }
+
+    /**
+     * @return a board with a group of four slow balls and a bumper in each corner
+     */
+    private static Board makeGroupsBoard(List<Ball> ballList) {
+        for (int group = 0; group < 4; group++) {
+            double left = (group % 2) * 200 + 30;
+            double top = (group / 2) * 200 + 30;
+            for (int k = 0; k < 4; k++) {
+                ballList.add(new Ball("ball" + group + "_" + k, left + 12*k, top + 6*k, 30 + 7*k - 10*group, 20 - 9*k + 5*group));
+            }
+        }
+        List<Gadget> gadgetList = new ArrayList<Gadget>();
+        gadgetList.add(new SquareBumper("square", 80, 80));
+        gadgetList.add(new CircleBumper("circle", 300, 60));
+        gadgetList.add(new TriangleBumper("triangle", 60, 300, Orientation.DEG_90));
+        gadgetList.add(new SquareBumper("square2", 300, 300));
+        return new Board("A", gadgetList, ballList, 25*Flingball.L, 0.025, 0.025, new HashMap<String, String>(), new HashMap<String, Vect>());
+    }
+
+    /**
+     * @return a board with a hundred balls in rows across it, bumpers, and flippers that the bumpers turn
+     */
+    private static Board makeCrowdedBoard(List<Ball> ballList) {
+        for (int row = 0; row < 10; row++) {
+            for (int col = 0; col < 10; col++) {
+                ballList.add(new Ball("ball" + row + "_" + col, 15 + 37*col, 15 + 20*row, 40*col - 180, 30*row - 130));
+            }
+        }
+        List<Gadget> gadgetList = new ArrayList<Gadget>();
+        Gadget square = new SquareBumper("square", 100, 260);
+        Gadget circle = new CircleBumper("circle", 280, 260);
+        Gadget left = new LeftFlipper("left", 100, 320, LeftFlipper.Orientation.DEG_0);
+        Gadget right = new RightFlipper("right", 240, 320, RightFlipper.Orientation.DEG_0);
+        square.link(left);
+        circle.link(right);
+        gadgetList.add(square);
+        gadgetList.add(circle);
+        gadgetList.add(new TriangleBumper("triangle", 180, 240, Orientation.DEG_90));
+        gadgetList.add(left);
+        gadgetList.add(right);
+        return new Board("A", gadgetList, ballList, 25*Flingball.L, 0.025, 0.025, new HashMap<String, String>(), new HashMap<String, Vect>());
+    }
 }
@@ -0,0 +1,209 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CollisionSetTest {
+    /**
+     * Testing strategy
+     *  - offerGadget(), offerPair()
+     *      . empty set, collision sooner than the set's, at the same time, later, never
+     *      . gadget collision replaced by a pair, pair replaced by a gadget collision
+     *      . more collisions than the set has room for
+     *      . window 0, window > 0: collision within the window, beyond it, sooner collision pushing others out of it
+     *  - offerAll()
+     *      . sets whose earliest collision is beyond the window of the other's, within it; empty set
+     *  - setWindow()
+     *      . 0, > 0, negative
+     *  - capture()
+     *      . balls moved to other slots after capture
+     *      . collisions offered out of order of time, ties
+     *  - clear()
+     *      . empty set, set with collisions
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // empty set, collisions that never happen are not kept
+    public void testEmpty() {
+        CollisionSet set = new CollisionSet();
+        assertEquals(Double.POSITIVE_INFINITY, set.time(), 0);
+        set.offerGadget(Double.POSITIVE_INFINITY, 0, 0, new Contact());
+        set.offerPair(Double.POSITIVE_INFINITY, 0, 1);
+        assertEquals(0, set.gadgetCount());
+        assertEquals(0, set.pairCount());
+    }
+
+    @Test
+    // sooner collisions replace the set, ties join it in order, later ones are ignored
+    public void testOffer() {
+        CollisionSet set = new CollisionSet();
+        Contact contact = new Contact();
+        contact.set(2., 1);
+        set.offerGadget(2., 5, 0, contact);
+        set.offerPair(1., 0, 1);
+        assertEquals(1., set.time(), 0);
+        assertEquals(0, set.gadgetCount());
+        assertEquals(1, set.pairCount());
+        contact.set(1., 3);
+        set.offerGadget(1., 7, 2, contact);
+        contact.set(1., 0);
+        set.offerGadget(1., 4, 3, contact);
+        set.offerGadget(1.5, 6, 1, contact);
+        assertEquals(2, set.gadgetCount());
+        assertEquals(7, set.gadget(0));
+        assertEquals(3, set.contact(0).feature());
+        assertEquals(4, set.gadget(1));
+        assertEquals(0, set.contact(1).feature());
+        contact.set(.5, 2);
+        set.offerGadget(.5, 1, 1, contact);
+        assertEquals(.5, set.time(), 0);
+        assertEquals(1, set.gadgetCount());
+        assertEquals(0, set.pairCount());
+        set.clear();
+        assertEquals(Double.POSITIVE_INFINITY, set.time(), 0);
+        assertEquals(0, set.gadgetCount());
+    }
+
+    @Test
+    // many simultaneous collisions, balls captured before they move to other slots
+    public void testCapture() {
+        BallStore store = new BallStore();
+        Ball[] balls = new Ball[20];
+        for (int i = 0; i < balls.length; i++) {
+            balls[i] = new Ball("ball" + i, 10 + 15*i, 100, 0, 10);
+            store.add(balls[i]);
+        }
+        CollisionSet set = new CollisionSet();
+        Contact contact = new Contact();
+        contact.set(1., 0);
+        for (int i = 0; i < balls.length; i++) {
+            set.offerGadget(1., i, i, contact);
+        }
+        for (int i = 0; i + 1 < balls.length; i += 2) {
+            set.offerPair(1., i, i + 1);
+        }
+        assertEquals(20, set.gadgetCount());
+        assertEquals(10, set.pairCount());
+        set.capture(store);
+        balls[0].park();
+        store.remove(balls[5]);
+        for (int i = 0; i < balls.length; i++) {
+            assertTrue(balls[i] == set.gadgetBall(i));
+            assertEquals(i, set.gadget(i));
+        }
+        for (int k = 0; k < 10; k++) {
+            assertTrue(balls[2*k] == set.first(k));
+            assertTrue(balls[2*k + 1] == set.second(k));
+        }
+    }
+
+    @Test
+    // collisions within the window after the earliest join it, a sooner collision pushes out those beyond its window
+    public void testOfferWindow() {
+        CollisionSet set = new CollisionSet();
+        set.setWindow(.1);
+        assertEquals(.1, set.window(), 0);
+        Contact contact = new Contact();
+        contact.set(1., 0);
+        set.offerGadget(1., 0, 0, contact);
+        set.offerGadget(1.05, 1, 1, contact);
+        set.offerGadget(1.2, 2, 2, contact);
+        set.offerPair(1.1, 3, 4);
+        assertEquals(1., set.time(), 0);
+        assertEquals(2, set.gadgetCount());
+        assertEquals(1, set.pairCount());
+        set.offerGadget(.96, 5, 5, contact);
+        assertEquals(.96, set.time(), 0);
+        assertEquals(3, set.gadgetCount());
+        assertEquals(0, set.pairCount());
+        assertEquals(0, set.gadget(0));
+        assertEquals(1, set.gadget(1));
+        assertEquals(5, set.gadget(2));
+        assertEquals(1.05, set.gadgetTime(1), 0);
+    }
+
+    @Test
+    // offering the sets of two halves of a survey in turn gives the set of the whole survey
+    public void testOfferAll() {
+        double[] times = { 1.2, 1., 1.05, .3, .35, 2. };
+        CollisionSet whole = new CollisionSet();
+        CollisionSet first = new CollisionSet();
+        CollisionSet second = new CollisionSet();
+        CollisionSet merged = new CollisionSet();
+        for (CollisionSet set : new CollisionSet[] { whole, first, second, merged }) {
+            set.setWindow(.1);
+        }
+        Contact contact = new Contact();
+        for (int k = 0; k < times.length; k++) {
+            contact.set(times[k], k);
+            whole.offerGadget(times[k], k, k, contact);
+            whole.offerPair(times[k] + .02, k, k + 1);
+            CollisionSet half = k < 3 ? first : second;
+            half.offerGadget(times[k], k, k, contact);
+            half.offerPair(times[k] + .02, k, k + 1);
+        }
+        assertEquals(1., first.time(), 0);
+        merged.offerAll(first);
+        merged.offerAll(new CollisionSet());
+        merged.offerAll(second);
+        assertEquals(whole.time(), merged.time(), 0);
+        assertEquals(2, merged.gadgetCount());
+        assertEquals(whole.gadgetCount(), merged.gadgetCount());
+        assertEquals(whole.pairCount(), merged.pairCount());
+        for (int k = 0; k < whole.gadgetCount(); k++) {
+            assertEquals(whole.gadget(k), merged.gadget(k));
+            assertEquals(whole.gadgetTime(k), merged.gadgetTime(k), 0);
+            assertEquals(whole.contact(k).feature(), merged.contact(k).feature());
+        }
+        for (int k = 0; k < whole.pairCount(); k++) {
+            assertEquals(whole.pairTime(k), merged.pairTime(k), 0);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // a negative window is rejected
+    public void testNegativeWindow() {
+        new CollisionSet().setWindow(-1);
+    }
+
+    @Test
+    // capture orders the collisions by time, keeping ties in the order they were offered
+    public void testCaptureOrder() {
+        BallStore store = new BallStore();
+        for (int i = 0; i < 6; i++) {
+            store.add(new Ball("ball" + i, 10 + 15*i, 100, 0, 10));
+        }
+        CollisionSet set = new CollisionSet();
+        set.setWindow(1);
+        Contact contact = new Contact();
+        double[] times = { 1.5, 1., 1.2, 1., 1.5, 1.1 };
+        for (int i = 0; i < times.length; i++) {
+            contact.set(times[i], i);
+            set.offerGadget(times[i], i, i, contact);
+        }
+        set.offerPair(1.3, 0, 1);
+        set.offerPair(1.3, 2, 3);
+        set.offerPair(1., 4, 5);
+        set.capture(store);
+        int[] order = new int[times.length];
+        for (int k = 0; k < times.length; k++) {
+            order[k] = set.gadget(k);
+            assertEquals(order[k], set.contact(k).feature());
+            assertTrue(store.view(order[k]) == set.gadgetBall(k));
+        }
+        assertEquals(Arrays.toString(new int[] { 1, 3, 5, 2, 0, 4 }), Arrays.toString(order));
+        assertTrue(store.view(4) == set.first(0));
+        assertTrue(store.view(0) == set.first(1));
+        assertTrue(store.view(3) == set.second(2));
+        assertEquals(1.3, set.pairTime(2), 0);
+    }
+}
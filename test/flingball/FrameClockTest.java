@@ -0,0 +1,99 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrameClockTest {
+    /**
+     * Testing strategy
+     *  - FrameClock()
+     *      . period = 0, > 0; maxCatchUp = 0, 1, > 1
+     *  - due()
+     *      . before the next deadline, at it, between deadlines, several deadlines later,
+     *        more than maxCatchUp deadlines later
+     *      . deadlines kept from the start however late each wake is
+     *  - await()
+     *      . deadline passed, deadline in the future
+     *  - frames(), lateFrames(), droppedFrames(), report()
+     *      . none, some
+     */
+
+    private static final long PERIOD = 1000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // frames of no length
+    public void testNoPeriod() {
+        new FrameClock(0, 1, 0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // no frames allowed per wake
+    public void testNoCatchUp() {
+        new FrameClock(PERIOD, 0, 0);
+    }
+
+    @Test
+    // a frame is due once a period has passed since the last deadline, and none before
+    public void testDueOnTime() {
+        FrameClock clock = new FrameClock(PERIOD, 5, 500);
+        assertEquals(0, clock.due(500));
+        assertEquals(0, clock.due(1499));
+        assertEquals(1, clock.due(1500));
+        assertEquals(2500, clock.deadline());
+        assertEquals(0, clock.due(2000));
+        assertEquals(1, clock.due(2999));
+        assertEquals(2, clock.frames());
+        assertEquals(0, clock.lateFrames());
+        assertEquals(0, clock.droppedFrames());
+    }
+
+    @Test
+    // waking late does not push the deadlines back, so the frames keep up with the wall clock
+    public void testNoDrift() {
+        FrameClock clock = new FrameClock(PERIOD, 5, 0);
+        long frames = 0;
+        for (long wake = 1; wake <= 100; wake++) {
+            frames += clock.due(wake * PERIOD + 900);
+        }
+        assertEquals(100, frames);
+        assertEquals(101 * PERIOD, clock.deadline());
+        assertEquals(0, clock.lateFrames());
+    }
+
+    @Test
+    // several deadlines passed: the frames are caught up with, those beyond maxCatchUp are dropped
+    public void testCatchUp() {
+        FrameClock clock = new FrameClock(PERIOD, 3, 0);
+        assertEquals(3, clock.due(3 * PERIOD + 10));
+        assertEquals(4 * PERIOD, clock.deadline());
+        assertEquals(2, clock.lateFrames());
+        assertEquals(0, clock.droppedFrames());
+        assertEquals(3, clock.due(10 * PERIOD));
+        assertEquals(11 * PERIOD, clock.deadline());
+        assertEquals(6, clock.frames());
+        assertEquals(4, clock.lateFrames());
+        assertEquals(4, clock.droppedFrames());
+        assertEquals(1, clock.due(11 * PERIOD));
+        assertEquals("frames: 7 late=4 dropped=4\n", clock.report());
+    }
+
+    @Test
+    // waiting for a deadline in the past returns at once, and for one in the future until it passes
+    public void testAwait() {
+        long period = 20_000_000;
+        long start = System.nanoTime();
+        FrameClock clock = new FrameClock(period, 1, start - 2 * period);
+        clock.await();
+        assertEquals(1, clock.due(System.nanoTime()));
+        clock.await();
+        assertTrue("should wait until the deadline", System.nanoTime() >= clock.deadline());
+        assertEquals(1, clock.due(System.nanoTime()));
+    }
+}
@@ -0,0 +1,73 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class GadgetGridTest {
+    /**
+     * Testing strategy
+     *  - query()
+     *      . ball far from every gadget, ball next to a gadget
+     *      . ball at rest, ball moving across several cells
+     *      . walls and flippers, which are candidates for every ball
+     *      . gadget covering several cells (absorber), reported once
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    private static List<Gadget> gadgets() {
+        List<Gadget> gadgets = new ArrayList<>();
+        gadgets.add(new SquareBumper("square", 2*Flingball.L, 2*Flingball.L));
+        gadgets.add(new CircleBumper("circle", 15*Flingball.L, 15*Flingball.L));
+        gadgets.add(new Absorber("absorber", 0, 19*Flingball.L, 20*Flingball.L, Flingball.L));
+        gadgets.add(new LeftFlipper("flipper", 10*Flingball.L, 10*Flingball.L, LeftFlipper.Orientation.DEG_0));
+        gadgets.add(new Wall("0", 0, 0, 20*Flingball.L, 0));
+        return gadgets;
+    }
+
+    @Test
+    // ball at rest far from every gadget
+    public void testQueryFar() {
+        GadgetGrid grid = new GadgetGrid(gadgets());
+        int[] candidates = new int[grid.size()];
+        Ball ball = new Ball("ball", 7.5*Flingball.L, 7.5*Flingball.L, 0, 0);
+        int count = grid.query(ball, 1., candidates);
+        assertEquals(Arrays.asList(3, 4), toList(candidates, count));
+    }
+
+    @Test
+    // ball at rest next to a bumper
+    public void testQueryNear() {
+        GadgetGrid grid = new GadgetGrid(gadgets());
+        int[] candidates = new int[grid.size()];
+        Ball ball = new Ball("ball", 3.5*Flingball.L, 2.5*Flingball.L, 0, 0);
+        int count = grid.query(ball, 1., candidates);
+        assertEquals(Arrays.asList(0, 3, 4), toList(candidates, count));
+    }
+
+    @Test
+    // ball moving down across the board reaches the circle and the absorber
+    public void testQueryMoving() {
+        GadgetGrid grid = new GadgetGrid(gadgets());
+        int[] candidates = new int[grid.size()];
+        Ball ball = new Ball("ball", 15.5*Flingball.L, 12.5*Flingball.L, 0, 10*Flingball.L);
+        int count = grid.query(ball, 1., candidates);
+        assertEquals(Arrays.asList(1, 2, 3, 4), toList(candidates, count));
+    }
+
+    private static List<Integer> toList(int[] candidates, int count) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(candidates[i]);
+        }
+        return list;
+    }
+}
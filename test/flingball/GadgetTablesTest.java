@@ -0,0 +1,181 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import flingball.TriangleBumper.Orientation;
+
+public class GadgetTablesTest {
+    /**
+     * Testing strategy
+     *  - isCompiled()
+     *      . every kind of gadget that does not move, flippers
+     *  - timeToCollide()
+     *      . same time and feature as the gadget's own timeToCollide, for every kind of compiled gadget
+     *      . collision within the horizon, beyond it, none
+     *      . portal, which is never hit sooner than its minimum time
+     *  - coalescing
+     *      . bumpers apart, in a row, in a block, touching at a corner
+     *      . balls outside the bumpers hit them at the same time as without coalescing
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    private static List<Gadget> gadgets() {
+        return Arrays.asList(
+                new SquareBumper("square", 40, 40),
+                new CircleBumper("circle", 240, 40),
+                new TriangleBumper("triangle", 60, 200, Orientation.DEG_90),
+                new TriangleBumper("triangle2", 300, 300, Orientation.DEG_270),
+                new Absorber("absorber", 0, 340, 300, 40),
+                new Portal("portal", 160, 160, "", "other"),
+                new Wall("wall", 0, 0, 400, 0),
+                new Wall("wall2", 400, 0, 400, 400),
+                new LeftFlipper("left", 100, 100, LeftFlipper.Orientation.DEG_0),
+                new RightFlipper("right", 200, 260, RightFlipper.Orientation.DEG_90));
+    }
+
+    @Test
+    // gadgets that do not move are compiled, flippers are not
+    public void testIsCompiled() {
+        GadgetTables tables = new GadgetTables(gadgets());
+        for (int g = 0; g < 8; g++) {
+            assertTrue(tables.isCompiled(g));
+        }
+        assertFalse(tables.isCompiled(8));
+        assertFalse(tables.isCompiled(9));
+    }
+
+    @Test
+    // random balls get the same time and feature from the tables as from each gadget
+    public void testMatchesGadgets() {
+        List<Gadget> gadgets = gadgets();
+        GadgetTables tables = new GadgetTables(gadgets);
+        Contact expected = new Contact();
+        Contact actual = new Contact();
+        Random random = new Random(17);
+        int hits = 0;
+        for (int trial = 0; trial < 2000; trial++) {
+            Ball ball = new Ball("ball", 5 + 390*random.nextDouble(), 5 + 390*random.nextDouble(),
+                    400*random.nextDouble() - 200, 400*random.nextDouble() - 200);
+            double horizon = random.nextDouble();
+            for (int g = 0; g < 8; g++) {
+                double time = gadgets.get(g).timeToCollide(ball, horizon, expected);
+                double tableTime = tables.timeToCollide(g, ball.getX(), ball.getY(), ball.getRadius(),
+                        ball.getXVelocity(), ball.getYVelocity(), horizon, actual);
+                if (time < horizon || tableTime < horizon) {
+                    hits++;
+                    assertEquals(gadgets.get(g).name(), time, tableTime, 0);
+                    assertEquals(gadgets.get(g).name(), expected.feature(), actual.feature());
+                }
+            }
+        }
+        assertTrue("balls should hit some gadgets", hits > 100);
+    }
+
+    @Test
+    // a ball already touching a portal falls in after its minimum time, a ball moving away never does
+    public void testPortal() {
+        GadgetTables tables = new GadgetTables(gadgets());
+        Contact contact = new Contact();
+        assertEquals(Portal.MINIMUM_COLLISION_TIME, tables.timeToCollide(5, 160, 170, 5, 10, 0, 1, contact), 0);
+        assertEquals(0, contact.feature());
+        assertEquals(Double.POSITIVE_INFINITY, tables.timeToCollide(5, 160, 170, 5, -10, 0, 1, contact), 0);
+        assertEquals(Contact.NONE, contact.feature());
+    }
+
+    private static List<Gadget> row() {
+        return Arrays.asList(
+                new SquareBumper("left", 40, 40),
+                new SquareBumper("middle", 60, 40),
+                new SquareBumper("right", 80, 40));
+    }
+
+    @Test
+    // bumpers apart keep all their geometry
+    public void testCoalesceApart() {
+        GadgetTables tables = new GadgetTables(gadgets());
+        assertEquals(4 + 3 + 3 + 4 + 1 + 1, tables.segmentCount());
+        assertEquals(4 + 1 + 3 + 3 + 1 + 2 + 2, tables.circleCount());
+    }
+
+    @Test
+    // the edges between squares in a row are dropped, and the corners they share are kept once
+    public void testCoalesceRow() {
+        GadgetTables tables = new GadgetTables(row());
+        assertEquals(3 + 2 + 3, tables.segmentCount());
+        assertEquals(4 + 2 + 2, tables.circleCount());
+        Contact contact = new Contact();
+        // down onto the top of the middle square, which is still side 0
+        assertEquals(0.5, tables.timeToCollide(1, 70, 25, 5, 0, 20, 1, contact), 1e-9);
+        assertEquals(0, contact.feature());
+        // straight down onto the corner shared by the left and middle squares, which only the left one keeps,
+        // so the middle one is only hit later at the end of its top side
+        assertEquals(0.5, tables.timeToCollide(1, 60, 25, 5, 0, 20, 1, contact), 1e-9);
+        assertEquals(0, contact.feature());
+        assertEquals(0.45, tables.timeToCollide(0, 60, 25, 5, 0, 20, 1, contact), 1e-9);
+        assertEquals(5, contact.feature());
+    }
+
+    @Test
+    // the corner in the middle of a block of four squares is dropped, along with the four edges around it
+    public void testCoalesceBlock() {
+        GadgetTables tables = new GadgetTables(Arrays.asList(
+                new SquareBumper("topLeft", 40, 40),
+                new SquareBumper("topRight", 60, 40),
+                new SquareBumper("bottomLeft", 40, 60),
+                new SquareBumper("bottomRight", 60, 60)));
+        assertEquals(8, tables.segmentCount());
+        assertEquals(8, tables.circleCount());
+    }
+
+    @Test
+    // squares touching at a corner keep all their edges, and share the corner
+    public void testCoalesceCorner() {
+        GadgetTables tables = new GadgetTables(Arrays.asList(
+                new SquareBumper("first", 40, 40),
+                new SquareBumper("second", 60, 60)));
+        assertEquals(8, tables.segmentCount());
+        assertEquals(7, tables.circleCount());
+    }
+
+    @Test
+    // random balls outside a row of squares hit it first at the same time as without coalescing
+    public void testCoalescedRowMatchesGadgets() {
+        List<Gadget> gadgets = row();
+        GadgetTables tables = new GadgetTables(gadgets);
+        Contact contact = new Contact();
+        Random random = new Random(18);
+        int hits = 0;
+        for (int trial = 0; trial < 2000; trial++) {
+            double x = 150*random.nextDouble();
+            double y = 100*random.nextDouble();
+            if (x > 30 && x < 110 && y > 30 && y < 70) {
+                continue;
+            }
+            Ball ball = new Ball("ball", x, y, 200*random.nextDouble() - 100, 200*random.nextDouble() - 100);
+            double expected = Double.POSITIVE_INFINITY;
+            double actual = Double.POSITIVE_INFINITY;
+            for (int g = 0; g < gadgets.size(); g++) {
+                expected = Math.min(expected, gadgets.get(g).timeToCollide(ball, 1, contact));
+                actual = Math.min(actual, tables.timeToCollide(g, x, y, ball.getRadius(),
+                        ball.getXVelocity(), ball.getYVelocity(), 1, contact));
+            }
+            if (expected < 1 || actual < 1) {
+                hits++;
+                assertEquals(expected, actual, 0);
+            }
+        }
+        assertTrue("balls should hit the row", hits > 100);
+    }
+}
@@ -4,7 +4,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.awt.geom.Rectangle2D;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -21,10 +26,15 @@ public class GadgetTest {
      * 
      *  - timeToCollide()
      *      . POSITIVE INFINITY, < POSITIVE INFINITY
+     *      . allocates no memory, for every kind of gadget
+     *      . collision within the horizon, beyond it, gadget out of reach within it
+     *      . records the side or corner hit, or no contact
      *    
      *  - collide()
-     *      . hits absorber
+     *      . hits absorber, which parks the ball
      *      . hits bumpers
+     *      . contact on a side, on a corner, no contact
+     *      . outcome for bumpers and absorbers, walls, portals
      *  
      *  - render()
      *      . different bumpers and absorber
@@ -35,22 +45,28 @@ public class GadgetTest {
      *  - position()
      *      . top left, top right, bottom left, bottom right corner
      *      
+     *  - bounds()
+     *      . left and right flipper in every orientation, covering the whole of its sweep
+     *      
      *  - link()
      *      . all the bumper types and the absorber itself
      *      
      *  - action()
      *      . none for the bumpers
-     *      . absorber
+     *      . absorber, which wakes the ball it fires
      *      
      *  - equals(), hashCode(), toString()
      *      . no further partitions
      *      
+     *  - advance()
+     *      . flipper at rest, partway through its sweep, at the end of its sweep, swept back
+     *      . one long step, several short steps
+     *      
+     *  - timeToCollide() on a flipper
+     *      . at rest, turning, turning but stopping before the ball arrives
+     *      . does not move the flipper
+     *      
      *  - drawing implementation will be tested visually
-     *  
-     *  ToDo:
-     *  test Flipper rotation
-     *  test collision write-out for Portal
-     *  test collision write-out for wall
      * 
      */
 
@@ -77,7 +93,142 @@ public class GadgetTest {
     public void testCollisionTime() {
         CircleBumper a = new CircleBumper("circle", 10, 19);
         Ball ball = new Ball("downball", 10, 10, 0, 5);
-        assertTrue("collision time with circle should be 1.563...", a.timeToCollide(ball, 0.) == 1.5639320225002102);
+        assertTrue("collision time with circle should be 1.563...", a.timeToCollide(ball, 2.) == 1.5639320225002102);
+    }
+
+    @Test
+    // timeToCollide for every kind of gadget, once the classes are loaded, allocates no memory
+    public void testCollisionTimeAllocatesNothing() {
+        List<Gadget> gadgets = Arrays.asList(
+                new SquareBumper("square", 40, 40),
+                new CircleBumper("circle", 80, 40),
+                new TriangleBumper("triangle", 120, 40, Orientation.DEG_90),
+                new Absorber("absorber", 0, 300, 400, 40),
+                new Wall("wall", 0, 0, 400, 0),
+                new Portal("portal", 160, 40, "", "other"),
+                new LeftFlipper("left", 200, 40, LeftFlipper.Orientation.DEG_0),
+                new RightFlipper("right", 260, 40, RightFlipper.Orientation.DEG_0));
+        Ball ball = new Ball("ball", 150, 150, -30, -40);
+        Contact contact = new Contact();
+        double earliest = Double.POSITIVE_INFINITY;
+        // the compiler may allocate a few bytes once while it optimizes the code, so look for a round
+        // without any allocation, which there could not be if something were allocated on every call
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long before = allocatedBytes();
+            for (int i = 0; i < 1000; i++) {
+                for (int g = 0; g < gadgets.size(); g++) {
+                    earliest = Math.min(earliest, gadgets.get(g).timeToCollide(ball, 5., contact));
+                }
+            }
+            allocated = Math.min(allocated, allocatedBytes() - before);
+        }
+        assertTrue("ball should be heading for a gadget", earliest < Double.POSITIVE_INFINITY);
+        assertEquals("bytes allocated", 0, allocated);
+    }
+    
+    @Test
+    // timeToCollide() with a short horizon gives the same time as with no horizon for every
+    // collision within it, and a ball far from the gadget is not reported
+    public void testCollisionTimeHorizon() {
+        List<Gadget> gadgets = Arrays.asList(
+                new SquareBumper("square", 100, 100),
+                new CircleBumper("circle", 200, 100),
+                new TriangleBumper("triangle", 300, 100, Orientation.DEG_180),
+                new Absorber("absorber", 0, 300, 400, 40),
+                new Wall("wall", 0, 0, 400, 0),
+                new Portal("portal", 100, 200, "", "other"),
+                new LeftFlipper("left", 200, 200, LeftFlipper.Orientation.DEG_90),
+                new RightFlipper("right", 300, 200, RightFlipper.Orientation.DEG_0));
+        gadgets.get(7).action();
+        Random random = new Random(413);
+        for (int i = 0; i < 2000; i++) {
+            Ball ball = new Ball("ball", 5 + random.nextDouble()*390, 5 + random.nextDouble()*290,
+                    (random.nextDouble() - 0.5)*800, (random.nextDouble() - 0.5)*800);
+            double horizon = random.nextDouble() * 0.1;
+            for (Gadget gadget : gadgets) {
+                double time = gadget.timeToCollide(ball, Double.POSITIVE_INFINITY);
+                double pruned = gadget.timeToCollide(ball, horizon);
+                if (time <= horizon) {
+                    assertEquals(gadget.name(), time, pruned, 0);
+                } else {
+                    assertTrue(gadget.name(), pruned == time || pruned == Double.POSITIVE_INFINITY);
+                }
+            }
+        }
+        Ball far = new Ball("far", 395, 250, 0, -10);
+        assertEquals(Double.POSITIVE_INFINITY, gadgets.get(0).timeToCollide(far, 1./60), 0);
+        assertTrue(gadgets.get(4).timeToCollide(far, 100) < 100);
+    }
+
+    @Test
+    // advance(), left flipper swept forward in one step, then partway in steps, then back
+    public void testFlipperAdvance() {
+        LeftFlipper flipper = new LeftFlipper("left", 200, 40, LeftFlipper.Orientation.DEG_0);
+        LeftFlipper rest = new LeftFlipper("left", 200, 40, LeftFlipper.Orientation.DEG_0);
+        LeftFlipper swept = new LeftFlipper("left", 200, 40, LeftFlipper.Orientation.DEG_0);
+        swept.action();
+        swept.advance(1);
+        // at rest nothing moves
+        flipper.advance(1);
+        assertEquals(rest, flipper);
+        // a sweep takes 1/12 of a second
+        flipper.action();
+        flipper.advance(0.04);
+        flipper.advance(0.04);
+        assertFalse(swept.equals(flipper));
+        flipper.advance(0.01);
+        assertEquals(swept, flipper);
+        // and back again
+        flipper.action();
+        flipper.advance(0.05);
+        assertFalse(rest.equals(flipper));
+        flipper.advance(0.05);
+        assertEquals(rest, flipper);
+    }
+    
+    @Test
+    // timeToCollide(), ball rising under a left flipper at rest, turning, and swept up
+    public void testFlipperTimeToCollide() {
+        LeftFlipper flipper = new LeftFlipper("left", 200, 40, LeftFlipper.Orientation.DEG_0);
+        Ball ball = new Ball("ball", 220, 60, 0, -10);
+        // at rest the flipper hangs down along x = 200, out of the ball's way
+        assertEquals(Double.POSITIVE_INFINITY, flipper.timeToCollide(ball, 1./60), 0);
+        // once swept up it lies along y = 40, 15 away from the top of the ball
+        flipper.action();
+        flipper.advance(0.08);
+        // still turning, but it stops long before the ball gets there
+        assertEquals(1.5, flipper.timeToCollide(ball, 1./60), 1e-9);
+        flipper.advance(1);
+        assertEquals(1.5, flipper.timeToCollide(ball, 1./60), 1e-9);
+    }
+    
+    @Test
+    // timeToCollide() on a turning flipper, ball in its path, asked repeatedly
+    public void testFlipperTimeToCollideIsPure() {
+        RightFlipper flipper = new RightFlipper("right", 260, 40, RightFlipper.Orientation.DEG_0);
+        RightFlipper copy = new RightFlipper("right", 260, 40, RightFlipper.Orientation.DEG_0);
+        flipper.action();
+        copy.action();
+        flipper.advance(0.02);
+        copy.advance(0.02);
+        Ball ball = new Ball("ball", 240, 45, 0, 0);
+        double time = flipper.timeToCollide(ball, 1./60);
+        assertTrue("flipper should sweep into the ball", time < 1./12);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(time, flipper.timeToCollide(ball, 1./60), 0);
+        }
+        assertEquals(copy, flipper);
+    }
+    
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    /**
+     * @return the number of bytes the current thread has allocated so far
+     */
+    private static long allocatedBytes() {
+        return THREADS.getCurrentThreadAllocatedBytes();
     }
 
     @Test
@@ -89,6 +240,46 @@ public class GadgetTest {
         assertEquals("new center for ball", ball.getPosition(), new Vect(10, 10));
     }
 
+    @Test
+    // collide with the side or corner of a bumper recorded by timeToCollide, or with no contact
+    public void testCollideContact() {
+        SquareBumper square = new SquareBumper("square", 40, 40);
+        Contact contact = new Contact();
+
+        Ball down = new Ball("down", 50, 20, 0, 10);
+        assertEquals(1.5, square.timeToCollide(down, 2., contact), 1e-9);
+        assertEquals(1.5, contact.time(), 1e-9);
+        assertTrue("should hit a side", contact.feature() >= 0 && contact.feature() < 4);
+        square.collide(down, contact);
+        assertEquals(new Vect(0, -10), down.getVelocity());
+
+        Ball diagonal = new Ball("diagonal", 30, 30, 10, 10);
+        assertTrue(square.timeToCollide(diagonal, 2., contact) < 2.);
+        assertTrue("should hit a corner", contact.feature() >= 4);
+        square.collide(diagonal, contact);
+        assertEquals(-10, diagonal.getXVelocity(), 1e-9);
+        assertEquals(-10, diagonal.getYVelocity(), 1e-9);
+
+        Ball away = new Ball("away", 50, 20, 0, -10);
+        assertEquals(Double.POSITIVE_INFINITY, square.timeToCollide(away, 2., contact), 0);
+        assertEquals(Contact.NONE, contact.feature());
+        square.collide(away, contact);
+        assertEquals(new Vect(0, -10), away.getVelocity());
+    }
+
+    @Test
+    // collide outcome, the ball stays for bumpers and absorbers, and may leave through walls and portals
+    public void testCollideOutcome() {
+        assertEquals(Gadget.Outcome.STAY, new SquareBumper("square", 10, 19).collide(new Ball("ball", 10, 10, 0, 5)));
+        assertEquals(Gadget.Outcome.STAY, new Absorber("absorber", 0, 17, 20, 3).collide(new Ball("ball", 10, 10, 0, 5)));
+        assertEquals(Gadget.Outcome.WALL, new Wall("wall", 0, 0, 400, 0).collide(new Ball("ball", 100, 5, 0, -5)));
+        Portal portal = new Portal("portal", 100, 200, "", "other");
+        assertEquals(Gadget.Outcome.PORTAL, portal.collide(new Ball("ball", 95, 210, 5, 0)));
+        assertEquals(null, portal.target());
+        portal.connect(new Vect(300, 200));
+        assertEquals(new Vect(300, 200), portal.target());
+    }
+
     @Test
     // collide with absorber
     public void testCollideAbsorber() {
@@ -133,6 +324,23 @@ public class GadgetTest {
         assertEquals(ball2.getVelocity(), Vect.ZERO);
         assertEquals(balls, a.getHeldBalls());
     }
+    
+    @Test
+    // absorber parks the balls it holds, and wakes the one it fires
+    public void testAbsorberParksBalls() {
+        Absorber a = new Absorber("absorber", 0, 17, 20, 3);
+        Ball ball1 = new Ball("downball1", 10, 10, 0, 5);
+        Ball ball2 = new Ball("downball2", 10, 12, 0, 5);
+        a.collide(ball1);
+        a.collide(ball2);
+        assertTrue(ball1.isParked());
+        assertTrue(ball2.isParked());
+        a.action();
+        assertFalse(ball1.isParked());
+        assertTrue(ball2.isParked());
+        assertEquals(new Vect(0, -50.*Flingball.L), ball1.getVelocity());
+        assertEquals(Arrays.asList(ball2), a.getHeldBalls());
+    }
 
     @SuppressWarnings("unlikely-arg-type") @Test
     // testing equals
@@ -146,6 +354,31 @@ public class GadgetTest {
         assertFalse(a.equals(c));
     }
 
+    @Test
+    // bounds() of a flipper covers its whole sweep, which for a right flipper lies outside its 2L x 2L box
+    public void testFlipperBounds() {
+        double l = Flingball.L;
+        assertEquals(new Rectangle2D.Double(100, 100, 2*l, 2*l),
+                new LeftFlipper("left", 100, 100, LeftFlipper.Orientation.DEG_0).bounds());
+        assertEquals(new Rectangle2D.Double(100, 100, 2*l, 2*l),
+                new LeftFlipper("left", 100, 100, LeftFlipper.Orientation.DEG_180).bounds());
+        assertEquals(new Rectangle2D.Double(100 - 2*l, 100, 2*l, 2*l),
+                new RightFlipper("right", 100, 100, RightFlipper.Orientation.DEG_0).bounds());
+        assertEquals(new Rectangle2D.Double(100, 100 - 2*l, 2*l, 2*l),
+                new RightFlipper("right", 100, 100, RightFlipper.Orientation.DEG_90).bounds());
+        assertEquals(new Rectangle2D.Double(100 + 2*l, 100, 2*l, 2*l),
+                new RightFlipper("right", 100, 100, RightFlipper.Orientation.DEG_180).bounds());
+        assertEquals(new Rectangle2D.Double(100, 100 + 2*l, 2*l, 2*l),
+                new RightFlipper("right", 100, 100, RightFlipper.Orientation.DEG_270).bounds());
+        // a still ball in the path of a right flipper at 0 degrees is hit as the flipper turns
+        RightFlipper right = new RightFlipper("right", 100, 100, RightFlipper.Orientation.DEG_0);
+        Ball ball = new Ball("ball", 100 - l, 100 + l, 0, 0);
+        right.action();
+        right.advance(.01);
+        assertTrue(right.timeToCollide(ball, 1) < 1);
+        assertTrue(right.bounds().contains(ball.getX(), ball.getY()));
+    }
+
     @Test
     // testing hash code
     public void testHashCode() {
@@ -0,0 +1,185 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class HeadlessSimulatorTest {
+    /**
+     * Testing strategy
+     *  - parseKeyScript()
+     *      . empty script, comments and blank lines
+     *      . keydown, keyup, several keys on one tick
+     *      . malformed line
+     *  - run()
+     *      . at max speed, at a frame rate, at a frame rate it cannot keep up with
+     *      . no key script, key script that triggers a gadget
+     *      . sub-steps per tick: no collisions, collisions
+     *  - getLateFrames(), getDroppedFrames(), summary()
+     *      . none, some
+     *  - main()
+     *      . --ticks with --metrics run to the end, interrupted before the end
+     */
+
+    private static final String ABSORBER_BOARD =
+            "board name=Headless gravity=25.0\n"
+            + "ball name=Ball x=1.5 y=10 xVelocity=0 yVelocity=0\n"
+            + "absorber name=Abs x=0 y=18 width=20 height=2\n"
+            + "keydown key=space action=Abs\n";
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // comments, blank lines, two keys on the same tick
+    public void testParseKeyScript() {
+        Map<Long, List<String>> script = HeadlessSimulator.parseKeyScript(Arrays.asList(
+                "# flip both flippers",
+                "",
+                "10 keydown left",
+                "10 keydown right  # at the same time",
+                "  25 keyup left"));
+        assertEquals(Arrays.asList(10L, 25L), Arrays.asList(script.keySet().toArray()));
+        assertEquals(Arrays.asList("Pressleft", "Pressright"), script.get(10L));
+        assertEquals(Arrays.asList("Releaseleft"), script.get(25L));
+        assertTrue(HeadlessSimulator.parseKeyScript(Collections.<String>emptyList()).isEmpty());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    // unknown kind of key event
+    public void testParseKeyScriptMalformed() {
+        HeadlessSimulator.parseKeyScript(Arrays.asList("10 keypress left"));
+    }
+
+    @Test
+    // ball falls into the absorber, no keys
+    public void testRunMaxSpeed() throws UnableToParseException {
+        Board board = BoardParser.parse(ABSORBER_BOARD);
+        HeadlessSimulator simulator = new HeadlessSimulator(board, 60, true, 100, Collections.emptyMap());
+        simulator.run();
+        assertEquals(100, simulator.getTicks());
+        // every frame takes at least one sub-step, and landing in the absorber takes one more
+        assertTrue(simulator.getSubSteps() > 100);
+        assertEquals(simulator.getSubSteps(), board.getSubStepCount());
+        assertTrue(simulator.subStepsPerTick() > 1);
+        assertTrue(simulator.ticksPerSecond() > 0);
+        // frames back to back are never late
+        assertEquals(0, simulator.getLateFrames());
+        assertEquals(0, simulator.getDroppedFrames());
+        assertEquals(1, absorber(board).getHeldBalls().size());
+    }
+
+    @Test
+    // space pressed after the ball lands fires it out of the absorber
+    public void testRunKeyScript() throws UnableToParseException {
+        Board board = BoardParser.parse(ABSORBER_BOARD);
+        Map<Long, List<String>> script = HeadlessSimulator.parseKeyScript(Arrays.asList("90 keydown space"));
+        HeadlessSimulator simulator = new HeadlessSimulator(board, 60, true, 91, script);
+        simulator.run();
+        assertTrue(absorber(board).getHeldBalls().isEmpty());
+    }
+
+    @Test
+    // ten frames at 200 frames per second take at least 50ms
+    public void testRunAtFrameRate() throws UnableToParseException {
+        Board board = BoardParser.parse(ABSORBER_BOARD);
+        HeadlessSimulator simulator = new HeadlessSimulator(board, 200, false, 10, Collections.emptyMap());
+        long start = System.nanoTime();
+        simulator.run();
+        assertTrue(System.nanoTime() - start >= 50_000_000L);
+        assertEquals(10, simulator.getTicks());
+        assertEquals(10, simulator.getSubSteps());
+    }
+
+    @Test
+    // frames far shorter than it takes to simulate them are caught up on late, and some dropped
+    public void testRunFallsBehind() throws UnableToParseException {
+        Board board = BoardParser.parse(ABSORBER_BOARD);
+        HeadlessSimulator simulator = new HeadlessSimulator(board, 1e7, false, 500, Collections.emptyMap());
+        assertEquals(0, simulator.getLateFrames());
+        simulator.run();
+        assertEquals(500, simulator.getTicks());
+        assertTrue(simulator.getLateFrames() > 0);
+        assertTrue(simulator.getDroppedFrames() > 0);
+        assertTrue(simulator.summary(), simulator.summary().endsWith(
+                simulator.getLateFrames() + " late, " + simulator.getDroppedFrames() + " dropped"));
+    }
+
+    @Test
+    // a run with a tick limit prints its summary and metrics once when it ends
+    public void testMainTicks() throws IOException, InterruptedException {
+        String output = runMain(0, "--max-speed", "--ticks", "30", "--metrics");
+        assertEquals(output, 1, count(output, "Headless: 30 ticks"));
+        assertEquals(output, 1, count(output, "trigger actions: "));
+    }
+
+    @Test
+    // a run with a tick limit that is interrupted before it ends still prints its summary and metrics once
+    public void testMainTicksInterrupted() throws IOException, InterruptedException {
+        String output = runMain(3000, "--ticks", "1000000", "--metrics");
+        assertEquals(output, 1, count(output, "Headless: "));
+        assertEquals(output, 1, count(output, "trigger actions: "));
+    }
+
+    /**
+     * Runs HeadlessSimulator.main on ABSORBER_BOARD in a process of its own
+     * @param interruptAfter milliseconds to let it run before terminating it, or 0 to let it finish
+     * @param args the arguments before the board file
+     * @return what it printed to standard output
+     */
+    private static String runMain(long interruptAfter, String... args) throws IOException, InterruptedException {
+        File boardFile = File.createTempFile("headless", ".fb");
+        File outputFile = File.createTempFile("headless", ".out");
+        try {
+            Files.write(boardFile.toPath(), ABSORBER_BOARD.getBytes(StandardCharsets.UTF_8));
+            List<String> command = new ArrayList<String>(Arrays.asList(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"), "flingball.HeadlessSimulator"));
+            command.addAll(Arrays.asList(args));
+            command.add(boardFile.getPath());
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(outputFile).start();
+            if (interruptAfter > 0) {
+                Thread.sleep(interruptAfter);
+                process.destroy();
+            }
+            assertTrue("simulator should exit", process.waitFor(60, TimeUnit.SECONDS));
+            return new String(Files.readAllBytes(outputFile.toPath()), StandardCharsets.UTF_8);
+        } finally {
+            boardFile.delete();
+            outputFile.delete();
+        }
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static Absorber absorber(Board board) {
+        for (Gadget gadget : board.getGadgets()) {
+            if (gadget instanceof Absorber) {
+                return (Absorber) gadget;
+            }
+        }
+        throw new AssertionError("board has no absorber");
+    }
+}
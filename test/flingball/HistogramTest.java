@@ -0,0 +1,123 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HistogramTest {
+    /**
+     * Testing strategy
+     *  - record(), count(), max(), mean()
+     *      . no values, one value, many values
+     *      . value 0, value below 256, large value, Long.MAX_VALUE
+     *      . recorded from several threads at once
+     *  - valueAtPercentile()
+     *      . percentile 0, 50, 99.9, 100
+     *      . exact values, values rounded to their bucket
+     *  - index(), highestEquivalentValue()
+     *      . relative error below 1%, buckets in increasing order
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // no values
+    public void testEmpty() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.mean(), 0);
+        assertEquals(0, histogram.valueAtPercentile(50));
+    }
+
+    @Test
+    // values below 256 are exact
+    public void testSmallValues() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(100, histogram.max());
+        assertEquals(50.5, histogram.mean(), 1e-9);
+        assertEquals(1, histogram.valueAtPercentile(0));
+        assertEquals(50, histogram.valueAtPercentile(50));
+        assertEquals(99, histogram.valueAtPercentile(99));
+        assertEquals(100, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    // random large values, percentiles within 1% of the exact ones
+    public void testLargeValues() {
+        Histogram histogram = new Histogram();
+        long[] values = new long[10000];
+        Random random = new Random(1);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 30);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = histogram.valueAtPercentile(percentile);
+            assertTrue(reported >= exact);
+            assertTrue(percentile + ": " + exact + " " + reported, reported <= exact * 1.01 + 1);
+        }
+        assertEquals(values[values.length - 1], histogram.max());
+        assertEquals(values[values.length - 1], histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    // 0 and Long.MAX_VALUE
+    public void testExtremes() {
+        Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.valueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.valueAtPercentile(99.9));
+        assertEquals(Long.MAX_VALUE, histogram.max());
+    }
+
+    @Test
+    // every bucket follows the one before, and its values are within 1% of each other
+    public void testBuckets() {
+        long previous = -1;
+        for (int index = 0; index <= Histogram.index(Long.MAX_VALUE); index++) {
+            long highest = Histogram.highestEquivalentValue(index);
+            assertTrue(highest > previous);
+            assertEquals(index, Histogram.index(previous + 1));
+            assertEquals(index, Histogram.index(highest));
+            assertTrue(highest - (previous + 1) <= (previous + 1) / 100);
+            previous = highest;
+        }
+        assertEquals(Long.MAX_VALUE, previous);
+    }
+
+    @Test
+    // four threads recording at once lose no values
+    public void testConcurrentRecord() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    histogram.record(1000 * offset + i % 1000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, histogram.count());
+        assertEquals(3999, histogram.max());
+    }
+}
@@ -0,0 +1,113 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class IslandsTest {
+    /**
+     * Testing strategy
+     *  - partition()
+     *      . balls = 0, 1, > 1
+     *      . balls far apart, balls whose reach boxes overlap, chains of balls merged through a fast ball
+     *      . active ball that could reach a hazard, a gadget that is not one, a parked ball
+     *  - step()
+     *      . islands moved through the frame, bouncing off gadgets and each other
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // no balls, one ball
+    public void testFewBalls() {
+        Islands islands = makeIslands(new ArrayList<Gadget>());
+        BallStore balls = new BallStore();
+        assertEquals(0, islands.partition(balls, 1./60, new boolean[0]));
+        balls.add(new Ball("a", 100, 100, 10, 0));
+        assertEquals(1, islands.partition(balls, 1./60, new boolean[0]));
+    }
+
+    @Test
+    // balls far apart are islands of their own, balls that could meet within the frame share one
+    public void testApartAndTogether() {
+        Islands islands = makeIslands(new ArrayList<Gadget>());
+        BallStore balls = new BallStore();
+        balls.add(new Ball("a", 100, 100, 60, 0));
+        balls.add(new Ball("b", 111, 100, -60, 0));
+        balls.add(new Ball("c", 300, 300, 60, 60));
+        assertEquals(2, islands.partition(balls, 1./60, new boolean[0]));
+        assertEquals(3, islands.partition(balls, 1./600, new boolean[0]));
+        assertEquals(1, islands.partition(balls, 3., new boolean[0]));
+    }
+
+    @Test
+    // a fast ball gives its island a reach that takes in a slow ball further away
+    public void testChain() {
+        Islands islands = makeIslands(new ArrayList<Gadget>());
+        BallStore balls = new BallStore();
+        balls.add(new Ball("fast", 100, 100, 1200, 0));
+        balls.add(new Ball("near", 125, 100, 0, 0));
+        balls.add(new Ball("far", 150, 100, 0, 0));
+        balls.add(new Ball("away", 300, 100, 0, 0));
+        // alone, the fast ball only reaches the near one, but once together they share its speed
+        assertEquals(2, islands.partition(balls, 1./60, new boolean[0]));
+    }
+
+    @Test
+    // a ball that could reach a hazard or a parked ball stops the frame from being split, other gadgets do not
+    public void testHazards() {
+        List<Gadget> gadgets = Arrays.asList(new SquareBumper("square", 120, 100), new Absorber("absorber", 0, 360, 400, 40));
+        Islands islands = makeIslands(gadgets);
+        BallStore balls = new BallStore();
+        balls.add(new Ball("a", 112, 110, 300, 0));
+        balls.add(new Ball("b", 300, 350, 0, 600));
+        assertEquals(2, islands.partition(balls, 1./60, new boolean[] { false, false }));
+        assertEquals(0, islands.partition(balls, 1./60, new boolean[] { true, false }));
+        assertEquals(0, islands.partition(balls, 1./60, new boolean[] { false, true }));
+        assertEquals(2, islands.partition(balls, 1./600, new boolean[] { false, true }));
+        Ball parked = new Ball("parked", 300, 332, 0, 0);
+        balls.add(parked);
+        parked.park();
+        assertEquals(0, islands.partition(balls, 1./60, new boolean[] { false, false }));
+        assertEquals(2, islands.partition(balls, 1./600, new boolean[] { false, false }));
+    }
+
+    @Test
+    // one island bounces a ball off a bumper while the other bounces two balls off each other
+    public void testStep() {
+        List<Gadget> gadgets = new ArrayList<Gadget>(Arrays.asList(new SquareBumper("square", 120, 100)));
+        FrameMetrics metrics = new FrameMetrics();
+        Islands islands = new Islands(gadgets, new GadgetGrid(gadgets), new GadgetTables(gadgets), metrics);
+        BallStore balls = new BallStore();
+        Ball a = new Ball("a", 110, 110, 600, 0);
+        Ball b = new Ball("b", 300, 100, 0, 600);
+        Ball c = new Ball("c", 300, 140, 0, -600);
+        balls.add(a);
+        balls.add(b);
+        balls.add(c);
+        assertEquals(2, islands.partition(balls, 1./20, new boolean[1]));
+        assertEquals(2, islands.islandCount());
+        islands.step(null, balls, 1./20, 0);
+        assertEquals(-600, a.getXVelocity(), 1e-9);
+        assertEquals(90, a.getX(), 1e-9);
+        assertEquals(-600, b.getYVelocity(), 1e-9);
+        assertEquals(100, b.getY(), 1e-9);
+        assertEquals(600, c.getYVelocity(), 1e-9);
+        assertEquals(140, c.getY(), 1e-9);
+        assertEquals(2, islands.subSteps());
+        assertEquals(1, metrics.collisions(FrameMetrics.Collider.SQUARE_BUMPER));
+        assertEquals(1, metrics.collisions(FrameMetrics.Collider.BALL));
+    }
+
+    private static Islands makeIslands(List<Gadget> gadgetList) {
+        List<Gadget> gadgets = new ArrayList<Gadget>(gadgetList);
+        return new Islands(gadgets, new GadgetGrid(gadgets), new GadgetTables(gadgets), new FrameMetrics());
+    }
+}
@@ -0,0 +1,179 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+
+import physics.Circle;
+import physics.LineSegment;
+import physics.Physics;
+import physics.Physics.VectPair;
+import physics.Vect;
+
+public class PhysicsKernelTest {
+    /**
+     * Testing strategy
+     *  Every method is compared against the matching method of physics.Physics
+     *  on randomly placed balls and obstacles.
+     *
+     *  - timeUntilWallCollision(), timeUntilCircleCollision(), timeUntilBallBallCollision()
+     *      . no collision, collision ahead, ball already overlapping
+     *  - timeUntilRotatingWallCollision()
+     *      . rotating counterclockwise, clockwise
+     *      . ball moving, ball at rest
+     *      . allocates no memory
+     *  - reflectWall(), reflectCircle(), reflectBalls(), reflectRotatingWall()
+     *      . ball at rest, ball moving
+     */
+
+    private static final double TOLERANCE = 1e-9;
+    private static final int CASES = 20000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // random walls and balls, including balls that touch the wall
+    public void testWallMatchesPhysics() {
+        Random random = new Random(1);
+        PhysicsKernel.Vector reflected = new PhysicsKernel.Vector();
+        for (int i = 0; i < CASES; i++) {
+            LineSegment wall = new LineSegment(coordinate(random), coordinate(random), coordinate(random), coordinate(random));
+            double x = coordinate(random), y = coordinate(random);
+            double xVel = velocity(random), yVel = velocity(random);
+            assertEquals(Physics.timeUntilWallCollision(wall, new Circle(x, y, 5), new Vect(xVel, yVel)),
+                    PhysicsKernel.timeUntilWallCollision(wall, x, y, 5, xVel, yVel), TOLERANCE);
+            Vect expected = Physics.reflectWall(wall, new Vect(xVel, yVel), 0.95);
+            PhysicsKernel.reflectWall(wall, xVel, yVel, 0.95, reflected);
+            assertEquals(expected.x(), reflected.x, TOLERANCE);
+            assertEquals(expected.y(), reflected.y, TOLERANCE);
+        }
+    }
+
+    @Test
+    // random circles and balls
+    public void testCircleMatchesPhysics() {
+        Random random = new Random(2);
+        PhysicsKernel.Vector reflected = new PhysicsKernel.Vector();
+        for (int i = 0; i < CASES; i++) {
+            Circle circle = new Circle(coordinate(random), coordinate(random), random.nextDouble()*20);
+            double x = coordinate(random), y = coordinate(random);
+            double xVel = velocity(random), yVel = velocity(random);
+            assertEquals(Physics.timeUntilCircleCollision(circle, new Circle(x, y, 5), new Vect(xVel, yVel)),
+                    PhysicsKernel.timeUntilCircleCollision(circle, x, y, 5, xVel, yVel), TOLERANCE);
+            Vect expected = Physics.reflectCircle(circle.getCenter(), new Vect(x, y), new Vect(xVel, yVel));
+            PhysicsKernel.reflectCircle(circle.getCenter().x(), circle.getCenter().y(), x, y, xVel, yVel, reflected);
+            assertEquals(expected.x(), reflected.x, TOLERANCE);
+            assertEquals(expected.y(), reflected.y, TOLERANCE);
+        }
+    }
+
+    @Test
+    // random pairs of balls of different sizes
+    public void testBallsMatchPhysics() {
+        Random random = new Random(3);
+        PhysicsKernel.Vector reflected1 = new PhysicsKernel.Vector();
+        PhysicsKernel.Vector reflected2 = new PhysicsKernel.Vector();
+        for (int i = 0; i < CASES; i++) {
+            double x1 = coordinate(random), y1 = coordinate(random), r1 = 1 + random.nextDouble()*10;
+            double x2 = coordinate(random), y2 = coordinate(random), r2 = 1 + random.nextDouble()*10;
+            double xVel1 = velocity(random), yVel1 = velocity(random);
+            double xVel2 = velocity(random), yVel2 = velocity(random);
+            assertEquals(Physics.timeUntilBallBallCollision(new Circle(x1, y1, r1), new Vect(xVel1, yVel1),
+                    new Circle(x2, y2, r2), new Vect(xVel2, yVel2)),
+                    PhysicsKernel.timeUntilBallBallCollision(x1, y1, r1, xVel1, yVel1, x2, y2, r2, xVel2, yVel2),
+                    TOLERANCE);
+            VectPair expected = Physics.reflectBalls(new Vect(x1, y1), 1, new Vect(xVel1, yVel1),
+                    new Vect(x2, y2), 1, new Vect(xVel2, yVel2));
+            PhysicsKernel.reflectBalls(x1, y1, 1, xVel1, yVel1, x2, y2, 1, xVel2, yVel2, reflected1, reflected2);
+            assertEquals(expected.v1.x(), reflected1.x, TOLERANCE);
+            assertEquals(expected.v1.y(), reflected1.y, TOLERANCE);
+            assertEquals(expected.v2.x(), reflected2.x, TOLERANCE);
+            assertEquals(expected.v2.y(), reflected2.y, TOLERANCE);
+        }
+    }
+
+    @Test
+    // flipper-sized segments rotating both ways around one end, balls nearby, some at rest
+    public void testRotatingWallMatchesPhysics() {
+        Random random = new Random(4);
+        PhysicsKernel.Vector reflected = new PhysicsKernel.Vector();
+        PhysicsKernel.RotatingWall scratch = new PhysicsKernel.RotatingWall();
+        int hits = 0;
+        for (int i = 0; i < CASES; i++) {
+            double pivotX = coordinate(random), pivotY = coordinate(random);
+            double angle = random.nextDouble()*2*Math.PI;
+            LineSegment flipper = new LineSegment(pivotX, pivotY, pivotX + 40*Math.cos(angle), pivotY + 40*Math.sin(angle));
+            double omega = random.nextBoolean() ? 6*Math.PI : -6*Math.PI;
+            double x = pivotX + (random.nextDouble() - 0.5)*120, y = pivotY + (random.nextDouble() - 0.5)*120;
+            double xVel = velocity(random), yVel = velocity(random);
+            if (random.nextInt(10) == 0) {
+                xVel = 0;
+                yVel = 0;
+            }
+            double expected;
+            try {
+                expected = Physics.timeUntilRotatingWallCollision(flipper, new Vect(pivotX, pivotY), omega,
+                        new Circle(x, y, 5), new Vect(xVel, yVel));
+            } catch (RuntimeException e) {
+                // physics.jar gives up on some degenerate geometry
+                continue;
+            }
+            double actual = PhysicsKernel.timeUntilRotatingWallCollision(flipper, pivotX, pivotY, omega,
+                    x, y, 5, xVel, yVel, scratch);
+            assertEquals(expected, actual, TOLERANCE);
+            if (actual < Double.POSITIVE_INFINITY) {
+                hits++;
+            }
+            Vect expectedVelocity = Physics.reflectRotatingWall(flipper, new Vect(pivotX, pivotY), omega,
+                    new Circle(x, y, 5), new Vect(xVel, yVel), 0.95);
+            PhysicsKernel.reflectRotatingWall(flipper, pivotX, pivotY, omega, x, y, xVel, yVel, 0.95, reflected);
+            assertEquals(expectedVelocity.x(), reflected.x, TOLERANCE);
+            assertEquals(expectedVelocity.y(), reflected.y, TOLERANCE);
+        }
+        assertTrue("expected some balls to hit the rotating segment", hits > CASES / 10);
+    }
+
+    @Test
+    // ball heading into a rotating flipper, after warming up
+    public void testRotatingWallAllocatesNothing() {
+        LineSegment flipper = new LineSegment(100, 100, 100, 140);
+        PhysicsKernel.RotatingWall scratch = new PhysicsKernel.RotatingWall();
+        double time = 0;
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long before = allocatedBytes();
+            for (int i = 0; i < 1000; i++) {
+                time = PhysicsKernel.timeUntilRotatingWallCollision(flipper, 100, 100, 6*Math.PI,
+                        130, 120, 5, -50, 0, scratch);
+            }
+            allocated = Math.min(allocated, allocatedBytes() - before);
+        }
+        assertTrue("ball should hit the flipper", time < Double.POSITIVE_INFINITY);
+        assertEquals("bytes allocated", 0, allocated);
+    }
+
+    private static double coordinate(Random random) {
+        return 20 + random.nextDouble()*360;
+    }
+
+    private static double velocity(Random random) {
+        return (random.nextDouble() - 0.5)*800;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * @return the number of bytes the current thread has allocated so far
+     */
+    private static long allocatedBytes() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+}
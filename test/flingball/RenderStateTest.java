@@ -0,0 +1,117 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import physics.Vect;
+
+public class RenderStateTest {
+    /**
+     * Testing strategy
+     *  - RenderState()
+     *      . no previous state, previous state
+     *      . ball that moved as far as its speed allows, one that jumped further, one that is new
+     *      . gadgets that are flippers, turning and at rest, and gadgets that are not
+     *  - alpha()
+     *      . before the frame was due, in between, a frame or more after
+     *  - x(), y(), angle()
+     *      . alpha = 0, between 0 and 1, 1
+     *  - Board.render(Graphics2D, RenderState, double)
+     *      . ball drawn between its positions at the end of the two frames
+     */
+
+    private static final double FRAME = 0.01;
+    private static final long PERIOD = 10_000_000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // with no previous state everything is drawn where it is now
+    public void testNoPrevious() {
+        BallStore balls = new BallStore();
+        balls.add(new Ball("a", 100, 100, 1000, 0));
+        LeftFlipper flipper = new LeftFlipper("flipper", 200, 200, LeftFlipper.Orientation.DEG_0);
+        List<Gadget> gadgets = Arrays.asList(new SquareBumper("square", 20, 20), flipper);
+        RenderState state = new RenderState(null, balls, gadgets, FRAME, 0);
+        assertEquals(1, state.ballCount());
+        assertEquals(100, state.x(0, 0), 0);
+        assertEquals(100, state.x(0, 0.5), 0);
+        assertEquals(100, state.y(0, 1), 0);
+        assertEquals(Flingball.L / 4., state.radius(0), 0);
+        assertTrue(Double.isNaN(state.angle(0, 0.5)));
+        assertEquals(0, state.angle(1, 0.5), 0);
+    }
+
+    @Test
+    // balls slide from where they were to where they are, unless they are new or jumped, and flippers turn
+    public void testInterpolate() {
+        BallStore balls = new BallStore();
+        Ball moving = new Ball("moving", 100, 100, 1000, 0);
+        Ball jumping = new Ball("jumping", 100, 300, 100, 0);
+        balls.add(moving);
+        balls.add(jumping);
+        LeftFlipper flipper = new LeftFlipper("flipper", 200, 200, LeftFlipper.Orientation.DEG_0);
+        List<Gadget> gadgets = Arrays.asList(new SquareBumper("square", 20, 20), flipper);
+        RenderState previous = new RenderState(null, balls, gadgets, FRAME, 0);
+        moving.setPosition(new Vect(110, 100));
+        jumping.setPosition(new Vect(300, 300));
+        balls.add(new Ball("new", 50, 50, 0, 0));
+        flipper.action();
+        flipper.advance(FRAME);
+        RenderState state = new RenderState(previous, balls, gadgets, FRAME, PERIOD);
+        assertEquals(3, state.ballCount());
+        assertEquals(100, state.x(0, 0), 1e-9);
+        assertEquals(105, state.x(0, 0.5), 1e-9);
+        assertEquals(110, state.x(0, 1), 1e-9);
+        assertEquals(100, state.y(0, 0.5), 1e-9);
+        assertEquals(300, state.x(1, 0), 1e-9);
+        assertEquals(300, state.x(1, 0.5), 1e-9);
+        assertEquals(50, state.x(2, 0), 1e-9);
+        assertTrue(Double.isNaN(state.angle(0, 0.5)));
+        assertEquals(flipper.angle() / 2, state.angle(1, 0.5), 1e-9);
+        assertEquals(flipper.angle(), state.angle(1, 1), 1e-9);
+    }
+
+    @Test
+    // alpha goes from 0 when the frame was due to 1 a frame later, and stays within those bounds
+    public void testAlpha() {
+        RenderState state = new RenderState(null, new BallStore(), new ArrayList<Gadget>(), FRAME, 5 * PERIOD);
+        assertEquals(0, state.alpha(4 * PERIOD), 0);
+        assertEquals(0, state.alpha(5 * PERIOD), 0);
+        assertEquals(0.25, state.alpha(5 * PERIOD + PERIOD / 4), 1e-9);
+        assertEquals(1, state.alpha(6 * PERIOD), 0);
+        assertEquals(1, state.alpha(9 * PERIOD), 0);
+    }
+
+    @Test
+    // the board draws a ball halfway between its positions at the end of two frames
+    public void testBoardRender() {
+        Ball ball = new Ball("ball", 100, 100, 6000, 0);
+        Board board = new Board("A", new ArrayList<Gadget>(), Arrays.asList(ball), 0, 0, 0, new HashMap<String, String>(),
+                new HashMap<String, Vect>());
+        RenderState previous = board.renderState(null, FRAME, 0);
+        board.timeStep(FRAME);
+        RenderState state = board.renderState(previous, FRAME, PERIOD);
+        assertEquals(160, ball.getX(), 1e-9);
+        BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphic = image.createGraphics();
+        board.render(graphic, state, 0.5);
+        graphic.dispose();
+        assertEquals(Color.blue.getRGB(), image.getRGB(130, 100));
+        assertEquals(Color.black.getRGB(), image.getRGB(100, 100));
+        assertEquals(Color.black.getRGB(), image.getRGB(160, 100));
+    }
+}
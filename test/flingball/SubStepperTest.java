@@ -0,0 +1,213 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+public class SubStepperTest {
+    /**
+     * Testing strategy
+     *  - step()
+     *      . no collisions, collisions at the earliest time only, later collisions within the window
+     *      . gadget and ball collisions offered out of order of time, ties between the two kinds
+     *      . later collision that still happens, that no longer happens, against a moving gadget
+     *      . balls moved ahead by a later collision end the frame with the others
+     *      . ball removed by an earlier collision of the batch
+     *      . frame that stops moving forward in time, frame with more sub-steps than the cap
+     *  - subSteps(), subStepsSaved(), narrowPhaseTests(), capped()
+     *      . after each of the above
+     */
+
+    private static final double WINDOW = .001;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // no collisions, the frame takes one sub-step
+    public void testNoCollisions() {
+        BallStore balls = new BallStore();
+        balls.add(new Ball("ball", 100, 100, 600, 0));
+        Scripted stepper = new Scripted(balls, 1);
+        stepper.step(balls, .01);
+        assertEquals(1, stepper.subSteps());
+        assertEquals(0, stepper.subStepsSaved());
+        assertFalse(stepper.capped());
+        assertEquals(106, balls.x[0], 1e-9);
+        assertEquals(Arrays.asList(), stepper.events);
+    }
+
+    @Test
+    // collisions are processed in order of time, gadget collisions first at the same time,
+    // and the balls of later ones are moved on to where they touch first, then held back for that time
+    public void testOrder() {
+        BallStore balls = new BallStore();
+        balls.add(new Ball("a", 50, 50, 0, 0));
+        balls.add(new Ball("b", 94, 200, 600, 0));
+        balls.add(new Ball("c", 116.24, 200, -600, 0));
+        balls.add(new Ball("d", 94, 300, 600, 0));
+        balls.add(new Ball("e", 194, 300, 600, 0));
+        balls.add(new Ball("f", 300, 50, 0, 0));
+        balls.add(new Ball("g", 310, 50, 0, 0));
+        Scripted stepper = new Scripted(balls, 3);
+        stepper.retest[1] = .0001;
+        stepper.retest[2] = .0002;
+        stepper.script = set -> {
+            Contact contact = new Contact();
+            contact.set(.01, 0);
+            set.offerGadget(.01, 0, 0, contact);
+            set.offerPair(.0102, 1, 2);
+            set.offerGadget(.0101, 1, 3, contact);
+            set.offerPair(.01, 5, 6);
+            set.offerGadget(.0102, 2, 4, contact);
+        };
+        stepper.step(balls, .02);
+        assertEquals(Arrays.asList("a hits 0", "f hits g", "d hits 1", "e hits 2", "b hits c"), stepper.events);
+        assertEquals(100.06, stepper.positions.get(2), 1e-9);
+        assertEquals(200.12, stepper.positions.get(3), 1e-9);
+        assertEquals(10, stepper.positions.get(4), 1e-9);
+        // the balls moved ahead in the batch only move for the rest of the frame after it
+        assertEquals(106, balls.x[3], 1e-9);
+        assertEquals(206, balls.x[4], 1e-9);
+        assertEquals(.02, balls.clock[3], 1e-12);
+        assertEquals(2, stepper.subSteps());
+        assertEquals(3, stepper.subStepsSaved());
+        assertEquals(3, stepper.narrowPhaseTests());
+        assertFalse(stepper.capped());
+    }
+
+    @Test
+    // later collisions that no longer happen, or are against a moving gadget, are left for later,
+    // and so are those of a ball that an earlier collision took off the board
+    public void testSkipped() {
+        BallStore balls = new BallStore();
+        Ball a = new Ball("a", 50, 50, 0, 0);
+        balls.add(a);
+        balls.add(new Ball("b", 100, 100, 0, 0));
+        balls.add(new Ball("c", 200, 200, 0, 0));
+        Scripted stepper = new Scripted(balls, 4);
+        stepper.removes[0] = true;
+        stepper.moving[2] = true;
+        stepper.retest[1] = Double.POSITIVE_INFINITY;
+        stepper.retest[2] = .0001;
+        stepper.retest[3] = .0001;
+        stepper.script = set -> {
+            Contact contact = new Contact();
+            set.offerGadget(.01, 0, 0, contact);
+            set.offerGadget(.0101, 1, 1, contact);
+            set.offerGadget(.0101, 2, 2, contact);
+            set.offerGadget(.0101, 3, 0, contact);
+        };
+        stepper.step(balls, .02);
+        assertEquals(Arrays.asList("a hits 0"), stepper.events);
+        assertFalse(balls.contains(a));
+        assertEquals(0, stepper.subStepsSaved());
+        assertEquals(2, stepper.narrowPhaseTests());
+    }
+
+    @Test
+    // a frame whose collisions keep it from moving forward in time stops early
+    public void testStalled() {
+        BallStore balls = new BallStore();
+        balls.add(new Ball("a", 50, 50, 0, 0));
+        Scripted stepper = new Scripted(balls, 1);
+        stepper.repeat = true;
+        stepper.script = set -> set.offerGadget(0, 0, 0, new Contact());
+        stepper.step(balls, .01);
+        assertTrue(stepper.capped());
+        assertEquals(SubStepper.MAX_STALLED_SUB_STEPS, stepper.subSteps());
+        assertEquals(SubStepper.MAX_STALLED_SUB_STEPS, stepper.events.size());
+        stepper.repeat = false;
+        stepper.step(balls, .01);
+        assertFalse(stepper.capped());
+    }
+
+    @Test
+    // a frame with more collisions than the cap on sub-steps stops early
+    public void testMaxSubSteps() {
+        BallStore balls = new BallStore();
+        balls.add(new Ball("a", 50, 50, 0, 0));
+        Scripted stepper = new Scripted(balls, 1);
+        stepper.repeat = true;
+        stepper.script = set -> set.offerGadget(1e-9, 0, 0, new Contact());
+        stepper.step(balls, 1);
+        assertTrue(stepper.capped());
+        assertEquals(SubStepper.MAX_SUB_STEPS, stepper.subSteps());
+    }
+
+    /**
+     * A stepper of every ball of a store, whose survey offers the collisions of a script, the first
+     * time or every time, and whose gadgets are scripted too. It records each collision it is asked to
+     * process in events, along with the x coordinate of the ball hitting a gadget or the distance
+     * between two balls hitting each other in positions
+     */
+    private static class Scripted extends SubStepper {
+
+        private final BallStore balls;
+        final double[] retest;
+        final boolean[] moving;
+        final boolean[] removes;
+        final List<String> events = new ArrayList<>();
+        final List<Double> positions = new ArrayList<>();
+        Consumer<CollisionSet> script = set -> { };
+        boolean repeat = false;
+        private final CollisionSet set;
+        private int surveys = 0;
+
+        Scripted(BallStore balls, int gadgets) {
+            this(balls, gadgets, new CollisionSet());
+        }
+
+        private Scripted(BallStore balls, int gadgets, CollisionSet set) {
+            super(set);
+            set.setWindow(WINDOW);
+            this.balls = balls;
+            this.set = set;
+            this.retest = new double[gadgets];
+            this.moving = new boolean[gadgets];
+            this.removes = new boolean[gadgets];
+        }
+
+        @Override long survey(double horizon) {
+            if (repeat || surveys++ == 0) {
+                script.accept(set);
+            }
+            return 0;
+        }
+
+        @Override void move(double from, double time) {
+            balls.updatePositions(from, time);
+        }
+
+        @Override boolean isMoving(int gadget) {
+            return moving[gadget];
+        }
+
+        @Override double timeToCollide(int gadget, Ball ball, double horizon, Contact contact) {
+            contact.set(retest[gadget], 0);
+            return retest[gadget];
+        }
+
+        @Override void collide(int gadget, Ball ball, Contact contact) {
+            events.add(ball.name() + " hits " + gadget);
+            positions.add(ball.getX());
+            if (removes[gadget]) {
+                balls.remove(ball);
+            }
+        }
+
+        @Override void collide(Ball ball, Ball otherBall) {
+            events.add(ball.name() + " hits " + otherBall.name());
+            positions.add(Math.hypot(ball.getX() - otherBall.getX(), ball.getY() - otherBall.getY()));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import physics.Vect;
+
+public class SweepAndPruneTest {
+    /**
+     * Testing strategy
+     *  - findPairs()
+     *      . balls = 0, 1, > 1
+     *      . balls apart, balls whose paths overlap
+     *      . ball list unchanged since last call, ball added since last call
+     *      . every pair colliding within the horizon is reported, each exactly once
+     *      . parked balls: touching each other, in the path of an active ball, parked since last call
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    // no balls, one ball
+    public void testFewBalls() {
+        SweepAndPrune sweep = new SweepAndPrune();
+        BallStore balls = new BallStore();
+        assertEquals(0, sweep.findPairs(balls, 1.));
+        balls.add(new Ball("a", 100, 100, 0, 0));
+        assertEquals(0, sweep.findPairs(balls, 1.));
+    }
+
+    @Test
+    // two balls moving toward each other, then a third ball far away is added
+    public void testApproachingBalls() {
+        SweepAndPrune sweep = new SweepAndPrune();
+        BallStore balls = new BallStore();
+        Ball a = new Ball("a", 100, 100, 20, 0);
+        Ball b = new Ball("b", 150, 100, -20, 0);
+        balls.add(a);
+        balls.add(b);
+        assertEquals(0, sweep.findPairs(balls, 0.5));
+        assertEquals(1, sweep.findPairs(balls, 1.));
+        assertTrue(sweep.first(0) == a);
+        assertTrue(sweep.second(0) == b);
+        balls.add(new Ball("c", 300, 300, 0, 0));
+        assertEquals(1, sweep.findPairs(balls, 1.));
+    }
+
+    @Test
+    // balls parked on top of each other are not paired, an active ball heading at them is
+    public void testParkedBalls() {
+        SweepAndPrune sweep = new SweepAndPrune();
+        BallStore balls = new BallStore();
+        Ball a = new Ball("a", 200, 200, 0, 0);
+        Ball b = new Ball("b", 200, 200, 0, 0);
+        Ball c = new Ball("c", 100, 200, 0, 0);
+        balls.add(a);
+        balls.add(b);
+        balls.add(c);
+        assertEquals(1, sweep.findPairs(balls, 1.));
+        a.park();
+        b.park();
+        assertEquals(0, sweep.findPairs(balls, 1.));
+        c.setVelocity(new Vect(200, 0));
+        assertEquals(0, sweep.findPairs(balls, 0.25));
+        assertEquals(2, sweep.findPairs(balls, 1.));
+        assertTrue(sweep.first(0) == c && sweep.first(1) == c);
+        assertTrue(sweep.second(0) == b && sweep.second(1) == a);
+    }
+
+    @Test
+    // randomly placed balls, compared against testing every pair
+    public void testMatchesAllPairs() {
+        Random random = new Random(6031);
+        BallStore balls = new BallStore();
+        List<Ball> ballList = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ballList.add(new Ball("ball" + i, 5 + random.nextDouble()*390, 5 + random.nextDouble()*390,
+                    (random.nextDouble() - 0.5)*400, (random.nextDouble() - 0.5)*400));
+        }
+        for (Ball ball : ballList) {
+            balls.add(ball);
+        }
+        // park every fourth ball, which then only pairs with active balls
+        for (int i = 0; i < ballList.size(); i += 4) {
+            ballList.get(i).park();
+        }
+        SweepAndPrune sweep = new SweepAndPrune();
+        for (double horizon : new double[] {1./60, 0.1, 0.5}) {
+            int count = sweep.findPairs(balls, horizon);
+            Set<String> found = new HashSet<>();
+            for (int k = 0; k < count; k++) {
+                assertTrue("pair reported twice", found.add(sweep.first(k).name() + " " + sweep.second(k).name()));
+                assertTrue("parked pair", !sweep.first(k).isParked() || !sweep.second(k).isParked());
+            }
+            for (int i = 0; i < ballList.size(); i++) {
+                for (int j = i + 1; j < ballList.size(); j++) {
+                    boolean parked = ballList.get(i).isParked() && ballList.get(j).isParked();
+                    if (!parked && ballList.get(i).timeToCollide(ballList.get(j)) <= horizon) {
+                        assertTrue("missing pair", found.contains(ballList.get(i).name() + " " + ballList.get(j).name())
+                                || found.contains(ballList.get(j).name() + " " + ballList.get(i).name()));
+                    }
+                }
+            }
+        }
+    }
+}